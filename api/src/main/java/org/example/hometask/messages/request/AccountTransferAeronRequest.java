@@ -2,13 +2,11 @@ package org.example.hometask.messages.request;
 
 import org.jetbrains.annotations.NotNull;
 
-import java.math.BigDecimal;
-
 public record AccountTransferAeronRequest(
         long trackingId,
         long fromAccountId,
         long toAccountId,
-        @NotNull BigDecimal amount
+        long amount
 ) implements AeronRequest {
 
     @Override
@@ -2,13 +2,11 @@ package org.example.hometask.messages.request;
 
 import org.jetbrains.annotations.NotNull;
 
-import java.math.BigDecimal;
-
 public record AccountWithdrawAeronRequest(
         long trackingId,
         long fromAccountId,
         @NotNull String toAddress,
-        @NotNull BigDecimal amount
+        long amount
 ) implements AeronRequest {
 
     @Override
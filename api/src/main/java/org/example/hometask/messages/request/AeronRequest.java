@@ -17,5 +17,9 @@ public interface AeronRequest {
         V visit(@NotNull AccountWithdrawAeronRequest message) throws E;
 
         V visit(@NotNull QueryWithdrawalAeronRequest message) throws E;
+
+        V visit(@NotNull CreateAccountBatchAeronRequest message) throws E;
+
+        V visit(@NotNull AccountTransferBatchAeronRequest message) throws E;
     }
 }
@@ -2,11 +2,9 @@ package org.example.hometask.messages.request;
 
 import org.jetbrains.annotations.NotNull;
 
-import java.math.BigDecimal;
-
 public record CreateAccountAeronRequest(
         long trackingId,
-        @NotNull BigDecimal initialAmount
+        long initialAmount
 ) implements AeronRequest {
 
     @Override
@@ -0,0 +1,19 @@
+package org.example.hometask.messages.request;
+
+import org.example.hometask.messages.response.BatchResultAeronResponse;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.List;
+
+/**
+ * Accounts created in a single pass, results of the requests are sent as {@link BatchResultAeronResponse}.
+ */
+public record CreateAccountBatchAeronRequest(
+        @NotNull List<CreateAccountAeronRequest> accounts
+) implements AeronRequest {
+
+    @Override
+    public <V, E extends Throwable> V accept(@NotNull Visitor<V, E> visitor) throws E {
+        return visitor.visit(this);
+    }
+}
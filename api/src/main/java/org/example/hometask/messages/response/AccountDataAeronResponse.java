@@ -2,12 +2,10 @@ package org.example.hometask.messages.response;
 
 import org.jetbrains.annotations.NotNull;
 
-import java.math.BigDecimal;
-
 public record AccountDataAeronResponse(
         long trackingId,
-        @NotNull BigDecimal availableAmount,
-        @NotNull BigDecimal reservedAmount
+        long availableAmount,
+        long reservedAmount
 ) implements AeronResponse {
 
     @Override
@@ -25,5 +25,9 @@ public interface AeronResponse {
         V visit(@NotNull WithdrawalDataAeronResponse event) throws E;
 
         V visit(@NotNull SameAccountAeronResponse event) throws E;
+
+        V visit(@NotNull ServerBusyAeronResponse event) throws E;
+
+        V visit(@NotNull BatchResultAeronResponse event) throws E;
     }
 }
@@ -0,0 +1,24 @@
+package org.example.hometask.messages.response;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.List;
+
+/**
+ * Results of items of a batch request which are known by the end of the batch, keyed by their tracking IDs. Items
+ * completed later, e.g. transfers to accounts of other shards, get responses of their own, just like single requests.
+ * A batch may get several results, since the server splits them to fit into frames of its response publication.
+ * <p>
+ * A result is one of {@link AccountCreatedAeronResponse}, {@link AccountTransferDoneAeronResponse},
+ * {@link NoFundsAeronResponse}, {@link InvalidAmountAeronResponse}, {@link NoSuchEntityAeronResponse} and
+ * {@link SameAccountAeronResponse}.
+ */
+public record BatchResultAeronResponse(
+        @NotNull List<AeronResponse> results
+) implements AeronResponse {
+
+    @Override
+    public <V, E extends Throwable> V accept(@NotNull Visitor<V, E> visitor) throws E {
+        return visitor.visit(this);
+    }
+}
@@ -3,11 +3,9 @@ package org.example.hometask.messages.response;
 import org.example.hometask.messages.WithdrawalState;
 import org.jetbrains.annotations.NotNull;
 
-import java.math.BigDecimal;
-
 public record WithdrawalDataAeronResponse(
         long trackingId,
-        @NotNull BigDecimal amount,
+        long amount,
         @NotNull WithdrawalState state
 ) implements AeronResponse {
 
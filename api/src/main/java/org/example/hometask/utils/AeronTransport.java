@@ -0,0 +1,114 @@
+package org.example.hometask.utils;
+
+import io.aeron.Aeron;
+import io.aeron.CommonContext;
+import io.aeron.driver.MediaDriver;
+import io.aeron.driver.ThreadingMode;
+import org.agrona.CloseHelper;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Aeron client of a process, along with the media driver it launched, if any.
+ * <p>
+ * By default, the process launches an embedded media driver of its own, so it works out of the box. In production,
+ * processes attach to an external media driver instead, which runs with dedicated threads and is shared by all
+ * processes of the host. Processes sharing a media driver may talk over <code>aeron:ipc</code> channels, no matter
+ * whether the driver is embedded into one of them or external.
+ */
+public final class AeronTransport implements AutoCloseable {
+
+    /**
+     * Whether to launch an embedded media driver or to attach to an external one.
+     */
+    public static final MediaDriverMode MEDIA_DRIVER_MODE = MediaDriverMode.valueOf(
+            System.getProperty("org.example.hometask.mediaDriver", MediaDriverMode.EMBEDDED.name()));
+
+    /**
+     * Threading mode of the embedded media driver.
+     */
+    public static final ThreadingMode THREADING_MODE = ThreadingMode.valueOf(
+            System.getProperty("org.example.hometask.mediaDriver.threadingMode", ThreadingMode.SHARED.name()));
+
+    /**
+     * Directory of the media driver. Defaults to the Aeron default directory for an external media driver, and to a
+     * directory of the process for an embedded one.
+     */
+    @Nullable
+    private static final String AERON_DIR = System.getProperty("org.example.hometask.aeron.dir");
+
+    @Nullable
+    private final MediaDriver mediaDriver;
+
+    @NotNull
+    private final Aeron aeron;
+
+    private AeronTransport(@Nullable MediaDriver mediaDriver, @NotNull Aeron aeron) {
+        this.mediaDriver = mediaDriver;
+        this.aeron = aeron;
+    }
+
+    /**
+     * Launches an embedded media driver, or waits for the external one, and connects to it.
+     *
+     * @param name Name of the process, the embedded media driver directory is named after it by default.
+     */
+    @NotNull
+    public static AeronTransport launch(@NotNull String name) {
+
+        if (MEDIA_DRIVER_MODE == MediaDriverMode.EXTERNAL) {
+            final var context = new Aeron.Context();
+            if (AERON_DIR != null) {
+                context.aeronDirectoryName(AERON_DIR);
+            }
+            return new AeronTransport(null, Aeron.connect(context));
+        }
+
+        final var mediaDriver = MediaDriver.launchEmbedded(
+                new MediaDriver.Context()
+                        .aeronDirectoryName(AERON_DIR != null
+                                ? AERON_DIR
+                                : CommonContext.getAeronDirectoryName() + "-" + name)
+                        .dirDeleteOnStart(true)
+                        .dirDeleteOnShutdown(true)
+                        .threadingMode(THREADING_MODE));
+        try {
+            return new AeronTransport(mediaDriver, Aeron.connect(
+                    new Aeron.Context().aeronDirectoryName(mediaDriver.aeronDirectoryName())));
+        } catch (RuntimeException e) {
+            CloseHelper.quietClose(mediaDriver);
+            throw e;
+        }
+    }
+
+    @NotNull
+    public Aeron aeron() {
+        return aeron;
+    }
+
+    @NotNull
+    public String aeronDirectoryName() {
+        return aeron.context().aeronDirectoryName();
+    }
+
+    /**
+     * Closes the client, then the embedded media driver.
+     */
+    @Override
+    public void close() {
+        CloseHelper.quietCloseAll(aeron, mediaDriver);
+    }
+
+    public enum MediaDriverMode {
+
+        /**
+         * Launch a media driver within the process, it lives as long as the process.
+         */
+        EMBEDDED,
+
+        /**
+         * Attach to a media driver launched separately, e.g. by <code>io.aeron.driver.MediaDriver</code>.
+         */
+        EXTERNAL
+    }
+}
@@ -0,0 +1,100 @@
+package org.example.hometask.utils;
+
+import org.example.hometask.api.DecimalDecoder;
+import org.example.hometask.api.DecimalEncoder;
+import org.jetbrains.annotations.NotNull;
+
+import java.math.BigDecimal;
+
+/**
+ * Amounts are fixed-point <code>long</code> values with {@link #SCALE} decimal places, e.g. <code>1.5</code> is
+ * represented as <code>150000000</code>. On the wire they are still SBE <code>Decimal</code>s, where the exponent is
+ * the number of decimal places, so clients are free to send any scale which is representable.
+ */
+public final class Amounts {
+
+    public static final int SCALE = 8;
+
+    /**
+     * Result of conversion of a value which does not fit into a fixed-point amount. It is negative, therefore it never
+     * passes validation of amounts.
+     */
+    public static final long INVALID = Long.MIN_VALUE;
+
+    private static final long[] POWERS_OF_TEN = {
+            1L,
+            10L,
+            100L,
+            1_000L,
+            10_000L,
+            100_000L,
+            1_000_000L,
+            10_000_000L,
+            100_000_000L,
+            1_000_000_000L,
+            10_000_000_000L,
+            100_000_000_000L,
+            1_000_000_000_000L,
+            10_000_000_000_000L,
+            100_000_000_000_000L,
+            1_000_000_000_000_000L,
+            10_000_000_000_000_000L,
+            100_000_000_000_000_000L,
+            1_000_000_000_000_000_000L
+    };
+
+    /**
+     * @return Fixed-point amount, or {@link #INVALID} in case of overflow or if the value has more than
+     * {@link #SCALE} significant decimal places.
+     */
+    public static long fromDecimal(long mantissa, int exponent) {
+
+        if (exponent == SCALE || mantissa == 0) {
+            return mantissa;
+        }
+
+        if (exponent < SCALE) {
+            final int shift = SCALE - exponent;
+            if (shift >= POWERS_OF_TEN.length) {
+                return INVALID;
+            }
+            final long factor = POWERS_OF_TEN[shift];
+            if (mantissa > Long.MAX_VALUE / factor || mantissa < Long.MIN_VALUE / factor) {
+                return INVALID;
+            }
+            return mantissa * factor;
+        }
+
+        final int shift = exponent - SCALE;
+        if (shift >= POWERS_OF_TEN.length) {
+            return INVALID;
+        }
+        final long factor = POWERS_OF_TEN[shift];
+        return mantissa % factor == 0 ? mantissa / factor : INVALID;
+    }
+
+    public static long fromDecimal(@NotNull DecimalDecoder decoder) {
+        return fromDecimal(decoder.mantissa(), decoder.exponent());
+    }
+
+    public static void toDecimal(@NotNull DecimalEncoder encoder, long amount) {
+        encoder.mantissa(amount);
+        encoder.exponent((byte) SCALE);
+    }
+
+    /**
+     * @throws ArithmeticException if the value does not fit into a fixed-point amount
+     */
+    public static long fromBigDecimal(@NotNull BigDecimal value) {
+        return value.setScale(SCALE).unscaledValue().longValueExact();
+    }
+
+    @NotNull
+    public static BigDecimal toBigDecimal(long amount) {
+        return BigDecimal.valueOf(amount, SCALE);
+    }
+
+    private Amounts() {
+        // empty
+    }
+}
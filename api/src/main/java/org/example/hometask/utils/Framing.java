@@ -0,0 +1,39 @@
+package org.example.hometask.utils;
+
+import org.agrona.DirectBuffer;
+import org.example.hometask.api.BatchResultDecoder;
+import org.example.hometask.api.MessageHeaderDecoder;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Responses are packed into frames back-to-back, so readers of a frame need to know where every message ends. Most
+ * responses are fixed-length messages, batch results end with a repeating group.
+ */
+public final class Framing {
+
+    /**
+     * Wraps the header decoder around the message.
+     *
+     * @return Length of the message including its header.
+     */
+    public static int messageLength(
+            @NotNull MessageHeaderDecoder headerDecoder,
+            @NotNull DirectBuffer buffer,
+            int offset
+    ) {
+
+        headerDecoder.wrap(buffer, offset);
+        int length = headerDecoder.encodedLength() + headerDecoder.blockLength();
+        if (headerDecoder.templateId() == BatchResultDecoder.TEMPLATE_ID) {
+            // group dimensions are blockLength and numInGroup
+            final int blockLength = buffer.getShort(offset + length, BatchResultDecoder.BYTE_ORDER) & 0xFFFF;
+            final int count = buffer.getShort(offset + length + 2, BatchResultDecoder.BYTE_ORDER) & 0xFFFF;
+            length += BatchResultDecoder.ResultsDecoder.sbeHeaderSize() + blockLength * count;
+        }
+        return length;
+    }
+
+    private Framing() {
+        // empty
+    }
+}
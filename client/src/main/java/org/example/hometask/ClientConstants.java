@@ -8,6 +8,12 @@ public final class ClientConstants {
     public static final String SERVER_URI = requireNonNull(System.getProperty("org.example.hometask.SERVER_URI"));
     public static final String CLIENT_URI = requireNonNull(System.getProperty("org.example.hometask.CLIENT_URI"));
 
+    /**
+     * Stream of responses, distinct from the one of requests, so they do not mix when both are on the same IPC channel.
+     */
+    public static final int RESPONSE_STREAM =
+            Integer.getInteger("org.example.hometask.RESPONSE_STREAM", RPC_STREAM + 1);
+
     private ClientConstants() {
         //nothing
     }
@@ -1,14 +1,11 @@
 package org.example.hometask.aeron;
 
-import io.aeron.Aeron;
-import io.aeron.CommonContext;
-import io.aeron.driver.MediaDriver;
-import io.aeron.driver.ThreadingMode;
 import org.agrona.CloseHelper;
 import org.agrona.concurrent.AgentRunner;
 import org.agrona.concurrent.BusySpinIdleStrategy;
 import org.example.hometask.messages.request.AeronRequest;
 import org.example.hometask.messages.response.AeronResponse;
+import org.example.hometask.utils.AeronTransport;
 import org.jetbrains.annotations.NotNull;
 
 import java.util.concurrent.BlockingQueue;
@@ -20,8 +17,7 @@ public class Client {
     private final ConcurrentLinkedQueue<AeronRequest> requestQueue = new ConcurrentLinkedQueue<>();
     private final BlockingQueue<AeronResponse> responseQueue = new LinkedBlockingQueue<>();
 
-    private final MediaDriver mediaDriver;
-    private final Aeron aeron;
+    private final AeronTransport transport;
     private final AgentRunner clientAgentRunner;
 
     public Client() {
@@ -31,22 +27,15 @@ public class Client {
         // Unparking worker thread manually is also possible but is breaking abstractions.
         final var idleStrategy = new BusySpinIdleStrategy();
 
-        mediaDriver = MediaDriver.launchEmbedded(
-                new MediaDriver.Context()
-                        .aeronDirectoryName(CommonContext.getAeronDirectoryName() + "-client")
-                        .dirDeleteOnStart(true)
-                        .dirDeleteOnShutdown(true)
-                        .threadingMode(ThreadingMode.SHARED));
+        transport = AeronTransport.launch("client");
 
-        aeron = Aeron.connect(new Aeron.Context().aeronDirectoryName(mediaDriver.aeronDirectoryName()));
-
-        System.out.println(mediaDriver.aeronDirectoryName());
+        System.out.println(transport.aeronDirectoryName());
 
         clientAgentRunner = new AgentRunner(
                 idleStrategy,
                 Throwable::printStackTrace,
                 null,
-                new ClientAgent(aeron, requestQueue, responseQueue)
+                new ClientAgent(transport.aeron(), requestQueue, responseQueue)
         );
 
         AgentRunner.startOnThread(clientAgentRunner);
@@ -63,7 +52,6 @@ public class Client {
 
     public void shutdown() {
         CloseHelper.quietClose(clientAgentRunner);
-        CloseHelper.quietClose(aeron);
-        CloseHelper.quietClose(mediaDriver);
+        CloseHelper.quietClose(transport);
     }
 }
@@ -7,11 +7,13 @@ import org.example.hometask.api.AccountCreatedDecoder;
 import org.example.hometask.api.AccountDataDecoder;
 import org.example.hometask.api.AccountTransferDoneDecoder;
 import org.example.hometask.api.AccountWithdrawalDoneDecoder;
+import org.example.hometask.api.BatchResultDecoder;
 import org.example.hometask.api.InvalidAmountDecoder;
 import org.example.hometask.api.MessageHeaderDecoder;
 import org.example.hometask.api.NoFundsDecoder;
 import org.example.hometask.api.NoSuchEntityDecoder;
 import org.example.hometask.api.SameAccountDecoder;
+import org.example.hometask.api.ServerBusyDecoder;
 import org.example.hometask.api.WithdrawalDataDecoder;
 import org.example.hometask.messages.WithdrawalState;
 import org.example.hometask.messages.response.AccountCreatedAeronResponse;
@@ -19,16 +21,20 @@ import org.example.hometask.messages.response.AccountDataAeronResponse;
 import org.example.hometask.messages.response.AccountTransferDoneAeronResponse;
 import org.example.hometask.messages.response.AccountWithdrawalDoneAeronResponse;
 import org.example.hometask.messages.response.AeronResponse;
+import org.example.hometask.messages.response.BatchResultAeronResponse;
 import org.example.hometask.messages.response.InvalidAmountAeronResponse;
 import org.example.hometask.messages.response.NoFundsAeronResponse;
 import org.example.hometask.messages.response.NoSuchEntityAeronResponse;
 import org.example.hometask.messages.response.SameAccountAeronResponse;
+import org.example.hometask.messages.response.ServerBusyAeronResponse;
 import org.example.hometask.messages.response.WithdrawalDataAeronResponse;
+import org.example.hometask.utils.Framing;
 import org.jetbrains.annotations.NotNull;
 
+import java.util.ArrayList;
 import java.util.concurrent.BlockingQueue;
 
-import static org.example.hometask.utils.Utils.getBigDecimal;
+import static org.example.hometask.utils.Amounts.fromDecimal;
 
 public class ClientAdapter implements FragmentHandler {
 
@@ -41,6 +47,8 @@ public class ClientAdapter implements FragmentHandler {
     private final AccountDataDecoder accountDataDecoder = new AccountDataDecoder();
     private final WithdrawalDataDecoder withdrawalDataDecoder = new WithdrawalDataDecoder();
     private final SameAccountDecoder sameAccountDecoder = new SameAccountDecoder();
+    private final ServerBusyDecoder serverBusyDecoder = new ServerBusyDecoder();
+    private final BatchResultDecoder batchResultDecoder = new BatchResultDecoder();
     private final MessageHeaderDecoder headerDecoder = new MessageHeaderDecoder();
     private final BlockingQueue<AeronResponse> responseQueue;
 
@@ -51,9 +59,15 @@ public class ClientAdapter implements FragmentHandler {
     @Override
     public void onFragment(@NotNull DirectBuffer buffer, int offset, int length, @NotNull Header header) {
 
-        headerDecoder.wrap(buffer, offset);
-        //noinspection ResultOfMethodCallIgnored
-        responseQueue.offer(parse(buffer, offset));
+        // the server packs responses to the same session into a single frame, one after another
+        final int limit = offset + length;
+        int position = offset;
+        while (position < limit) {
+            final int messageLength = Framing.messageLength(headerDecoder, buffer, position);
+            //noinspection ResultOfMethodCallIgnored
+            responseQueue.offer(parse(buffer, position));
+            position += messageLength;
+        }
     }
 
     @NotNull
@@ -95,15 +109,15 @@ public class ClientAdapter implements FragmentHandler {
                 accountDataDecoder.wrap(buffer, offset + headerDecoder.encodedLength(), headerDecoder.blockLength(),
                         headerDecoder.version());
                 return new AccountDataAeronResponse(accountDataDecoder.trackingId(),
-                        getBigDecimal(accountDataDecoder.availableAmount()),
-                        getBigDecimal(accountDataDecoder.reservedAmount()));
+                        fromDecimal(accountDataDecoder.availableAmount()),
+                        fromDecimal(accountDataDecoder.reservedAmount()));
             }
             case WithdrawalDataDecoder.TEMPLATE_ID -> {
                 withdrawalDataDecoder.wrap(buffer, offset + headerDecoder.encodedLength(), headerDecoder.blockLength(),
                         headerDecoder.version());
                 return new WithdrawalDataAeronResponse(
                         withdrawalDataDecoder.trackingId(),
-                        getBigDecimal(withdrawalDataDecoder.amount()),
+                        fromDecimal(withdrawalDataDecoder.amount()),
                         switch (withdrawalDataDecoder.state()) {
                             case PROCESSING -> WithdrawalState.PROCESSING;
                             case COMPLETED -> WithdrawalState.COMPLETED;
@@ -117,6 +131,30 @@ public class ClientAdapter implements FragmentHandler {
                         headerDecoder.version());
                 return new SameAccountAeronResponse(sameAccountDecoder.trackingId());
             }
+            case ServerBusyDecoder.TEMPLATE_ID -> {
+                serverBusyDecoder.wrap(buffer, offset + headerDecoder.encodedLength(), headerDecoder.blockLength(),
+                        headerDecoder.version());
+                return new ServerBusyAeronResponse(serverBusyDecoder.trackingId());
+            }
+            case BatchResultDecoder.TEMPLATE_ID -> {
+                batchResultDecoder.wrap(buffer, offset + headerDecoder.encodedLength(), headerDecoder.blockLength(),
+                        headerDecoder.version());
+                final var decoder = batchResultDecoder.results();
+                final var results = new ArrayList<AeronResponse>(decoder.count());
+                for (final var result : decoder) {
+                    final long trackingId = result.trackingId();
+                    results.add(switch (result.code()) {
+                        case ACCOUNT_CREATED -> new AccountCreatedAeronResponse(trackingId, result.accountId());
+                        case ACCOUNT_TRANSFER_DONE -> new AccountTransferDoneAeronResponse(trackingId);
+                        case NO_FUNDS -> new NoFundsAeronResponse(trackingId);
+                        case INVALID_AMOUNT -> new InvalidAmountAeronResponse(trackingId);
+                        case NO_SUCH_ENTITY -> new NoSuchEntityAeronResponse(trackingId);
+                        case SAME_ACCOUNT -> new SameAccountAeronResponse(trackingId);
+                        case NULL_VAL -> throw new IllegalArgumentException("Null result code is not allowed");
+                    });
+                }
+                return new BatchResultAeronResponse(results);
+            }
             default -> throw new RuntimeException("Unknown message");
         }
     }
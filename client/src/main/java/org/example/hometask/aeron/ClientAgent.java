@@ -7,17 +7,21 @@ import org.agrona.DirectBuffer;
 import org.agrona.ExpandableDirectByteBuffer;
 import org.agrona.concurrent.Agent;
 import org.example.hometask.ClientConstants;
+import org.example.hometask.api.AccountTransferBatchEncoder;
 import org.example.hometask.api.AccountTransferEncoder;
 import org.example.hometask.api.AccountWithdrawEncoder;
+import org.example.hometask.api.CreateAccountBatchEncoder;
 import org.example.hometask.api.CreateAccountEncoder;
 import org.example.hometask.api.MessageHeaderEncoder;
 import org.example.hometask.api.QueryAccountEncoder;
 import org.example.hometask.api.QueryWithdrawalEncoder;
 import org.example.hometask.api.RpcConnectRequestEncoder;
 import org.example.hometask.messages.request.AccountTransferAeronRequest;
+import org.example.hometask.messages.request.AccountTransferBatchAeronRequest;
 import org.example.hometask.messages.request.AccountWithdrawAeronRequest;
 import org.example.hometask.messages.request.AeronRequest;
 import org.example.hometask.messages.request.CreateAccountAeronRequest;
+import org.example.hometask.messages.request.CreateAccountBatchAeronRequest;
 import org.example.hometask.messages.request.QueryAccountAeronRequest;
 import org.example.hometask.messages.request.QueryWithdrawalAeronRequest;
 import org.example.hometask.messages.response.AeronResponse;
@@ -29,7 +33,7 @@ import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ConcurrentLinkedQueue;
 
 import static org.agrona.CloseHelper.quietClose;
-import static org.example.hometask.utils.Utils.setBigDecimal;
+import static org.example.hometask.utils.Amounts.toDecimal;
 
 public class ClientAgent implements Agent {
 
@@ -51,6 +55,8 @@ public class ClientAgent implements Agent {
     private final AccountTransferEncoder accountTransferEncoder = new AccountTransferEncoder();
     private final AccountWithdrawEncoder accountWithdrawEncoder = new AccountWithdrawEncoder();
     private final QueryWithdrawalEncoder queryWithdrawalEncoder = new QueryWithdrawalEncoder();
+    private final CreateAccountBatchEncoder createAccountBatchEncoder = new CreateAccountBatchEncoder();
+    private final AccountTransferBatchEncoder accountTransferBatchEncoder = new AccountTransferBatchEncoder();
     private final MessageHeaderEncoder headerEncoder = new MessageHeaderEncoder();
 
     private State state;
@@ -74,7 +80,7 @@ public class ClientAgent implements Agent {
         logger.info("Client starting");
         state = State.AWAITING_OUTBOUND_CONNECT;
         publication = aeron.addExclusivePublication(ClientConstants.SERVER_URI, ClientConstants.RPC_STREAM);
-        subscription = aeron.addSubscription(ClientConstants.CLIENT_URI, ClientConstants.RPC_STREAM);
+        subscription = aeron.addSubscription(ClientConstants.CLIENT_URI, ClientConstants.RESPONSE_STREAM);
     }
 
     @Override
@@ -114,7 +120,7 @@ public class ClientAgent implements Agent {
             public Integer visit(@NotNull CreateAccountAeronRequest message) {
                 createAccountEncoder.wrapAndApplyHeader(buffer, 0, headerEncoder);
                 createAccountEncoder.trackingId(message.trackingId());
-                setBigDecimal(createAccountEncoder.initialAmount(), message.initialAmount());
+                toDecimal(createAccountEncoder.initialAmount(), message.initialAmount());
                 return createAccountEncoder.encodedLength();
             }
 
@@ -132,7 +138,7 @@ public class ClientAgent implements Agent {
                 accountTransferEncoder.trackingId(message.trackingId());
                 accountTransferEncoder.fromAccountId(message.fromAccountId());
                 accountTransferEncoder.toAccountId(message.toAccountId());
-                setBigDecimal(accountTransferEncoder.amount(), message.amount());
+                toDecimal(accountTransferEncoder.amount(), message.amount());
                 return accountTransferEncoder.encodedLength();
             }
 
@@ -142,7 +148,7 @@ public class ClientAgent implements Agent {
                 accountWithdrawEncoder.trackingId(message.trackingId());
                 accountWithdrawEncoder.fromAccountId(message.fromAccountId());
                 accountWithdrawEncoder.toAddress(message.toAddress());
-                setBigDecimal(accountWithdrawEncoder.amount(), message.amount());
+                toDecimal(accountWithdrawEncoder.amount(), message.amount());
                 return accountWithdrawEncoder.encodedLength();
             }
 
@@ -153,6 +159,31 @@ public class ClientAgent implements Agent {
                 queryWithdrawalEncoder.withdrawalId(message.withdrawalId());
                 return queryWithdrawalEncoder.encodedLength();
             }
+
+            @Override
+            public Integer visit(@NotNull CreateAccountBatchAeronRequest message) {
+                createAccountBatchEncoder.wrapAndApplyHeader(buffer, 0, headerEncoder);
+                final var accounts = createAccountBatchEncoder.accountsCount(message.accounts().size());
+                for (final var account : message.accounts()) {
+                    accounts.next().trackingId(account.trackingId());
+                    toDecimal(accounts.initialAmount(), account.initialAmount());
+                }
+                return createAccountBatchEncoder.encodedLength();
+            }
+
+            @Override
+            public Integer visit(@NotNull AccountTransferBatchAeronRequest message) {
+                accountTransferBatchEncoder.wrapAndApplyHeader(buffer, 0, headerEncoder);
+                final var transfers = accountTransferBatchEncoder.transfersCount(message.transfers().size());
+                for (final var transfer : message.transfers()) {
+                    transfers.next()
+                            .trackingId(transfer.trackingId())
+                            .fromAccountId(transfer.fromAccountId())
+                            .toAccountId(transfer.toAccountId());
+                    toDecimal(transfers.amount(), transfer.amount());
+                }
+                return accountTransferBatchEncoder.encodedLength();
+            }
         });
 
         send(buffer, headerEncoder.encodedLength() + length);
@@ -161,7 +192,7 @@ public class ClientAgent implements Agent {
     private void sendConnectRequest() {
 
         connectRequest.wrapAndApplyHeader(buffer, 0, headerEncoder);
-        connectRequest.returnConnectStream(ClientConstants.RPC_STREAM);
+        connectRequest.returnConnectStream(ClientConstants.RESPONSE_STREAM);
         connectRequest.returnConnectUri(ClientConstants.CLIENT_URI);
 
         send(buffer, headerEncoder.encodedLength() + connectRequest.encodedLength());
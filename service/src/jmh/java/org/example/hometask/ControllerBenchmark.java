@@ -0,0 +1,111 @@
+package org.example.hometask;
+
+import org.agrona.ExpandableArrayBuffer;
+import org.example.hometask.api.AccountTransferEncoder;
+import org.example.hometask.api.MessageHeaderEncoder;
+import org.example.hometask.api.QueryAccountEncoder;
+import org.example.hometask.disruptor.EventContext;
+import org.example.hometask.disruptor.EventHolder;
+import org.example.hometask.disruptor.Publisher;
+import org.example.hometask.messages.disruptor.Event;
+import org.example.hometask.messages.disruptor.InboundAeronFragmentEvent;
+import org.example.hometask.messages.disruptor.InboundAeronMessageEvent;
+import org.example.hometask.messages.disruptor.TickEvent;
+import org.example.hometask.messages.request.CreateAccountAeronRequest;
+import org.example.hometask.utils.Amounts;
+import org.jetbrains.annotations.NotNull;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.math.BigDecimal;
+import java.util.concurrent.TimeUnit;
+
+import static org.example.hometask.utils.Amounts.toDecimal;
+
+/**
+ * Dispatch of the state machine, run with <code>-prof gc</code> to see allocations per event. Responses are filled
+ * into slots of the holder, so queries and transfers allocate their pending operations only.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ControllerBenchmark {
+
+    private static final int SESSION_ID = 1;
+
+    private final EventHolder holder = new EventHolder();
+    private final MessageHeaderEncoder headerEncoder = new MessageHeaderEncoder();
+
+    private Controller controller;
+    private Event[] requests;
+    private TickEvent tick;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        final var context = new EventContext();
+        context.holder = holder;
+        controller = new Controller(new Publisher(context));
+        final long amount = Amounts.fromBigDecimal(new BigDecimal("1000000"));
+        controller.accept(new InboundAeronMessageEvent(SESSION_ID, new CreateAccountAeronRequest(1, amount)));
+        controller.accept(new InboundAeronMessageEvent(SESSION_ID, new CreateAccountAeronRequest(2, amount)));
+
+        // transfers back and forth, so balances never run out
+        final long one = Amounts.fromBigDecimal(BigDecimal.ONE);
+        requests = new Event[]{query(1), transfer(1, 2, one), query(2), transfer(2, 1, one)};
+        tick = new TickEvent(0);
+    }
+
+    @Benchmark
+    public void request() {
+        final var event = requests[next];
+        next = (next + 1) & (requests.length - 1);
+        process(event);
+    }
+
+    @Benchmark
+    public void tick() {
+        process(tick);
+    }
+
+    private void process(@NotNull Event event) {
+        holder.clean();
+        holder.event = event;
+        controller.accept(event);
+    }
+
+    @NotNull
+    private InboundAeronFragmentEvent query(long accountId) {
+        final var buffer = new ExpandableArrayBuffer();
+        final var encoder = new QueryAccountEncoder().wrapAndApplyHeader(buffer, 0, headerEncoder);
+        encoder.trackingId(accountId).accountId(accountId);
+        return fragment(buffer, headerEncoder.encodedLength() + encoder.encodedLength());
+    }
+
+    @NotNull
+    private InboundAeronFragmentEvent transfer(long fromAccountId, long toAccountId, long amount) {
+        final var buffer = new ExpandableArrayBuffer();
+        final var encoder = new AccountTransferEncoder().wrapAndApplyHeader(buffer, 0, headerEncoder);
+        encoder.trackingId(fromAccountId).fromAccountId(fromAccountId).toAccountId(toAccountId);
+        toDecimal(encoder.amount(), amount);
+        return fragment(buffer, headerEncoder.encodedLength() + encoder.encodedLength());
+    }
+
+    @NotNull
+    private static InboundAeronFragmentEvent fragment(@NotNull ExpandableArrayBuffer buffer, int length) {
+        final var event = new InboundAeronFragmentEvent();
+        event.wrap(SESSION_ID, buffer, 0, length);
+        return event;
+    }
+}
@@ -0,0 +1,107 @@
+package org.example.hometask.disruptor;
+
+import io.aeron.Aeron;
+import io.aeron.CommonContext;
+import io.aeron.Publication;
+import io.aeron.Subscription;
+import io.aeron.driver.MediaDriver;
+import io.aeron.logbuffer.FragmentHandler;
+import org.agrona.CloseHelper;
+import org.agrona.concurrent.ManyToOneConcurrentLinkedQueue;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import static io.aeron.driver.ThreadingMode.SHARED;
+
+/**
+ * Encoding and sending a batch of responses to a couple of sessions, run with <code>-prof gc</code> to see
+ * allocations per batch. The subscriber is drained in between, so publications are never back-pressured.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PublisherBenchmark {
+
+    private static final String RESPONSE_URI = "aeron:ipc?term-length=1m";
+    private static final int RESPONSE_STREAM = 1;
+    private static final int SESSION_ID1 = 1;
+    private static final int SESSION_ID2 = 2;
+    private static final int FRAME_LENGTH = 1024;
+
+    private final ConcurrentHashMap<Integer, Publication> publicationsBySessionId = new ConcurrentHashMap<>();
+    private final EventHolder holder = new EventHolder();
+    private final FragmentHandler drain = (buffer, offset, length, header) -> {
+    };
+
+    private MediaDriver mediaDriver;
+    private Aeron aeron;
+    private OutboundCounters counters;
+    private PublisherEventHandler handler;
+    private Subscription subscription;
+    private Publication publication1;
+    private Publication publication2;
+    private long sequence;
+
+    @Setup
+    public void setUp() {
+        mediaDriver = MediaDriver.launchEmbedded(
+                new MediaDriver.Context()
+                        .aeronDirectoryName(CommonContext.getAeronDirectoryName() + "-publisher-benchmark")
+                        .dirDeleteOnStart(true)
+                        .dirDeleteOnShutdown(true)
+                        .threadingMode(SHARED));
+        aeron = Aeron.connect(new Aeron.Context().aeronDirectoryName(mediaDriver.aeronDirectoryName()));
+        counters = new OutboundCounters(aeron, -1, -1);
+        handler = new PublisherEventHandler(publicationsBySessionId, new ManyToOneConcurrentLinkedQueue<>(), counters,
+                SlowConsumerPolicy.MARK_LAGGING, 1024 * 1024, TimeUnit.SECONDS.toNanos(60), 0, 1);
+        subscription = aeron.addSubscription(RESPONSE_URI, RESPONSE_STREAM);
+        publication1 = aeron.addExclusivePublication(RESPONSE_URI, RESPONSE_STREAM);
+        publication2 = aeron.addExclusivePublication(RESPONSE_URI, RESPONSE_STREAM);
+        while (!publication1.isConnected() || !publication2.isConnected()) {
+            Thread.yield();
+        }
+        publicationsBySessionId.put(SESSION_ID1, publication1);
+        publicationsBySessionId.put(SESSION_ID2, publication2);
+
+        final var context = new EventContext();
+        context.holder = holder;
+        final var publisher = new Publisher(context);
+        publisher.accountCreated(SESSION_ID1, 1, 1);
+        publisher.noFunds(SESSION_ID2, 2);
+        publisher.accountData(SESSION_ID1, 3, 1, 100);
+        publisher.beginBatch(SESSION_ID2);
+        for (int i = 0; i < 10; i++) {
+            publisher.accountCreated(SESSION_ID2, i, i);
+        }
+        publisher.endBatch();
+    }
+
+    @TearDown
+    public void tearDown() {
+        handler.onShutdown();
+        CloseHelper.quietCloseAll(publication1, publication2, subscription, aeron, mediaDriver);
+    }
+
+    @Benchmark
+    public void publish() {
+        while (publication1.availableWindow() < FRAME_LENGTH || publication2.availableWindow() < FRAME_LENGTH) {
+            subscription.poll(drain, Integer.MAX_VALUE);
+        }
+        handler.onEvent(holder, sequence++, true);
+    }
+}
@@ -1,37 +1,52 @@
 package org.example.hometask;
 
+import org.example.hometask.api.AccountTransferBatchDecoder;
+import org.example.hometask.api.AccountTransferDecoder;
+import org.example.hometask.api.AccountWithdrawDecoder;
+import org.example.hometask.api.CreateAccountBatchDecoder;
+import org.example.hometask.api.CreateAccountDecoder;
+import org.example.hometask.api.MessageHeaderDecoder;
+import org.example.hometask.api.QueryAccountDecoder;
+import org.example.hometask.api.QueryWithdrawalDecoder;
 import org.example.hometask.disruptor.Publisher;
+import org.example.hometask.messages.disruptor.CreateWithdrawalCallFailureEvent;
 import org.example.hometask.messages.disruptor.CreateWithdrawalDuplicationFailureEvent;
 import org.example.hometask.messages.disruptor.CreateWithdrawalSuccessEvent;
 import org.example.hometask.messages.disruptor.Event;
+import org.example.hometask.messages.disruptor.InboundAeronFragmentEvent;
 import org.example.hometask.messages.disruptor.InboundAeronMessageEvent;
+import org.example.hometask.messages.disruptor.QueryWithdrawalCallFailureEvent;
 import org.example.hometask.messages.disruptor.QueryWithdrawalSuccessEvent;
 import org.example.hometask.messages.disruptor.QueryWithdrawalUnknownIdFailureEvent;
+import org.example.hometask.messages.disruptor.RecoveryEvent;
+import org.example.hometask.messages.disruptor.ShardTransferEvent;
+import org.example.hometask.messages.disruptor.ShardTransferResultEvent;
+import org.example.hometask.messages.disruptor.TickEvent;
 import org.example.hometask.messages.request.AccountTransferAeronRequest;
+import org.example.hometask.messages.request.AccountTransferBatchAeronRequest;
 import org.example.hometask.messages.request.AccountWithdrawAeronRequest;
 import org.example.hometask.messages.request.AeronRequest;
 import org.example.hometask.messages.request.CreateAccountAeronRequest;
+import org.example.hometask.messages.request.CreateAccountBatchAeronRequest;
 import org.example.hometask.messages.request.QueryAccountAeronRequest;
 import org.example.hometask.messages.request.QueryWithdrawalAeronRequest;
-import org.example.hometask.messages.response.AccountCreatedAeronResponse;
-import org.example.hometask.messages.response.InvalidAmountAeronResponse;
-import org.example.hometask.messages.response.NoSuchEntityAeronResponse;
-import org.example.hometask.messages.response.SameAccountAeronResponse;
 import org.example.hometask.state.Account;
 import org.example.hometask.state.PendingQueryAccountOperation;
 import org.example.hometask.state.PendingQueryWithdrawalOperation;
+import org.example.hometask.state.PendingShardTransferOperation;
 import org.example.hometask.state.PendingTransferOperation;
 import org.example.hometask.state.PendingWithdrawalOperation;
 import org.example.hometask.state.Repository;
+import org.example.hometask.state.ShardTransfers;
 import org.example.hometask.state.Withdrawal;
+import org.example.hometask.state.WithdrawalPoller;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.UUID;
 
-import static java.util.Objects.requireNonNull;
-
 public class Controller {
 
     protected final Logger logger = LoggerFactory.getLogger(getClass());
@@ -39,201 +54,445 @@ public class Controller {
     @NotNull
     private final Publisher publisher;
 
-    private final Repository repository = new Repository();
+    @NotNull
+    private final Repository repository;
 
-    public Controller(@NotNull Publisher publisher) {
-        this.publisher = publisher;
-    }
+    @NotNull
+    private final WithdrawalPoller poller;
 
-    public void accept(@NotNull Event event) {
+    @NotNull
+    private final ShardTransfers shardTransfers;
+
+    private final MessageHeaderDecoder headerDecoder = new MessageHeaderDecoder();
+    private final CreateAccountDecoder createAccountDecoder = new CreateAccountDecoder();
+    private final QueryAccountDecoder queryAccountDecoder = new QueryAccountDecoder();
+    private final AccountTransferDecoder accountTransferDecoder = new AccountTransferDecoder();
+    private final AccountWithdrawDecoder accountWithdrawDecoder = new AccountWithdrawDecoder();
+    private final QueryWithdrawalDecoder queryWithdrawalDecoder = new QueryWithdrawalDecoder();
+    private final CreateAccountBatchDecoder createAccountBatchDecoder = new CreateAccountBatchDecoder();
+    private final AccountTransferBatchDecoder accountTransferBatchDecoder = new AccountTransferBatchDecoder();
+
+    /**
+     * Dispatches events, created once so that dispatching allocates nothing.
+     */
+    private final Event.Visitor<Void, RuntimeException> eventDispatcher = new Event.Visitor<>() {
+        @Override
+        public Void visit(@NotNull InboundAeronMessageEvent event) {
+            onInboundAeronMessageEvent(event);
+            return null;
+        }
 
-        event.accept(new Event.Visitor<Void, RuntimeException>() {
-            @Override
-            public Void visit(@NotNull InboundAeronMessageEvent event) {
-                onInboundAeronMessageEvent(event);
-                return null;
-            }
+        @Override
+        public Void visit(@NotNull InboundAeronFragmentEvent event) {
+            onInboundAeronFragmentEvent(event);
+            return null;
+        }
 
-            @Override
-            public Void visit(@NotNull CreateWithdrawalSuccessEvent event) {
-                getWithdrawal(event.withdrawalUuid()).createDone();
-                return null;
+        @Override
+        public Void visit(@NotNull CreateWithdrawalSuccessEvent event) {
+            final var withdrawal = getWithdrawal(event.withdrawalUuid());
+            if (withdrawal != null) {
+                withdrawal.createDone();
+                poller.schedule(withdrawal);
             }
+            return null;
+        }
 
-            @Override
-            public Void visit(@NotNull CreateWithdrawalDuplicationFailureEvent event) {
-                // We assume nobody else could use our UUID and the withdrawal was just created earlier.
-                // This may occur after temporary network failure or restart of our service.
-                logger.warn("Duplicated withdrawal UUID encountered: {}", event.withdrawalUuid());
-                getWithdrawal(event.withdrawalUuid()).createDone();
-                return null;
+        @Override
+        public Void visit(@NotNull CreateWithdrawalDuplicationFailureEvent event) {
+            // We assume nobody else could use our UUID and the withdrawal was just created earlier.
+            // This may occur after temporary network failure or restart of our service.
+            logger.warn("Duplicated withdrawal UUID encountered: {}", event.withdrawalUuid());
+            final var withdrawal = getWithdrawal(event.withdrawalUuid());
+            if (withdrawal != null) {
+                withdrawal.createDone();
+                poller.schedule(withdrawal);
             }
+            return null;
+        }
 
-            @Override
-            public Void visit(@NotNull QueryWithdrawalSuccessEvent event) {
-                getWithdrawal(event.withdrawalUuid()).queryDone(event.state());
-                return null;
+        @Override
+        public Void visit(@NotNull CreateWithdrawalCallFailureEvent event) {
+            // the call may have reached the external service, but it is safe to repeat, see the duplication above
+            logger.warn("Failed to create withdrawal, retrying: {}", event.withdrawalUuid());
+            final var withdrawal = getWithdrawal(event.withdrawalUuid());
+            if (withdrawal != null) {
+                poller.retryCreate(withdrawal);
             }
+            return null;
+        }
 
-            @Override
-            public Void visit(@NotNull QueryWithdrawalUnknownIdFailureEvent event) {
-                logger.error("Failed to update withdrawal state for UUID: {}", event.withdrawalUuid());
-                getWithdrawal(event.withdrawalUuid()).queryFailed();
-                return null;
+        @Override
+        public Void visit(@NotNull QueryWithdrawalSuccessEvent event) {
+            final var withdrawal = getWithdrawal(event.withdrawalUuid());
+            if (withdrawal != null) {
+                withdrawal.queryDone(event.state());
             }
-        });
-    }
+            return null;
+        }
 
-    private void onInboundAeronMessageEvent(@NotNull InboundAeronMessageEvent event) {
-        event.message().accept(new AeronRequest.Visitor<Void, RuntimeException>() {
-            @Override
-            public Void visit(@NotNull CreateAccountAeronRequest message) {
-                createAccount(event, message);
-                return null;
+        @Override
+        public Void visit(@NotNull QueryWithdrawalUnknownIdFailureEvent event) {
+            logger.error("Failed to update withdrawal state for UUID: {}", event.withdrawalUuid());
+            final var withdrawal = getWithdrawal(event.withdrawalUuid());
+            if (withdrawal != null) {
+                withdrawal.queryFailed();
             }
+            return null;
+        }
 
-            @Override
-            public Void visit(@NotNull QueryAccountAeronRequest message) {
-                queryAccount(event, message);
-                return null;
+        @Override
+        public Void visit(@NotNull QueryWithdrawalCallFailureEvent event) {
+            // operations get the state known so far, the withdrawal is polled again later
+            logger.warn("Failed to query withdrawal state for UUID: {}", event.withdrawalUuid());
+            final var withdrawal = getWithdrawal(event.withdrawalUuid());
+            if (withdrawal != null) {
+                withdrawal.queryFailed();
             }
+            return null;
+        }
+
+        @Override
+        public Void visit(@NotNull TickEvent event) {
+            poller.onTick(event.nanoTime());
+            return null;
+        }
+
+        @Override
+        public Void visit(@NotNull RecoveryEvent event) {
+            recover();
+            return null;
+        }
+
+        @Override
+        public Void visit(@NotNull ShardTransferEvent event) {
+            shardTransfers.onTransfer(event);
+            return null;
+        }
+
+        @Override
+        public Void visit(@NotNull ShardTransferResultEvent event) {
+            shardTransfers.onTransferResult(event);
+            return null;
+        }
+    };
+
+    /**
+     * Session of the request being dispatched by {@link #requestDispatcher}.
+     */
+    private int requestSessionId;
+
+    private final AeronRequest.Visitor<Void, RuntimeException> requestDispatcher = new AeronRequest.Visitor<>() {
+        @Override
+        public Void visit(@NotNull CreateAccountAeronRequest message) {
+            createAccount(requestSessionId, message.trackingId(), message.initialAmount());
+            return null;
+        }
+
+        @Override
+        public Void visit(@NotNull QueryAccountAeronRequest message) {
+            queryAccount(requestSessionId, message.trackingId(), message.accountId());
+            return null;
+        }
+
+        @Override
+        public Void visit(@NotNull AccountTransferAeronRequest message) {
+            accountTransfer(requestSessionId, message.trackingId(), message.fromAccountId(),
+                    message.toAccountId(), message.amount());
+            return null;
+        }
+
+        @Override
+        public Void visit(@NotNull AccountWithdrawAeronRequest message) {
+            accountWithdrawal(requestSessionId, message.trackingId(), message.fromAccountId(),
+                    message.toAddress(), message.amount());
+            return null;
+        }
+
+        @Override
+        public Void visit(@NotNull QueryWithdrawalAeronRequest message) {
+            queryWithdrawal(requestSessionId, message.trackingId(), message.withdrawalId());
+            return null;
+        }
 
-            @Override
-            public Void visit(@NotNull AccountTransferAeronRequest message) {
-                accountTransfer(event, message);
-                return null;
+        @Override
+        public Void visit(@NotNull CreateAccountBatchAeronRequest message) {
+            publisher.beginBatch(requestSessionId);
+            for (final var account : message.accounts()) {
+                createAccount(requestSessionId, account.trackingId(), account.initialAmount());
             }
+            publisher.endBatch();
+            return null;
+        }
 
-            @Override
-            public Void visit(@NotNull AccountWithdrawAeronRequest message) {
-                accountWithdrawal(event, message);
-                return null;
+        @Override
+        public Void visit(@NotNull AccountTransferBatchAeronRequest message) {
+            publisher.beginBatch(requestSessionId);
+            for (final var transfer : message.transfers()) {
+                accountTransfer(requestSessionId, transfer.trackingId(), transfer.fromAccountId(),
+                        transfer.toAccountId(), transfer.amount());
             }
+            publisher.endBatch();
+            return null;
+        }
+    };
+
+    public Controller(@NotNull Publisher publisher) {
+        this(publisher, new Repository());
+    }
+
+    /**
+     * @param repository Repository, possibly restored from a snapshot.
+     */
+    public Controller(@NotNull Publisher publisher, @NotNull Repository repository) {
+        this(publisher, repository, new WithdrawalPoller(repository, System.nanoTime()));
+    }
+
+    public Controller(@NotNull Publisher publisher, @NotNull Repository repository, @NotNull WithdrawalPoller poller) {
+        this.publisher = publisher;
+        this.repository = repository;
+        this.poller = poller;
+        this.shardTransfers = new ShardTransfers(publisher, repository);
+    }
+
+    public void accept(@NotNull Event event) {
+        event.accept(eventDispatcher);
+    }
 
-            @Override
-            public Void visit(@NotNull QueryWithdrawalAeronRequest message) {
-                queryWithdrawal(event, message);
-                return null;
+    private void onInboundAeronMessageEvent(@NotNull InboundAeronMessageEvent event) {
+        requestSessionId = event.sessionId();
+        event.message().accept(requestDispatcher);
+    }
+
+    private void onInboundAeronFragmentEvent(@NotNull InboundAeronFragmentEvent event) {
+
+        final var buffer = event.buffer();
+        headerDecoder.wrap(buffer, 0);
+        final int headerLength = headerDecoder.encodedLength();
+        final int actingLength = headerDecoder.blockLength();
+        final int actingVersion = headerDecoder.version();
+
+        // amounts have been converted to fixed-point ones by ServerAdapter, so mantissas are taken as is
+        switch (headerDecoder.templateId()) {
+            case CreateAccountDecoder.TEMPLATE_ID -> {
+                createAccountDecoder.wrap(buffer, headerLength, actingLength, actingVersion);
+                createAccount(event.sessionId(), createAccountDecoder.trackingId(),
+                        createAccountDecoder.initialAmount().mantissa());
+            }
+            case QueryAccountDecoder.TEMPLATE_ID -> {
+                queryAccountDecoder.wrap(buffer, headerLength, actingLength, actingVersion);
+                queryAccount(event.sessionId(), queryAccountDecoder.trackingId(), queryAccountDecoder.accountId());
             }
-        });
+            case AccountTransferDecoder.TEMPLATE_ID -> {
+                accountTransferDecoder.wrap(buffer, headerLength, actingLength, actingVersion);
+                accountTransfer(event.sessionId(), accountTransferDecoder.trackingId(),
+                        accountTransferDecoder.fromAccountId(), accountTransferDecoder.toAccountId(),
+                        accountTransferDecoder.amount().mantissa());
+            }
+            case AccountWithdrawDecoder.TEMPLATE_ID -> {
+                accountWithdrawDecoder.wrap(buffer, headerLength, actingLength, actingVersion);
+                accountWithdrawal(event.sessionId(), accountWithdrawDecoder.trackingId(),
+                        accountWithdrawDecoder.fromAccountId(), accountWithdrawDecoder.toAddress(),
+                        accountWithdrawDecoder.amount().mantissa());
+            }
+            case QueryWithdrawalDecoder.TEMPLATE_ID -> {
+                queryWithdrawalDecoder.wrap(buffer, headerLength, actingLength, actingVersion);
+                queryWithdrawal(event.sessionId(), queryWithdrawalDecoder.trackingId(),
+                        queryWithdrawalDecoder.withdrawalId());
+            }
+            case CreateAccountBatchDecoder.TEMPLATE_ID -> {
+                createAccountBatchDecoder.wrap(buffer, headerLength, actingLength, actingVersion);
+                publisher.beginBatch(event.sessionId());
+                for (final var account : createAccountBatchDecoder.accounts()) {
+                    createAccount(event.sessionId(), account.trackingId(), account.initialAmount().mantissa());
+                }
+                publisher.endBatch();
+            }
+            case AccountTransferBatchDecoder.TEMPLATE_ID -> {
+                accountTransferBatchDecoder.wrap(buffer, headerLength, actingLength, actingVersion);
+                publisher.beginBatch(event.sessionId());
+                for (final var transfer : accountTransferBatchDecoder.transfers()) {
+                    accountTransfer(event.sessionId(), transfer.trackingId(), transfer.fromAccountId(),
+                            transfer.toAccountId(), transfer.amount().mantissa());
+                }
+                publisher.endBatch();
+            }
+            default -> throw new IllegalArgumentException("Unknown message: " + headerDecoder.templateId());
+        }
     }
 
-    @NotNull
+    /**
+     * @return The withdrawal, or <code>null</code> if the UUID is unknown, e.g. the namespace has been reconfigured.
+     */
+    @Nullable
     private Withdrawal getWithdrawal(@NotNull UUID withdrawalUuid) {
-        return requireNonNull(repository.withdrawalsByUuid.get(withdrawalUuid));
+        final var withdrawal = repository.findWithdrawal(withdrawalUuid);
+        if (withdrawal == null) {
+            logger.error("Unknown withdrawal UUID: {}", withdrawalUuid);
+        }
+        return withdrawal;
+    }
+
+    private void recover() {
+        final long count = repository.withdrawals.size();
+        for (long index = 1; index <= count; index++) {
+            final var withdrawal = repository.withdrawals.get(index);
+            if (withdrawal != null) {
+                withdrawal.recover();
+                poller.schedule(withdrawal);
+            }
+        }
+        shardTransfers.recover();
+        logger.info("Recovered {} accounts and {} withdrawals", repository.accounts.size(), count);
     }
 
-    private void createAccount(@NotNull InboundAeronMessageEvent event, @NotNull CreateAccountAeronRequest message) {
+    private void createAccount(int sessionId, long trackingId, long amount) {
 
-        final var amount = message.initialAmount();
-        if (amount.signum() < 0) {
-            publisher.publish(event.sessionId(), new InvalidAmountAeronResponse(message.trackingId()));
+        if (!repository.tryIssue(amount)) {
+            publisher.invalidAmount(sessionId, trackingId);
             return;
         }
 
-        final var account = new Account(repository.nextAccountId(), amount);
-        repository.accounts.put(account.getId(), account);
-        publisher.publish(event.sessionId(), new AccountCreatedAeronResponse(message.trackingId(), account.getId()));
+        final var account = new Account(repository, repository.nextAccountId(), amount);
+        repository.addAccount(account);
+        publisher.accountCreated(sessionId, trackingId, account.getId());
     }
 
     private void accountTransfer(
-            @NotNull InboundAeronMessageEvent event,
-            @NotNull AccountTransferAeronRequest message
+            int sessionId,
+            long trackingId,
+            long fromAccountId,
+            long toAccountId,
+            long amount
     ) {
-        final var fromAccount = repository.accounts.get(message.fromAccountId());
-        final var toAccount = repository.accounts.get(message.toAccountId());
+        final var fromAccount = repository.account(fromAccountId);
+
+        if (!repository.owns(toAccountId)) {
+            accountShardTransfer(sessionId, trackingId, fromAccount, toAccountId, amount);
+            return;
+        }
+
+        final var toAccount = repository.account(toAccountId);
 
         if (fromAccount == null || toAccount == null) {
-            publisher.publish(event.sessionId(), new NoSuchEntityAeronResponse(message.trackingId()));
+            publisher.noSuchEntity(sessionId, trackingId);
             return;
         }
 
-        if (message.fromAccountId() == message.toAccountId()) {
-            publisher.publish(event.sessionId(), new SameAccountAeronResponse(message.trackingId()));
+        if (fromAccountId == toAccountId) {
+            publisher.sameAccount(sessionId, trackingId);
             return;
         }
 
-        final var amount = message.amount();
-        if (amount.signum() <= 0) {
-            publisher.publish(event.sessionId(), new InvalidAmountAeronResponse(message.trackingId()));
+        if (amount <= 0) {
+            publisher.invalidAmount(sessionId, trackingId);
             return;
         }
 
         new PendingTransferOperation(
                 fromAccount,
                 publisher,
-                event.sessionId(),
-                message.trackingId(),
+                sessionId,
+                trackingId,
                 amount,
                 toAccount
         ).execute();
     }
 
+    /**
+     * The target account belongs to another shard, so its existence is checked after the source account is debited.
+     */
+    private void accountShardTransfer(
+            int sessionId,
+            long trackingId,
+            @Nullable Account fromAccount,
+            long toAccountId,
+            long amount
+    ) {
+        if (fromAccount == null || toAccountId <= 0) {
+            publisher.noSuchEntity(sessionId, trackingId);
+            return;
+        }
+
+        if (amount <= 0) {
+            publisher.invalidAmount(sessionId, trackingId);
+            return;
+        }
+
+        new PendingShardTransferOperation(
+                fromAccount,
+                publisher,
+                sessionId,
+                trackingId,
+                amount,
+                shardTransfers,
+                toAccountId
+        ).execute();
+    }
+
     private void accountWithdrawal(
-            @NotNull InboundAeronMessageEvent event,
-            @NotNull AccountWithdrawAeronRequest message
+            int sessionId,
+            long trackingId,
+            long fromAccountId,
+            @NotNull String toAddress,
+            long amount
     ) {
-        final var fromAccount = repository.accounts.get(message.fromAccountId());
+        final var fromAccount = repository.account(fromAccountId);
 
         if (fromAccount == null) {
-            publisher.publish(event.sessionId(), new NoSuchEntityAeronResponse(message.trackingId()));
+            publisher.noSuchEntity(sessionId, trackingId);
             return;
         }
 
-        final var amount = message.amount();
-        if (amount.signum() <= 0) {
-            publisher.publish(event.sessionId(), new InvalidAmountAeronResponse(message.trackingId()));
+        if (amount <= 0) {
+            publisher.invalidAmount(sessionId, trackingId);
             return;
         }
 
         new PendingWithdrawalOperation(
                 fromAccount,
                 publisher,
-                event.sessionId(),
-                message.trackingId(),
+                sessionId,
+                trackingId,
                 amount,
                 repository,
-                message.toAddress()
+                toAddress
         ).execute();
     }
 
-    private void queryAccount(
-            @NotNull InboundAeronMessageEvent event,
-            @NotNull QueryAccountAeronRequest message
-    ) {
-        final var account = repository.accounts.get(message.accountId());
+    private void queryAccount(int sessionId, long trackingId, long accountId) {
+
+        final var account = repository.account(accountId);
 
         if (account == null) {
-            publisher.publish(event.sessionId(), new NoSuchEntityAeronResponse(message.trackingId()));
+            publisher.noSuchEntity(sessionId, trackingId);
             return;
         }
 
         new PendingQueryAccountOperation(
                 account,
                 publisher,
-                event.sessionId(),
-                message.trackingId()
+                sessionId,
+                trackingId
         ).execute();
     }
 
-    private void queryWithdrawal(
-            @NotNull InboundAeronMessageEvent event,
-            @NotNull QueryWithdrawalAeronRequest message
-    ) {
-        final var withdrawal = repository.withdrawals.get(message.withdrawalId());
+    private void queryWithdrawal(int sessionId, long trackingId, long withdrawalId) {
+
+        final var withdrawal = repository.withdrawal(withdrawalId);
 
         // withdrawal.isCreated() == false implies we did not say ID of this withdrawal to the client
         // also we cannot query state of withdrawal until it created
         if (withdrawal == null || !withdrawal.isCreated()) {
-            publisher.publish(event.sessionId(), new NoSuchEntityAeronResponse(message.trackingId()));
+            publisher.noSuchEntity(sessionId, trackingId);
             return;
         }
 
         new PendingQueryWithdrawalOperation(
                 withdrawal,
                 publisher,
-                event.sessionId(),
-                message.trackingId()
+                sessionId,
+                trackingId
         ).execute();
     }
 }
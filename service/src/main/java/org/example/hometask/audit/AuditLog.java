@@ -0,0 +1,87 @@
+package org.example.hometask.audit;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.File;
+
+/**
+ * Layout of the audit log shared by {@link AuditLogWriter} and {@link AuditLogDecoder}.
+ * <p>
+ * The audit log is a memory-mapped file of a fixed number of fixed-length records, used as a ring: once it is full,
+ * the oldest records are overwritten. The file header holds the number of records ever written, so the latest
+ * {@link #CAPACITY_OFFSET capacity} ones are the ones in the file. Every record starts with the ring buffer sequence
+ * of the event, the wall clock time of auditing it, its kind and type. The meaning of the other fields depends on
+ * the kind:
+ * <ul>
+ *     <li>{@link #EVENT}: type is one of event types of {@link org.example.hometask.journal.EventCodec} or
+ *     {@link #TICK}, {@link #RECOVERY} and {@link #INBOUND_AERON_MESSAGE}, then come the session and the SBE template
+ *     ids of a request, the journal position right after the event, a withdrawal UUID, if any, or the other shard
+ *     and the sequence of a transfer between shards.</li>
+ *     <li>{@link #RESPONSE}: type is the SBE template id of the response, then come the session id, the withdrawal
+ *     state ordinal or the number of batch results, the tracking id, the account or withdrawal id and amounts.</li>
+ *     <li>{@link #BATCH_RESULT}: an item of the preceding batch result, type is its result code, then come the
+ *     session id, the tracking id and the account id.</li>
+ *     <li>{@link #WITHDRAWAL_REQUEST}: type is {@link #CREATE_WITHDRAWAL} or {@link #QUERY_WITHDRAWAL}, then come the
+ *     withdrawal UUID and the amount.</li>
+ * </ul>
+ */
+public final class AuditLog {
+
+    public static final int MAGIC = 0x41554449;
+
+    public static final int MAGIC_OFFSET = 0;
+    public static final int RECORD_LENGTH_OFFSET = MAGIC_OFFSET + Integer.BYTES;
+    public static final int CAPACITY_OFFSET = RECORD_LENGTH_OFFSET + Integer.BYTES;
+    public static final int RECORDS_WRITTEN_OFFSET = CAPACITY_OFFSET + Integer.BYTES + Integer.BYTES;
+    public static final int HEADER_LENGTH = 64;
+
+    public static final int SEQUENCE_OFFSET = 0;
+    public static final int TIMESTAMP_OFFSET = SEQUENCE_OFFSET + Long.BYTES;
+    public static final int KIND_OFFSET = TIMESTAMP_OFFSET + Long.BYTES;
+    public static final int TYPE_OFFSET = KIND_OFFSET + Integer.BYTES;
+    public static final int SESSION_ID_OFFSET = TYPE_OFFSET + Integer.BYTES;
+    public static final int DETAIL_OFFSET = SESSION_ID_OFFSET + Integer.BYTES;
+    public static final int FIELD1_OFFSET = DETAIL_OFFSET + Integer.BYTES;
+    public static final int FIELD2_OFFSET = FIELD1_OFFSET + Long.BYTES;
+    public static final int FIELD3_OFFSET = FIELD2_OFFSET + Long.BYTES;
+    public static final int FIELD4_OFFSET = FIELD3_OFFSET + Long.BYTES;
+    public static final int RECORD_LENGTH = FIELD4_OFFSET + Long.BYTES;
+
+    /**
+     * Max number of records, so the file can be mapped as a whole.
+     */
+    public static final int MAX_CAPACITY = (Integer.MAX_VALUE - HEADER_LENGTH) / RECORD_LENGTH;
+
+    public static final int EVENT = 1;
+    public static final int RESPONSE = 2;
+    public static final int BATCH_RESULT = 3;
+    public static final int WITHDRAWAL_REQUEST = 4;
+
+    /**
+     * Types of events which are not journalled.
+     */
+    public static final int TICK = 101;
+    public static final int RECOVERY = 102;
+    public static final int INBOUND_AERON_MESSAGE = 103;
+
+    public static final int CREATE_WITHDRAWAL = 1;
+    public static final int QUERY_WITHDRAWAL = 2;
+
+    private static final String FILE_NAME = "audit.log";
+
+    @NotNull
+    public static File file(@NotNull File dir) {
+        return new File(dir, FILE_NAME);
+    }
+
+    /**
+     * @return Offset of the record with the given index in the file.
+     */
+    static int recordOffset(long index, int capacity) {
+        return HEADER_LENGTH + (int) (index % capacity) * RECORD_LENGTH;
+    }
+
+    private AuditLog() {
+        // empty
+    }
+}
@@ -0,0 +1,214 @@
+package org.example.hometask.audit;
+
+import org.agrona.DirectBuffer;
+import org.agrona.IoUtil;
+import org.agrona.concurrent.UnsafeBuffer;
+import org.example.hometask.api.AccountCreatedDecoder;
+import org.example.hometask.api.AccountDataDecoder;
+import org.example.hometask.api.AccountTransferBatchDecoder;
+import org.example.hometask.api.AccountTransferDecoder;
+import org.example.hometask.api.AccountTransferDoneDecoder;
+import org.example.hometask.api.AccountWithdrawDecoder;
+import org.example.hometask.api.AccountWithdrawalDoneDecoder;
+import org.example.hometask.api.BatchResultCode;
+import org.example.hometask.api.BatchResultDecoder;
+import org.example.hometask.api.CreateAccountBatchDecoder;
+import org.example.hometask.api.CreateAccountDecoder;
+import org.example.hometask.api.InvalidAmountDecoder;
+import org.example.hometask.api.NoFundsDecoder;
+import org.example.hometask.api.NoSuchEntityDecoder;
+import org.example.hometask.api.QueryAccountDecoder;
+import org.example.hometask.api.QueryWithdrawalDecoder;
+import org.example.hometask.api.SameAccountDecoder;
+import org.example.hometask.api.WithdrawalDataDecoder;
+import org.example.hometask.journal.EventCodec;
+import org.example.hometask.messages.WithdrawalState;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.File;
+import java.io.PrintStream;
+import java.time.Instant;
+import java.util.UUID;
+
+import static org.example.hometask.audit.AuditLog.CAPACITY_OFFSET;
+import static org.example.hometask.audit.AuditLog.DETAIL_OFFSET;
+import static org.example.hometask.audit.AuditLog.FIELD1_OFFSET;
+import static org.example.hometask.audit.AuditLog.FIELD2_OFFSET;
+import static org.example.hometask.audit.AuditLog.FIELD3_OFFSET;
+import static org.example.hometask.audit.AuditLog.FIELD4_OFFSET;
+import static org.example.hometask.audit.AuditLog.KIND_OFFSET;
+import static org.example.hometask.audit.AuditLog.MAGIC;
+import static org.example.hometask.audit.AuditLog.MAGIC_OFFSET;
+import static org.example.hometask.audit.AuditLog.RECORDS_WRITTEN_OFFSET;
+import static org.example.hometask.audit.AuditLog.RECORD_LENGTH;
+import static org.example.hometask.audit.AuditLog.RECORD_LENGTH_OFFSET;
+import static org.example.hometask.audit.AuditLog.SEQUENCE_OFFSET;
+import static org.example.hometask.audit.AuditLog.SESSION_ID_OFFSET;
+import static org.example.hometask.audit.AuditLog.TIMESTAMP_OFFSET;
+import static org.example.hometask.audit.AuditLog.TYPE_OFFSET;
+import static org.example.hometask.utils.Amounts.toBigDecimal;
+
+/**
+ * Offline tool printing audit logs as text, a record per line, oldest records first. Takes paths of audit logs, see
+ * {@link AuditLog#file}.
+ */
+public final class AuditLogDecoder {
+
+    private static final WithdrawalState[] WITHDRAWAL_STATES = WithdrawalState.values();
+
+    public static void main(@NotNull String[] args) {
+        if (args.length == 0) {
+            System.err.println("Usage: AuditLogDecoder <audit log>...");
+            System.exit(1);
+        }
+        for (final var path : args) {
+            decode(new File(path), System.out);
+        }
+    }
+
+    /**
+     * Prints records which are in the log at the moment, the log may be written meanwhile.
+     */
+    public static void decode(@NotNull File file, @NotNull PrintStream out) {
+        final var mappedFile = IoUtil.mapExistingFile(file, "audit log");
+        try {
+            final var buffer = new UnsafeBuffer(mappedFile);
+            if (buffer.getIntVolatile(MAGIC_OFFSET) != MAGIC || buffer.getInt(RECORD_LENGTH_OFFSET) != RECORD_LENGTH) {
+                throw new IllegalArgumentException("Not an audit log: " + file);
+            }
+            final int capacity = buffer.getInt(CAPACITY_OFFSET);
+            final long recordsWritten = buffer.getLongVolatile(RECORDS_WRITTEN_OFFSET);
+            for (long index = Math.max(0, recordsWritten - capacity); index < recordsWritten; index++) {
+                out.println(format(buffer, AuditLog.recordOffset(index, capacity)));
+            }
+        } finally {
+            IoUtil.unmap(mappedFile);
+        }
+    }
+
+    @NotNull
+    static String format(@NotNull DirectBuffer buffer, int offset) {
+        final int type = buffer.getInt(offset + TYPE_OFFSET);
+        final int sessionId = buffer.getInt(offset + SESSION_ID_OFFSET);
+        final int detail = buffer.getInt(offset + DETAIL_OFFSET);
+        final long field1 = buffer.getLong(offset + FIELD1_OFFSET);
+        final long field2 = buffer.getLong(offset + FIELD2_OFFSET);
+        final long field3 = buffer.getLong(offset + FIELD3_OFFSET);
+        final long field4 = buffer.getLong(offset + FIELD4_OFFSET);
+
+        final var line = new StringBuilder()
+                .append(Instant.ofEpochSecond(0, buffer.getLong(offset + TIMESTAMP_OFFSET)))
+                .append(" #").append(buffer.getLong(offset + SEQUENCE_OFFSET)).append(' ');
+        switch (buffer.getInt(offset + KIND_OFFSET)) {
+            case AuditLog.EVENT -> {
+                line.append("EVENT ").append(eventType(type));
+                if (type == EventCodec.INBOUND_AERON_FRAGMENT) {
+                    line.append(" session=").append(sessionId).append(" request=").append(templateName(detail));
+                }
+                if (type == EventCodec.CREATE_WITHDRAWAL_SUCCESS
+                        || type == EventCodec.CREATE_WITHDRAWAL_DUPLICATION_FAILURE
+                        || type == EventCodec.QUERY_WITHDRAWAL_SUCCESS
+                        || type == EventCodec.QUERY_WITHDRAWAL_UNKNOWN_ID_FAILURE
+                        || type == EventCodec.CREATE_WITHDRAWAL_CALL_FAILURE
+                        || type == EventCodec.QUERY_WITHDRAWAL_CALL_FAILURE) {
+                    line.append(" withdrawal=").append(new UUID(field2, field3));
+                }
+                if (type == EventCodec.SHARD_TRANSFER || type == EventCodec.SHARD_TRANSFER_RESULT) {
+                    line.append(" shard=").append(detail).append(" transferSequence=").append(field2);
+                }
+                line.append(" journalPosition=").append(field1);
+            }
+            case AuditLog.RESPONSE -> {
+                line.append("RESPONSE ").append(templateName(type))
+                        .append(" session=").append(sessionId);
+                if (type != BatchResultDecoder.TEMPLATE_ID) {
+                    line.append(" trackingId=").append(field1);
+                }
+                switch (type) {
+                    case AccountCreatedDecoder.TEMPLATE_ID -> line.append(" accountId=").append(field2);
+                    case AccountWithdrawalDoneDecoder.TEMPLATE_ID -> line.append(" withdrawalId=").append(field2);
+                    case AccountDataDecoder.TEMPLATE_ID -> line
+                            .append(" availableAmount=").append(amount(field3))
+                            .append(" reservedAmount=").append(amount(field4));
+                    case WithdrawalDataDecoder.TEMPLATE_ID -> line
+                            .append(" amount=").append(amount(field3))
+                            .append(" state=").append(WITHDRAWAL_STATES[detail]);
+                    case BatchResultDecoder.TEMPLATE_ID -> line.append(" results=").append(detail);
+                    default -> {
+                    }
+                }
+            }
+            case AuditLog.BATCH_RESULT -> {
+                final var code = BatchResultCode.get((short) type);
+                line.append("BATCH_RESULT ").append(code)
+                        .append(" session=").append(sessionId)
+                        .append(" trackingId=").append(field1);
+                if (code == BatchResultCode.ACCOUNT_CREATED) {
+                    line.append(" accountId=").append(field2);
+                }
+            }
+            case AuditLog.WITHDRAWAL_REQUEST -> {
+                line.append("WITHDRAWAL_REQUEST ")
+                        .append(type == AuditLog.CREATE_WITHDRAWAL ? "CREATE" : "QUERY")
+                        .append(" withdrawal=").append(new UUID(field1, field2));
+                if (type == AuditLog.CREATE_WITHDRAWAL) {
+                    line.append(" amount=").append(amount(field3));
+                }
+            }
+            default -> line.append("UNKNOWN kind=").append(buffer.getInt(offset + KIND_OFFSET));
+        }
+        return line.toString();
+    }
+
+    @NotNull
+    private static String amount(long amount) {
+        return toBigDecimal(amount).stripTrailingZeros().toPlainString();
+    }
+
+    @NotNull
+    private static String eventType(int type) {
+        return switch (type) {
+            case EventCodec.INBOUND_AERON_FRAGMENT -> "INBOUND_AERON_FRAGMENT";
+            case EventCodec.CREATE_WITHDRAWAL_SUCCESS -> "CREATE_WITHDRAWAL_SUCCESS";
+            case EventCodec.CREATE_WITHDRAWAL_DUPLICATION_FAILURE -> "CREATE_WITHDRAWAL_DUPLICATION_FAILURE";
+            case EventCodec.QUERY_WITHDRAWAL_SUCCESS -> "QUERY_WITHDRAWAL_SUCCESS";
+            case EventCodec.QUERY_WITHDRAWAL_UNKNOWN_ID_FAILURE -> "QUERY_WITHDRAWAL_UNKNOWN_ID_FAILURE";
+            case EventCodec.CREATE_WITHDRAWAL_CALL_FAILURE -> "CREATE_WITHDRAWAL_CALL_FAILURE";
+            case EventCodec.QUERY_WITHDRAWAL_CALL_FAILURE -> "QUERY_WITHDRAWAL_CALL_FAILURE";
+            case EventCodec.SHARD_TRANSFER -> "SHARD_TRANSFER";
+            case EventCodec.SHARD_TRANSFER_RESULT -> "SHARD_TRANSFER_RESULT";
+            case AuditLog.TICK -> "TICK";
+            case AuditLog.RECOVERY -> "RECOVERY";
+            case AuditLog.INBOUND_AERON_MESSAGE -> "INBOUND_AERON_MESSAGE";
+            default -> "UNKNOWN(" + type + ")";
+        };
+    }
+
+    @NotNull
+    private static String templateName(int templateId) {
+        return switch (templateId) {
+            case CreateAccountDecoder.TEMPLATE_ID -> "CreateAccount";
+            case AccountTransferDecoder.TEMPLATE_ID -> "AccountTransfer";
+            case AccountWithdrawDecoder.TEMPLATE_ID -> "AccountWithdraw";
+            case QueryAccountDecoder.TEMPLATE_ID -> "QueryAccount";
+            case QueryWithdrawalDecoder.TEMPLATE_ID -> "QueryWithdrawal";
+            case CreateAccountBatchDecoder.TEMPLATE_ID -> "CreateAccountBatch";
+            case AccountTransferBatchDecoder.TEMPLATE_ID -> "AccountTransferBatch";
+            case AccountCreatedDecoder.TEMPLATE_ID -> "AccountCreated";
+            case AccountTransferDoneDecoder.TEMPLATE_ID -> "AccountTransferDone";
+            case AccountWithdrawalDoneDecoder.TEMPLATE_ID -> "AccountWithdrawalDone";
+            case NoFundsDecoder.TEMPLATE_ID -> "NoFunds";
+            case InvalidAmountDecoder.TEMPLATE_ID -> "InvalidAmount";
+            case NoSuchEntityDecoder.TEMPLATE_ID -> "NoSuchEntity";
+            case AccountDataDecoder.TEMPLATE_ID -> "AccountData";
+            case WithdrawalDataDecoder.TEMPLATE_ID -> "WithdrawalData";
+            case SameAccountDecoder.TEMPLATE_ID -> "SameAccount";
+            case BatchResultDecoder.TEMPLATE_ID -> "BatchResult";
+            default -> "UNKNOWN(" + templateId + ")";
+        };
+    }
+
+    private AuditLogDecoder() {
+        // empty
+    }
+}
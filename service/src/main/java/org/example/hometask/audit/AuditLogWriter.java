@@ -0,0 +1,122 @@
+package org.example.hometask.audit;
+
+import org.agrona.IoUtil;
+import org.agrona.MutableDirectBuffer;
+import org.agrona.concurrent.UnsafeBuffer;
+import org.jetbrains.annotations.NotNull;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.nio.MappedByteBuffer;
+
+import static org.example.hometask.audit.AuditLog.CAPACITY_OFFSET;
+import static org.example.hometask.audit.AuditLog.HEADER_LENGTH;
+import static org.example.hometask.audit.AuditLog.KIND_OFFSET;
+import static org.example.hometask.audit.AuditLog.MAGIC;
+import static org.example.hometask.audit.AuditLog.MAGIC_OFFSET;
+import static org.example.hometask.audit.AuditLog.RECORDS_WRITTEN_OFFSET;
+import static org.example.hometask.audit.AuditLog.RECORD_LENGTH;
+import static org.example.hometask.audit.AuditLog.RECORD_LENGTH_OFFSET;
+import static org.example.hometask.audit.AuditLog.SEQUENCE_OFFSET;
+import static org.example.hometask.audit.AuditLog.TIMESTAMP_OFFSET;
+import static org.example.hometask.audit.AuditLog.TYPE_OFFSET;
+
+/**
+ * Writes records to the memory-mapped audit log, see {@link AuditLog} for the layout. Not thread-safe.
+ * <p>
+ * A record is written in two steps: {@link #claim} fills the common fields and returns the offset of the record,
+ * {@link #commit()} makes it visible. Nothing is allocated, the page cache takes care of writing the file, so records
+ * of the last moments survive a crash of the process, but not of the host. If the log already exists with the same
+ * capacity, writing continues after its last record, otherwise it starts over.
+ */
+public final class AuditLogWriter implements AutoCloseable {
+
+    protected final Logger logger = LoggerFactory.getLogger(getClass());
+
+    private final int capacity;
+
+    private final UnsafeBuffer file = new UnsafeBuffer(0, 0);
+
+    private MappedByteBuffer mappedFile;
+
+    private long recordsWritten;
+
+    private int claimedOffset = -1;
+
+    /**
+     * @param capacity Number of records kept.
+     */
+    public AuditLogWriter(@NotNull File file, int capacity) {
+
+        if (capacity <= 0 || capacity > AuditLog.MAX_CAPACITY) {
+            throw new IllegalArgumentException("Invalid audit log capacity: " + capacity);
+        }
+
+        this.capacity = capacity;
+        final int length = HEADER_LENGTH + capacity * RECORD_LENGTH;
+        if (file.exists() && file.length() == length) {
+            mappedFile = IoUtil.mapExistingFile(file, "audit log");
+            this.file.wrap(mappedFile);
+        }
+        if (mappedFile != null && this.file.getInt(MAGIC_OFFSET) == MAGIC
+                && this.file.getInt(RECORD_LENGTH_OFFSET) == RECORD_LENGTH
+                && this.file.getInt(CAPACITY_OFFSET) == capacity) {
+            recordsWritten = this.file.getLongVolatile(RECORDS_WRITTEN_OFFSET);
+        } else {
+            if (mappedFile != null) {
+                IoUtil.unmap(mappedFile);
+            }
+            IoUtil.deleteIfExists(file);
+            mappedFile = IoUtil.mapNewFile(file, length, false);
+            this.file.wrap(mappedFile);
+            this.file.putInt(RECORD_LENGTH_OFFSET, RECORD_LENGTH);
+            this.file.putInt(CAPACITY_OFFSET, capacity);
+            this.file.putLongOrdered(RECORDS_WRITTEN_OFFSET, 0);
+            this.file.putIntOrdered(MAGIC_OFFSET, MAGIC);
+        }
+        logger.info("Audit log {} opened with {} records of {}", file, recordsWritten, capacity);
+    }
+
+    /**
+     * Reserves the next record, overwriting the oldest one if the log is full. Only one record may be claimed at a
+     * time, fields which the caller does not fill are zeros.
+     *
+     * @return Offset of the record in {@link #buffer()}.
+     */
+    public int claim(long sequence, long timestampNanos, int kind, int type) {
+        final int offset = AuditLog.recordOffset(recordsWritten, capacity);
+        file.setMemory(offset, RECORD_LENGTH, (byte) 0);
+        file.putLong(offset + SEQUENCE_OFFSET, sequence);
+        file.putLong(offset + TIMESTAMP_OFFSET, timestampNanos);
+        file.putInt(offset + KIND_OFFSET, kind);
+        file.putInt(offset + TYPE_OFFSET, type);
+        claimedOffset = offset;
+        return offset;
+    }
+
+    @NotNull
+    public MutableDirectBuffer buffer() {
+        return file;
+    }
+
+    public void commit() {
+        if (claimedOffset < 0) {
+            throw new IllegalStateException("Nothing claimed");
+        }
+        file.putLongOrdered(RECORDS_WRITTEN_OFFSET, ++recordsWritten);
+        claimedOffset = -1;
+    }
+
+    public long recordsWritten() {
+        return recordsWritten;
+    }
+
+    @Override
+    public void close() {
+        if (mappedFile != null) {
+            IoUtil.unmap(mappedFile);
+            mappedFile = null;
+        }
+    }
+}
@@ -0,0 +1,245 @@
+package org.example.hometask.disruptor;
+
+import com.lmax.disruptor.EventHandler;
+import com.lmax.disruptor.LifecycleAware;
+import org.agrona.MutableDirectBuffer;
+import org.agrona.concurrent.EpochNanoClock;
+import org.agrona.concurrent.OffsetEpochNanoClock;
+import org.example.hometask.api.BatchResultEncoder;
+import org.example.hometask.api.MessageHeaderDecoder;
+import org.example.hometask.audit.AuditLog;
+import org.example.hometask.audit.AuditLogWriter;
+import org.example.hometask.journal.EventCodec;
+import org.example.hometask.messages.disruptor.CreateWithdrawalCallFailureEvent;
+import org.example.hometask.messages.disruptor.CreateWithdrawalDuplicationFailureEvent;
+import org.example.hometask.messages.disruptor.CreateWithdrawalSuccessEvent;
+import org.example.hometask.messages.disruptor.Event;
+import org.example.hometask.messages.disruptor.InboundAeronFragmentEvent;
+import org.example.hometask.messages.disruptor.InboundAeronMessageEvent;
+import org.example.hometask.messages.disruptor.QueryWithdrawalCallFailureEvent;
+import org.example.hometask.messages.disruptor.QueryWithdrawalSuccessEvent;
+import org.example.hometask.messages.disruptor.QueryWithdrawalUnknownIdFailureEvent;
+import org.example.hometask.messages.disruptor.RecoveryEvent;
+import org.example.hometask.messages.disruptor.ShardTransferEvent;
+import org.example.hometask.messages.disruptor.ShardTransferResultEvent;
+import org.example.hometask.messages.disruptor.TickEvent;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.UUID;
+
+import static org.example.hometask.audit.AuditLog.DETAIL_OFFSET;
+import static org.example.hometask.audit.AuditLog.FIELD1_OFFSET;
+import static org.example.hometask.audit.AuditLog.FIELD2_OFFSET;
+import static org.example.hometask.audit.AuditLog.FIELD3_OFFSET;
+import static org.example.hometask.audit.AuditLog.FIELD4_OFFSET;
+import static org.example.hometask.audit.AuditLog.SESSION_ID_OFFSET;
+
+/**
+ * Writes every processed event along with its responses and external requests to the audit log, see
+ * {@link AuditLog}. It runs on a thread of its own after the state machine, so the state machine pays nothing for
+ * auditing, and it allocates nothing. Ticks are audited only if they have made anything.
+ */
+class AuditEventHandler implements EventHandler<EventHolder>, LifecycleAware {
+
+    @NotNull
+    private final AuditLogWriter writer;
+
+    private final EpochNanoClock clock = new OffsetEpochNanoClock();
+
+    private final MessageHeaderDecoder headerDecoder = new MessageHeaderDecoder();
+
+    private long sequence;
+
+    private long timestampNanos;
+
+    private long journalPosition;
+
+    /**
+     * Writes the record of the event.
+     */
+    private final Event.Visitor<Void, RuntimeException> events = new Event.Visitor<>() {
+        @Override
+        public Void visit(@NotNull InboundAeronMessageEvent event) {
+            final int offset = claim(AuditLog.EVENT, AuditLog.INBOUND_AERON_MESSAGE);
+            writer.buffer().putInt(offset + SESSION_ID_OFFSET, event.sessionId());
+            writer.commit();
+            return null;
+        }
+
+        @Override
+        public Void visit(@NotNull InboundAeronFragmentEvent event) {
+            final int offset = claim(AuditLog.EVENT, EventCodec.INBOUND_AERON_FRAGMENT);
+            final var buffer = writer.buffer();
+            buffer.putInt(offset + SESSION_ID_OFFSET, event.sessionId());
+            buffer.putInt(offset + DETAIL_OFFSET, headerDecoder.wrap(event.buffer(), 0).templateId());
+            writer.commit();
+            return null;
+        }
+
+        @Override
+        public Void visit(@NotNull CreateWithdrawalSuccessEvent event) {
+            withdrawal(EventCodec.CREATE_WITHDRAWAL_SUCCESS, event.withdrawalUuid());
+            return null;
+        }
+
+        @Override
+        public Void visit(@NotNull CreateWithdrawalDuplicationFailureEvent event) {
+            withdrawal(EventCodec.CREATE_WITHDRAWAL_DUPLICATION_FAILURE, event.withdrawalUuid());
+            return null;
+        }
+
+        @Override
+        public Void visit(@NotNull CreateWithdrawalCallFailureEvent event) {
+            withdrawal(EventCodec.CREATE_WITHDRAWAL_CALL_FAILURE, event.withdrawalUuid());
+            return null;
+        }
+
+        @Override
+        public Void visit(@NotNull QueryWithdrawalSuccessEvent event) {
+            withdrawal(EventCodec.QUERY_WITHDRAWAL_SUCCESS, event.withdrawalUuid());
+            return null;
+        }
+
+        @Override
+        public Void visit(@NotNull QueryWithdrawalUnknownIdFailureEvent event) {
+            withdrawal(EventCodec.QUERY_WITHDRAWAL_UNKNOWN_ID_FAILURE, event.withdrawalUuid());
+            return null;
+        }
+
+        @Override
+        public Void visit(@NotNull QueryWithdrawalCallFailureEvent event) {
+            withdrawal(EventCodec.QUERY_WITHDRAWAL_CALL_FAILURE, event.withdrawalUuid());
+            return null;
+        }
+
+        @Override
+        public Void visit(@NotNull TickEvent event) {
+            claim(AuditLog.EVENT, AuditLog.TICK);
+            writer.commit();
+            return null;
+        }
+
+        @Override
+        public Void visit(@NotNull RecoveryEvent event) {
+            claim(AuditLog.EVENT, AuditLog.RECOVERY);
+            writer.commit();
+            return null;
+        }
+
+        @Override
+        public Void visit(@NotNull ShardTransferEvent event) {
+            shardTransfer(EventCodec.SHARD_TRANSFER, event.sourceShard(), event.sequence());
+            return null;
+        }
+
+        @Override
+        public Void visit(@NotNull ShardTransferResultEvent event) {
+            shardTransfer(EventCodec.SHARD_TRANSFER_RESULT, event.targetShard(), event.sequence());
+            return null;
+        }
+
+        private void withdrawal(int type, @NotNull UUID withdrawalUuid) {
+            final int offset = claim(AuditLog.EVENT, type);
+            final var buffer = writer.buffer();
+            buffer.putLong(offset + FIELD2_OFFSET, withdrawalUuid.getMostSignificantBits());
+            buffer.putLong(offset + FIELD3_OFFSET, withdrawalUuid.getLeastSignificantBits());
+            writer.commit();
+        }
+
+        private void shardTransfer(int type, int shard, long transferSequence) {
+            final int offset = claim(AuditLog.EVENT, type);
+            final var buffer = writer.buffer();
+            buffer.putInt(offset + DETAIL_OFFSET, shard);
+            buffer.putLong(offset + FIELD2_OFFSET, transferSequence);
+            writer.commit();
+        }
+    };
+
+    public AuditEventHandler(@NotNull AuditLogWriter writer) {
+        this.writer = writer;
+    }
+
+    @Override
+    public void onEvent(@NotNull EventHolder holder, long sequence, boolean endOfBatch) {
+        final var event = holder.event;
+        if (event == null
+                || event instanceof TickEvent && holder.messages.isEmpty() && holder.withdrawalRequests.isEmpty()) {
+            return;
+        }
+
+        this.sequence = sequence;
+        this.timestampNanos = clock.nanoTime();
+        this.journalPosition = holder.journalPosition;
+        event.accept(events);
+
+        final var messages = holder.messages;
+        for (int i = 0; i < messages.size(); i++) {
+            response(messages.get(i));
+        }
+        final var requests = holder.withdrawalRequests;
+        for (int i = 0; i < requests.size(); i++) {
+            request(requests.get(i));
+        }
+    }
+
+    @Override
+    public void onStart() {
+        // empty
+    }
+
+    @Override
+    public void onShutdown() {
+        writer.close();
+    }
+
+    private void response(@NotNull OutboundMessage message) {
+        final int offset = writer.claim(sequence, timestampNanos, AuditLog.RESPONSE, message.templateId);
+        final var buffer = writer.buffer();
+        buffer.putInt(offset + SESSION_ID_OFFSET, message.sessionId);
+        buffer.putLong(offset + FIELD1_OFFSET, message.trackingId);
+        buffer.putLong(offset + FIELD2_OFFSET, message.entityId);
+        buffer.putLong(offset + FIELD3_OFFSET, message.amount);
+        buffer.putLong(offset + FIELD4_OFFSET, message.reservedAmount);
+        if (message.withdrawalState != null) {
+            buffer.putInt(offset + DETAIL_OFFSET, message.withdrawalState.ordinal());
+        }
+        if (message.templateId == BatchResultEncoder.TEMPLATE_ID) {
+            buffer.putInt(offset + DETAIL_OFFSET, message.results);
+            writer.commit();
+            for (int i = 0; i < message.results; i++) {
+                result(message, i);
+            }
+            return;
+        }
+        writer.commit();
+    }
+
+    private void result(@NotNull OutboundMessage message, int index) {
+        final int offset = writer.claim(sequence, timestampNanos, AuditLog.BATCH_RESULT,
+                message.resultCodes[index].value());
+        final var buffer = writer.buffer();
+        buffer.putInt(offset + SESSION_ID_OFFSET, message.sessionId);
+        buffer.putLong(offset + FIELD1_OFFSET, message.resultTrackingIds[index]);
+        buffer.putLong(offset + FIELD2_OFFSET, message.resultAccountIds[index]);
+        writer.commit();
+    }
+
+    private void request(@NotNull OutboundWithdrawalRequest request) {
+        final int offset = writer.claim(sequence, timestampNanos, AuditLog.WITHDRAWAL_REQUEST,
+                request.create ? AuditLog.CREATE_WITHDRAWAL : AuditLog.QUERY_WITHDRAWAL);
+        final MutableDirectBuffer buffer = writer.buffer();
+        buffer.putLong(offset + FIELD1_OFFSET, request.withdrawalUuid.getMostSignificantBits());
+        buffer.putLong(offset + FIELD2_OFFSET, request.withdrawalUuid.getLeastSignificantBits());
+        buffer.putLong(offset + FIELD3_OFFSET, request.amount);
+        writer.commit();
+    }
+
+    /**
+     * Claims a record of the current event, the journal position goes to every event record.
+     */
+    private int claim(int kind, int type) {
+        final int offset = writer.claim(sequence, timestampNanos, kind, type);
+        writer.buffer().putLong(offset + FIELD1_OFFSET, journalPosition);
+        return offset;
+    }
+}
@@ -0,0 +1,20 @@
+package org.example.hometask.disruptor;
+
+/**
+ * What the ingress does when the ring buffer has no free slots. The ingress thread never blocks in either case,
+ * so internally generated messages are still drained as soon as consumers catch up.
+ */
+public enum BackPressurePolicy {
+
+    /**
+     * Stop polling the subscription. Unread fragments stay in the term buffer and Aeron flow control pushes the
+     * back-pressure to the clients.
+     */
+    PAUSE,
+
+    /**
+     * Keep polling and answer every request which does not fit into the ring buffer with a ServerBusy response.
+     * Requires concurrent publications since those responses are sent from the ingress thread.
+     */
+    REJECT
+}
@@ -1,38 +1,192 @@
 package org.example.hometask.disruptor;
 
-import com.lmax.disruptor.BlockingWaitStrategy;
+import com.lmax.disruptor.BatchEventProcessor;
+import com.lmax.disruptor.EventHandler;
+import com.lmax.disruptor.RingBuffer;
 import com.lmax.disruptor.dsl.Disruptor;
+import com.lmax.disruptor.dsl.EventProcessorFactory;
 import io.aeron.Aeron;
-import io.aeron.CommonContext;
 import io.aeron.Publication;
-import io.aeron.driver.MediaDriver;
 import org.agrona.CloseHelper;
+import org.agrona.IoUtil;
 import org.agrona.concurrent.AgentRunner;
-import org.agrona.concurrent.BusySpinIdleStrategy;
+import org.agrona.concurrent.ManyToOneConcurrentLinkedQueue;
 import org.example.hometask.Controller;
-import org.example.hometask.messages.disruptor.Event;
+import org.example.hometask.audit.AuditLog;
+import org.example.hometask.audit.AuditLogWriter;
+import org.example.hometask.external.WithdrawalService;
+import org.example.hometask.external.WithdrawalServiceStub;
+import org.example.hometask.journal.EventCodec;
+import org.example.hometask.journal.FsyncPolicy;
+import org.example.hometask.journal.JournalReader;
+import org.example.hometask.journal.JournalWriter;
+import org.example.hometask.messages.disruptor.RecoveryEvent;
+import org.example.hometask.state.Repository;
+import org.example.hometask.state.SnapshotLoader;
+import org.example.hometask.state.Snapshotter;
+import org.example.hometask.state.WithdrawalPoller;
+import org.example.hometask.state.WithdrawalUuids;
+import org.example.hometask.utils.AeronTransport;
+import org.example.hometask.utils.NamedThreadFactory;
 import org.example.hometask.utils.PrefixThreadFactory;
+import org.example.hometask.utils.ThreadAffinity;
 import org.jetbrains.annotations.NotNull;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import static com.lmax.disruptor.dsl.ProducerType.SINGLE;
-import static io.aeron.driver.ThreadingMode.SHARED;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
 
 public class DisruptorManager {
 
     private static final int RING_BUFFER_SIZE = 1 << Integer.getInteger("org.example.hometask.ringBufferSize", 10);
 
+    private static final WaitStrategyType WAIT_STRATEGY =
+            WaitStrategyType.valueOf(System.getProperty("org.example.hometask.waitStrategy", "BLOCKING"));
+
+    /**
+     * Capacity of the bounded lane of the internal messages queue, it overflows to an unbounded lane.
+     */
+    private static final int INTERNAL_QUEUE_CAPACITY =
+            Integer.getInteger("org.example.hometask.internalQueueCapacity", 4096);
+
+    private static final IdleStrategyType IDLE_STRATEGY =
+            IdleStrategyType.valueOf(System.getProperty("org.example.hometask.idleStrategy", "BUSY_SPIN"));
+
+    /**
+     * CPUs to pin threads to by their names, see {@link ThreadAffinity}.
+     */
+    private static final ThreadAffinity AFFINITY =
+            ThreadAffinity.parse(System.getProperty("org.example.hometask.affinity", ""));
+
+    /**
+     * Number of shards, each with its own ring buffer, state machine and journal, see {@link Repository}.
+     */
+    private static final int SHARDS = Integer.getInteger("org.example.hometask.shards", 1);
+
+    private static final String SHARDS_FILE_NAME = "shards";
+
+    private static final File JOURNAL_DIR = new File(System.getProperty("org.example.hometask.journal.dir", "journal"));
+
+    private static final boolean JOURNAL_DIR_DELETE_ON_START =
+            Boolean.getBoolean("org.example.hometask.journal.dirDeleteOnStart");
+
+    private static final int JOURNAL_SEGMENT_SIZE =
+            Integer.getInteger("org.example.hometask.journal.segmentSize", 64 * 1024 * 1024);
+
+    private static final FsyncPolicy JOURNAL_FSYNC_POLICY =
+            FsyncPolicy.valueOf(System.getProperty("org.example.hometask.journal.fsyncPolicy", "BATCH"));
+
+    private static final long JOURNAL_FSYNC_INTERVAL_NANOS =
+            MILLISECONDS.toNanos(Long.getLong("org.example.hometask.journal.fsyncIntervalMs", 100));
+
+    private static final long SNAPSHOT_INTERVAL_NANOS =
+            MILLISECONDS.toNanos(Long.getLong("org.example.hometask.snapshot.intervalMs", 60_000));
+
+    private static final int SNAPSHOT_CHUNK_SIZE = Integer.getInteger("org.example.hometask.snapshot.chunkSize", 65536);
+
+    /**
+     * Number of records kept by the audit log of a shard, see {@link AuditLog}.
+     */
+    private static final int AUDIT_CAPACITY = Integer.getInteger("org.example.hometask.audit.capacity", 1 << 18);
+
+    /**
+     * The state machine logs one of this many events at INFO, or none if 0, the audit log has them all.
+     */
+    private static final int LOG_SAMPLE_INTERVAL =
+            Integer.getInteger("org.example.hometask.log.sampleInterval", 10_000);
+
+    /**
+     * Whether to subscribe to notifications of the external withdrawal service, then polling is a fallback only.
+     */
+    private static final boolean CONNECTOR_NOTIFICATIONS = Boolean.parseBoolean(
+            System.getProperty("org.example.hometask.connector.notifications", "true"));
+
+    private static final long POLL_INITIAL_DELAY_NANOS = MILLISECONDS.toNanos(Long.getLong(
+            "org.example.hometask.poll.initialDelayMs", CONNECTOR_NOTIFICATIONS
+                    ? WithdrawalPoller.DEFAULT_FALLBACK_INITIAL_DELAY_MS
+                    : WithdrawalPoller.DEFAULT_INITIAL_DELAY_MS));
+
+    private static final long POLL_INTERVAL_NANOS = MILLISECONDS.toNanos(Long.getLong(
+            "org.example.hometask.poll.intervalMs", WithdrawalPoller.DEFAULT_INTERVAL_MS));
+
+    private static final long POLL_WINDOW_NANOS = MILLISECONDS.toNanos(Long.getLong(
+            "org.example.hometask.poll.windowMs", WithdrawalPoller.DEFAULT_WINDOW_MS));
+
+    private static final long POLL_MAX_INTERVAL_NANOS = MILLISECONDS.toNanos(Long.getLong(
+            "org.example.hometask.poll.maxIntervalMs", WithdrawalPoller.DEFAULT_MAX_INTERVAL_MS));
+
+    /**
+     * Max number of concurrent calls to the external withdrawal service per shard.
+     */
+    private static final int CONNECTOR_MAX_IN_FLIGHT =
+            Integer.getInteger("org.example.hometask.connector.maxInFlight", 256);
+
+    /**
+     * Number of platform threads calling the external withdrawal service, or 0 to use a virtual thread per call.
+     */
+    private static final int CONNECTOR_THREADS = Integer.getInteger("org.example.hometask.connector.threads", 0);
+
+    /**
+     * Max number of requests coalesced into a single call to the external withdrawal service.
+     */
+    private static final int CONNECTOR_BATCH_SIZE = Integer.getInteger("org.example.hometask.connector.batchSize", 64);
+
+    /**
+     * How long a partial batch of requests may wait for more requests before it is sent.
+     */
+    private static final long CONNECTOR_LINGER_NANOS = MILLISECONDS.toNanos(
+            Long.getLong("org.example.hometask.connector.lingerMs", 0));
+
+    /**
+     * Number of publishers per shard running in parallel, each one serving its own partition of sessions, see
+     * {@link PublisherEventHandler}.
+     */
+    private static final int PUBLISHERS = Integer.getInteger("org.example.hometask.outbound.publishers", 1);
+
+    /**
+     * What the publisher does with sessions lagging for too long, see {@link SlowConsumerPolicy}.
+     */
+    private static final SlowConsumerPolicy SLOW_CONSUMER_POLICY = SlowConsumerPolicy.valueOf(
+            System.getProperty("org.example.hometask.outbound.slowConsumerPolicy", "DISCONNECT"));
+
+    /**
+     * Max number of bytes of responses spilled per back-pressured session and shard.
+     */
+    private static final int SPILL_CAPACITY =
+            Integer.getInteger("org.example.hometask.outbound.spillCapacity", 256 * 1024);
+
+    /**
+     * How long responses to a session may stay spilled before the slow consumer policy applies.
+     */
+    private static final long MAX_LAG_NANOS = MILLISECONDS.toNanos(
+            Long.getLong("org.example.hometask.outbound.maxLagMs", 5000));
+
+    /**
+     * Namespace of UUIDs of external withdrawals, distinct for every service sharing the external withdrawal service.
+     */
+    private static final UUID WITHDRAWAL_UUID_NAMESPACE = UUID.fromString(System.getProperty(
+            "org.example.hometask.withdrawalUuidNamespace", WithdrawalUuids.DEFAULT_NAMESPACE.toString()));
+
     protected final Logger logger = LoggerFactory.getLogger(getClass());
 
     @NotNull
-    private final Disruptor<EventHolder> disruptor;
+    private final List<Disruptor<EventHolder>> disruptors = new ArrayList<>(SHARDS);
 
     @NotNull
-    private final MediaDriver mediaDriver;
+    private final AeronTransport transport;
 
     @NotNull
     private final Aeron aeron;
@@ -40,65 +194,229 @@ public class DisruptorManager {
     @NotNull
     private final AgentRunner serverAgentRunner;
 
-    @NotNull
-    private final PublisherEventHandler publisherEventHandler;
+    /**
+     * Requests of publishers to disconnect slow sessions, handled by the server agent owning publications.
+     */
+    private final ManyToOneConcurrentLinkedQueue<SessionRegistry.Disconnect> disconnects =
+            new ManyToOneConcurrentLinkedQueue<>();
 
     public DisruptorManager() {
 
-        final var internalMessagesQueue = new ConcurrentLinkedQueue<Event>();
+        if (SHARDS <= 0) {
+            throw new IllegalArgumentException("Invalid number of shards: " + SHARDS);
+        }
 
-        mediaDriver = MediaDriver.launchEmbedded(
-                new MediaDriver.Context()
-                        .aeronDirectoryName(CommonContext.getAeronDirectoryName() + "-server")
-                        .dirDeleteOnStart(true)
-                        .dirDeleteOnShutdown(true)
-                        .threadingMode(SHARED));
+        final var withdrawalUuids = new WithdrawalUuids(WITHDRAWAL_UUID_NAMESPACE);
+        final var internalMessagesQueues = new ArrayList<InternalMessagesQueue>(SHARDS);
+        for (int shard = 0; shard < SHARDS; shard++) {
+            internalMessagesQueues.add(new InternalMessagesQueue(INTERNAL_QUEUE_CAPACITY));
+        }
+        final var router = new ShardRouter(internalMessagesQueues, withdrawalUuids);
 
-        aeron = Aeron.connect(
-                new Aeron.Context()
-                        .aeronDirectoryName(mediaDriver.aeronDirectoryName()));
+        transport = AeronTransport.launch("server");
+        aeron = transport.aeron();
 
-        logger.info("Dir {}", mediaDriver.aeronDirectoryName());
+        logger.info("Dir {}, {} media driver", transport.aeronDirectoryName(), AeronTransport.MEDIA_DRIVER_MODE);
 
-        disruptor = new Disruptor<>(
-                EventHolder::new,
-                RING_BUFFER_SIZE,
-                new PrefixThreadFactory("disruptor-"),
-                SINGLE,
-                new BlockingWaitStrategy()
-        );
+        final var publicationsBySessionId = new ConcurrentHashMap<Integer, Publication>();
 
-        disruptor.setDefaultExceptionHandler(new DisruptorExceptionHandler());
+        if (JOURNAL_DIR_DELETE_ON_START) {
+            IoUtil.delete(JOURNAL_DIR, false);
+        }
+        IoUtil.ensureDirectoryExists(JOURNAL_DIR, "journal");
+        checkShards();
 
-        final var publicationsBySessionId = new ConcurrentHashMap<Integer, Publication>();
+        final var withdrawalService = new WithdrawalServiceStub();
+        final var ringBuffers = new ArrayList<RingBuffer<EventHolder>>(SHARDS);
+        for (int shard = 0; shard < SHARDS; shard++) {
+            ringBuffers.add(createShard(shard, withdrawalUuids, router, withdrawalService, publicationsBySessionId));
+        }
 
-        final var eventContext = new EventContext();
-        final var publisher = new Publisher(eventContext);
-        publisherEventHandler = new PublisherEventHandler(publicationsBySessionId);
-        disruptor
-                .handleEventsWith(new StateMachineEventHandler(eventContext, new Controller(publisher)))
-                .then(
-                        publisherEventHandler,
-                        new ExternalConnectorEventHandler(internalMessagesQueue)
-                )
-                .then(new CleanerEventHandler());
-
-        // It helps us to read from internalMessagesQueue ASAP,
-        // but we would prefer to have a wakeup() method in IdleStrategy.
-        // Unparking worker thread manually is also possible but is breaking abstractions.
-        final var idleStrategy = new BusySpinIdleStrategy();
+        // internal messages wake the agent up, so only Aeron messages may wait for the idle strategy
+        final var idleStrategy = router.idleStrategy(IDLE_STRATEGY.newIdleStrategy());
 
         serverAgentRunner = new AgentRunner(
                 idleStrategy,
                 throwable -> logger.error("Unhandled Aeron error", throwable),
                 null,
-                new ServerAgent(aeron, disruptor.getRingBuffer(), publicationsBySessionId, internalMessagesQueue)
+                new ServerAgent(aeron, ringBuffers, publicationsBySessionId, disconnects, router)
+        );
+    }
+
+    /**
+     * Builds the pipeline of the shard, restoring its state first.
+     *
+     * @return Ring buffer of the shard.
+     */
+    @NotNull
+    private RingBuffer<EventHolder> createShard(
+            int shard,
+            @NotNull WithdrawalUuids withdrawalUuids,
+            @NotNull ShardRouter router,
+            @NotNull WithdrawalService withdrawalService,
+            @NotNull ConcurrentHashMap<Integer, Publication> publicationsBySessionId
+    ) {
+        final var journalDir = SHARDS == 1 ? JOURNAL_DIR : new File(JOURNAL_DIR, "shard-" + shard);
+        IoUtil.ensureDirectoryExists(journalDir, "journal");
+
+        // threads are named after roles of their handlers, so pinning does not depend on the order of handlers
+        final var threadFactory = new NamedThreadFactory(AFFINITY);
+        final var disruptor = new Disruptor<>(
+                EventHolder::new,
+                RING_BUFFER_SIZE,
+                threadFactory,
+                SINGLE,
+                WAIT_STRATEGY.newWaitStrategy()
         );
+
+        final var eventContext = new EventContext();
+        final var publisher = new Publisher(eventContext);
+        final var repository = new Repository(withdrawalUuids, shard, SHARDS);
+        final var poller = new WithdrawalPoller(repository, System.nanoTime(), POLL_INITIAL_DELAY_NANOS,
+                POLL_INTERVAL_NANOS, POLL_WINDOW_NANOS, POLL_MAX_INTERVAL_NANOS);
+        final var controller = new Controller(publisher, repository, poller);
+        final long journalPosition = recover(journalDir, repository, publisher, eventContext, controller);
+
+        final var journalWriter = new JournalWriter(journalDir, JOURNAL_SEGMENT_SIZE, JOURNAL_FSYNC_POLICY,
+                JOURNAL_FSYNC_INTERVAL_NANOS);
+        final var snapshotter = new Snapshotter(journalDir, repository, SNAPSHOT_INTERVAL_NANOS, SNAPSHOT_CHUNK_SIZE,
+                journalPosition);
+
+        // a single connector subscribes to notifications, they are routed to shards by withdrawal UUIDs
+        final var connectorEventHandler = new ExternalConnectorEventHandler(withdrawalService, connectorExecutor(),
+                CONNECTOR_MAX_IN_FLIGHT, CONNECTOR_BATCH_SIZE, CONNECTOR_LINGER_NANOS,
+                CONNECTOR_NOTIFICATIONS && shard == 0, router);
+
+        final var stateMachine = disruptor
+                .handleEventsWith(processor(threadFactory, "journaller-" + shard,
+                        new JournallerEventHandler(journalWriter)))
+                .then(processor(threadFactory, "state-" + shard,
+                        new StateMachineEventHandler(eventContext, controller, snapshotter, LOG_SAMPLE_INTERVAL)));
+        final var auditEventHandler = new AuditEventHandler(new AuditLogWriter(AuditLog.file(journalDir),
+                AUDIT_CAPACITY));
+        // the cleaner waits for all handlers following the state machine, so each of them is added to the group
+        var outbound = stateMachine.then(processor(threadFactory, "publisher-" + shard + "-0",
+                publisherEventHandler(shard, 0, publicationsBySessionId)));
+        for (int partition = 1; partition < PUBLISHERS; partition++) {
+            final var publisherEventHandler = publisherEventHandler(shard, partition, publicationsBySessionId);
+            outbound = outbound.and(stateMachine.then(processor(threadFactory, "publisher-" + shard + "-" + partition,
+                    publisherEventHandler)));
+        }
+        outbound = outbound.and(stateMachine.then(
+                processor(threadFactory, "connector-" + shard, connectorEventHandler),
+                processor(threadFactory, "audit-" + shard, auditEventHandler)));
+        if (SHARDS > 1) {
+            outbound = outbound.and(stateMachine.then(processor(threadFactory, "shard-router-" + shard,
+                    new ShardEventHandler(router))));
+        }
+        outbound.then(processor(threadFactory, "cleaner-" + shard, new CleanerEventHandler()));
+
+        disruptors.add(disruptor);
+        return disruptor.getRingBuffer();
+    }
+
+    /**
+     * Runs the handler on a thread of the given name.
+     */
+    @NotNull
+    private static EventProcessorFactory<EventHolder> processor(
+            @NotNull NamedThreadFactory threadFactory,
+            @NotNull String threadName,
+            @NotNull EventHandler<EventHolder> handler
+    ) {
+        return (ringBuffer, barrierSequences) -> {
+            final var processor = new BatchEventProcessor<>(ringBuffer, ringBuffer.newBarrier(barrierSequences),
+                    handler);
+            processor.setExceptionHandler(new DisruptorExceptionHandler());
+            return threadFactory.name(processor, threadName);
+        };
+    }
+
+    @NotNull
+    private PublisherEventHandler publisherEventHandler(
+            int shard,
+            int partition,
+            @NotNull ConcurrentHashMap<Integer, Publication> publicationsBySessionId
+    ) {
+        final var counters = new OutboundCounters(aeron, SHARDS == 1 ? -1 : shard, PUBLISHERS == 1 ? -1 : partition);
+        return new PublisherEventHandler(publicationsBySessionId, disconnects, counters, SLOW_CONSUMER_POLICY,
+                SPILL_CAPACITY, MAX_LAG_NANOS, partition, PUBLISHERS);
+    }
+
+    /**
+     * Entities are partitioned between shards by ids, so the number of shards cannot change once there is a journal.
+     * Journals written before sharding are the ones of a single shard.
+     */
+    private static void checkShards() {
+        final var file = new File(JOURNAL_DIR, SHARDS_FILE_NAME).toPath();
+        try {
+            final String[] files = JOURNAL_DIR.list();
+            final int shards = Files.exists(file)
+                    ? Integer.parseInt(Files.readString(file).trim())
+                    : files == null || files.length == 0 ? SHARDS : 1;
+            if (shards != SHARDS) {
+                throw new IllegalStateException("Journal %s is written by %d shards, cannot start %d shards"
+                        .formatted(JOURNAL_DIR, shards, SHARDS));
+            }
+            if (!Files.exists(file)) {
+                Files.writeString(file, Integer.toString(SHARDS));
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @NotNull
+    private static ExecutorService connectorExecutor() {
+        return CONNECTOR_THREADS > 0
+                ? Executors.newFixedThreadPool(CONNECTOR_THREADS, new PrefixThreadFactory("connector-call-"))
+                : Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("connector-call-", 1).factory());
+    }
+
+    /**
+     * Restores the state from the latest snapshot and the journal written after it.
+     * Responses and external requests produced by replayed events are discarded, they have been sent already.
+     *
+     * @return Journal position right after the last replayed record.
+     */
+    private long recover(
+            @NotNull File journalDir,
+            @NotNull Repository repository,
+            @NotNull Publisher publisher,
+            @NotNull EventContext eventContext,
+            @NotNull Controller controller
+    ) {
+        final long snapshotPosition;
+        try {
+            snapshotPosition = SnapshotLoader.load(journalDir, repository, publisher);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        final var scratch = new EventHolder();
+        eventContext.holder = scratch;
+        final long startNanos = System.nanoTime();
+        final long[] replayed = {0};
+        final long position = JournalReader.read(journalDir, snapshotPosition, (type, buffer, offset, length) -> {
+            controller.accept(EventCodec.decode(type, buffer, offset, length));
+            scratch.clean();
+            replayed[0]++;
+        });
+        eventContext.holder = null;
+
+        logger.info("Replayed {} journal records from position {} to {} in {} ms", replayed[0], snapshotPosition,
+                position, MILLISECONDS.convert(System.nanoTime() - startNanos, NANOSECONDS));
+        return position;
     }
 
     public void start() {
-        disruptor.start();
-        AgentRunner.startOnThread(serverAgentRunner);
+        for (final var disruptor : disruptors) {
+            disruptor.start();
+            // the very first event, it re-issues external requests and transfers between shards, which may be lost
+            disruptor.getRingBuffer().publishEvent((holder, sequence) -> holder.event = new RecoveryEvent());
+        }
+        // the thread is named after the agent role, i.e. "server"
+        AgentRunner.startOnThread(serverAgentRunner, new PrefixThreadFactory("server-", AFFINITY));
     }
 
     public void shutdown() {
@@ -109,15 +427,11 @@ public class DisruptorManager {
 
         logger.info("Initiating shutdown of Disruptor");
 
-        // some event handlers may prevent disruptor.shutdown() to complete, if we don't shut down them manually
-        publisherEventHandler.shutdown();
-
-        disruptor.shutdown();
+        disruptors.forEach(Disruptor::shutdown);
 
         logger.info("Initiating shutdown of Aeron");
 
-        CloseHelper.quietClose(aeron);
-        CloseHelper.quietClose(mediaDriver);
+        CloseHelper.quietClose(transport);
 
         logger.info("Shutdown completed");
     }
@@ -1,27 +1,72 @@
 package org.example.hometask.disruptor;
 
 import org.example.hometask.messages.disruptor.Event;
+import org.example.hometask.messages.disruptor.InboundAeronFragmentEvent;
+import org.example.hometask.messages.disruptor.OutboundShardEventEnvelope;
 import org.example.hometask.messages.external.WithdrawalRequest;
 import org.example.hometask.messages.response.OutboundAeronMessageEnvelope;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
 import java.util.ArrayList;
+import java.util.List;
 
 public final class EventHolder {
 
     @Nullable
     public Event event;
 
+    /**
+     * Pre-allocated slot filled in place by {@link ServerAdapter}, see {@link InboundAeronFragmentEvent}.
+     */
     @NotNull
-    public final ArrayList<OutboundAeronMessageEnvelope> messages = new ArrayList<>(1);
+    public final InboundAeronFragmentEvent inboundFragment = new InboundAeronFragmentEvent();
 
+    /**
+     * Responses filled in place by {@link Publisher}, so replies allocate nothing in the steady state.
+     */
     @NotNull
-    public final ArrayList<WithdrawalRequest> withdrawalRequests = new ArrayList<>(1);
+    public final Slots<OutboundMessage> messages = new Slots<>(OutboundMessage::new);
+
+    @NotNull
+    public final Slots<OutboundWithdrawalRequest> withdrawalRequests = new Slots<>(OutboundWithdrawalRequest::new);
+
+    @NotNull
+    public final ArrayList<OutboundShardEventEnvelope> shardEvents = new ArrayList<>(1);
+
+    /**
+     * Journal position right after the event, set by {@link JournallerEventHandler}.
+     */
+    public long journalPosition;
+
+    /**
+     * @return Copies of the responses. Allocates, it is meant for tests and logging only.
+     */
+    @NotNull
+    public List<OutboundAeronMessageEnvelope> responses() {
+        final var responses = new ArrayList<OutboundAeronMessageEnvelope>(messages.size());
+        for (int i = 0; i < messages.size(); i++) {
+            responses.add(messages.get(i).toEnvelope());
+        }
+        return responses;
+    }
+
+    /**
+     * @return Copies of the withdrawal requests. Allocates, it is meant for tests and logging only.
+     */
+    @NotNull
+    public List<WithdrawalRequest> externalRequests() {
+        final var requests = new ArrayList<WithdrawalRequest>(withdrawalRequests.size());
+        for (int i = 0; i < withdrawalRequests.size(); i++) {
+            requests.add(withdrawalRequests.get(i).toRequest());
+        }
+        return requests;
+    }
 
     public void clean() {
         event = null;
         messages.clear();
         withdrawalRequests.clear();
+        shardEvents.clear();
     }
 }
@@ -1,74 +1,331 @@
 package org.example.hometask.disruptor;
 
 import com.lmax.disruptor.EventHandler;
+import com.lmax.disruptor.LifecycleAware;
 import org.example.hometask.external.WithdrawalService;
-import org.example.hometask.external.WithdrawalServiceStub;
 import org.example.hometask.messages.WithdrawalState;
+import org.example.hometask.messages.disruptor.CreateWithdrawalCallFailureEvent;
 import org.example.hometask.messages.disruptor.CreateWithdrawalDuplicationFailureEvent;
 import org.example.hometask.messages.disruptor.CreateWithdrawalSuccessEvent;
 import org.example.hometask.messages.disruptor.Event;
+import org.example.hometask.messages.disruptor.QueryWithdrawalCallFailureEvent;
 import org.example.hometask.messages.disruptor.QueryWithdrawalSuccessEvent;
 import org.example.hometask.messages.disruptor.QueryWithdrawalUnknownIdFailureEvent;
 import org.example.hometask.messages.external.CreateWithdrawalRequest;
 import org.example.hometask.messages.external.QueryWithdrawalRequest;
 import org.example.hometask.messages.external.WithdrawalRequest;
+import org.example.hometask.utils.Amounts;
 import org.jetbrains.annotations.NotNull;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
-import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
 
-class ExternalConnectorEventHandler implements EventHandler<EventHolder> {
+import static java.util.concurrent.TimeUnit.SECONDS;
 
-    private final WithdrawalService withdrawalService = new WithdrawalServiceStub();
+/**
+ * Calls the external withdrawal service asynchronously, so a slow call never stalls the ring buffer.
+ * <p>
+ * Calls are dispatched to the executor, at most <code>maxInFlight</code> of them at a time. Requests exceeding the
+ * limit wait in the backlog, which is drained on every event (ticks included), so the consumer thread never blocks.
+ * The backlog cannot grow indefinitely, since every withdrawal has at most one outstanding external request.
+ * Results come back to the state machine through the internal messages queue of the shard owning the withdrawal.
+ * <p>
+ * Requests of the same kind are coalesced into bulk calls of up to <code>batchSize</code> requests, each taking a
+ * single in-flight slot. Full batches are dispatched right away, partial ones at the end of a batch of events, but
+ * not before the oldest request has waited for <code>lingerNanos</code>.
+ * <p>
+ * If the service supports notifications, final states pushed by it enter the state machine the same way as query
+ * results, so funds are released right away, and polling is only a fallback for lost notifications. A single connector
+ * subscribes to them on behalf of all shards.
+ * <p>
+ * If a call fails or cannot be made, every request of it gets a failure event, so the state machine decides whether
+ * to retry it, and nothing waits for a result which never comes.
+ */
+class ExternalConnectorEventHandler implements EventHandler<EventHolder>, LifecycleAware {
+
+    protected final Logger logger = LoggerFactory.getLogger(getClass());
+
+    @NotNull
+    private final WithdrawalService withdrawalService;
+
+    @NotNull
+    private final ExecutorService executor;
+
+    private final int maxInFlight;
+
+    private final int batchSize;
+
+    private final long lingerNanos;
+
+    private final boolean notifications;
 
     @NotNull
-    private final ConcurrentLinkedQueue<Event> internalMessagesQueue;
+    private final ShardRouter router;
 
-    public ExternalConnectorEventHandler(@NotNull ConcurrentLinkedQueue<Event> internalMessagesQueue) {
-        this.internalMessagesQueue = internalMessagesQueue;
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    /**
+     * Requests waiting to be dispatched, accessed by the consumer thread only.
+     */
+    private final ArrayDeque<CreateWithdrawalRequest> createBacklog = new ArrayDeque<>();
+
+    private final ArrayDeque<QueryWithdrawalRequest> queryBacklog = new ArrayDeque<>();
+
+    /**
+     * When the oldest request of the corresponding backlog has arrived.
+     */
+    private long createBacklogSinceNanos;
+
+    private long queryBacklogSinceNanos;
+
+    private final WithdrawalRequest.Visitor<Void, RuntimeException> enqueuer = new WithdrawalRequest.Visitor<>() {
+        @Override
+        public Void visit(@NotNull CreateWithdrawalRequest request) {
+            if (createBacklog.isEmpty()) {
+                createBacklogSinceNanos = System.nanoTime();
+            }
+            createBacklog.add(request);
+            return null;
+        }
+
+        @Override
+        public Void visit(@NotNull QueryWithdrawalRequest request) {
+            if (queryBacklog.isEmpty()) {
+                queryBacklogSinceNanos = System.nanoTime();
+            }
+            queryBacklog.add(request);
+            return null;
+        }
+    };
+
+    /**
+     * Stateless, it is shared by all executor threads.
+     */
+    private final WithdrawalRequest.Visitor<Void, RuntimeException> caller = new WithdrawalRequest.Visitor<>() {
+        @Override
+        public Void visit(@NotNull CreateWithdrawalRequest request) {
+            try {
+                withdrawalService.requestWithdrawal(
+                        new WithdrawalService.WithdrawalId(request.withdrawalUuid()),
+                        new WithdrawalService.Address(request.address()),
+                        Amounts.toBigDecimal(request.amount()));
+                publish(request.withdrawalUuid(), new CreateWithdrawalSuccessEvent(request.withdrawalUuid()));
+            } catch (IllegalStateException e) {
+                publish(request.withdrawalUuid(),
+                        new CreateWithdrawalDuplicationFailureEvent(request.withdrawalUuid()));
+            }
+            return null;
+        }
+
+        @Override
+        public Void visit(@NotNull QueryWithdrawalRequest request) {
+            try {
+                final var externalState = withdrawalService.getRequestState(
+                        new WithdrawalService.WithdrawalId(request.withdrawalUuid()));
+                publish(request.withdrawalUuid(),
+                        new QueryWithdrawalSuccessEvent(request.withdrawalUuid(), toState(externalState)));
+            } catch (IllegalArgumentException e) {
+                publish(request.withdrawalUuid(), new QueryWithdrawalUnknownIdFailureEvent(request.withdrawalUuid()));
+            }
+            return null;
+        }
+    };
+
+    /**
+     * Reports requests of failed calls, stateless as well.
+     */
+    private final WithdrawalRequest.Visitor<Void, RuntimeException> failer = new WithdrawalRequest.Visitor<>() {
+        @Override
+        public Void visit(@NotNull CreateWithdrawalRequest request) {
+            publish(request.withdrawalUuid(), new CreateWithdrawalCallFailureEvent(request.withdrawalUuid()));
+            return null;
+        }
+
+        @Override
+        public Void visit(@NotNull QueryWithdrawalRequest request) {
+            publish(request.withdrawalUuid(), new QueryWithdrawalCallFailureEvent(request.withdrawalUuid()));
+            return null;
+        }
+    };
+
+    public ExternalConnectorEventHandler(
+            @NotNull WithdrawalService withdrawalService,
+            @NotNull ExecutorService executor,
+            int maxInFlight,
+            int batchSize,
+            long lingerNanos,
+            boolean notifications,
+            @NotNull ShardRouter router
+    ) {
+        if (maxInFlight <= 0) {
+            throw new IllegalArgumentException("Invalid max number of in-flight external calls: " + maxInFlight);
+        }
+        if (batchSize <= 0) {
+            throw new IllegalArgumentException("Invalid external call batch size: " + batchSize);
+        }
+        this.withdrawalService = withdrawalService;
+        this.executor = executor;
+        this.maxInFlight = maxInFlight;
+        this.batchSize = batchSize;
+        this.lingerNanos = lingerNanos;
+        this.notifications = notifications;
+        this.router = router;
     }
 
     @Override
     public void onEvent(@NotNull EventHolder holder, long sequence, boolean endOfBatch) {
+        final var requests = holder.withdrawalRequests;
+        for (int i = 0; i < requests.size(); i++) {
+            // slots are reused once the event is cleaned, while backlogs and calls outlive it
+            requests.get(i).toRequest().accept(enqueuer);
+        }
+        dispatch(endOfBatch);
+    }
 
-        for (final var request : holder.withdrawalRequests) {
-            request.accept(new WithdrawalRequest.Visitor<Void, RuntimeException>() {
-                @Override
-                public Void visit(@NotNull CreateWithdrawalRequest request) {
-                    try {
-                        withdrawalService.requestWithdrawal(
-                                new WithdrawalService.WithdrawalId(request.withdrawalUuid()),
-                                new WithdrawalService.Address(request.address()), request.amount());
-                        publish(new CreateWithdrawalSuccessEvent(request.withdrawalUuid()));
-                    } catch (IllegalStateException e) {
-                        publish(new CreateWithdrawalDuplicationFailureEvent(request.withdrawalUuid()));
-                    }
-                    return null;
-                }
+    private void dispatch(boolean endOfBatch) {
+        final long nowNanos = endOfBatch && lingerNanos > 0 ? System.nanoTime() : 0;
+        while (inFlight.get() < maxInFlight) {
+            if (isReady(createBacklog, createBacklogSinceNanos, endOfBatch, nowNanos)) {
+                final var batch = drain(createBacklog);
+                execute(batch, () -> create(batch));
+            } else if (isReady(queryBacklog, queryBacklogSinceNanos, endOfBatch, nowNanos)) {
+                final var batch = drain(queryBacklog);
+                execute(batch, () -> query(batch));
+            } else {
+                break;
+            }
+        }
+    }
 
-                @Override
-                public Void visit(@NotNull QueryWithdrawalRequest request) {
-                    try {
-                        final var externalState = withdrawalService.getRequestState(
-                                new WithdrawalService.WithdrawalId(request.withdrawalUuid()));
-                        final var state = switch (externalState) {
-                            case PROCESSING -> WithdrawalState.PROCESSING;
-                            case COMPLETED -> WithdrawalState.COMPLETED;
-                            case FAILED -> WithdrawalState.FAILED;
-                        };
-                        publish(new QueryWithdrawalSuccessEvent(request.withdrawalUuid(), state));
-                    } catch (IllegalArgumentException e) {
-                        publish(new QueryWithdrawalUnknownIdFailureEvent(request.withdrawalUuid()));
-                    }
-                    return null;
+    private boolean isReady(@NotNull ArrayDeque<?> backlog, long sinceNanos, boolean endOfBatch, long nowNanos) {
+        return backlog.size() >= batchSize
+                || !backlog.isEmpty() && endOfBatch && (lingerNanos == 0 || nowNanos - sinceNanos >= lingerNanos);
+    }
+
+    @NotNull
+    private <T> List<T> drain(@NotNull ArrayDeque<T> backlog) {
+        final var batch = new ArrayList<T>(Math.min(backlog.size(), batchSize));
+        while (!backlog.isEmpty() && batch.size() < batchSize) {
+            batch.add(backlog.poll());
+        }
+        return batch;
+    }
+
+    private void execute(@NotNull List<? extends WithdrawalRequest> batch, @NotNull Runnable call) {
+        inFlight.incrementAndGet();
+        try {
+            executor.execute(() -> {
+                try {
+                    call.run();
+                } catch (RuntimeException e) {
+                    logger.error("External call failed: {}", batch, e);
+                    fail(batch);
+                } finally {
+                    inFlight.decrementAndGet();
                 }
             });
+        } catch (RejectedExecutionException e) {
+            inFlight.decrementAndGet();
+            logger.error("External call rejected: {}", batch, e);
+            fail(batch);
+        }
+    }
+
+    private void fail(@NotNull List<? extends WithdrawalRequest> batch) {
+        for (final var request : batch) {
+            request.accept(failer);
+        }
+    }
+
+    private void create(@NotNull List<CreateWithdrawalRequest> batch) {
+        if (batch.size() == 1) {
+            caller.visit(batch.getFirst());
+            return;
+        }
+        final var requests = new ArrayList<WithdrawalService.Request>(batch.size());
+        for (final var request : batch) {
+            requests.add(new WithdrawalService.Request(
+                    new WithdrawalService.WithdrawalId(request.withdrawalUuid()),
+                    new WithdrawalService.Address(request.address()),
+                    Amounts.toBigDecimal(request.amount())));
+        }
+        final var rejected = withdrawalService.requestWithdrawals(requests);
+        for (final var request : requests) {
+            final var uuid = request.id().value();
+            publish(uuid, rejected.contains(request.id())
+                    ? new CreateWithdrawalDuplicationFailureEvent(uuid)
+                    : new CreateWithdrawalSuccessEvent(uuid));
+        }
+    }
+
+    private void query(@NotNull List<QueryWithdrawalRequest> batch) {
+        if (batch.size() == 1) {
+            caller.visit(batch.getFirst());
+            return;
+        }
+        final var ids = new ArrayList<WithdrawalService.WithdrawalId>(batch.size());
+        for (final var request : batch) {
+            ids.add(new WithdrawalService.WithdrawalId(request.withdrawalUuid()));
         }
+        final var states = withdrawalService.getRequestStates(ids);
+        for (final var id : ids) {
+            final var externalState = states.get(id);
+            publish(id.value(), externalState == null
+                    ? new QueryWithdrawalUnknownIdFailureEvent(id.value())
+                    : new QueryWithdrawalSuccessEvent(id.value(), toState(externalState)));
+        }
+    }
+
+    @NotNull
+    private static WithdrawalState toState(@NotNull WithdrawalService.WithdrawalState externalState) {
+        return switch (externalState) {
+            case PROCESSING -> WithdrawalState.PROCESSING;
+            case COMPLETED -> WithdrawalState.COMPLETED;
+            case FAILED -> WithdrawalState.FAILED;
+        };
     }
 
-    private void publish(@NotNull Event event) {
-        // InternalMessagesQueue is unbounded to prevent deadlock here.
+    private void publish(@NotNull UUID withdrawalUuid, @NotNull Event event) {
+        // InternalMessagesQueue never blocks, it overflows to prevent deadlock here.
         // Actually, Disruptor pattern could allow to pass this event back via its ring buffer, but LMAX implementation
         // used here has some implications not allowing us to do it this way.
-        internalMessagesQueue.add(event);
+        router.queue(withdrawalUuid).add(event);
+    }
+
+    @Override
+    public void onStart() {
+        if (notifications && withdrawalService.subscribe((id, externalState) ->
+                publish(id.value(), new QueryWithdrawalSuccessEvent(id.value(), toState(externalState))))) {
+            logger.info("Subscribed to withdrawal notifications");
+        } else {
+            logger.info("Withdrawal notifications are not used, states are polled");
+        }
+    }
+
+    @Override
+    public void onShutdown() {
+        if (notifications) {
+            withdrawalService.unsubscribe();
+        }
+        if (!createBacklog.isEmpty() || !queryBacklog.isEmpty()) {
+            logger.warn("Dropping {} external requests not dispatched yet",
+                    createBacklog.size() + queryBacklog.size());
+        }
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(1, SECONDS)) {
+                logger.warn("Interrupting {} external calls in flight", inFlight.get());
+                executor.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
     }
 }
@@ -0,0 +1,45 @@
+package org.example.hometask.disruptor;
+
+import org.agrona.concurrent.BackoffIdleStrategy;
+import org.agrona.concurrent.BusySpinIdleStrategy;
+import org.agrona.concurrent.IdleStrategy;
+import org.agrona.concurrent.SleepingIdleStrategy;
+import org.agrona.concurrent.YieldingIdleStrategy;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * How the server agent idles when neither Aeron nor the internal messages queue have anything for it.
+ * Internal messages wake the agent up from parking, so only Aeron messages are delayed by idling.
+ */
+public enum IdleStrategyType {
+
+    /**
+     * Spin. The lowest latency, the agent thread takes a whole core.
+     */
+    BUSY_SPIN,
+
+    /**
+     * Yield the core to other threads, if any.
+     */
+    YIELDING,
+
+    /**
+     * Spin, yield, then park for growing periods, up to a millisecond.
+     */
+    BACKOFF,
+
+    /**
+     * Park for a fixed period of 100 microseconds.
+     */
+    SLEEPING;
+
+    @NotNull
+    public IdleStrategy newIdleStrategy() {
+        return switch (this) {
+            case BUSY_SPIN -> new BusySpinIdleStrategy();
+            case YIELDING -> new YieldingIdleStrategy();
+            case BACKOFF -> new BackoffIdleStrategy();
+            case SLEEPING -> new SleepingIdleStrategy(100_000);
+        };
+    }
+}
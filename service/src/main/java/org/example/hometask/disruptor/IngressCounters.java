@@ -0,0 +1,90 @@
+package org.example.hometask.disruptor;
+
+import io.aeron.Aeron;
+import io.aeron.Counter;
+import org.agrona.CloseHelper;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Back-pressure counters of the ingress, visible to AeronStat and other tools reading the counters file.
+ * All of them are written by the ingress thread only.
+ */
+public final class IngressCounters implements AutoCloseable {
+
+    public static final int PAUSED_POLLS_TYPE_ID = 1001;
+    public static final int REJECTED_REQUESTS_TYPE_ID = 1002;
+    public static final int DROPPED_BUSY_RESPONSES_TYPE_ID = 1003;
+    public static final int DEFERRED_INTERNAL_MESSAGES_TYPE_ID = 1004;
+    public static final int OVERFLOWED_INTERNAL_MESSAGES_TYPE_ID = 1005;
+    public static final int CONNECTED_SESSIONS_TYPE_ID = 1006;
+    public static final int REFUSED_SESSIONS_TYPE_ID = 1007;
+    public static final int EVICTED_SESSIONS_TYPE_ID = 1008;
+
+    /**
+     * Duty cycles which skipped or limited polling of the subscription due to lack of free slots.
+     */
+    @NotNull
+    public final Counter pausedPolls;
+
+    /**
+     * Requests answered with ServerBusy.
+     */
+    @NotNull
+    public final Counter rejectedRequests;
+
+    /**
+     * ServerBusy responses which could not be sent since the session was unknown or back-pressured itself.
+     */
+    @NotNull
+    public final Counter droppedBusyResponses;
+
+    /**
+     * Duty cycles which could not publish internally generated messages due to lack of free slots.
+     */
+    @NotNull
+    public final Counter deferredInternalMessages;
+
+    /**
+     * Internally generated messages which went to the overflow lane of the queue, since its bounded lane was full.
+     */
+    @NotNull
+    public final Counter overflowedInternalMessages;
+
+    /**
+     * Sessions having a response publication at the moment.
+     */
+    @NotNull
+    public final Counter connectedSessions;
+
+    /**
+     * Connect requests ignored since there were too many sessions.
+     */
+    @NotNull
+    public final Counter refusedSessions;
+
+    /**
+     * Sessions whose response publications were closed since they had sent nothing for too long.
+     */
+    @NotNull
+    public final Counter evictedSessions;
+
+    public IngressCounters(@NotNull Aeron aeron) {
+        pausedPolls = aeron.addCounter(PAUSED_POLLS_TYPE_ID, "Ingress polls paused: ring buffer full");
+        rejectedRequests = aeron.addCounter(REJECTED_REQUESTS_TYPE_ID, "Ingress requests rejected: server busy");
+        droppedBusyResponses = aeron.addCounter(DROPPED_BUSY_RESPONSES_TYPE_ID,
+                "Ingress server busy responses dropped");
+        deferredInternalMessages = aeron.addCounter(DEFERRED_INTERNAL_MESSAGES_TYPE_ID,
+                "Ingress internal messages deferred: ring buffer full");
+        overflowedInternalMessages = aeron.addCounter(OVERFLOWED_INTERNAL_MESSAGES_TYPE_ID,
+                "Ingress internal messages overflowed: queue full");
+        connectedSessions = aeron.addCounter(CONNECTED_SESSIONS_TYPE_ID, "Ingress sessions connected");
+        refusedSessions = aeron.addCounter(REFUSED_SESSIONS_TYPE_ID, "Ingress sessions refused: too many sessions");
+        evictedSessions = aeron.addCounter(EVICTED_SESSIONS_TYPE_ID, "Ingress sessions evicted: idle");
+    }
+
+    @Override
+    public void close() {
+        CloseHelper.closeAll(pausedPolls, rejectedRequests, droppedBusyResponses, deferredInternalMessages,
+                overflowedInternalMessages, connectedSessions, refusedSessions, evictedSessions);
+    }
+}
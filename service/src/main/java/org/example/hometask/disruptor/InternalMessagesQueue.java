@@ -0,0 +1,126 @@
+package org.example.hometask.disruptor;
+
+import org.agrona.concurrent.IdleStrategy;
+import org.agrona.concurrent.ManyToOneConcurrentArrayQueue;
+import org.example.hometask.messages.disruptor.Event;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Internally generated events (results of external calls, ticks) on their way to the ring buffer. There are many
+ * producers, and the server agent is the only consumer.
+ * <p>
+ * Events go to the bounded array-backed lane, which allocates nothing. Producers must never block though, otherwise
+ * the ring buffer consumers could deadlock with the server agent, so events go to the unbounded overflow lane when the
+ * bounded one is full. Once the overflow lane is used, it is used until drained, so events of every producer stay in
+ * order. We have guarantees it will not grow indefinitely, since every withdrawal has at most one outstanding external
+ * request.
+ * <p>
+ * Producers wake the consumer up when it idles, see {@link #idleStrategy(IdleStrategy, InternalMessagesQueue...)}, so it
+ * may back off without delaying internal events.
+ */
+public class InternalMessagesQueue {
+
+    @NotNull
+    private final ManyToOneConcurrentArrayQueue<Event> lane;
+
+    @NotNull
+    private final ConcurrentLinkedQueue<Event> overflowLane = new ConcurrentLinkedQueue<>();
+
+    private final AtomicLong overflowed = new AtomicLong();
+
+    @Nullable
+    private volatile Thread consumer;
+
+    private volatile boolean idle;
+
+    /**
+     * @param capacity Capacity of the bounded lane, rounded up to a power of 2.
+     */
+    public InternalMessagesQueue(int capacity) {
+        this.lane = new ManyToOneConcurrentArrayQueue<>(capacity);
+    }
+
+    public void add(@NotNull Event event) {
+        if (!overflowLane.isEmpty() || !lane.offer(event)) {
+            overflowLane.add(event);
+            overflowed.incrementAndGet();
+        }
+        // both the offer above and the check of emptiness by the consumer are volatile, no wake-up is missed
+        final var consumer = this.consumer;
+        if (idle && consumer != null && consumer != Thread.currentThread()) {
+            LockSupport.unpark(consumer);
+        }
+    }
+
+    /**
+     * For the consumer only.
+     */
+    @Nullable
+    public Event poll() {
+        final var event = lane.poll();
+        return event != null ? event : overflowLane.poll();
+    }
+
+    public boolean isEmpty() {
+        return lane.isEmpty() && overflowLane.isEmpty();
+    }
+
+    /**
+     * @return Number of events ever put to the overflow lane.
+     */
+    public long overflowed() {
+        return overflowed.get();
+    }
+
+    /**
+     * Wraps the idle strategy of the consumer of the queues, so that it is interrupted by new events in any of them.
+     * Only parking is interrupted, e.g. by {@link org.agrona.concurrent.BackoffIdleStrategy}, spinning and yielding
+     * strategies do not need it.
+     */
+    @NotNull
+    public static IdleStrategy idleStrategy(@NotNull IdleStrategy delegate, @NotNull InternalMessagesQueue... queues) {
+        return new IdleStrategy() {
+            @Override
+            public void idle(int workCount) {
+                if (workCount > 0) {
+                    reset();
+                } else {
+                    idle();
+                }
+            }
+
+            @Override
+            public void idle() {
+                boolean empty = true;
+                for (final var queue : queues) {
+                    if (queue.consumer == null) {
+                        queue.consumer = Thread.currentThread();
+                    }
+                    queue.idle = true;
+                    empty &= queue.isEmpty();
+                }
+                if (empty) {
+                    delegate.idle();
+                }
+                for (final var queue : queues) {
+                    queue.idle = false;
+                }
+            }
+
+            @Override
+            public void reset() {
+                delegate.reset();
+            }
+
+            @Override
+            public String alias() {
+                return delegate.alias();
+            }
+        };
+    }
+}
@@ -0,0 +1,47 @@
+package org.example.hometask.disruptor;
+
+import com.lmax.disruptor.EventHandler;
+import com.lmax.disruptor.LifecycleAware;
+import org.example.hometask.journal.EventCodec;
+import org.example.hometask.journal.JournalWriter;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Appends every inbound event to the journal before the state machine processes it, so the state can be restored
+ * by replaying the journal. Records are forced to the storage according to the fsync policy once per batch.
+ */
+class JournallerEventHandler implements EventHandler<EventHolder>, LifecycleAware {
+
+    @NotNull
+    private final JournalWriter writer;
+
+    @NotNull
+    private final EventCodec codec;
+
+    public JournallerEventHandler(@NotNull JournalWriter writer) {
+        this.writer = writer;
+        this.codec = new EventCodec(writer);
+    }
+
+    @Override
+    public void onEvent(@NotNull EventHolder holder, long sequence, boolean endOfBatch) {
+        final var event = holder.event;
+        if (event != null) {
+            codec.encode(event);
+        }
+        holder.journalPosition = writer.position();
+        if (endOfBatch) {
+            writer.endOfBatch();
+        }
+    }
+
+    @Override
+    public void onStart() {
+        // empty
+    }
+
+    @Override
+    public void onShutdown() {
+        writer.close();
+    }
+}
@@ -0,0 +1,84 @@
+package org.example.hometask.disruptor;
+
+import io.aeron.Aeron;
+import io.aeron.Counter;
+import org.agrona.CloseHelper;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Slow consumer counters of a publisher, visible to AeronStat and other tools reading the counters file.
+ * All of them are written by the publisher thread only.
+ */
+public final class OutboundCounters implements AutoCloseable {
+
+    public static final int LAGGING_SESSIONS_TYPE_ID = 1011;
+    public static final int DROPPED_RESPONSES_TYPE_ID = 1012;
+    public static final int DISCONNECTED_SESSIONS_TYPE_ID = 1013;
+    public static final int SESSION_SPILLED_BYTES_TYPE_ID = 1014;
+    public static final int SESSION_DROPPED_RESPONSES_TYPE_ID = 1015;
+
+    @NotNull
+    private final Aeron aeron;
+
+    @NotNull
+    private final String prefix;
+
+    /**
+     * Sessions having spilled responses at the moment.
+     */
+    @NotNull
+    public final Counter laggingSessions;
+
+    /**
+     * Responses discarded by the slow consumer policy, besides the ones to unknown sessions.
+     */
+    @NotNull
+    public final Counter droppedResponses;
+
+    /**
+     * Sessions disconnected by the slow consumer policy.
+     */
+    @NotNull
+    public final Counter disconnectedSessions;
+
+    /**
+     * @param shard     Shard of the publisher, or -1 if there is a single one.
+     * @param publisher Publisher of the shard, or -1 if there is a single one.
+     */
+    public OutboundCounters(@NotNull Aeron aeron, int shard, int publisher) {
+        this.aeron = aeron;
+        this.prefix = "Outbound " + (shard < 0 ? "" : "shard " + shard + " ")
+                + (publisher < 0 ? "" : "publisher " + publisher + " ");
+        laggingSessions = aeron.addCounter(LAGGING_SESSIONS_TYPE_ID, prefix + "lagging sessions");
+        droppedResponses = aeron.addCounter(DROPPED_RESPONSES_TYPE_ID, prefix + "responses dropped: slow consumer");
+        disconnectedSessions = aeron.addCounter(DISCONNECTED_SESSIONS_TYPE_ID,
+                prefix + "sessions disconnected: slow consumer");
+    }
+
+    /**
+     * Counters of a single session, they exist while it is lagging only.
+     */
+    @NotNull
+    public SessionCounters addSessionCounters(int sessionId) {
+        return new SessionCounters(
+                aeron.addCounter(SESSION_SPILLED_BYTES_TYPE_ID, prefix + "session " + sessionId + " spilled bytes"),
+                aeron.addCounter(SESSION_DROPPED_RESPONSES_TYPE_ID,
+                        prefix + "session " + sessionId + " responses dropped"));
+    }
+
+    @Override
+    public void close() {
+        CloseHelper.closeAll(laggingSessions, droppedResponses, disconnectedSessions);
+    }
+
+    public record SessionCounters(
+            @NotNull Counter spilledBytes,
+            @NotNull Counter droppedResponses
+    ) implements AutoCloseable {
+
+        @Override
+        public void close() {
+            CloseHelper.closeAll(spilledBytes, droppedResponses);
+        }
+    }
+}
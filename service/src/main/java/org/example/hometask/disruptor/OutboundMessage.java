@@ -0,0 +1,159 @@
+package org.example.hometask.disruptor;
+
+import org.example.hometask.api.AccountCreatedEncoder;
+import org.example.hometask.api.AccountDataEncoder;
+import org.example.hometask.api.AccountTransferDoneEncoder;
+import org.example.hometask.api.AccountWithdrawalDoneEncoder;
+import org.example.hometask.api.BatchResultCode;
+import org.example.hometask.api.BatchResultEncoder;
+import org.example.hometask.api.InvalidAmountEncoder;
+import org.example.hometask.api.NoFundsEncoder;
+import org.example.hometask.api.NoSuchEntityEncoder;
+import org.example.hometask.api.SameAccountEncoder;
+import org.example.hometask.api.WithdrawalDataEncoder;
+import org.example.hometask.messages.WithdrawalState;
+import org.example.hometask.messages.response.AccountCreatedAeronResponse;
+import org.example.hometask.messages.response.AccountDataAeronResponse;
+import org.example.hometask.messages.response.AccountTransferDoneAeronResponse;
+import org.example.hometask.messages.response.AccountWithdrawalDoneAeronResponse;
+import org.example.hometask.messages.response.AeronResponse;
+import org.example.hometask.messages.response.BatchResultAeronResponse;
+import org.example.hometask.messages.response.InvalidAmountAeronResponse;
+import org.example.hometask.messages.response.NoFundsAeronResponse;
+import org.example.hometask.messages.response.NoSuchEntityAeronResponse;
+import org.example.hometask.messages.response.OutboundAeronMessageEnvelope;
+import org.example.hometask.messages.response.SameAccountAeronResponse;
+import org.example.hometask.messages.response.WithdrawalDataAeronResponse;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+
+/**
+ * Mutable response to a client, filled in place by {@link Publisher}, see {@link EventHolder#messages}. The kind of
+ * the response is the SBE template id of its message, fields not used by the kind hold stale values.
+ */
+public final class OutboundMessage {
+
+    /**
+     * Max number of results of a batch result, further results go to the next one. It only bounds the arrays, the
+     * publisher splits batch results further to fit into frames of the publication, see {@link PublisherEventHandler}.
+     */
+    public static final int MAX_RESULTS = 256;
+
+    int sessionId;
+
+    int templateId;
+
+    long trackingId;
+
+    /**
+     * Id of the created account or of the withdrawal.
+     */
+    long entityId;
+
+    /**
+     * Available amount of an account or amount of a withdrawal.
+     */
+    long amount;
+
+    long reservedAmount;
+
+    @Nullable
+    WithdrawalState withdrawalState;
+
+    /**
+     * Number of results of a batch result, they are kept in parallel arrays allocated on first use.
+     */
+    int results;
+
+    long[] resultTrackingIds;
+
+    BatchResultCode[] resultCodes;
+
+    long[] resultAccountIds;
+
+    @NotNull
+    OutboundMessage set(int sessionId, int templateId, long trackingId) {
+        this.sessionId = sessionId;
+        this.templateId = templateId;
+        this.trackingId = trackingId;
+        this.results = 0;
+        return this;
+    }
+
+    /**
+     * Turns the message into an empty batch result.
+     */
+    void batchResult(int sessionId) {
+        set(sessionId, BatchResultEncoder.TEMPLATE_ID, 0);
+        if (resultCodes == null) {
+            resultTrackingIds = new long[MAX_RESULTS];
+            resultCodes = new BatchResultCode[MAX_RESULTS];
+            resultAccountIds = new long[MAX_RESULTS];
+        }
+    }
+
+    /**
+     * @return Whether the batch result is full now.
+     */
+    boolean addResult(long trackingId, @NotNull BatchResultCode code, long accountId) {
+        resultTrackingIds[results] = trackingId;
+        resultCodes[results] = code;
+        resultAccountIds[results] = accountId;
+        return ++results == MAX_RESULTS;
+    }
+
+    public int sessionId() {
+        return sessionId;
+    }
+
+    /**
+     * Allocates, it is meant for tests and logging only.
+     */
+    @NotNull
+    public OutboundAeronMessageEnvelope toEnvelope() {
+        return new OutboundAeronMessageEnvelope(sessionId, toResponse());
+    }
+
+    @NotNull
+    private AeronResponse toResponse() {
+        return switch (templateId) {
+            case AccountCreatedEncoder.TEMPLATE_ID -> new AccountCreatedAeronResponse(trackingId, entityId);
+            case AccountTransferDoneEncoder.TEMPLATE_ID -> new AccountTransferDoneAeronResponse(trackingId);
+            case AccountWithdrawalDoneEncoder.TEMPLATE_ID ->
+                    new AccountWithdrawalDoneAeronResponse(trackingId, entityId);
+            case NoFundsEncoder.TEMPLATE_ID -> new NoFundsAeronResponse(trackingId);
+            case InvalidAmountEncoder.TEMPLATE_ID -> new InvalidAmountAeronResponse(trackingId);
+            case NoSuchEntityEncoder.TEMPLATE_ID -> new NoSuchEntityAeronResponse(trackingId);
+            case SameAccountEncoder.TEMPLATE_ID -> new SameAccountAeronResponse(trackingId);
+            case AccountDataEncoder.TEMPLATE_ID -> new AccountDataAeronResponse(trackingId, amount, reservedAmount);
+            case WithdrawalDataEncoder.TEMPLATE_ID -> {
+                assert withdrawalState != null;
+                yield new WithdrawalDataAeronResponse(trackingId, amount, withdrawalState);
+            }
+            case BatchResultEncoder.TEMPLATE_ID -> {
+                final var list = new ArrayList<AeronResponse>(results);
+                for (int i = 0; i < results; i++) {
+                    final long resultTrackingId = resultTrackingIds[i];
+                    list.add(switch (resultCodes[i]) {
+                        case ACCOUNT_CREATED -> new AccountCreatedAeronResponse(resultTrackingId, resultAccountIds[i]);
+                        case ACCOUNT_TRANSFER_DONE -> new AccountTransferDoneAeronResponse(resultTrackingId);
+                        case NO_FUNDS -> new NoFundsAeronResponse(resultTrackingId);
+                        case INVALID_AMOUNT -> new InvalidAmountAeronResponse(resultTrackingId);
+                        case NO_SUCH_ENTITY -> new NoSuchEntityAeronResponse(resultTrackingId);
+                        case SAME_ACCOUNT -> new SameAccountAeronResponse(resultTrackingId);
+                        case NULL_VAL -> throw new IllegalStateException("Null result code");
+                    });
+                }
+                yield new BatchResultAeronResponse(list);
+            }
+            default -> throw new IllegalStateException("Unknown template id: " + templateId);
+        };
+    }
+
+    @Override
+    public String toString() {
+        return toEnvelope().toString();
+    }
+}
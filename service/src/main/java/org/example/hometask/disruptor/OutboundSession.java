@@ -0,0 +1,172 @@
+package org.example.hometask.disruptor;
+
+import io.aeron.Publication;
+import org.agrona.BufferUtil;
+import org.agrona.CloseHelper;
+import org.agrona.concurrent.UnsafeBuffer;
+import org.example.hometask.api.MessageHeaderDecoder;
+import org.example.hometask.utils.Framing;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+
+/**
+ * Outbound state of a session, accessed by the publisher thread only.
+ * <p>
+ * Responses which cannot be sent since the publication is back-pressured are encoded into the spill area of the
+ * session, one after another, and sent before any newer response of the session. The spill area is allocated when
+ * the session falls behind for the first time, and it never grows.
+ */
+final class OutboundSession {
+
+    final int sessionId;
+
+    /**
+     * Session id boxed once, so that looking up the publication of the session does not allocate.
+     */
+    @NotNull
+    final Integer key;
+
+    /**
+     * Responses collected since the start of the batch, they have not been sent or spilled yet.
+     */
+    final ArrayList<OutboundMessage> pending = new ArrayList<>();
+
+    @Nullable
+    private UnsafeBuffer spill;
+
+    private int spillHead;
+
+    private int spillTail;
+
+    /**
+     * Number of responses in the spill area.
+     */
+    int spilledResponses;
+
+    /**
+     * When the spill area stopped being empty.
+     */
+    long spilledSinceNanos;
+
+    /**
+     * Whether the session is retried at the end of every batch, it has spilled responses or had them just dropped.
+     */
+    boolean lagging;
+
+    /**
+     * Whether the slow consumer policy has marked the session as lagging already.
+     */
+    boolean markedLagging;
+
+    /**
+     * Publication the session has been disconnected from as a slow consumer, responses are dropped while it still
+     * serves the session.
+     */
+    @Nullable
+    Publication disconnected;
+
+    /**
+     * Counters of the session while it is lagging, see {@link OutboundCounters#addSessionCounters}.
+     */
+    @Nullable
+    OutboundCounters.SessionCounters counters;
+
+    OutboundSession(int sessionId) {
+        this.sessionId = sessionId;
+        this.key = sessionId;
+    }
+
+    boolean isSpilled() {
+        return spillTail > spillHead;
+    }
+
+    int spilledBytes() {
+        return spillTail - spillHead;
+    }
+
+    /**
+     * Reserves space for a response at the tail of the spill area, it is spilled once {@link #commit} is called.
+     *
+     * @return Offset of the reserved space in {@link #spill()}, or -1 if the spill area has no room for it.
+     */
+    int reserve(int length, int capacity) {
+        if (spill == null) {
+            spill = new UnsafeBuffer(BufferUtil.allocateDirectAligned(capacity, Long.BYTES));
+        }
+        if (spillTail + length > capacity && spillHead > 0) {
+            // rarely needed, the spill area is either drained completely or the session is lagging anyway
+            spill.putBytes(0, spill, spillHead, spilledBytes());
+            spillTail -= spillHead;
+            spillHead = 0;
+        }
+        return spillTail + length > capacity ? -1 : spillTail;
+    }
+
+    void commit(int length) {
+        spillTail += length;
+        spilledResponses++;
+    }
+
+    @NotNull
+    UnsafeBuffer spill() {
+        assert spill != null;
+        return spill;
+    }
+
+    /**
+     * Sends spilled responses, packing as many of them into a frame as the max payload length allows.
+     *
+     * @return Whether the spill area is empty now.
+     */
+    boolean drain(@NotNull Publication publication, @NotNull MessageHeaderDecoder headerDecoder) {
+
+        final var spill = spill();
+        final int maxPayloadLength = publication.maxPayloadLength();
+        while (isSpilled()) {
+
+            int length = 0;
+            int responses = 0;
+            while (spillHead + length < spillTail) {
+                final int responseLength = Framing.messageLength(headerDecoder, spill, spillHead + length);
+                if (responses > 0 && length + responseLength > maxPayloadLength) {
+                    break;
+                }
+                length += responseLength;
+                responses++;
+            }
+
+            long result;
+            do {
+                result = publication.offer(spill, spillHead, length);
+            } while (result == Publication.ADMIN_ACTION);
+            if (result < 0) {
+                return false;
+            }
+            spillHead += length;
+            spilledResponses -= responses;
+        }
+        discard();
+        return true;
+    }
+
+    /**
+     * Empties the spill area, it is kept allocated.
+     *
+     * @return Number of discarded responses.
+     */
+    int discard() {
+        final int discarded = spilledResponses;
+        spillHead = 0;
+        spillTail = 0;
+        spilledResponses = 0;
+        markedLagging = false;
+        return discarded;
+    }
+
+    void closeCounters() {
+        CloseHelper.quietClose(counters);
+        counters = null;
+    }
+}
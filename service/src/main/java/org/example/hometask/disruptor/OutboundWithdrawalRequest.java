@@ -0,0 +1,58 @@
+package org.example.hometask.disruptor;
+
+import org.example.hometask.messages.external.CreateWithdrawalRequest;
+import org.example.hometask.messages.external.QueryWithdrawalRequest;
+import org.example.hometask.messages.external.WithdrawalRequest;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.UUID;
+
+/**
+ * Mutable request to the external withdrawal service, filled in place by {@link Publisher}, see
+ * {@link EventHolder#withdrawalRequests}.
+ */
+public final class OutboundWithdrawalRequest {
+
+    /**
+     * Whether it creates the withdrawal rather than queries its state.
+     */
+    boolean create;
+
+    UUID withdrawalUuid;
+
+    /**
+     * Address and amount of a withdrawal being created.
+     */
+    String address;
+
+    long amount;
+
+    void create(@NotNull UUID withdrawalUuid, @NotNull String address, long amount) {
+        this.create = true;
+        this.withdrawalUuid = withdrawalUuid;
+        this.address = address;
+        this.amount = amount;
+    }
+
+    void query(@NotNull UUID withdrawalUuid) {
+        this.create = false;
+        this.withdrawalUuid = withdrawalUuid;
+        this.address = null;
+        this.amount = 0;
+    }
+
+    /**
+     * Copies the request, so it outlives the slot. Allocates, it is meant for consumers making slow calls anyway.
+     */
+    @NotNull
+    public WithdrawalRequest toRequest() {
+        return create
+                ? new CreateWithdrawalRequest(withdrawalUuid, address, amount)
+                : new QueryWithdrawalRequest(withdrawalUuid);
+    }
+
+    @Override
+    public String toString() {
+        return toRequest().toString();
+    }
+}
@@ -1,24 +1,146 @@
 package org.example.hometask.disruptor;
 
-import org.example.hometask.messages.external.WithdrawalRequest;
-import org.example.hometask.messages.response.AeronResponse;
-import org.example.hometask.messages.response.OutboundAeronMessageEnvelope;
+import org.example.hometask.api.AccountCreatedEncoder;
+import org.example.hometask.api.AccountDataEncoder;
+import org.example.hometask.api.AccountTransferDoneEncoder;
+import org.example.hometask.api.AccountWithdrawalDoneEncoder;
+import org.example.hometask.api.BatchResultCode;
+import org.example.hometask.api.InvalidAmountEncoder;
+import org.example.hometask.api.NoFundsEncoder;
+import org.example.hometask.api.NoSuchEntityEncoder;
+import org.example.hometask.api.SameAccountEncoder;
+import org.example.hometask.api.WithdrawalDataEncoder;
+import org.example.hometask.messages.WithdrawalState;
+import org.example.hometask.messages.disruptor.Event;
+import org.example.hometask.messages.disruptor.OutboundShardEventEnvelope;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
+import java.util.UUID;
+
+/**
+ * Publishes results of the state machine to the current event holder. Responses and external requests are filled into
+ * slots owned by the holder, see {@link Slots}, so publishing them allocates nothing in the steady state.
+ */
 public class Publisher {
 
     @NotNull
     private final EventContext eventContext;
 
+    /**
+     * Whether a batch request is being processed, see {@link #beginBatch}.
+     */
+    private boolean batching;
+
+    private int batchSessionId;
+
+    /**
+     * Batch result collecting results until it is full, if any.
+     */
+    @Nullable
+    private OutboundMessage batchResult;
+
     public Publisher(@NotNull EventContext eventContext) {
         this.eventContext = eventContext;
     }
 
-    public void publish(int sessionId, @NotNull AeronResponse message) {
-        eventContext.holder().messages.add(new OutboundAeronMessageEnvelope(sessionId, message));
+    public void accountCreated(int sessionId, long trackingId, long accountId) {
+        if (!collect(sessionId, trackingId, BatchResultCode.ACCOUNT_CREATED, accountId)) {
+            add(sessionId, AccountCreatedEncoder.TEMPLATE_ID, trackingId).entityId = accountId;
+        }
+    }
+
+    public void accountTransferDone(int sessionId, long trackingId) {
+        if (!collect(sessionId, trackingId, BatchResultCode.ACCOUNT_TRANSFER_DONE, 0)) {
+            add(sessionId, AccountTransferDoneEncoder.TEMPLATE_ID, trackingId);
+        }
+    }
+
+    public void accountWithdrawalDone(int sessionId, long trackingId, long withdrawalId) {
+        add(sessionId, AccountWithdrawalDoneEncoder.TEMPLATE_ID, trackingId).entityId = withdrawalId;
+    }
+
+    public void noFunds(int sessionId, long trackingId) {
+        if (!collect(sessionId, trackingId, BatchResultCode.NO_FUNDS, 0)) {
+            add(sessionId, NoFundsEncoder.TEMPLATE_ID, trackingId);
+        }
+    }
+
+    public void invalidAmount(int sessionId, long trackingId) {
+        if (!collect(sessionId, trackingId, BatchResultCode.INVALID_AMOUNT, 0)) {
+            add(sessionId, InvalidAmountEncoder.TEMPLATE_ID, trackingId);
+        }
+    }
+
+    public void noSuchEntity(int sessionId, long trackingId) {
+        if (!collect(sessionId, trackingId, BatchResultCode.NO_SUCH_ENTITY, 0)) {
+            add(sessionId, NoSuchEntityEncoder.TEMPLATE_ID, trackingId);
+        }
+    }
+
+    public void sameAccount(int sessionId, long trackingId) {
+        if (!collect(sessionId, trackingId, BatchResultCode.SAME_ACCOUNT, 0)) {
+            add(sessionId, SameAccountEncoder.TEMPLATE_ID, trackingId);
+        }
+    }
+
+    public void accountData(int sessionId, long trackingId, long availableAmount, long reservedAmount) {
+        final var message = add(sessionId, AccountDataEncoder.TEMPLATE_ID, trackingId);
+        message.amount = availableAmount;
+        message.reservedAmount = reservedAmount;
+    }
+
+    public void withdrawalData(int sessionId, long trackingId, long amount, @NotNull WithdrawalState state) {
+        final var message = add(sessionId, WithdrawalDataEncoder.TEMPLATE_ID, trackingId);
+        message.amount = amount;
+        message.withdrawalState = state;
+    }
+
+    /**
+     * Collects responses to the session into batch results until {@link #endBatch()}, rather than publishing them one
+     * by one. Responses which a batch result cannot carry are published as usual.
+     */
+    public void beginBatch(int sessionId) {
+        batching = true;
+        batchSessionId = sessionId;
+    }
+
+    public void endBatch() {
+        batchResult = null;
+        batching = false;
+    }
+
+    public void createWithdrawal(@NotNull UUID withdrawalUuid, @NotNull String address, long amount) {
+        eventContext.holder().withdrawalRequests.add().create(withdrawalUuid, address, amount);
+    }
+
+    public void queryWithdrawal(@NotNull UUID withdrawalUuid) {
+        eventContext.holder().withdrawalRequests.add().query(withdrawalUuid);
+    }
+
+    public void publish(int shard, @NotNull Event event) {
+        eventContext.holder().shardEvents.add(new OutboundShardEventEnvelope(shard, event));
+    }
+
+    @NotNull
+    private OutboundMessage add(int sessionId, int templateId, long trackingId) {
+        return eventContext.holder().messages.add().set(sessionId, templateId, trackingId);
     }
 
-    public void publish(@NotNull WithdrawalRequest request) {
-        eventContext.holder().withdrawalRequests.add(request);
+    /**
+     * @return Whether the result is collected into a batch result, rather than to be published on its own.
+     */
+    private boolean collect(int sessionId, long trackingId, @NotNull BatchResultCode code, long accountId) {
+        if (!batching || sessionId != batchSessionId) {
+            return false;
+        }
+        if (batchResult == null) {
+            batchResult = eventContext.holder().messages.add();
+            batchResult.batchResult(sessionId);
+        }
+        if (batchResult.addResult(trackingId, code, accountId)) {
+            batchResult = null;
+        }
+        return true;
     }
 }
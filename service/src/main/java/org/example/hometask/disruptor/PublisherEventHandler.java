@@ -1,45 +1,94 @@
 package org.example.hometask.disruptor;
 
 import com.lmax.disruptor.EventHandler;
+import com.lmax.disruptor.LifecycleAware;
 import io.aeron.Publication;
-import org.agrona.ExpandableDirectByteBuffer;
+import io.aeron.logbuffer.BufferClaim;
+import org.agrona.CloseHelper;
+import org.agrona.MutableDirectBuffer;
+import org.agrona.collections.Hashing;
+import org.agrona.collections.Int2ObjectHashMap;
+import org.agrona.concurrent.ManyToOneConcurrentLinkedQueue;
 import org.example.hometask.api.AccountCreatedEncoder;
 import org.example.hometask.api.AccountDataEncoder;
 import org.example.hometask.api.AccountTransferDoneEncoder;
 import org.example.hometask.api.AccountWithdrawalDoneEncoder;
+import org.example.hometask.api.BatchResultEncoder;
 import org.example.hometask.api.InvalidAmountEncoder;
+import org.example.hometask.api.MessageHeaderDecoder;
 import org.example.hometask.api.MessageHeaderEncoder;
 import org.example.hometask.api.NoFundsEncoder;
 import org.example.hometask.api.NoSuchEntityEncoder;
 import org.example.hometask.api.SameAccountEncoder;
 import org.example.hometask.api.WithdrawalDataEncoder;
 import org.example.hometask.api.WithdrawalState;
-import org.example.hometask.messages.response.AccountCreatedAeronResponse;
-import org.example.hometask.messages.response.AccountDataAeronResponse;
-import org.example.hometask.messages.response.AccountTransferDoneAeronResponse;
-import org.example.hometask.messages.response.AccountWithdrawalDoneAeronResponse;
-import org.example.hometask.messages.response.AeronResponse;
-import org.example.hometask.messages.response.InvalidAmountAeronResponse;
-import org.example.hometask.messages.response.NoFundsAeronResponse;
-import org.example.hometask.messages.response.NoSuchEntityAeronResponse;
-import org.example.hometask.messages.response.SameAccountAeronResponse;
-import org.example.hometask.messages.response.WithdrawalDataAeronResponse;
 import org.jetbrains.annotations.NotNull;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.ArrayList;
 import java.util.concurrent.ConcurrentHashMap;
 
-import static org.example.hometask.utils.Utils.setBigDecimal;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+import static org.example.hometask.disruptor.SlowConsumerPolicy.DISCONNECT;
+import static org.example.hometask.utils.Amounts.toDecimal;
 
-class PublisherEventHandler implements EventHandler<EventHolder> {
+/**
+ * Sends responses to clients. Responses are encoded right into the term buffers of publications, so they are never
+ * copied. Responses to the same session are collected until the end of the batch of events, then sent in as few
+ * frames as possible: a frame carries as many messages back-to-back as its max payload length allows, so clients have
+ * to read all messages of a fragment.
+ * <p>
+ * The publisher never waits for a slow client, since the cleaner and so the whole ring buffer would wait along with
+ * it. Responses to a back-pressured session are spilled, see {@link OutboundSession}, and retried at the end of every
+ * batch. Sessions lagging for too long or running out of spill space are handled according to
+ * {@link SlowConsumerPolicy}, other sessions keep receiving their responses meanwhile.
+ * <p>
+ * Several publishers may run in parallel, each one sending responses to its own partition of sessions by hashes of
+ * their ids, see {@link #partition}. They share nothing but publications, so a session is served by the same
+ * publisher all along and its responses keep their order.
+ * <p>
+ * Publications are owned by {@link SessionRegistry}, so the publisher only requests to disconnect a slow session and
+ * drops its responses until the publication is closed.
+ */
+class PublisherEventHandler implements EventHandler<EventHolder>, LifecycleAware {
 
     protected final Logger logger = LoggerFactory.getLogger(getClass());
 
     @NotNull
     private final ConcurrentHashMap<Integer, Publication> publicationsBySessionId;
 
-    private final ExpandableDirectByteBuffer buffer = new ExpandableDirectByteBuffer(512);
+    @NotNull
+    private final ManyToOneConcurrentLinkedQueue<SessionRegistry.Disconnect> disconnects;
+
+    @NotNull
+    private final OutboundCounters counters;
+
+    @NotNull
+    private final SlowConsumerPolicy slowConsumerPolicy;
+
+    private final int spillCapacity;
+
+    private final long maxLagNanos;
+
+    private final int partition;
+
+    private final int partitions;
+
+    private final Int2ObjectHashMap<OutboundSession> sessionsById = new Int2ObjectHashMap<>();
+
+    /**
+     * Sessions having pending responses, in order of their first response.
+     */
+    private final ArrayList<OutboundSession> pendingSessions = new ArrayList<>();
+
+    /**
+     * Sessions having spilled responses, they are retried at the end of every batch, ticks included.
+     */
+    private final ArrayList<OutboundSession> laggingSessions = new ArrayList<>();
+
+    private final BufferClaim bufferClaim = new BufferClaim();
+    private final MessageHeaderDecoder headerDecoder = new MessageHeaderDecoder();
     private final MessageHeaderEncoder headerEncoder = new MessageHeaderEncoder();
     private final AccountCreatedEncoder accountCreatedEncoder = new AccountCreatedEncoder();
     private final AccountTransferDoneEncoder accountTransferDoneEncoder = new AccountTransferDoneEncoder();
@@ -50,124 +99,427 @@ class PublisherEventHandler implements EventHandler<EventHolder> {
     private final AccountDataEncoder accountDataEncoder = new AccountDataEncoder();
     private final WithdrawalDataEncoder withdrawalDataEncoder = new WithdrawalDataEncoder();
     private final SameAccountEncoder sameAccountEncoder = new SameAccountEncoder();
+    private final BatchResultEncoder batchResultEncoder = new BatchResultEncoder();
 
-    private volatile boolean shutdown;
-
-    public PublisherEventHandler(@NotNull ConcurrentHashMap<Integer, Publication> publicationsBySessionId) {
+    /**
+     * @param disconnects   Disconnect requests handled by {@link SessionRegistry}.
+     * @param spillCapacity Max number of bytes spilled per session.
+     * @param maxLagNanos   How long responses of a session may stay spilled before the policy applies.
+     * @param partition     Partition of sessions served by this publisher, from 0 to <code>partitions - 1</code>.
+     * @param partitions    Number of publishers.
+     */
+    public PublisherEventHandler(
+            @NotNull ConcurrentHashMap<Integer, Publication> publicationsBySessionId,
+            @NotNull ManyToOneConcurrentLinkedQueue<SessionRegistry.Disconnect> disconnects,
+            @NotNull OutboundCounters counters,
+            @NotNull SlowConsumerPolicy slowConsumerPolicy,
+            int spillCapacity,
+            long maxLagNanos,
+            int partition,
+            int partitions
+    ) {
+        if (spillCapacity <= 0) {
+            throw new IllegalArgumentException("Invalid spill capacity: " + spillCapacity);
+        }
+        if (partitions <= 0 || partition < 0 || partition >= partitions) {
+            throw new IllegalArgumentException("Invalid partition: " + partition + " of " + partitions);
+        }
         this.publicationsBySessionId = publicationsBySessionId;
+        this.disconnects = disconnects;
+        this.counters = counters;
+        this.slowConsumerPolicy = slowConsumerPolicy;
+        this.spillCapacity = spillCapacity;
+        this.maxLagNanos = maxLagNanos;
+        this.partition = partition;
+        this.partitions = partitions;
+    }
+
+    /**
+     * Aeron session ids are random, yet they are hashed, so that sequential ids are spread as well.
+     *
+     * @return Partition of publishers the session belongs to.
+     */
+    static int partition(int sessionId, int partitions) {
+        return partitions == 1 ? 0 : Math.floorMod(Hashing.hash(sessionId), partitions);
     }
 
     @Override
     public void onEvent(@NotNull EventHolder holder, long sequence, boolean endOfBatch) {
 
-        for (final var envelope : holder.messages) {
-            publish(envelope.sessionId(), serialize(envelope.message()));
+        final var messages = holder.messages;
+        for (int i = 0; i < messages.size(); i++) {
+            final var message = messages.get(i);
+            if (partition(message.sessionId, partitions) == partition) {
+                enqueue(message.sessionId, message);
+            }
+        }
+        if (endOfBatch) {
+            flush();
         }
     }
 
-    public void shutdown() {
-        shutdown = true;
+    @Override
+    public void onStart() {
     }
 
-    private void publish(int sessionId, int length) {
+    @Override
+    public void onShutdown() {
+        laggingSessions.forEach(OutboundSession::closeCounters);
+        CloseHelper.quietClose(counters);
+    }
 
-        final var publication = publicationsBySessionId.get(sessionId);
-        if (publication == null) {
-            return;
+    /**
+     * Holders of the batch are not cleaned until the batch is over, so their slots are referred to rather than copied.
+     */
+    private void enqueue(int sessionId, @NotNull OutboundMessage message) {
+        var session = sessionsById.get(sessionId);
+        if (session == null) {
+            session = new OutboundSession(sessionId);
+            sessionsById.put(sessionId, session);
         }
+        if (session.pending.isEmpty()) {
+            pendingSessions.add(session);
+        }
+        session.pending.add(message);
+    }
 
-        // we decided not to limit max attempts to avoid skipping some messages some randomly
-        while (true) {
+    private void flush() {
 
-            final long result = publication.offer(buffer, 0, headerEncoder.encodedLength() + length);
-            if (result >= 0) {
-                break;
+        // older responses go first
+        for (int i = laggingSessions.size() - 1; i >= 0; i--) {
+            final var session = laggingSessions.get(i);
+            final var publication = publicationsBySessionId.get(session.key);
+            if (publication == null) {
+                remove(session);
+            } else if (session.drain(publication, headerDecoder)) {
+                logger.info("Session {} has caught up", session.sessionId);
+                recover(session);
             }
+        }
 
-            logger.warn("Publication returned: {}", result);
+        for (int i = 0; i < pendingSessions.size(); i++) {
+            final var session = pendingSessions.get(i);
+            final var publication = publicationsBySessionId.get(session.key);
+            if (publication == null) {
+                // responses to unknown sessions are dropped silently, the session is either gone or not connected yet
+                remove(session);
+            } else if (publication == session.disconnected) {
+                drop(session, session.pending.size());
+            } else {
+                session.disconnected = null;
+                publish(session, publication);
+            }
+            session.pending.clear();
+        }
+        pendingSessions.clear();
 
-            if (shutdown) {
-                // otherwise it may spin indefinitely
-                break;
+        if (!laggingSessions.isEmpty()) {
+            final long nowNanos = System.nanoTime();
+            for (int i = laggingSessions.size() - 1; i >= 0; i--) {
+                final var session = laggingSessions.get(i);
+                if (session.counters != null) {
+                    session.counters.spilledBytes().setOrdered(session.spilledBytes());
+                }
+                if (session.isSpilled() && nowNanos - session.spilledSinceNanos > maxLagNanos) {
+                    onSlowConsumer(session, "lagging for more than %d ms".formatted(
+                            NANOSECONDS.toMillis(maxLagNanos)));
+                }
             }
         }
     }
 
-    private int serialize(@NotNull AeronResponse message) {
+    /**
+     * Sends the pending responses in as few frames as the max payload length of the publication allows. Batch results
+     * are split into parts which fit into a frame each, so a publication of any MTU takes them. Responses which cannot
+     * be sent right away are spilled, as well as all responses to a session having spilled ones.
+     */
+    private void publish(@NotNull OutboundSession session, @NotNull Publication publication) {
 
-        return message.accept(new AeronResponse.Visitor<Integer, RuntimeException>() {
-            @Override
-            public Integer visit(@NotNull AccountCreatedAeronResponse event) {
-                accountCreatedEncoder.wrapAndApplyHeader(buffer, 0, headerEncoder);
-                accountCreatedEncoder.trackingId(event.trackingId());
-                accountCreatedEncoder.accountId(event.accountId());
-                return accountCreatedEncoder.encodedLength();
-            }
+        final var messages = session.pending;
+        final int maxPayloadLength = publication.maxPayloadLength();
+        final int maxResults = maxResults(maxPayloadLength);
 
-            @Override
-            public Integer visit(@NotNull AccountTransferDoneAeronResponse event) {
-                accountTransferDoneEncoder.wrapAndApplyHeader(buffer, 0, headerEncoder);
-                accountTransferDoneEncoder.trackingId(event.trackingId());
-                return accountTransferDoneEncoder.encodedLength();
-            }
+        // the position is a message and the first of its results not sent yet
+        int from = 0;
+        int fromResult = 0;
+        while (from < messages.size() && !session.isSpilled()) {
 
-            @Override
-            public Integer visit(@NotNull AccountWithdrawalDoneAeronResponse event) {
-                accountWithdrawalDoneEncoder.wrapAndApplyHeader(buffer, 0, headerEncoder);
-                accountWithdrawalDoneEncoder.trackingId(event.trackingId());
-                accountWithdrawalDoneEncoder.withdrawalId(event.withdrawalId());
-                return accountWithdrawalDoneEncoder.encodedLength();
+            int length = 0;
+            int to = from;
+            int toResult = fromResult;
+            while (to < messages.size()) {
+                final var message = messages.get(to);
+                final int results = Math.min(message.results - toResult, maxResults);
+                final int messageLength = messageLength(message, results);
+                if (length > 0 && length + messageLength > maxPayloadLength) {
+                    break;
+                }
+                length += messageLength;
+                toResult += results;
+                if (toResult == message.results) {
+                    to++;
+                    toResult = 0;
+                }
             }
 
-            @Override
-            public Integer visit(@NotNull NoFundsAeronResponse event) {
-                noFundsEncoder.wrapAndApplyHeader(buffer, 0, headerEncoder);
-                noFundsEncoder.trackingId(event.trackingId());
-                return noFundsEncoder.encodedLength();
+            if (!claim(publication, length)) {
+                break;
             }
+            final var claimed = bufferClaim.buffer();
+            int offset = bufferClaim.offset();
+            for (int i = from, result = fromResult; i < to || result < toResult; ) {
+                final var message = messages.get(i);
+                final int results = Math.min(message.results - result, maxResults);
+                offset += serialize(message, result, results, claimed, offset);
+                result += results;
+                if (result == message.results) {
+                    i++;
+                    result = 0;
+                }
+            }
+            bufferClaim.commit();
+            from = to;
+            fromResult = toResult;
+        }
 
-            @Override
-            public Integer visit(@NotNull InvalidAmountAeronResponse event) {
-                invalidAmountEncoder.wrapAndApplyHeader(buffer, 0, headerEncoder);
-                invalidAmountEncoder.trackingId(event.trackingId());
-                return invalidAmountEncoder.encodedLength();
+        for (int i = from, result = fromResult; i < messages.size(); ) {
+            final var message = messages.get(i);
+            final int results = Math.min(message.results - result, maxResults);
+            if (!spill(session, message, result, results)) {
+                drop(session, messages.size() - i);
+                break;
+            }
+            result += results;
+            if (result == message.results) {
+                i++;
+                result = 0;
             }
+        }
+    }
 
-            @Override
-            public Integer visit(@NotNull NoSuchEntityAeronResponse event) {
-                noSuchEntityEncoder.wrapAndApplyHeader(buffer, 0, headerEncoder);
-                noSuchEntityEncoder.trackingId(event.trackingId());
-                return noSuchEntityEncoder.encodedLength();
+    /**
+     * @return Whether the space is claimed, otherwise the publication is back-pressured, not connected or closed.
+     */
+    private boolean claim(@NotNull Publication publication, int length) {
+        long result;
+        do {
+            result = publication.tryClaim(length, bufferClaim);
+        } while (result == Publication.ADMIN_ACTION);
+        return result >= 0;
+    }
+
+    /**
+     * @return Whether the session is still connected.
+     */
+    private boolean spill(
+            @NotNull OutboundSession session,
+            @NotNull OutboundMessage message,
+            int fromResult,
+            int results
+    ) {
+
+        final int length = messageLength(message, results);
+        int offset = session.reserve(length, spillCapacity);
+        if (offset < 0) {
+            onSlowConsumer(session, "out of spill space");
+            if (slowConsumerPolicy == DISCONNECT) {
+                return false;
             }
+            offset = session.reserve(length, spillCapacity);
+            if (offset < 0) {
+                drop(session, 1);
+                return true;
+            }
+        }
 
-            @Override
-            public Integer visit(@NotNull AccountDataAeronResponse event) {
-                accountDataEncoder.wrapAndApplyHeader(buffer, 0, headerEncoder);
-                accountDataEncoder.trackingId(event.trackingId());
-                setBigDecimal(accountDataEncoder.availableAmount(), event.availableAmount());
-                setBigDecimal(accountDataEncoder.reservedAmount(), event.reservedAmount());
-                return accountDataEncoder.encodedLength();
+        if (!session.lagging) {
+            lag(session);
+        }
+        serialize(message, fromResult, results, session.spill(), offset);
+        session.commit(length);
+        return true;
+    }
+
+    private void lag(@NotNull OutboundSession session) {
+        logger.warn("Session {} is back-pressured, spilling its responses", session.sessionId);
+        session.lagging = true;
+        session.spilledSinceNanos = System.nanoTime();
+        session.counters = counters.addSessionCounters(session.sessionId);
+        laggingSessions.add(session);
+        counters.laggingSessions.setOrdered(laggingSessions.size());
+    }
+
+    private void recover(@NotNull OutboundSession session) {
+        session.lagging = false;
+        session.closeCounters();
+        laggingSessions.remove(session);
+        counters.laggingSessions.setOrdered(laggingSessions.size());
+    }
+
+    /**
+     * Applies the slow consumer policy to the lagging session.
+     */
+    private void onSlowConsumer(@NotNull OutboundSession session, @NotNull String reason) {
+        switch (slowConsumerPolicy) {
+            case DISCONNECT -> {
+                logger.warn("Disconnecting session {}: {}, {} responses dropped", session.sessionId, reason,
+                        session.spilledResponses);
+                drop(session, session.discard());
+                if (session.lagging) {
+                    recover(session);
+                }
+                final var publication = publicationsBySessionId.get(session.key);
+                if (publication != null) {
+                    session.disconnected = publication;
+                    disconnects.offer(new SessionRegistry.Disconnect(session.sessionId, publication));
+                }
+                counters.disconnectedSessions.incrementOrdered();
+            }
+            case DROP -> {
+                logger.warn("Dropping responses to session {}: {}, {} responses dropped", session.sessionId, reason,
+                        session.spilledResponses);
+                drop(session, session.discard());
+                // it stays lagging until the next batch shows whether it has caught up
+                session.spilledSinceNanos = System.nanoTime();
+            }
+            case MARK_LAGGING -> {
+                if (!session.markedLagging) {
+                    logger.warn("Session {} is lagging: {}", session.sessionId, reason);
+                    session.markedLagging = true;
+                }
             }
+        }
+    }
+
+    private void drop(@NotNull OutboundSession session, int responses) {
+        counters.droppedResponses.getAndAddOrdered(responses);
+        if (session.counters != null) {
+            session.counters.droppedResponses().getAndAddOrdered(responses);
+        }
+    }
 
-            @Override
-            public Integer visit(@NotNull WithdrawalDataAeronResponse event) {
-                withdrawalDataEncoder.wrapAndApplyHeader(buffer, 0, headerEncoder);
-                withdrawalDataEncoder.trackingId(event.trackingId());
-                setBigDecimal(withdrawalDataEncoder.amount(), event.amount());
-                withdrawalDataEncoder.state(switch (event.state()) {
+    /**
+     * Forgets the session along with its spilled responses, pending ones are cleared by the caller.
+     */
+    private void remove(@NotNull OutboundSession session) {
+        session.discard();
+        if (session.lagging) {
+            recover(session);
+        }
+        sessionsById.remove(session.sessionId);
+    }
+
+    /**
+     * @return Max number of results of a batch result fitting into the payload, at least one.
+     */
+    static int maxResults(int maxPayloadLength) {
+        final int fixedLength = MessageHeaderEncoder.ENCODED_LENGTH + BatchResultEncoder.BLOCK_LENGTH
+                + BatchResultEncoder.ResultsEncoder.sbeHeaderSize();
+        return Math.max(1, (maxPayloadLength - fixedLength) / BatchResultEncoder.ResultsEncoder.sbeBlockLength());
+    }
+
+    /**
+     * Lengths of encoded messages including their headers. Responses are fixed-length messages, besides batch results
+     * whose length depends on the number of results only, so frames are sized before anything is encoded.
+     *
+     * @param results Number of results of a part of a batch result, ignored for other messages.
+     */
+    private static int messageLength(@NotNull OutboundMessage message, int results) {
+        return MessageHeaderEncoder.ENCODED_LENGTH + switch (message.templateId) {
+            case AccountCreatedEncoder.TEMPLATE_ID -> AccountCreatedEncoder.BLOCK_LENGTH;
+            case AccountTransferDoneEncoder.TEMPLATE_ID -> AccountTransferDoneEncoder.BLOCK_LENGTH;
+            case AccountWithdrawalDoneEncoder.TEMPLATE_ID -> AccountWithdrawalDoneEncoder.BLOCK_LENGTH;
+            case NoFundsEncoder.TEMPLATE_ID -> NoFundsEncoder.BLOCK_LENGTH;
+            case InvalidAmountEncoder.TEMPLATE_ID -> InvalidAmountEncoder.BLOCK_LENGTH;
+            case NoSuchEntityEncoder.TEMPLATE_ID -> NoSuchEntityEncoder.BLOCK_LENGTH;
+            case AccountDataEncoder.TEMPLATE_ID -> AccountDataEncoder.BLOCK_LENGTH;
+            case WithdrawalDataEncoder.TEMPLATE_ID -> WithdrawalDataEncoder.BLOCK_LENGTH;
+            case SameAccountEncoder.TEMPLATE_ID -> SameAccountEncoder.BLOCK_LENGTH;
+            case BatchResultEncoder.TEMPLATE_ID -> BatchResultEncoder.BLOCK_LENGTH
+                    + BatchResultEncoder.ResultsEncoder.sbeHeaderSize()
+                    + results * BatchResultEncoder.ResultsEncoder.sbeBlockLength();
+            default -> throw unknown(message);
+        };
+    }
+
+    /**
+     * @param fromResult First result of a part of a batch result, ignored for other messages.
+     * @param results    Number of results of the part.
+     * @return Length of the encoded message including its header.
+     */
+    private int serialize(
+            @NotNull OutboundMessage message,
+            int fromResult,
+            int results,
+            @NotNull MutableDirectBuffer buffer,
+            int offset
+    ) {
+        final long trackingId = message.trackingId;
+        return headerEncoder.encodedLength() + switch (message.templateId) {
+            case AccountCreatedEncoder.TEMPLATE_ID -> accountCreatedEncoder
+                    .wrapAndApplyHeader(buffer, offset, headerEncoder)
+                    .trackingId(trackingId)
+                    .accountId(message.entityId)
+                    .encodedLength();
+            case AccountTransferDoneEncoder.TEMPLATE_ID -> accountTransferDoneEncoder
+                    .wrapAndApplyHeader(buffer, offset, headerEncoder)
+                    .trackingId(trackingId)
+                    .encodedLength();
+            case AccountWithdrawalDoneEncoder.TEMPLATE_ID -> accountWithdrawalDoneEncoder
+                    .wrapAndApplyHeader(buffer, offset, headerEncoder)
+                    .trackingId(trackingId)
+                    .withdrawalId(message.entityId)
+                    .encodedLength();
+            case NoFundsEncoder.TEMPLATE_ID -> noFundsEncoder
+                    .wrapAndApplyHeader(buffer, offset, headerEncoder)
+                    .trackingId(trackingId)
+                    .encodedLength();
+            case InvalidAmountEncoder.TEMPLATE_ID -> invalidAmountEncoder
+                    .wrapAndApplyHeader(buffer, offset, headerEncoder)
+                    .trackingId(trackingId)
+                    .encodedLength();
+            case NoSuchEntityEncoder.TEMPLATE_ID -> noSuchEntityEncoder
+                    .wrapAndApplyHeader(buffer, offset, headerEncoder)
+                    .trackingId(trackingId)
+                    .encodedLength();
+            case AccountDataEncoder.TEMPLATE_ID -> {
+                accountDataEncoder.wrapAndApplyHeader(buffer, offset, headerEncoder).trackingId(trackingId);
+                toDecimal(accountDataEncoder.availableAmount(), message.amount);
+                toDecimal(accountDataEncoder.reservedAmount(), message.reservedAmount);
+                yield accountDataEncoder.encodedLength();
+            }
+            case WithdrawalDataEncoder.TEMPLATE_ID -> {
+                withdrawalDataEncoder.wrapAndApplyHeader(buffer, offset, headerEncoder).trackingId(trackingId);
+                toDecimal(withdrawalDataEncoder.amount(), message.amount);
+                assert message.withdrawalState != null;
+                withdrawalDataEncoder.state(switch (message.withdrawalState) {
                     case PROCESSING -> WithdrawalState.PROCESSING;
                     case COMPLETED -> WithdrawalState.COMPLETED;
                     case FAILED -> WithdrawalState.FAILED;
                 });
-                return withdrawalDataEncoder.encodedLength();
+                yield withdrawalDataEncoder.encodedLength();
             }
-
-            @Override
-            public Integer visit(@NotNull SameAccountAeronResponse event) throws RuntimeException {
-                sameAccountEncoder.wrapAndApplyHeader(buffer, 0, headerEncoder);
-                sameAccountEncoder.trackingId(event.trackingId());
-                return sameAccountEncoder.encodedLength();
+            case SameAccountEncoder.TEMPLATE_ID -> sameAccountEncoder
+                    .wrapAndApplyHeader(buffer, offset, headerEncoder)
+                    .trackingId(trackingId)
+                    .encodedLength();
+            case BatchResultEncoder.TEMPLATE_ID -> {
+                batchResultEncoder.wrapAndApplyHeader(buffer, offset, headerEncoder);
+                final var resultsEncoder = batchResultEncoder.resultsCount(results);
+                for (int i = fromResult; i < fromResult + results; i++) {
+                    resultsEncoder.next()
+                            .trackingId(message.resultTrackingIds[i])
+                            .code(message.resultCodes[i])
+                            .accountId(message.resultAccountIds[i]);
+                }
+                yield batchResultEncoder.encodedLength();
             }
-        });
+            default -> throw unknown(message);
+        };
+    }
+
+    @NotNull
+    private static IllegalArgumentException unknown(@NotNull OutboundMessage message) {
+        return new IllegalArgumentException("Unknown template id: " + message.templateId);
     }
 }
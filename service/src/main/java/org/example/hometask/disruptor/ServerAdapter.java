@@ -1,62 +1,122 @@
 package org.example.hometask.disruptor;
 
+import com.lmax.disruptor.InsufficientCapacityException;
 import com.lmax.disruptor.RingBuffer;
-import io.aeron.Aeron;
 import io.aeron.Publication;
+import io.aeron.logbuffer.BufferClaim;
 import io.aeron.logbuffer.FragmentHandler;
 import io.aeron.logbuffer.Header;
 import org.agrona.DirectBuffer;
+import org.agrona.MutableDirectBuffer;
+import org.agrona.collections.LongArrayList;
+import org.example.hometask.api.AccountTransferBatchDecoder;
 import org.example.hometask.api.AccountTransferDecoder;
 import org.example.hometask.api.AccountWithdrawDecoder;
+import org.example.hometask.api.CreateAccountBatchDecoder;
 import org.example.hometask.api.CreateAccountDecoder;
+import org.example.hometask.api.DecimalDecoder;
+import org.example.hometask.api.DecimalEncoder;
 import org.example.hometask.api.MessageHeaderDecoder;
+import org.example.hometask.api.MessageHeaderEncoder;
 import org.example.hometask.api.QueryAccountDecoder;
 import org.example.hometask.api.QueryWithdrawalDecoder;
 import org.example.hometask.api.RpcConnectRequestDecoder;
-import org.example.hometask.messages.disruptor.InboundAeronMessageEvent;
-import org.example.hometask.messages.request.AccountTransferAeronRequest;
-import org.example.hometask.messages.request.AccountWithdrawAeronRequest;
-import org.example.hometask.messages.request.AeronRequest;
-import org.example.hometask.messages.request.CreateAccountAeronRequest;
-import org.example.hometask.messages.request.QueryAccountAeronRequest;
-import org.example.hometask.messages.request.QueryWithdrawalAeronRequest;
+import org.example.hometask.api.ServerBusyEncoder;
+import org.example.hometask.state.Repository;
+import org.example.hometask.utils.Amounts;
 import org.jetbrains.annotations.NotNull;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.Arrays;
+import java.util.List;
 
-import static org.example.hometask.utils.Utils.getBigDecimal;
+import static org.example.hometask.disruptor.BackPressurePolicy.REJECT;
 
+/**
+ * Copies requests to ring buffers of shards. Every request goes to the shard owning the account or the withdrawal it
+ * concerns, new accounts are spread between shards round-robin. Transfers go to the shard of the source account.
+ * <p>
+ * A batch of new accounts goes to a single shard as a whole. A batch of transfers is split between shards of source
+ * accounts, so every shard gets a single event carrying its part of the batch.
+ * <p>
+ * A request which does not fit into its ring buffer is answered with ServerBusy, a rejected batch gets one per item,
+ * so clients learn the fate of every tracking id.
+ */
 public class ServerAdapter implements FragmentHandler {
 
     protected final Logger logger = LoggerFactory.getLogger(getClass());
 
+    /**
+     * Ring buffers of shards, indexed by shard.
+     */
     @NotNull
-    private final Aeron aeron;
+    private final List<RingBuffer<EventHolder>> ringBuffers;
 
     @NotNull
-    private final RingBuffer<EventHolder> ringBuffer;
+    private final SessionRegistry sessions;
 
     @NotNull
-    private final ConcurrentHashMap<Integer, Publication> publicationsBySessionId;
+    private final BackPressurePolicy backPressurePolicy;
+
+    @NotNull
+    private final IngressCounters counters;
 
     private final RpcConnectRequestDecoder connectRequest = new RpcConnectRequestDecoder();
     private final CreateAccountDecoder createAccountDecoder = new CreateAccountDecoder();
+    private final CreateAccountBatchDecoder createAccountBatchDecoder = new CreateAccountBatchDecoder();
     private final QueryAccountDecoder queryAccountDecoder = new QueryAccountDecoder();
     private final AccountTransferDecoder accountTransferDecoder = new AccountTransferDecoder();
+    private final AccountTransferBatchDecoder accountTransferBatchDecoder = new AccountTransferBatchDecoder();
     private final AccountWithdrawDecoder accountWithdrawDecoder = new AccountWithdrawDecoder();
     private final QueryWithdrawalDecoder queryWithdrawalDecoder = new QueryWithdrawalDecoder();
     private final MessageHeaderDecoder headerDecoder = new MessageHeaderDecoder();
+    private final DecimalDecoder decimalDecoder = new DecimalDecoder();
+    private final DecimalEncoder decimalEncoder = new DecimalEncoder();
+
+    private final BufferClaim busyClaim = new BufferClaim();
+    private final MessageHeaderEncoder headerEncoder = new MessageHeaderEncoder();
+    private final ServerBusyEncoder serverBusyEncoder = new ServerBusyEncoder();
+
+    /**
+     * Tracking ids of the request being rejected, every item of a batch gets a busy response of its own.
+     */
+    private final LongArrayList rejectedTrackingIds = new LongArrayList();
+
+    /**
+     * First sequences claimed in every ring buffer since the last {@link #flush()}, valid only if the corresponding
+     * {@link #claimed} is positive.
+     */
+    private final long[] firstClaimedSequences;
+
+    private final int[] claimed;
+
+    /**
+     * Number of items of the transfer batch being split per shard, then write offsets of its parts.
+     */
+    private final int[] batchItems;
+
+    /**
+     * Slots claimed for parts of the transfer batch being split, indexed by shard.
+     */
+    private final EventHolder[] batchHolders;
+
+    private int nextAccountShard;
 
     public ServerAdapter(
-            @NotNull Aeron aeron,
-            @NotNull RingBuffer<EventHolder> ringBuffer,
-            @NotNull ConcurrentHashMap<Integer, Publication> publicationsBySessionId
+            @NotNull List<RingBuffer<EventHolder>> ringBuffers,
+            @NotNull SessionRegistry sessions,
+            @NotNull BackPressurePolicy backPressurePolicy,
+            @NotNull IngressCounters counters
     ) {
-        this.aeron = aeron;
-        this.ringBuffer = ringBuffer;
-        this.publicationsBySessionId = publicationsBySessionId;
+        this.ringBuffers = ringBuffers;
+        this.firstClaimedSequences = new long[ringBuffers.size()];
+        this.claimed = new int[ringBuffers.size()];
+        this.batchItems = new int[ringBuffers.size()];
+        this.batchHolders = new EventHolder[ringBuffers.size()];
+        this.sessions = sessions;
+        this.backPressurePolicy = backPressurePolicy;
+        this.counters = counters;
     }
 
     @Override
@@ -72,53 +132,301 @@ public class ServerAdapter implements FragmentHandler {
                 connectRequest.wrap(buffer, offset + headerLength, actingLength, actingVersion);
                 final var streamId = connectRequest.returnConnectStream();
                 final var uri = connectRequest.returnConnectUri();
-                blockingOpenConnection(streamId, uri, header.sessionId());
+                sessions.connect(header.sessionId(), uri, streamId, System.nanoTime());
                 break;
             case CreateAccountDecoder.TEMPLATE_ID:
-                createAccountDecoder.wrap(buffer, offset + headerLength, actingLength, actingVersion);
-                publish(header.sessionId(), new CreateAccountAeronRequest(createAccountDecoder.trackingId(),
-                        getBigDecimal(createAccountDecoder.initialAmount())));
-                break;
             case QueryAccountDecoder.TEMPLATE_ID:
-                queryAccountDecoder.wrap(buffer, offset + headerLength, actingLength, actingVersion);
-                publish(header.sessionId(), new QueryAccountAeronRequest(queryAccountDecoder.trackingId(),
-                        queryAccountDecoder.accountId()));
-                break;
             case AccountTransferDecoder.TEMPLATE_ID:
-                accountTransferDecoder.wrap(buffer, offset + headerLength, actingLength, actingVersion);
-                publish(header.sessionId(), new AccountTransferAeronRequest(accountTransferDecoder.trackingId(),
-                        accountTransferDecoder.fromAccountId(), accountTransferDecoder.toAccountId(),
-                        getBigDecimal(accountTransferDecoder.amount())));
-                break;
             case AccountWithdrawDecoder.TEMPLATE_ID:
-                accountWithdrawDecoder.wrap(buffer, offset + headerLength, actingLength, actingVersion);
-                publish(header.sessionId(), new AccountWithdrawAeronRequest(accountWithdrawDecoder.trackingId(),
-                        accountWithdrawDecoder.fromAccountId(), accountWithdrawDecoder.toAddress(),
-                        getBigDecimal(accountWithdrawDecoder.amount())));
-                break;
             case QueryWithdrawalDecoder.TEMPLATE_ID:
-                queryWithdrawalDecoder.wrap(buffer, offset + headerLength, actingLength, actingVersion);
-                publish(header.sessionId(), new QueryWithdrawalAeronRequest(queryWithdrawalDecoder.trackingId(),
-                        queryWithdrawalDecoder.withdrawalId()));
+            case CreateAccountBatchDecoder.TEMPLATE_ID:
+            case AccountTransferBatchDecoder.TEMPLATE_ID:
+                // decoding is deferred to the state machine, see InboundAeronFragmentEvent
+                publish(header.sessionId(), buffer, offset, length);
                 break;
             default:
                 throw new RuntimeException("Unknown message");
         }
     }
 
-    private void publish(int sessionId, @NotNull AeronRequest message) {
-        final long sequence = ringBuffer.next();
+    /**
+     * Publishes all slots claimed since the previous call as a single range, so consumers are signalled once per
+     * poll instead of once per fragment. Must be called after every poll, even if it failed.
+     */
+    public void flush() {
+        for (int shard = 0; shard < claimed.length; shard++) {
+            if (claimed[shard] > 0) {
+                ringBuffers.get(shard).publish(firstClaimedSequences[shard],
+                        firstClaimedSequences[shard] + claimed[shard] - 1);
+                claimed[shard] = 0;
+            }
+        }
+    }
+
+    private void publish(int sessionId, @NotNull DirectBuffer buffer, int offset, int length) {
+
+        if (ringBuffers.size() > 1 && headerDecoder.templateId() == AccountTransferBatchDecoder.TEMPLATE_ID) {
+            publishTransferBatch(sessionId, buffer, offset, length);
+            return;
+        }
+
+        final int shard = ringBuffers.size() == 1 ? 0 : shardOf(buffer, offset);
+        final long sequence = tryClaim(shard);
+        if (sequence < 0) {
+            reject(sessionId, buffer, offset);
+            return;
+        }
+
+        final var holder = ringBuffers.get(shard).get(sequence);
+        holder.inboundFragment.wrap(sessionId, buffer, offset, length);
+        normalizeAmount(holder.inboundFragment.buffer());
+        holder.event = holder.inboundFragment;
+    }
+
+    /**
+     * Splits the transfer batch between shards of source accounts, every shard gets a single event with its part of
+     * the batch. The batch is either published to all of its shards, or rejected as a whole.
+     */
+    private void publishTransferBatch(int sessionId, @NotNull DirectBuffer buffer, int offset, int length) {
+
+        final int bodyOffset = offset + headerDecoder.encodedLength();
+        final int actingLength = headerDecoder.blockLength();
+        final int actingVersion = headerDecoder.version();
+
+        int shards = 0;
+        int lastShard = 0;
+        for (final var transfer : accountTransferBatchDecoder.wrap(buffer, bodyOffset, actingLength, actingVersion)
+                .transfers()) {
+            final int shard = Repository.shardOf(transfer.fromAccountId(), ringBuffers.size());
+            if (batchItems[shard]++ == 0) {
+                shards++;
+                lastShard = shard;
+            }
+        }
+
+        if (shards <= 1) {
+            // nothing to split, an empty batch goes to any shard as well
+            Arrays.fill(batchItems, 0);
+            final long sequence = tryClaim(lastShard);
+            if (sequence < 0) {
+                reject(sessionId, buffer, offset);
+                return;
+            }
+            final var holder = ringBuffers.get(lastShard).get(sequence);
+            holder.inboundFragment.wrap(sessionId, buffer, offset, length);
+            normalizeAmount(holder.inboundFragment.buffer());
+            holder.event = holder.inboundFragment;
+            return;
+        }
+
+        for (int shard = 0; shard < batchItems.length; shard++) {
+            if (batchItems[shard] > 0 && !ringBuffers.get(shard).hasAvailableCapacity(1)) {
+                Arrays.fill(batchItems, 0);
+                reject(sessionId, buffer, offset);
+                return;
+            }
+        }
+
+        // every part has the header, the block and the group dimensions of the batch, but the number of items
+        final var transfers = accountTransferBatchDecoder.wrap(buffer, bodyOffset, actingLength, actingVersion)
+                .transfers();
+        final int itemLength = transfers.actingBlockLength();
+        final int prefixLength = accountTransferBatchDecoder.limit() - offset;
+        for (int shard = 0; shard < batchItems.length; shard++) {
+            if (batchItems[shard] > 0) {
+                final var holder = ringBuffers.get(shard).get(tryClaim(shard));
+                final var slot = holder.inboundFragment.prepare(sessionId,
+                        prefixLength + batchItems[shard] * itemLength);
+                slot.putBytes(0, buffer, offset, prefixLength);
+                slot.putShort(prefixLength - Short.BYTES, (short) batchItems[shard],
+                        AccountTransferBatchDecoder.BYTE_ORDER);
+                batchHolders[shard] = holder;
+                batchItems[shard] = prefixLength;
+            }
+        }
+
+        while (transfers.hasNext()) {
+            final int shard = Repository.shardOf(transfers.next().fromAccountId(), ringBuffers.size());
+            final int itemOffset = accountTransferBatchDecoder.limit() - itemLength;
+            batchHolders[shard].inboundFragment.buffer().putBytes(batchItems[shard], buffer, itemOffset, itemLength);
+            batchItems[shard] += itemLength;
+        }
+
+        for (int shard = 0; shard < batchHolders.length; shard++) {
+            final var holder = batchHolders[shard];
+            if (holder != null) {
+                normalizeAmount(holder.inboundFragment.buffer());
+                holder.event = holder.inboundFragment;
+                batchHolders[shard] = null;
+                batchItems[shard] = 0;
+            }
+        }
+    }
+
+    /**
+     * Claims a slot of the shard, claiming a slot of a single producer ring buffer is cheap, the expensive part is
+     * publishing it.
+     *
+     * @return Sequence of the claimed slot, or -1 if the ring buffer is full.
+     */
+    private long tryClaim(int shard) {
+
+        final long sequence;
         try {
-            final var holder = ringBuffer.get(sequence);
-            holder.event = new InboundAeronMessageEvent(sessionId, message);
-        } finally {
-            ringBuffer.publish(sequence);
+            sequence = ringBuffers.get(shard).tryNext();
+        } catch (InsufficientCapacityException e) {
+            return -1;
+        }
+
+        if (claimed[shard]++ == 0) {
+            firstClaimedSequences[shard] = sequence;
+        }
+        return sequence;
+    }
+
+    private int shardOf(@NotNull DirectBuffer buffer, int offset) {
+
+        final int bodyOffset = offset + headerDecoder.encodedLength();
+        final int actingLength = headerDecoder.blockLength();
+        final int actingVersion = headerDecoder.version();
+
+        final long id = switch (headerDecoder.templateId()) {
+            case QueryAccountDecoder.TEMPLATE_ID ->
+                    queryAccountDecoder.wrap(buffer, bodyOffset, actingLength, actingVersion).accountId();
+            case AccountTransferDecoder.TEMPLATE_ID ->
+                    accountTransferDecoder.wrap(buffer, bodyOffset, actingLength, actingVersion).fromAccountId();
+            case AccountWithdrawDecoder.TEMPLATE_ID ->
+                    accountWithdrawDecoder.wrap(buffer, bodyOffset, actingLength, actingVersion).fromAccountId();
+            case QueryWithdrawalDecoder.TEMPLATE_ID ->
+                    queryWithdrawalDecoder.wrap(buffer, bodyOffset, actingLength, actingVersion).withdrawalId();
+            default -> {
+                final int shard = nextAccountShard;
+                nextAccountShard = (shard + 1) % ringBuffers.size();
+                yield shard + 1;
+            }
+        };
+        return Repository.shardOf(id, ringBuffers.size());
+    }
+
+    /**
+     * Rewrites amounts of the copied request, if any, as fixed-point amounts with {@link Amounts#SCALE}, so the
+     * state machine reads mantissas as is. Amounts which do not fit are replaced with {@link Amounts#INVALID}.
+     */
+    private void normalizeAmount(@NotNull MutableDirectBuffer slot) {
+
+        final int bodyOffset = headerDecoder.encodedLength();
+        final int actingLength = headerDecoder.blockLength();
+        final int actingVersion = headerDecoder.version();
+
+        switch (headerDecoder.templateId()) {
+            case CreateAccountDecoder.TEMPLATE_ID ->
+                    normalizeAmount(slot, bodyOffset + CreateAccountDecoder.initialAmountEncodingOffset());
+            case AccountTransferDecoder.TEMPLATE_ID ->
+                    normalizeAmount(slot, bodyOffset + AccountTransferDecoder.amountEncodingOffset());
+            case AccountWithdrawDecoder.TEMPLATE_ID ->
+                    normalizeAmount(slot, bodyOffset + AccountWithdrawDecoder.amountEncodingOffset());
+            case CreateAccountBatchDecoder.TEMPLATE_ID -> {
+                final var accounts = createAccountBatchDecoder.wrap(slot, bodyOffset, actingLength, actingVersion)
+                        .accounts();
+                while (accounts.hasNext()) {
+                    normalizeAmount(slot, accounts.next().initialAmount().offset());
+                }
+            }
+            case AccountTransferBatchDecoder.TEMPLATE_ID -> {
+                final var transfers = accountTransferBatchDecoder.wrap(slot, bodyOffset, actingLength, actingVersion)
+                        .transfers();
+                while (transfers.hasNext()) {
+                    normalizeAmount(slot, transfers.next().amount().offset());
+                }
+            }
+            default -> {
+                // no amounts
+            }
         }
     }
 
-    private void blockingOpenConnection(int streamId, @NotNull String uri, int sessionId) {
-        logger.info("Received connect request with response URI {} stream {}", uri, streamId);
-        final var publication = aeron.addExclusivePublication(uri, streamId);
-        publicationsBySessionId.put(sessionId, publication);
+    private void normalizeAmount(@NotNull MutableDirectBuffer slot, int offset) {
+        final long amount = Amounts.fromDecimal(decimalDecoder.wrap(slot, offset));
+        Amounts.toDecimal(decimalEncoder.wrap(slot, offset), amount);
+    }
+
+    private void reject(int sessionId, @NotNull DirectBuffer buffer, int offset) {
+
+        if (backPressurePolicy != REJECT) {
+            // ServerAgent never polls more fragments than there are free slots
+            throw new IllegalStateException("Ring buffer overrun");
+        }
+
+        counters.rejectedRequests.incrementOrdered();
+
+        rejectedTrackingIds.clear();
+        trackingIds(buffer, offset, rejectedTrackingIds);
+        final int responses = rejectedTrackingIds.size();
+
+        final var publication = sessions.publication(sessionId);
+        if (publication == null) {
+            counters.droppedBusyResponses.getAndAddOrdered(responses);
+            return;
+        }
+
+        // a single attempt per frame only, the ingress thread must not spin on a slow client, admin actions are
+        // transient
+        final int length = MessageHeaderEncoder.ENCODED_LENGTH + ServerBusyEncoder.BLOCK_LENGTH;
+        final int perFrame = Math.max(1, publication.maxPayloadLength() / length);
+        for (int from = 0; from < responses; from += perFrame) {
+            final int count = Math.min(perFrame, responses - from);
+            long result;
+            do {
+                result = publication.tryClaim(count * length, busyClaim);
+            } while (result == Publication.ADMIN_ACTION);
+            if (result < 0) {
+                counters.droppedBusyResponses.getAndAddOrdered(responses - from);
+                return;
+            }
+
+            for (int i = 0; i < count; i++) {
+                serverBusyEncoder.wrapAndApplyHeader(busyClaim.buffer(), busyClaim.offset() + i * length, headerEncoder)
+                        .trackingId(rejectedTrackingIds.getLong(from + i));
+            }
+            busyClaim.commit();
+        }
+    }
+
+    /**
+     * Adds tracking ids of the request, the ones of all items for a batch.
+     */
+    private void trackingIds(@NotNull DirectBuffer buffer, int offset, @NotNull LongArrayList trackingIds) {
+
+        final int bodyOffset = offset + headerDecoder.encodedLength();
+        final int actingLength = headerDecoder.blockLength();
+        final int actingVersion = headerDecoder.version();
+
+        switch (headerDecoder.templateId()) {
+            case CreateAccountDecoder.TEMPLATE_ID -> trackingIds.addLong(
+                    createAccountDecoder.wrap(buffer, bodyOffset, actingLength, actingVersion).trackingId());
+            case QueryAccountDecoder.TEMPLATE_ID -> trackingIds.addLong(
+                    queryAccountDecoder.wrap(buffer, bodyOffset, actingLength, actingVersion).trackingId());
+            case AccountTransferDecoder.TEMPLATE_ID -> trackingIds.addLong(
+                    accountTransferDecoder.wrap(buffer, bodyOffset, actingLength, actingVersion).trackingId());
+            case AccountWithdrawDecoder.TEMPLATE_ID -> trackingIds.addLong(
+                    accountWithdrawDecoder.wrap(buffer, bodyOffset, actingLength, actingVersion).trackingId());
+            case QueryWithdrawalDecoder.TEMPLATE_ID -> trackingIds.addLong(
+                    queryWithdrawalDecoder.wrap(buffer, bodyOffset, actingLength, actingVersion).trackingId());
+            case CreateAccountBatchDecoder.TEMPLATE_ID -> {
+                final var accounts = createAccountBatchDecoder.wrap(buffer, bodyOffset, actingLength, actingVersion)
+                        .accounts();
+                while (accounts.hasNext()) {
+                    trackingIds.addLong(accounts.next().trackingId());
+                }
+            }
+            case AccountTransferBatchDecoder.TEMPLATE_ID -> {
+                final var transfers = accountTransferBatchDecoder.wrap(buffer, bodyOffset, actingLength,
+                        actingVersion).transfers();
+                while (transfers.hasNext()) {
+                    trackingIds.addLong(transfers.next().trackingId());
+                }
+            }
+            default -> throw new IllegalArgumentException("Not a request: " + headerDecoder.templateId());
+        }
     }
 }
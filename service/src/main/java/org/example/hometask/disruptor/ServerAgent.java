@@ -1,51 +1,148 @@
 package org.example.hometask.disruptor;
 
+import com.lmax.disruptor.InsufficientCapacityException;
 import com.lmax.disruptor.RingBuffer;
 import io.aeron.Aeron;
+import io.aeron.FragmentAssembler;
 import io.aeron.Publication;
 import io.aeron.Subscription;
 import org.agrona.concurrent.Agent;
+import org.agrona.concurrent.ManyToOneConcurrentLinkedQueue;
 import org.example.hometask.messages.disruptor.Event;
+import org.example.hometask.messages.disruptor.TickEvent;
 import org.jetbrains.annotations.NotNull;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.List;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentLinkedQueue;
 
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
 import static org.example.hometask.ServerConstants.RPC_STREAM;
 import static org.example.hometask.ServerConstants.SERVER_URI;
+import static org.example.hometask.disruptor.BackPressurePolicy.PAUSE;
+import static org.example.hometask.disruptor.BackPressurePolicy.REJECT;
 
 public class ServerAgent implements Agent {
 
+    /**
+     * Max number of fragments polled and internal messages drained per single ring buffer claim.
+     * Must be less than the ring buffer size, since claimed slots are not visible to consumers until published.
+     */
+    private static final int FRAGMENT_LIMIT = Integer.getInteger("org.example.hometask.fragmentLimit", 64);
+
+    /**
+     * Interval of {@link TickEvent}s, which let consumers do background work when there is no traffic.
+     */
+    private static final long TICK_INTERVAL_NANOS =
+            MILLISECONDS.toNanos(Long.getLong("org.example.hometask.tickIntervalMs", 10));
+
+    private static final BackPressurePolicy BACK_PRESSURE_POLICY =
+            BackPressurePolicy.valueOf(System.getProperty("org.example.hometask.backPressurePolicy", "PAUSE"));
+
+    /**
+     * Max number of sessions having response publications, further connect requests are ignored.
+     */
+    private static final int MAX_SESSIONS = Integer.getInteger("org.example.hometask.session.max", 10_000);
+
+    /**
+     * How long a session may send nothing before its response publication is closed, or 0 to never evict sessions.
+     */
+    private static final long SESSION_IDLE_TIMEOUT_NANOS =
+            MILLISECONDS.toNanos(Long.getLong("org.example.hometask.session.idleTimeoutMs", 600_000));
+
+    /**
+     * How long a connect request may wait for its response publication to be added by the media driver.
+     */
+    private static final long SESSION_CONNECT_TIMEOUT_NANOS =
+            MILLISECONDS.toNanos(Long.getLong("org.example.hometask.session.connectTimeoutMs", 10_000));
+
     protected final Logger logger = LoggerFactory.getLogger(getClass());
 
+    /**
+     * Ring buffers of shards, indexed by shard.
+     */
     @NotNull
-    private final RingBuffer<EventHolder> ringBuffer;
+    private final List<RingBuffer<EventHolder>> ringBuffers;
+
+    @NotNull
+    private final SessionRegistry sessions;
 
     @NotNull
     private final ServerAdapter serverAdapter;
 
     /**
-     * This queue is intentionally unbounded to prevent deadlocks under heavy load.
-     * We have guarantees it will not grow indefinitely.
+     * Reassembles batches which do not fit a single frame before handing them to {@link #serverAdapter}.
      */
     @NotNull
-    private final ConcurrentLinkedQueue<Event> internalMessagesQueue;
+    private final FragmentAssembler fragmentAssembler;
+
+    @NotNull
+    private final ShardRouter router;
 
     @NotNull
     private final Subscription subscription;
 
+    @NotNull
+    private final IngressCounters counters;
+
+    /**
+     * Internal messages of every shard already taken from its queue but not yet published, since its ring buffer was
+     * full.
+     */
+    private final Event[][] internalMessagesBatches;
+
+    private final int[] stagedInternalMessages;
+
+    /**
+     * Tick of every shard, reused once consumers are done with the previous one, so ticking does not allocate.
+     */
+    private final TickEvent[] ticks;
+
+    /**
+     * Ring buffer sequences of the last ticks of every shard.
+     */
+    private final long[] tickSequences;
+
+    private long lastTickNanos;
+
     public ServerAgent(
             @NotNull Aeron aeron,
-            @NotNull RingBuffer<EventHolder> ringBuffer,
+            @NotNull List<RingBuffer<EventHolder>> ringBuffers,
             @NotNull ConcurrentHashMap<Integer, Publication> publicationsBySessionId,
-            @NotNull ConcurrentLinkedQueue<Event> internalMessagesQueue
+            @NotNull ManyToOneConcurrentLinkedQueue<SessionRegistry.Disconnect> disconnects,
+            @NotNull ShardRouter router
     ) {
-        this.ringBuffer = ringBuffer;
-        this.serverAdapter = new ServerAdapter(aeron, ringBuffer, publicationsBySessionId);
-        this.internalMessagesQueue = internalMessagesQueue;
-        subscription = aeron.addSubscription(SERVER_URI, RPC_STREAM);
+        if (ringBuffers.size() != router.shards()) {
+            throw new IllegalArgumentException("%d ring buffers for %d shards".formatted(ringBuffers.size(),
+                    router.shards()));
+        }
+        for (final var ringBuffer : ringBuffers) {
+            if (FRAGMENT_LIMIT <= 0 || FRAGMENT_LIMIT >= ringBuffer.getBufferSize()) {
+                throw new IllegalArgumentException(
+                        "Fragment limit %d must be positive and less than ring buffer size %d"
+                                .formatted(FRAGMENT_LIMIT, ringBuffer.getBufferSize()));
+            }
+        }
+        this.ringBuffers = ringBuffers;
+        this.counters = new IngressCounters(aeron);
+        // in REJECT mode the ingress thread offers to publications as well, and so do publishers of all shards
+        this.sessions = new SessionRegistry(aeron, publicationsBySessionId, counters, disconnects,
+                BACK_PRESSURE_POLICY == REJECT || ringBuffers.size() > 1, MAX_SESSIONS, SESSION_IDLE_TIMEOUT_NANOS,
+                SESSION_CONNECT_TIMEOUT_NANOS);
+        this.serverAdapter = new ServerAdapter(ringBuffers, sessions, BACK_PRESSURE_POLICY, counters);
+        this.fragmentAssembler = new FragmentAssembler(serverAdapter);
+        this.router = router;
+        this.internalMessagesBatches = new Event[ringBuffers.size()][FRAGMENT_LIMIT];
+        this.stagedInternalMessages = new int[ringBuffers.size()];
+        this.ticks = new TickEvent[ringBuffers.size()];
+        this.tickSequences = new long[ringBuffers.size()];
+        for (int shard = 0; shard < ringBuffers.size(); shard++) {
+            ticks[shard] = new TickEvent(0);
+            tickSequences[shard] = -1;
+        }
+        subscription = aeron.addSubscription(SERVER_URI, RPC_STREAM, sessions::onAvailableImage,
+                sessions::onUnavailableImage);
     }
 
     @Override
@@ -59,26 +156,124 @@ public class ServerAgent implements Agent {
         // internally generated messages have priority over all external messages
         // to make a guarantee the queue will not grow indefinitely under heavy load:
 
-        while (true) {
-            final var message = internalMessagesQueue.poll();
+        final long nowNanos = System.nanoTime();
+        final boolean tick = nowNanos - lastTickNanos >= TICK_INTERVAL_NANOS;
+        if (tick) {
+            lastTickNanos = nowNanos;
+        }
+
+        int workCount = sessions.doWork(nowNanos);
+        boolean staged = false;
+        long overflowed = 0;
+        long remainingCapacity = FRAGMENT_LIMIT;
+        for (int shard = 0; shard < ringBuffers.size(); shard++) {
+            overflowed += router.queue(shard).overflowed();
+            while (true) {
+                final int drained = drainInternalMessages(shard);
+                if (drained == 0) {
+                    break;
+                }
+                workCount += drained;
+            }
+            if (tick && stagedInternalMessages[shard] == 0) {
+                publishTick(shard, nowNanos);
+            }
+            staged |= stagedInternalMessages[shard] > 0;
+            remainingCapacity = Math.min(remainingCapacity, ringBuffers.get(shard).remainingCapacity());
+        }
+
+        counters.overflowedInternalMessages.setOrdered(overflowed);
+
+        if (staged) {
+            counters.deferredInternalMessages.incrementOrdered();
+            return workCount;
+        }
+
+        // a request may go to any shard, so the fullest ring buffer limits the poll
+        final int fragmentLimit = BACK_PRESSURE_POLICY == PAUSE ? (int) remainingCapacity : FRAGMENT_LIMIT;
+
+        if (fragmentLimit == 0) {
+            counters.pausedPolls.incrementOrdered();
+            return workCount;
+        }
+
+        try {
+            workCount += subscription.poll(fragmentAssembler, fragmentLimit);
+        } finally {
+            serverAdapter.flush();
+        }
+        return workCount;
+    }
+
+    private int drainInternalMessages(int shard) {
+
+        final var queue = router.queue(shard);
+        final var ringBuffer = ringBuffers.get(shard);
+        final var internalMessagesBatch = internalMessagesBatches[shard];
+
+        while (stagedInternalMessages[shard] < internalMessagesBatch.length) {
+            final var message = queue.poll();
             if (message == null) {
                 break;
             }
-            final long sequence = ringBuffer.next();
-            try {
-                final var holder = ringBuffer.get(sequence);
-                holder.event = message;
-            } finally {
-                ringBuffer.publish(sequence);
+            internalMessagesBatch[stagedInternalMessages[shard]++] = message;
+        }
+
+        if (stagedInternalMessages[shard] == 0) {
+            return 0;
+        }
+
+        final int count = stagedInternalMessages[shard];
+        final long hi;
+        try {
+            hi = ringBuffer.tryNext(count);
+        } catch (InsufficientCapacityException e) {
+            // stay staged until consumers free enough slots, nothing is polled from Aeron meanwhile
+            return 0;
+        }
+
+        final long lo = hi - count + 1;
+        try {
+            for (int i = 0; i < count; i++) {
+                ringBuffer.get(lo + i).event = internalMessagesBatch[i];
+                internalMessagesBatch[i] = null;
             }
+        } finally {
+            stagedInternalMessages[shard] = 0;
+            ringBuffer.publish(lo, hi);
+        }
+        return count;
+    }
+
+    /**
+     * Publishes the tick right into the ring buffer, after internal messages drained so far. The tick is skipped if
+     * the previous one is still in the ring buffer or the ring buffer is full, the next one will do.
+     */
+    private void publishTick(int shard, long nowNanos) {
+
+        final var ringBuffer = ringBuffers.get(shard);
+        if (ringBuffer.getMinimumGatingSequence() < tickSequences[shard]) {
+            return;
         }
 
-        return subscription.poll(serverAdapter, 1);
+        final long sequence;
+        try {
+            sequence = ringBuffer.tryNext();
+        } catch (InsufficientCapacityException e) {
+            return;
+        }
+        final var tickEvent = ticks[shard];
+        tickEvent.set(nowNanos);
+        ringBuffer.get(sequence).event = tickEvent;
+        ringBuffer.publish(sequence);
+        tickSequences[shard] = sequence;
     }
 
     @Override
     public void onClose() {
         logger.info("Server stopping");
+        sessions.close();
+        counters.close();
     }
 
     @Override
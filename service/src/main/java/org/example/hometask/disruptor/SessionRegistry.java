@@ -0,0 +1,400 @@
+package org.example.hometask.disruptor;
+
+import io.aeron.Aeron;
+import io.aeron.Image;
+import io.aeron.Publication;
+import io.aeron.exceptions.AeronException;
+import org.agrona.CloseHelper;
+import org.agrona.collections.Int2ObjectHashMap;
+import org.agrona.concurrent.ManyToOneConcurrentLinkedQueue;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+/**
+ * Keeps track of client sessions and owns their response publications, so none of them outlives its session.
+ * <p>
+ * Sessions are the images of the ingress subscription. A publication is opened on connect request and closed as soon
+ * as the image of the session goes away, when the session is replaced by a new connect request, when the session
+ * has sent nothing for <code>idleTimeoutNanos</code>, or when a publisher requests to disconnect the session as a slow
+ * consumer, see {@link Disconnect}. The latter is detected by the position of the image, so the hot
+ * path does not track activity at all. Connect requests beyond <code>maxSessions</code> are ignored.
+ * <p>
+ * Publications are added asynchronously, so a burst of connect requests does not stall the ingress thread while the
+ * media driver sets them up. A connect request stays pending until its publication is ready, or until
+ * <code>connectTimeoutNanos</code> is over. The publication of the previous connect request of the session, if any,
+ * keeps serving responses meanwhile. Registrations which are not needed anymore are closed once they complete, since
+ * the client cannot remove a publication it has not got yet.
+ * <p>
+ * Everything but the image handlers is called by the ingress thread only. Image handlers are called by the client
+ * conductor, they just pass images to the ingress thread, and so do publishers with their disconnect requests.
+ */
+public class SessionRegistry {
+
+    /**
+     * Idle sessions are looked for no more often than that.
+     */
+    private static final long SCAN_INTERVAL_NANOS = SECONDS.toNanos(1);
+
+    protected final Logger logger = LoggerFactory.getLogger(getClass());
+
+    @NotNull
+    private final Aeron aeron;
+
+    @NotNull
+    private final ConcurrentHashMap<Integer, Publication> publicationsBySessionId;
+
+    @NotNull
+    private final IngressCounters counters;
+
+    private final boolean concurrentPublications;
+
+    private final int maxSessions;
+
+    private final long idleTimeoutNanos;
+
+    private final long connectTimeoutNanos;
+
+    private final ManyToOneConcurrentLinkedQueue<Image> availableImages = new ManyToOneConcurrentLinkedQueue<>();
+
+    private final ManyToOneConcurrentLinkedQueue<Image> unavailableImages = new ManyToOneConcurrentLinkedQueue<>();
+
+    @NotNull
+    private final ManyToOneConcurrentLinkedQueue<Disconnect> disconnects;
+
+    private final Int2ObjectHashMap<Session> sessionsById = new Int2ObjectHashMap<>();
+
+    /**
+     * Connect requests whose publications are being added, including the abandoned ones.
+     */
+    private final ArrayList<PendingConnect> pendingConnects = new ArrayList<>();
+
+    /**
+     * The latest connect request of a session, while it is pending.
+     */
+    private final Int2ObjectHashMap<PendingConnect> pendingConnectsBySessionId = new Int2ObjectHashMap<>();
+
+    private long lastScanNanos;
+
+    /**
+     * @param disconnects            Disconnect requests of publishers.
+     * @param concurrentPublications Whether publications are offered to by several threads.
+     * @param idleTimeoutNanos       How long a session may send nothing before its publication is closed, or 0 to
+     *                               keep idle sessions forever.
+     * @param connectTimeoutNanos    How long a connect request may wait for its publication to be added.
+     */
+    public SessionRegistry(
+            @NotNull Aeron aeron,
+            @NotNull ConcurrentHashMap<Integer, Publication> publicationsBySessionId,
+            @NotNull IngressCounters counters,
+            @NotNull ManyToOneConcurrentLinkedQueue<Disconnect> disconnects,
+            boolean concurrentPublications,
+            int maxSessions,
+            long idleTimeoutNanos,
+            long connectTimeoutNanos
+    ) {
+        if (maxSessions <= 0) {
+            throw new IllegalArgumentException("Invalid max number of sessions: " + maxSessions);
+        }
+        this.aeron = aeron;
+        this.publicationsBySessionId = publicationsBySessionId;
+        this.counters = counters;
+        this.disconnects = disconnects;
+        this.concurrentPublications = concurrentPublications;
+        this.maxSessions = maxSessions;
+        this.idleTimeoutNanos = idleTimeoutNanos;
+        this.connectTimeoutNanos = connectTimeoutNanos;
+    }
+
+    /**
+     * Available image handler of the ingress subscription.
+     */
+    public void onAvailableImage(@NotNull Image image) {
+        availableImages.offer(image);
+    }
+
+    /**
+     * Unavailable image handler of the ingress subscription.
+     */
+    public void onUnavailableImage(@NotNull Image image) {
+        unavailableImages.offer(image);
+    }
+
+    /**
+     * Handles images gone or come and disconnect requests since the previous call, completes pending connect requests,
+     * and evicts idle sessions from time to time.
+     *
+     * @return Amount of work done.
+     */
+    public int doWork(long nowNanos) {
+
+        int workCount = 0;
+
+        Image image;
+        while ((image = availableImages.poll()) != null) {
+            final var session = sessionsById.get(image.sessionId());
+            if (session == null) {
+                sessionsById.put(image.sessionId(), new Session(image, nowNanos));
+            } else {
+                // the connect request has been polled already
+                session.image = image;
+                session.position = image.position();
+            }
+            workCount++;
+        }
+
+        while ((image = unavailableImages.poll()) != null) {
+            final var session = sessionsById.get(image.sessionId());
+            // the image may have been replaced by a newer one of the same session
+            if (session != null && (session.image == null || session.image == image)) {
+                sessionsById.remove(image.sessionId());
+                if (close(image.sessionId())) {
+                    logger.info("Session {} disconnected", image.sessionId());
+                }
+            }
+            workCount++;
+        }
+
+        Disconnect disconnect;
+        while ((disconnect = disconnects.poll()) != null) {
+            // the session may have connected again meanwhile, its pending connect request is kept either way
+            if (publicationsBySessionId.remove(disconnect.sessionId(), disconnect.publication())) {
+                CloseHelper.quietClose(disconnect.publication());
+                counters.connectedSessions.setOrdered(publicationsBySessionId.size());
+                logger.info("Session {} disconnected as a slow consumer", disconnect.sessionId());
+            }
+            workCount++;
+        }
+
+        if (!pendingConnects.isEmpty()) {
+            workCount += pollPendingConnects(nowNanos);
+        }
+
+        if (idleTimeoutNanos > 0 && nowNanos - lastScanNanos >= SCAN_INTERVAL_NANOS) {
+            lastScanNanos = nowNanos;
+            workCount += evictIdle(nowNanos);
+        }
+
+        return workCount;
+    }
+
+    /**
+     * Starts adding the response publication of the session, unless there are too many sessions already. It is
+     * available once a later {@link #doWork} finds it added, then the publication of the previous connect request of
+     * the session, if any, is closed. A pending connect request of the session is abandoned.
+     */
+    public void connect(int sessionId, @NotNull String uri, int streamId, long nowNanos) {
+
+        final var pending = pendingConnectsBySessionId.remove(sessionId);
+        if (pending != null) {
+            pending.abandoned = true;
+        }
+        if (pending == null && !publicationsBySessionId.containsKey(sessionId)
+                && publicationsBySessionId.size() + pendingConnectsBySessionId.size() >= maxSessions) {
+            logger.warn("Refused connect request of session {}: {} sessions already", sessionId, maxSessions);
+            counters.refusedSessions.incrementOrdered();
+            return;
+        }
+
+        logger.info("Received connect request with response URI {} stream {}", uri, streamId);
+        // exclusive publications are cheaper, but they cannot be offered to by several threads
+        final long registrationId = concurrentPublications
+                ? aeron.asyncAddPublication(uri, streamId)
+                : aeron.asyncAddExclusivePublication(uri, streamId);
+        final var connect = new PendingConnect(sessionId, registrationId, nowNanos + connectTimeoutNanos);
+        pendingConnects.add(connect);
+        pendingConnectsBySessionId.put(sessionId, connect);
+
+        final var session = sessionsById.get(sessionId);
+        if (session == null) {
+            sessionsById.put(sessionId, new Session(null, nowNanos));
+        } else {
+            session.activeNanos = nowNanos;
+        }
+    }
+
+    /**
+     * @return Response publication of the session, if it is connected.
+     */
+    @Nullable
+    public Publication publication(int sessionId) {
+        return publicationsBySessionId.get(sessionId);
+    }
+
+    /**
+     * Closes publications of all sessions, pending connect requests are abandoned.
+     */
+    public void close() {
+        publicationsBySessionId.values().forEach(CloseHelper::quietClose);
+        publicationsBySessionId.clear();
+        for (final var pending : pendingConnects) {
+            final var publication = pending.publication(aeron, concurrentPublications);
+            if (publication != null) {
+                CloseHelper.quietClose(publication);
+            } else {
+                // nothing to close yet, so the client closes it along with itself
+                aeron.asyncRemovePublication(pending.registrationId);
+            }
+        }
+        pendingConnects.clear();
+        pendingConnectsBySessionId.clear();
+        sessionsById.clear();
+        counters.connectedSessions.setOrdered(0);
+    }
+
+    private int pollPendingConnects(long nowNanos) {
+        int workCount = 0;
+        for (int i = pendingConnects.size() - 1; i >= 0; i--) {
+            final var pending = pendingConnects.get(i);
+            final Publication publication;
+            try {
+                publication = pending.publication(aeron, concurrentPublications);
+            } catch (AeronException e) {
+                if (!pending.abandoned) {
+                    logger.warn("Failed to connect session {}: {}", pending.sessionId, e.getMessage());
+                    abandon(pending);
+                }
+                removePendingConnect(i);
+                workCount++;
+                continue;
+            }
+
+            if (publication == null) {
+                if (!pending.abandoned && nowNanos - pending.deadlineNanos >= 0) {
+                    logger.warn("Connect request of session {} timed out after {} ms", pending.sessionId,
+                            NANOSECONDS.toMillis(connectTimeoutNanos));
+                    // keeps waiting for the publication in order to close it
+                    abandon(pending);
+                    workCount++;
+                }
+                continue;
+            }
+
+            removePendingConnect(i);
+            workCount++;
+            if (pending.abandoned) {
+                CloseHelper.quietClose(publication);
+                continue;
+            }
+            pendingConnectsBySessionId.remove(pending.sessionId);
+            CloseHelper.quietClose(publicationsBySessionId.put(pending.sessionId, publication));
+            counters.connectedSessions.setOrdered(publicationsBySessionId.size());
+            logger.info("Session {} connected", pending.sessionId);
+        }
+        return workCount;
+    }
+
+    private void abandon(@NotNull PendingConnect pending) {
+        if (!pending.abandoned) {
+            pending.abandoned = true;
+            pendingConnectsBySessionId.remove(pending.sessionId);
+        }
+    }
+
+    private void removePendingConnect(int index) {
+        final int last = pendingConnects.size() - 1;
+        pendingConnects.set(index, pendingConnects.get(last));
+        pendingConnects.remove(last);
+    }
+
+    private int evictIdle(long nowNanos) {
+        int evicted = 0;
+        final var iterator = sessionsById.entrySet().iterator();
+        while (iterator.hasNext()) {
+            iterator.next();
+            final int sessionId = iterator.getIntKey();
+            final var session = iterator.getValue();
+            if (session.image != null && session.image.position() != session.position) {
+                session.position = session.image.position();
+                session.activeNanos = nowNanos;
+            } else if (nowNanos - session.activeNanos >= idleTimeoutNanos && close(sessionId)) {
+                logger.warn("Session {} evicted: idle for more than {} ms", sessionId,
+                        NANOSECONDS.toMillis(idleTimeoutNanos));
+                counters.evictedSessions.incrementOrdered();
+                evicted++;
+            }
+        }
+        return evicted;
+    }
+
+    /**
+     * Closes the response publication of the session, the session is still known until its image goes away.
+     *
+     * @return Whether the session had a publication.
+     */
+    private boolean close(int sessionId) {
+        final var pending = pendingConnectsBySessionId.get(sessionId);
+        if (pending != null) {
+            abandon(pending);
+        }
+        final var publication = publicationsBySessionId.remove(sessionId);
+        if (publication == null) {
+            return false;
+        }
+        CloseHelper.quietClose(publication);
+        counters.connectedSessions.setOrdered(publicationsBySessionId.size());
+        return true;
+    }
+
+    /**
+     * Request of a publisher to close the publication of a slow session. The publication is closed only if it still
+     * serves the session, since the session may have connected again by the time the request is handled.
+     */
+    public record Disconnect(int sessionId, @NotNull Publication publication) {
+    }
+
+    private static final class Session {
+
+        @Nullable
+        Image image;
+
+        long position;
+
+        /**
+         * When the image was seen moving for the last time.
+         */
+        long activeNanos;
+
+        Session(@Nullable Image image, long nowNanos) {
+            this.image = image;
+            this.position = image == null ? 0 : image.position();
+            this.activeNanos = nowNanos;
+        }
+    }
+
+    private static final class PendingConnect {
+
+        final int sessionId;
+
+        final long registrationId;
+
+        final long deadlineNanos;
+
+        /**
+         * Whether the publication is closed as soon as it is added, the session does not need it anymore.
+         */
+        boolean abandoned;
+
+        PendingConnect(int sessionId, long registrationId, long deadlineNanos) {
+            this.sessionId = sessionId;
+            this.registrationId = registrationId;
+            this.deadlineNanos = deadlineNanos;
+        }
+
+        /**
+         * @return The publication, or null if it is still being added.
+         * @throws AeronException If the publication could not be added.
+         */
+        @Nullable
+        Publication publication(@NotNull Aeron aeron, boolean concurrent) {
+            return concurrent ? aeron.getPublication(registrationId) : aeron.getExclusivePublication(registrationId);
+        }
+    }
+}
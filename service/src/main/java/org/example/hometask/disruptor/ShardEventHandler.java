@@ -0,0 +1,24 @@
+package org.example.hometask.disruptor;
+
+import com.lmax.disruptor.EventHandler;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Delivers events produced by the state machine for other shards to their internal messages queues.
+ */
+class ShardEventHandler implements EventHandler<EventHolder> {
+
+    @NotNull
+    private final ShardRouter router;
+
+    public ShardEventHandler(@NotNull ShardRouter router) {
+        this.router = router;
+    }
+
+    @Override
+    public void onEvent(@NotNull EventHolder holder, long sequence, boolean endOfBatch) {
+        for (final var envelope : holder.shardEvents) {
+            router.queue(envelope.shard()).add(envelope.event());
+        }
+    }
+}
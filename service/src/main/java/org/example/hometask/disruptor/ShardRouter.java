@@ -0,0 +1,54 @@
+package org.example.hometask.disruptor;
+
+import org.agrona.concurrent.IdleStrategy;
+import org.example.hometask.state.Repository;
+import org.example.hometask.state.WithdrawalUuids;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Internal messages queues of all shards, so internal events reach the shard owning the entity they concern.
+ */
+public class ShardRouter {
+
+    @NotNull
+    private final InternalMessagesQueue[] queues;
+
+    @NotNull
+    private final WithdrawalUuids withdrawalUuids;
+
+    public ShardRouter(@NotNull List<InternalMessagesQueue> queues, @NotNull WithdrawalUuids withdrawalUuids) {
+        if (queues.isEmpty()) {
+            throw new IllegalArgumentException("No shards");
+        }
+        this.queues = queues.toArray(new InternalMessagesQueue[0]);
+        this.withdrawalUuids = withdrawalUuids;
+    }
+
+    public int shards() {
+        return queues.length;
+    }
+
+    @NotNull
+    public InternalMessagesQueue queue(int shard) {
+        return queues[shard];
+    }
+
+    /**
+     * @return Queue of the shard owning the withdrawal, any shard for foreign UUIDs.
+     */
+    @NotNull
+    public InternalMessagesQueue queue(@NotNull UUID withdrawalUuid) {
+        return queues[Repository.shardOf(withdrawalUuids.toId(withdrawalUuid), queues.length)];
+    }
+
+    /**
+     * See {@link InternalMessagesQueue#idleStrategy(IdleStrategy, InternalMessagesQueue...)}.
+     */
+    @NotNull
+    public IdleStrategy idleStrategy(@NotNull IdleStrategy delegate) {
+        return InternalMessagesQueue.idleStrategy(delegate, queues);
+    }
+}
@@ -0,0 +1,60 @@
+package org.example.hometask.disruptor;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.function.Supplier;
+
+/**
+ * Grow-only pool of mutable slots owned by a ring buffer slot. Slots are reused once cleared, so in the steady state
+ * filling them allocates nothing. A slot is valid until the pool is cleared, consumers copy what they keep longer.
+ */
+public final class Slots<T> {
+
+    @NotNull
+    private final Supplier<T> factory;
+
+    private final ArrayList<T> slots = new ArrayList<>(1);
+
+    private int size;
+
+    public Slots(@NotNull Supplier<T> factory) {
+        this.factory = factory;
+    }
+
+    /**
+     * @return The next slot, holding whatever it held before, so the caller has to fill it completely.
+     */
+    @NotNull
+    public T add() {
+        if (size == slots.size()) {
+            slots.add(factory.get());
+        }
+        return slots.get(size++);
+    }
+
+    @NotNull
+    public T get(int index) {
+        if (index >= size) {
+            throw new IndexOutOfBoundsException("Index " + index + " out of bounds for size " + size);
+        }
+        return slots.get(index);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public void clear() {
+        size = 0;
+    }
+
+    @Override
+    public String toString() {
+        return slots.subList(0, size).toString();
+    }
+}
@@ -0,0 +1,24 @@
+package org.example.hometask.disruptor;
+
+/**
+ * What the publisher does with a session whose responses stay spilled for too long or overflow its spill area.
+ * Other sessions are never affected, since responses to a back-pressured session are spilled rather than waited for.
+ */
+public enum SlowConsumerPolicy {
+
+    /**
+     * Close the publication of the session and discard its spilled responses. The client has to reconnect.
+     */
+    DISCONNECT,
+
+    /**
+     * Discard spilled responses, so the session starts over with an empty spill area.
+     */
+    DROP,
+
+    /**
+     * Keep the session and its spilled responses, only log it as lagging. Responses which do not fit into the spill
+     * area are discarded.
+     */
+    MARK_LAGGING
+}
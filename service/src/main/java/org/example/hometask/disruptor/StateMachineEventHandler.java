@@ -1,12 +1,15 @@
 package org.example.hometask.disruptor;
 
 import com.lmax.disruptor.EventHandler;
+import com.lmax.disruptor.LifecycleAware;
 import org.example.hometask.Controller;
+import org.example.hometask.messages.disruptor.TickEvent;
+import org.example.hometask.state.Snapshotter;
 import org.jetbrains.annotations.NotNull;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-class StateMachineEventHandler implements EventHandler<EventHolder> {
+class StateMachineEventHandler implements EventHandler<EventHolder>, LifecycleAware {
 
     protected final Logger logger = LoggerFactory.getLogger(getClass());
 
@@ -16,20 +19,55 @@ class StateMachineEventHandler implements EventHandler<EventHolder> {
     @NotNull
     private final Controller controller;
 
-    public StateMachineEventHandler(@NotNull EventContext eventContext, @NotNull Controller controller) {
+    @NotNull
+    private final Snapshotter snapshotter;
+
+    /**
+     * One of this many events is logged, or none if 0. Logging formats strings, so it is too slow and wasteful for
+     * every event, the audit log has them all, see {@link AuditEventHandler}.
+     */
+    private final int logSampleInterval;
+
+    private int untilLogged;
+
+    public StateMachineEventHandler(
+            @NotNull EventContext eventContext,
+            @NotNull Controller controller,
+            @NotNull Snapshotter snapshotter,
+            int logSampleInterval
+    ) {
         this.eventContext = eventContext;
         this.controller = controller;
+        this.snapshotter = snapshotter;
+        this.logSampleInterval = logSampleInterval;
+        this.untilLogged = logSampleInterval;
     }
 
     @Override
     public void onEvent(@NotNull EventHolder holder, long sequence, boolean endOfBatch) throws Exception {
         final var event = holder.event;
         if (event != null) {
-            logger.info("Processing event: {}", event);
             eventContext.holder = holder;
             controller.accept(event);
-            logger.info("Result: envelope={} withdrawalRequests={}", holder.messages,
-                    holder.withdrawalRequests);
+            if (logSampleInterval > 0 && !(event instanceof TickEvent) && --untilLogged == 0) {
+                untilLogged = logSampleInterval;
+                logger.info("Processed event: {} messages={} withdrawalRequests={}", event, holder.messages,
+                        holder.withdrawalRequests);
+            }
+        }
+        if (endOfBatch) {
+            // snapshots are taken between batches, the whole batch is in the journal already
+            snapshotter.onEndOfBatch(holder.journalPosition);
         }
     }
+
+    @Override
+    public void onStart() {
+        // empty
+    }
+
+    @Override
+    public void onShutdown() {
+        snapshotter.close();
+    }
 }
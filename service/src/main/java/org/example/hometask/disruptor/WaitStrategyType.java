@@ -0,0 +1,53 @@
+package org.example.hometask.disruptor;
+
+import com.lmax.disruptor.BlockingWaitStrategy;
+import com.lmax.disruptor.BusySpinWaitStrategy;
+import com.lmax.disruptor.PhasedBackoffWaitStrategy;
+import com.lmax.disruptor.SleepingWaitStrategy;
+import com.lmax.disruptor.WaitStrategy;
+import com.lmax.disruptor.YieldingWaitStrategy;
+import org.jetbrains.annotations.NotNull;
+
+import static java.util.concurrent.TimeUnit.MICROSECONDS;
+
+/**
+ * How event handlers wait for events. The cheaper the wake-up, the more CPU is burnt while idle.
+ */
+public enum WaitStrategyType {
+
+    /**
+     * Spin on the sequence. The lowest latency, but every handler thread takes a whole core, better an isolated one.
+     */
+    BUSY_SPIN,
+
+    /**
+     * Spin for a while, then yield. Low latency while leaving cores to other threads, yet never idle.
+     */
+    YIELDING,
+
+    /**
+     * Spin, yield, then sleep for growing periods. Little CPU use, latency spikes after idle periods.
+     */
+    SLEEPING,
+
+    /**
+     * Spin and yield for fixed periods, then block. A compromise between {@link #YIELDING} and {@link #BLOCKING}.
+     */
+    BACKOFF,
+
+    /**
+     * Block on a lock and a condition. No CPU use while idle, but signalling costs microseconds per event.
+     */
+    BLOCKING;
+
+    @NotNull
+    public WaitStrategy newWaitStrategy() {
+        return switch (this) {
+            case BUSY_SPIN -> new BusySpinWaitStrategy();
+            case YIELDING -> new YieldingWaitStrategy();
+            case SLEEPING -> new SleepingWaitStrategy();
+            case BACKOFF -> PhasedBackoffWaitStrategy.withLock(10, 100, MICROSECONDS);
+            case BLOCKING -> new BlockingWaitStrategy();
+        };
+    }
+}
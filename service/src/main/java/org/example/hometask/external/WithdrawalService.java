@@ -1,6 +1,11 @@
 package org.example.hometask.external;
 
 import java.math.BigDecimal;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
 
 public interface WithdrawalService {
@@ -24,6 +29,60 @@ public interface WithdrawalService {
      */
     WithdrawalState getRequestState(WithdrawalId id);
 
+    /**
+     * Request many withdrawals at once, see {@link #requestWithdrawal(WithdrawalId, Address, BigDecimal)}.
+     *
+     * @param requests - withdrawals to request
+     * @return ids of requests rejected since there's different address or amount for given id
+     */
+    default Set<WithdrawalId> requestWithdrawals(Collection<Request> requests) {
+        final var rejected = new HashSet<WithdrawalId>();
+        for (final var request : requests) {
+            try {
+                requestWithdrawal(request.id(), request.address(), request.amount());
+            } catch (IllegalStateException e) {
+                rejected.add(request.id());
+            }
+        }
+        return rejected;
+    }
+
+    /**
+     * Return current states of many withdrawals at once, see {@link #getRequestState(WithdrawalId)}.
+     *
+     * @param ids - withdrawal ids
+     * @return current states of withdrawals, there are no entries for unknown ids
+     */
+    default Map<WithdrawalId, WithdrawalState> getRequestStates(Collection<WithdrawalId> ids) {
+        final var states = new HashMap<WithdrawalId, WithdrawalState>();
+        for (final var id : ids) {
+            try {
+                states.put(id, getRequestState(id));
+            } catch (IllegalArgumentException e) {
+                // unknown id
+            }
+        }
+        return states;
+    }
+
+    /**
+     * Subscribe to notifications about completed withdrawals. Notifications may be lost, so they only reduce the need
+     * of querying states.
+     *
+     * @param listener - a listener notified once a withdrawal leaves the processing state
+     * @return <code>false</code> in case notifications are not supported
+     */
+    default boolean subscribe(Listener listener) {
+        return false;
+    }
+
+    /**
+     * Stop notifications, see {@link #subscribe(Listener)}.
+     */
+    default void unsubscribe() {
+        // nothing to stop
+    }
+
     enum WithdrawalState {
         PROCESSING,
         COMPLETED,
@@ -37,4 +96,16 @@ public interface WithdrawalService {
     record Address(String value) {
 
     }
+
+    record Request(WithdrawalId id, Address address, BigDecimal amount) {
+
+    }
+
+    /**
+     * Receives final states of withdrawals, it is called by threads of the service.
+     */
+    interface Listener {
+
+        void onCompleted(WithdrawalId id, WithdrawalState state);
+    }
 }
@@ -1,11 +1,23 @@
 package org.example.hometask.external;
 
+import org.example.hometask.utils.PrefixThreadFactory;
+
 import java.math.BigDecimal;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
 import java.util.Objects;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
 
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
 import static org.example.hometask.external.WithdrawalService.WithdrawalState.COMPLETED;
 import static org.example.hometask.external.WithdrawalService.WithdrawalState.FAILED;
 import static org.example.hometask.external.WithdrawalService.WithdrawalState.PROCESSING;
@@ -14,10 +26,44 @@ public class WithdrawalServiceStub implements WithdrawalService {
 
     private final ConcurrentMap<WithdrawalId, Withdrawal> requests = new ConcurrentHashMap<>();
 
+    /**
+     * Number of calls made, a bulk call counts as a single one.
+     */
+    private final AtomicLong calls = new AtomicLong();
+
+    /**
+     * Pushes final states to the listener once withdrawals are finalised, if there is a subscription.
+     */
+    private volatile ScheduledExecutorService notifier;
+
+    private volatile Listener listener;
+
     @Override
     public void requestWithdrawal(WithdrawalId id, Address address, BigDecimal amount) {
-        final var existing = requests.putIfAbsent(id, new Withdrawal(finalState(), finaliseAt(), address, amount));
-        if (existing != null && !Objects.equals(existing.address, address) &&
+        calls.incrementAndGet();
+        request(id, address, amount);
+    }
+
+    @Override
+    public Set<WithdrawalId> requestWithdrawals(Collection<Request> requests) {
+        calls.incrementAndGet();
+        final var rejected = new HashSet<WithdrawalId>();
+        for (final var request : requests) {
+            try {
+                request(request.id(), request.address(), request.amount());
+            } catch (IllegalStateException e) {
+                rejected.add(request.id());
+            }
+        }
+        return rejected;
+    }
+
+    private void request(WithdrawalId id, Address address, BigDecimal amount) {
+        final var withdrawal = new Withdrawal(finalState(), finaliseAt(), address, amount);
+        final var existing = requests.putIfAbsent(id, withdrawal);
+        if (existing == null) {
+            scheduleNotification(id, withdrawal);
+        } else if (!Objects.equals(existing.address, address) &&
             !Objects.equals(existing.amount, amount)) {
             throw new IllegalStateException("Withdrawal request with id[%s] is already present".formatted(id));
         }
@@ -33,6 +79,7 @@ public class WithdrawalServiceStub implements WithdrawalService {
 
     @Override
     public WithdrawalState getRequestState(WithdrawalId id) {
+        calls.incrementAndGet();
         final var request = requests.get(id);
         if (request == null) {
             throw new IllegalArgumentException("Request %s is not found".formatted(id));
@@ -40,6 +87,58 @@ public class WithdrawalServiceStub implements WithdrawalService {
         return request.finalState();
     }
 
+    @Override
+    public Map<WithdrawalId, WithdrawalState> getRequestStates(Collection<WithdrawalId> ids) {
+        calls.incrementAndGet();
+        final var states = new HashMap<WithdrawalId, WithdrawalState>();
+        for (final var id : ids) {
+            final var request = requests.get(id);
+            if (request != null) {
+                states.put(id, request.finalState());
+            }
+        }
+        return states;
+    }
+
+    @Override
+    public synchronized boolean subscribe(Listener listener) {
+        if (this.listener != null) {
+            throw new IllegalStateException("Already subscribed");
+        }
+        this.notifier = Executors.newSingleThreadScheduledExecutor(new PrefixThreadFactory("withdrawal-notifier-"));
+        this.listener = listener;
+        return true;
+    }
+
+    @Override
+    public synchronized void unsubscribe() {
+        if (listener != null) {
+            listener = null;
+            notifier.shutdownNow();
+        }
+    }
+
+    private void scheduleNotification(WithdrawalId id, Withdrawal withdrawal) {
+        final var notifier = this.notifier;
+        if (listener == null || notifier == null) {
+            return;
+        }
+        try {
+            notifier.schedule(() -> {
+                final var listener = this.listener;
+                if (listener != null) {
+                    listener.onCompleted(id, withdrawal.state());
+                }
+            }, withdrawal.finaliseAt() - System.currentTimeMillis(), MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            // unsubscribed meanwhile
+        }
+    }
+
+    public long calls() {
+        return calls.get();
+    }
+
     record Withdrawal(WithdrawalState state, long finaliseAt, Address address, BigDecimal amount) {
 
         public WithdrawalState finalState() {
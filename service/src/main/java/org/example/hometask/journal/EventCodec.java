@@ -0,0 +1,192 @@
+package org.example.hometask.journal;
+
+import org.agrona.DirectBuffer;
+import org.example.hometask.messages.WithdrawalState;
+import org.example.hometask.messages.disruptor.CreateWithdrawalCallFailureEvent;
+import org.example.hometask.messages.disruptor.CreateWithdrawalDuplicationFailureEvent;
+import org.example.hometask.messages.disruptor.CreateWithdrawalSuccessEvent;
+import org.example.hometask.messages.disruptor.Event;
+import org.example.hometask.messages.disruptor.InboundAeronFragmentEvent;
+import org.example.hometask.messages.disruptor.InboundAeronMessageEvent;
+import org.example.hometask.messages.disruptor.QueryWithdrawalCallFailureEvent;
+import org.example.hometask.messages.disruptor.QueryWithdrawalSuccessEvent;
+import org.example.hometask.messages.disruptor.QueryWithdrawalUnknownIdFailureEvent;
+import org.example.hometask.messages.disruptor.RecoveryEvent;
+import org.example.hometask.messages.disruptor.ShardTransferEvent;
+import org.example.hometask.messages.disruptor.ShardTransferResultEvent;
+import org.example.hometask.messages.disruptor.TickEvent;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.UUID;
+
+/**
+ * Binary representation of inbound events in the journal. Fragments are stored as SBE messages, the way they are
+ * in ring buffer slots (i.e. with amounts already normalized by the ingress).
+ */
+public final class EventCodec {
+
+    public static final int INBOUND_AERON_FRAGMENT = 1;
+    public static final int CREATE_WITHDRAWAL_SUCCESS = 2;
+    public static final int CREATE_WITHDRAWAL_DUPLICATION_FAILURE = 3;
+    public static final int QUERY_WITHDRAWAL_SUCCESS = 4;
+    public static final int QUERY_WITHDRAWAL_UNKNOWN_ID_FAILURE = 5;
+    public static final int SHARD_TRANSFER = 6;
+    public static final int SHARD_TRANSFER_RESULT = 7;
+    public static final int CREATE_WITHDRAWAL_CALL_FAILURE = 8;
+    public static final int QUERY_WITHDRAWAL_CALL_FAILURE = 9;
+
+    private static final int UUID_LENGTH = 2 * Long.BYTES;
+
+    private static final WithdrawalState[] WITHDRAWAL_STATES = WithdrawalState.values();
+
+    @NotNull
+    private final JournalWriter writer;
+
+    private final Event.Visitor<Void, RuntimeException> encoder = new Event.Visitor<>() {
+        @Override
+        public Void visit(@NotNull InboundAeronMessageEvent event) {
+            // ingress publishes fragments only, decoded messages are not worth a second encoding
+            throw new IllegalArgumentException("Event cannot be journalled: " + event);
+        }
+
+        @Override
+        public Void visit(@NotNull InboundAeronFragmentEvent event) {
+            final int offset = writer.claim(INBOUND_AERON_FRAGMENT, Integer.BYTES + event.length());
+            final var buffer = writer.buffer();
+            buffer.putInt(offset, event.sessionId());
+            buffer.putBytes(offset + Integer.BYTES, event.buffer(), 0, event.length());
+            writer.commit();
+            return null;
+        }
+
+        @Override
+        public Void visit(@NotNull CreateWithdrawalSuccessEvent event) {
+            putUuid(writer.claim(CREATE_WITHDRAWAL_SUCCESS, UUID_LENGTH), event.withdrawalUuid());
+            writer.commit();
+            return null;
+        }
+
+        @Override
+        public Void visit(@NotNull CreateWithdrawalDuplicationFailureEvent event) {
+            putUuid(writer.claim(CREATE_WITHDRAWAL_DUPLICATION_FAILURE, UUID_LENGTH), event.withdrawalUuid());
+            writer.commit();
+            return null;
+        }
+
+        @Override
+        public Void visit(@NotNull CreateWithdrawalCallFailureEvent event) {
+            putUuid(writer.claim(CREATE_WITHDRAWAL_CALL_FAILURE, UUID_LENGTH), event.withdrawalUuid());
+            writer.commit();
+            return null;
+        }
+
+        @Override
+        public Void visit(@NotNull QueryWithdrawalSuccessEvent event) {
+            final int offset = writer.claim(QUERY_WITHDRAWAL_SUCCESS, UUID_LENGTH + Byte.BYTES);
+            putUuid(offset, event.withdrawalUuid());
+            writer.buffer().putByte(offset + UUID_LENGTH, (byte) event.state().ordinal());
+            writer.commit();
+            return null;
+        }
+
+        @Override
+        public Void visit(@NotNull QueryWithdrawalUnknownIdFailureEvent event) {
+            putUuid(writer.claim(QUERY_WITHDRAWAL_UNKNOWN_ID_FAILURE, UUID_LENGTH), event.withdrawalUuid());
+            writer.commit();
+            return null;
+        }
+
+        @Override
+        public Void visit(@NotNull QueryWithdrawalCallFailureEvent event) {
+            putUuid(writer.claim(QUERY_WITHDRAWAL_CALL_FAILURE, UUID_LENGTH), event.withdrawalUuid());
+            writer.commit();
+            return null;
+        }
+
+        @Override
+        public Void visit(@NotNull TickEvent event) {
+            // ticks change nothing but timers, which are rebuilt on recovery
+            return null;
+        }
+
+        @Override
+        public Void visit(@NotNull RecoveryEvent event) {
+            return null;
+        }
+
+        @Override
+        public Void visit(@NotNull ShardTransferEvent event) {
+            final int offset = writer.claim(SHARD_TRANSFER, Integer.BYTES + 4 * Long.BYTES);
+            final var buffer = writer.buffer();
+            buffer.putInt(offset, event.sourceShard());
+            buffer.putLong(offset + Integer.BYTES, event.sequence());
+            buffer.putLong(offset + Integer.BYTES + Long.BYTES, event.acknowledgedSequence());
+            buffer.putLong(offset + Integer.BYTES + 2 * Long.BYTES, event.toAccountId());
+            buffer.putLong(offset + Integer.BYTES + 3 * Long.BYTES, event.amount());
+            writer.commit();
+            return null;
+        }
+
+        @Override
+        public Void visit(@NotNull ShardTransferResultEvent event) {
+            final int offset = writer.claim(SHARD_TRANSFER_RESULT, Integer.BYTES + Long.BYTES + Byte.BYTES);
+            final var buffer = writer.buffer();
+            buffer.putInt(offset, event.targetShard());
+            buffer.putLong(offset + Integer.BYTES, event.sequence());
+            buffer.putByte(offset + Integer.BYTES + Long.BYTES, (byte) (event.credited() ? 1 : 0));
+            writer.commit();
+            return null;
+        }
+    };
+
+    public EventCodec(@NotNull JournalWriter writer) {
+        this.writer = writer;
+    }
+
+    public void encode(@NotNull Event event) {
+        event.accept(encoder);
+    }
+
+    /**
+     * Decodes a record read by {@link JournalReader}. Allocates, it is meant for replay only.
+     */
+    @NotNull
+    public static Event decode(int type, @NotNull DirectBuffer buffer, int offset, int length) {
+        return switch (type) {
+            case INBOUND_AERON_FRAGMENT -> {
+                final var event = new InboundAeronFragmentEvent();
+                event.wrap(buffer.getInt(offset), buffer, offset + Integer.BYTES, length - Integer.BYTES);
+                yield event;
+            }
+            case CREATE_WITHDRAWAL_SUCCESS -> new CreateWithdrawalSuccessEvent(getUuid(buffer, offset));
+            case CREATE_WITHDRAWAL_DUPLICATION_FAILURE ->
+                    new CreateWithdrawalDuplicationFailureEvent(getUuid(buffer, offset));
+            case QUERY_WITHDRAWAL_SUCCESS -> new QueryWithdrawalSuccessEvent(getUuid(buffer, offset),
+                    WITHDRAWAL_STATES[buffer.getByte(offset + UUID_LENGTH)]);
+            case QUERY_WITHDRAWAL_UNKNOWN_ID_FAILURE ->
+                    new QueryWithdrawalUnknownIdFailureEvent(getUuid(buffer, offset));
+            case CREATE_WITHDRAWAL_CALL_FAILURE -> new CreateWithdrawalCallFailureEvent(getUuid(buffer, offset));
+            case QUERY_WITHDRAWAL_CALL_FAILURE -> new QueryWithdrawalCallFailureEvent(getUuid(buffer, offset));
+            case SHARD_TRANSFER -> new ShardTransferEvent(buffer.getInt(offset),
+                    buffer.getLong(offset + Integer.BYTES),
+                    buffer.getLong(offset + Integer.BYTES + Long.BYTES),
+                    buffer.getLong(offset + Integer.BYTES + 2 * Long.BYTES),
+                    buffer.getLong(offset + Integer.BYTES + 3 * Long.BYTES));
+            case SHARD_TRANSFER_RESULT -> new ShardTransferResultEvent(buffer.getInt(offset),
+                    buffer.getLong(offset + Integer.BYTES),
+                    buffer.getByte(offset + Integer.BYTES + Long.BYTES) != 0);
+            default -> throw new IllegalArgumentException("Unknown journal record type: " + type);
+        };
+    }
+
+    private void putUuid(int offset, @NotNull UUID uuid) {
+        final var buffer = writer.buffer();
+        buffer.putLong(offset, uuid.getMostSignificantBits());
+        buffer.putLong(offset + Long.BYTES, uuid.getLeastSignificantBits());
+    }
+
+    @NotNull
+    private static UUID getUuid(@NotNull DirectBuffer buffer, int offset) {
+        return new UUID(buffer.getLong(offset), buffer.getLong(offset + Long.BYTES));
+    }
+}
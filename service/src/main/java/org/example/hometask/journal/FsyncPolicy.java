@@ -0,0 +1,24 @@
+package org.example.hometask.journal;
+
+/**
+ * When {@link JournalWriter} forces appended records to the storage device.
+ * Records are always visible to other processes (and survive a crash of our process) as soon as they are written,
+ * since segments are memory-mapped. Policies only differ in what survives a crash of the OS or a power loss.
+ */
+public enum FsyncPolicy {
+
+    /**
+     * Leave it to the OS. The cheapest option, yet the whole page cache may be lost.
+     */
+    NONE,
+
+    /**
+     * Force records at the end of every batch, before the state machine sees them.
+     */
+    BATCH,
+
+    /**
+     * Force records at the end of the first batch after the configured interval elapsed.
+     */
+    PERIODIC
+}
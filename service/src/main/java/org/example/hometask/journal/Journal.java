@@ -0,0 +1,71 @@
+package org.example.hometask.journal;
+
+import org.agrona.BitUtil;
+import org.agrona.concurrent.AtomicBuffer;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.File;
+import java.util.Arrays;
+
+/**
+ * Layout of the journal shared by {@link JournalWriter} and {@link JournalReader}.
+ * <p>
+ * The journal is a sequence of segment files. The name of every segment is its base position, i.e. the position of
+ * its first byte in the whole journal, therefore a position stays valid even if the segment size is reconfigured.
+ * A segment holds records aligned to {@link #FRAME_ALIGNMENT}, each one prefixed by its length (header included) and
+ * type. The length is written last, so a zero length marks the end of records in the segment; the rest of the segment
+ * is unused if the next record did not fit.
+ */
+public final class Journal {
+
+    public static final int LENGTH_OFFSET = 0;
+    public static final int TYPE_OFFSET = LENGTH_OFFSET + Integer.BYTES;
+    public static final int HEADER_LENGTH = TYPE_OFFSET + Integer.BYTES;
+    public static final int FRAME_ALIGNMENT = 8;
+
+    private static final String SEGMENT_SUFFIX = ".journal";
+
+    @NotNull
+    static File segmentFile(@NotNull File dir, long basePosition) {
+        return new File(dir, "%020d%s".formatted(basePosition, SEGMENT_SUFFIX));
+    }
+
+    /**
+     * @return Base positions of all segments in ascending order.
+     */
+    @NotNull
+    static long[] segments(@NotNull File dir) {
+        final var names = dir.list((ignored, name) -> name.endsWith(SEGMENT_SUFFIX));
+        if (names == null) {
+            return new long[0];
+        }
+        final var positions = new long[names.length];
+        for (int i = 0; i < names.length; i++) {
+            positions[i] = Long.parseLong(names[i].substring(0, names[i].length() - SEGMENT_SUFFIX.length()));
+        }
+        Arrays.sort(positions);
+        return positions;
+    }
+
+    /**
+     * @return Offset right after the last record found in the segment starting from the given offset.
+     */
+    static int endOfRecords(@NotNull AtomicBuffer segment, int offset) {
+        while (offset + HEADER_LENGTH <= segment.capacity()) {
+            final int length = segment.getIntVolatile(offset + LENGTH_OFFSET);
+            if (length == 0) {
+                break;
+            }
+            offset += alignedLength(length);
+        }
+        return offset;
+    }
+
+    static int alignedLength(int length) {
+        return BitUtil.align(length, FRAME_ALIGNMENT);
+    }
+
+    private Journal() {
+        // empty
+    }
+}
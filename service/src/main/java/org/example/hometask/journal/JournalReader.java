@@ -0,0 +1,69 @@
+package org.example.hometask.journal;
+
+import org.agrona.DirectBuffer;
+import org.agrona.IoUtil;
+import org.agrona.concurrent.UnsafeBuffer;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.File;
+import java.nio.channels.FileChannel;
+
+import static org.example.hometask.journal.Journal.HEADER_LENGTH;
+import static org.example.hometask.journal.Journal.LENGTH_OFFSET;
+import static org.example.hometask.journal.Journal.TYPE_OFFSET;
+import static org.example.hometask.journal.Journal.alignedLength;
+
+/**
+ * Reads records appended by {@link JournalWriter}, see {@link Journal} for the layout.
+ */
+public final class JournalReader {
+
+    @FunctionalInterface
+    public interface RecordHandler {
+
+        void onRecord(int type, @NotNull DirectBuffer buffer, int offset, int length);
+    }
+
+    /**
+     * Reads all records starting from the given position, which must be a position returned by
+     * {@link JournalWriter#position()} or by this method.
+     *
+     * @return Position right after the last record read.
+     */
+    public static long read(@NotNull File dir, long fromPosition, @NotNull RecordHandler handler) {
+
+        long position = fromPosition;
+        final var buffer = new UnsafeBuffer(0, 0);
+
+        for (final long base : Journal.segments(dir)) {
+
+            final var file = Journal.segmentFile(dir, base);
+            if (base + file.length() <= position) {
+                continue;
+            }
+
+            final var mappedSegment = IoUtil.mapExistingFile(file, FileChannel.MapMode.READ_ONLY, "journal segment");
+            try {
+                buffer.wrap(mappedSegment);
+                int offset = (int) Math.max(0, position - base);
+                while (offset + HEADER_LENGTH <= buffer.capacity()) {
+                    final int length = buffer.getIntVolatile(offset + LENGTH_OFFSET);
+                    if (length == 0) {
+                        break;
+                    }
+                    handler.onRecord(buffer.getInt(offset + TYPE_OFFSET), buffer, offset + HEADER_LENGTH,
+                            length - HEADER_LENGTH);
+                    offset += alignedLength(length);
+                }
+                position = base + offset;
+            } finally {
+                IoUtil.unmap(mappedSegment);
+            }
+        }
+        return position;
+    }
+
+    private JournalReader() {
+        // empty
+    }
+}
@@ -0,0 +1,187 @@
+package org.example.hometask.journal;
+
+import org.agrona.IoUtil;
+import org.agrona.MutableDirectBuffer;
+import org.agrona.concurrent.UnsafeBuffer;
+import org.jetbrains.annotations.NotNull;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.nio.MappedByteBuffer;
+
+import static org.example.hometask.journal.Journal.FRAME_ALIGNMENT;
+import static org.example.hometask.journal.Journal.HEADER_LENGTH;
+import static org.example.hometask.journal.Journal.LENGTH_OFFSET;
+import static org.example.hometask.journal.Journal.TYPE_OFFSET;
+import static org.example.hometask.journal.Journal.alignedLength;
+
+/**
+ * Appends records to memory-mapped journal segments, see {@link Journal} for the layout. Not thread-safe.
+ * <p>
+ * A record is appended in two steps: {@link #claim(int, int)} reserves space and returns the offset to write the
+ * payload at, {@link #commit()} makes the record visible. Nothing is copied, so the caller encodes right into the
+ * segment. If the journal already exists, appending continues after its last record.
+ */
+public final class JournalWriter implements AutoCloseable {
+
+    protected final Logger logger = LoggerFactory.getLogger(getClass());
+
+    @NotNull
+    private final File dir;
+
+    private final int segmentSize;
+
+    @NotNull
+    private final FsyncPolicy fsyncPolicy;
+
+    private final long fsyncIntervalNanos;
+
+    private final UnsafeBuffer segment = new UnsafeBuffer(0, 0);
+
+    private MappedByteBuffer mappedSegment;
+
+    private long segmentBase;
+
+    private int offset;
+
+    private int claimedOffset = -1;
+
+    private int claimedLength;
+
+    private int syncedOffset;
+
+    private long lastSyncNanos;
+
+    public JournalWriter(
+            @NotNull File dir,
+            int segmentSize,
+            @NotNull FsyncPolicy fsyncPolicy,
+            long fsyncIntervalNanos
+    ) {
+
+        if (segmentSize <= HEADER_LENGTH || segmentSize % FRAME_ALIGNMENT != 0) {
+            throw new IllegalArgumentException("Invalid journal segment size: " + segmentSize);
+        }
+
+        this.dir = dir;
+        this.segmentSize = segmentSize;
+        this.fsyncPolicy = fsyncPolicy;
+        this.fsyncIntervalNanos = fsyncIntervalNanos;
+
+        IoUtil.ensureDirectoryExists(dir, "journal");
+        final long[] segments = Journal.segments(dir);
+        if (segments.length == 0) {
+            mapNewSegment(0);
+        } else {
+            segmentBase = segments[segments.length - 1];
+            mappedSegment = IoUtil.mapExistingFile(Journal.segmentFile(dir, segmentBase), "journal segment");
+            segment.wrap(mappedSegment);
+            offset = Journal.endOfRecords(segment, 0);
+            syncedOffset = offset;
+        }
+        lastSyncNanos = System.nanoTime();
+        logger.info("Journal {} opened at position {} with fsync policy {}", dir, position(), fsyncPolicy);
+    }
+
+    /**
+     * Reserves space for a record, rolling to a new segment if needed. Only one record may be claimed at a time.
+     *
+     * @return Offset in {@link #buffer()} to write the payload at.
+     */
+    public int claim(int type, int payloadLength) {
+
+        final int length = HEADER_LENGTH + payloadLength;
+        if (length > segmentSize) {
+            throw new IllegalArgumentException("Journal record of %d bytes exceeds segment size %d"
+                    .formatted(length, segmentSize));
+        }
+
+        if (offset + alignedLength(length) > segment.capacity()) {
+            roll();
+        }
+
+        segment.putInt(offset + TYPE_OFFSET, type);
+        claimedOffset = offset;
+        claimedLength = length;
+        return offset + HEADER_LENGTH;
+    }
+
+    /**
+     * @return The current segment. It changes on {@link #claim(int, int)}, so it must not be cached by the caller.
+     */
+    @NotNull
+    public MutableDirectBuffer buffer() {
+        return segment;
+    }
+
+    public void commit() {
+        if (claimedOffset < 0) {
+            throw new IllegalStateException("Nothing claimed");
+        }
+        // the length goes last, readers never see a partially written record
+        segment.putIntOrdered(claimedOffset + LENGTH_OFFSET, claimedLength);
+        offset += alignedLength(claimedLength);
+        claimedOffset = -1;
+    }
+
+    /**
+     * Applies the fsync policy, to be called at the end of every batch.
+     */
+    public void endOfBatch() {
+        switch (fsyncPolicy) {
+            case NONE -> {
+            }
+            case BATCH -> sync();
+            case PERIODIC -> {
+                if (System.nanoTime() - lastSyncNanos >= fsyncIntervalNanos) {
+                    sync();
+                }
+            }
+        }
+    }
+
+    /**
+     * @return Position right after the last committed record.
+     */
+    public long position() {
+        return segmentBase + offset;
+    }
+
+    @Override
+    public void close() {
+        if (mappedSegment != null) {
+            if (fsyncPolicy != FsyncPolicy.NONE) {
+                sync();
+            }
+            IoUtil.unmap(mappedSegment);
+            mappedSegment = null;
+        }
+    }
+
+    private void sync() {
+        if (offset > syncedOffset) {
+            mappedSegment.force(syncedOffset, offset - syncedOffset);
+            syncedOffset = offset;
+        }
+        lastSyncNanos = System.nanoTime();
+    }
+
+    private void roll() {
+        if (fsyncPolicy != FsyncPolicy.NONE) {
+            sync();
+        }
+        IoUtil.unmap(mappedSegment);
+        mapNewSegment(segmentBase + segment.capacity());
+        logger.info("Journal rolled to position {}", segmentBase);
+    }
+
+    private void mapNewSegment(long basePosition) {
+        segmentBase = basePosition;
+        // sparse file, so rolling does not stall on zeroing the whole segment
+        mappedSegment = IoUtil.mapNewFile(Journal.segmentFile(dir, basePosition), segmentSize, false);
+        segment.wrap(mappedSegment);
+        offset = 0;
+        syncedOffset = 0;
+    }
+}
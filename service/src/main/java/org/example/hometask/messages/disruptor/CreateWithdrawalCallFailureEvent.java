@@ -0,0 +1,19 @@
+package org.example.hometask.messages.disruptor;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.UUID;
+
+/**
+ * The call creating the withdrawal has failed or has not been made at all, so it is unknown whether the external
+ * service knows the withdrawal.
+ */
+public record CreateWithdrawalCallFailureEvent(
+        @NotNull UUID withdrawalUuid
+) implements Event {
+
+    @Override
+    public <V, E extends Throwable> V accept(@NotNull Visitor<V, E> visitor) throws E {
+        return visitor.visit(this);
+    }
+}
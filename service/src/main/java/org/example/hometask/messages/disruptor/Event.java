@@ -10,12 +10,26 @@ public interface Event {
 
         V visit(@NotNull InboundAeronMessageEvent event) throws E;
 
+        V visit(@NotNull InboundAeronFragmentEvent event) throws E;
+
         V visit(@NotNull CreateWithdrawalSuccessEvent event) throws E;
 
         V visit(@NotNull CreateWithdrawalDuplicationFailureEvent event) throws E;
 
+        V visit(@NotNull CreateWithdrawalCallFailureEvent event) throws E;
+
         V visit(@NotNull QueryWithdrawalSuccessEvent event) throws E;
 
         V visit(@NotNull QueryWithdrawalUnknownIdFailureEvent event) throws E;
+
+        V visit(@NotNull QueryWithdrawalCallFailureEvent event) throws E;
+
+        V visit(@NotNull TickEvent event) throws E;
+
+        V visit(@NotNull RecoveryEvent event) throws E;
+
+        V visit(@NotNull ShardTransferEvent event) throws E;
+
+        V visit(@NotNull ShardTransferResultEvent event) throws E;
     }
 }
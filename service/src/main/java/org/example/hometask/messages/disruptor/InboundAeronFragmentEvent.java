@@ -0,0 +1,70 @@
+package org.example.hometask.messages.disruptor;
+
+import org.agrona.DirectBuffer;
+import org.agrona.ExpandableArrayBuffer;
+import org.agrona.MutableDirectBuffer;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Mutable copy of an inbound SBE fragment (message header included). Every ring buffer slot owns exactly one
+ * instance, so the ingress thread fills it in place and decoding is deferred to the consumers. The buffer is
+ * grow-only, therefore in the steady state ingress does not allocate anything.
+ */
+public final class InboundAeronFragmentEvent implements Event {
+
+    private static final int INITIAL_CAPACITY = 128;
+
+    @NotNull
+    private final ExpandableArrayBuffer buffer = new ExpandableArrayBuffer(INITIAL_CAPACITY);
+
+    private int sessionId;
+
+    private int length;
+
+    public void wrap(int sessionId, @NotNull DirectBuffer source, int offset, int length) {
+        this.sessionId = sessionId;
+        this.length = length;
+        buffer.putBytes(0, source, offset, length);
+    }
+
+    /**
+     * Makes room for a message assembled in place rather than copied as is, e.g. a part of a batch.
+     *
+     * @return The buffer to write the message to, at offset 0.
+     */
+    @NotNull
+    public MutableDirectBuffer prepare(int sessionId, int length) {
+        this.sessionId = sessionId;
+        this.length = length;
+        buffer.checkLimit(length);
+        return buffer;
+    }
+
+    public int sessionId() {
+        return sessionId;
+    }
+
+    /**
+     * @return The buffer holding a copy of the fragment at offset 0. Valid only while the event is being processed.
+     * Amounts of requests are already normalized by the ingress to fixed-point amounts, see
+     * {@link org.example.hometask.utils.Amounts}.
+     */
+    @NotNull
+    public MutableDirectBuffer buffer() {
+        return buffer;
+    }
+
+    public int length() {
+        return length;
+    }
+
+    @Override
+    public <V, E extends Throwable> V accept(@NotNull Visitor<V, E> visitor) throws E {
+        return visitor.visit(this);
+    }
+
+    @Override
+    public String toString() {
+        return "InboundAeronFragmentEvent[sessionId=" + sessionId + ", length=" + length + "]";
+    }
+}
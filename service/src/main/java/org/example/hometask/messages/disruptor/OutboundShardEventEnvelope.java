@@ -0,0 +1,13 @@
+package org.example.hometask.messages.disruptor;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Event to be delivered to another shard through its internal messages queue.
+ */
+public record OutboundShardEventEnvelope(
+        int shard,
+        @NotNull Event event
+) {
+    // empty
+}
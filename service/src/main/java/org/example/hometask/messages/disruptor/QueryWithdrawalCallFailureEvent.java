@@ -0,0 +1,18 @@
+package org.example.hometask.messages.disruptor;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.UUID;
+
+/**
+ * The call querying the state of the withdrawal has failed or has not been made at all.
+ */
+public record QueryWithdrawalCallFailureEvent(
+        @NotNull UUID withdrawalUuid
+) implements Event {
+
+    @Override
+    public <V, E extends Throwable> V accept(@NotNull Visitor<V, E> visitor) throws E {
+        return visitor.visit(this);
+    }
+}
@@ -0,0 +1,15 @@
+package org.example.hometask.messages.disruptor;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * The very first event after the state has been restored from the snapshot and the journal. External requests sent
+ * before the restart may have been lost, so the state machine re-issues all the requests it still waits for.
+ */
+public record RecoveryEvent() implements Event {
+
+    @Override
+    public <V, E extends Throwable> V accept(@NotNull Visitor<V, E> visitor) throws E {
+        return visitor.visit(this);
+    }
+}
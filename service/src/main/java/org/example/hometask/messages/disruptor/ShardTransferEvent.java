@@ -0,0 +1,26 @@
+package org.example.hometask.messages.disruptor;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * The second phase of a transfer between accounts of different shards: the amount has been debited from the source
+ * account by the source shard, and it is to be credited to the account of the target shard.
+ *
+ * @param sequence             Number of the transfer among all transfers from the source shard to the target one,
+ *                             starting from 1, so the target shard recognizes transfers resent after a restart.
+ * @param acknowledgedSequence All transfers up to this one have got their results, so the target shard may forget
+ *                             them.
+ */
+public record ShardTransferEvent(
+        int sourceShard,
+        long sequence,
+        long acknowledgedSequence,
+        long toAccountId,
+        long amount
+) implements Event {
+
+    @Override
+    public <V, E extends Throwable> V accept(@NotNull Visitor<V, E> visitor) throws E {
+        return visitor.visit(this);
+    }
+}
@@ -0,0 +1,20 @@
+package org.example.hometask.messages.disruptor;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Result of {@link ShardTransferEvent} sent back to the source shard.
+ *
+ * @param credited <code>false</code> if there is no such account in the target shard, so the amount is refunded.
+ */
+public record ShardTransferResultEvent(
+        int targetShard,
+        long sequence,
+        boolean credited
+) implements Event {
+
+    @Override
+    public <V, E extends Throwable> V accept(@NotNull Visitor<V, E> visitor) throws E {
+        return visitor.visit(this);
+    }
+}
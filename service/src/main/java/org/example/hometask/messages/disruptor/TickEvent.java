@@ -0,0 +1,34 @@
+package org.example.hometask.messages.disruptor;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Published periodically by the ingress, so consumers get a chance to do background work even if there is no traffic.
+ * Mutable, since the ingress reuses an instance per shard once consumers are done with the previous tick.
+ */
+public final class TickEvent implements Event {
+
+    private long nanoTime;
+
+    public TickEvent(long nanoTime) {
+        this.nanoTime = nanoTime;
+    }
+
+    public void set(long nanoTime) {
+        this.nanoTime = nanoTime;
+    }
+
+    public long nanoTime() {
+        return nanoTime;
+    }
+
+    @Override
+    public <V, E extends Throwable> V accept(@NotNull Visitor<V, E> visitor) throws E {
+        return visitor.visit(this);
+    }
+
+    @Override
+    public String toString() {
+        return "TickEvent[nanoTime=" + nanoTime + "]";
+    }
+}
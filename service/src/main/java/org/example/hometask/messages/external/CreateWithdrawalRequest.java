@@ -2,13 +2,12 @@ package org.example.hometask.messages.external;
 
 import org.jetbrains.annotations.NotNull;
 
-import java.math.BigDecimal;
 import java.util.UUID;
 
 public record CreateWithdrawalRequest(
         @NotNull UUID withdrawalUuid,
         @NotNull String address,
-        @NotNull BigDecimal amount
+        long amount
 ) implements WithdrawalRequest {
 
     @Override
@@ -1,11 +1,8 @@
 package org.example.hometask.state;
 
 import org.example.hometask.disruptor.Publisher;
-import org.example.hometask.messages.response.NoFundsAeronResponse;
 import org.jetbrains.annotations.NotNull;
 
-import java.math.BigDecimal;
-
 public abstract class AbstractPendingAccountCreditOperation extends AbstractAccountPendingOperation {
 
     @NotNull
@@ -15,15 +12,14 @@ public abstract class AbstractPendingAccountCreditOperation extends AbstractAcco
 
     protected final long trackingId;
 
-    @NotNull
-    protected final BigDecimal amount;
+    protected final long amount;
 
     public AbstractPendingAccountCreditOperation(
             @NotNull Account account,
             @NotNull Publisher publisher,
             int sessionId,
             long trackingId,
-            @NotNull BigDecimal amount
+            long amount
     ) {
         super(account);
         this.publisher = publisher;
@@ -35,7 +31,7 @@ public abstract class AbstractPendingAccountCreditOperation extends AbstractAcco
     public void execute() {
         if (account.credit(amount)) {
             performOperation();
-        } else if (amount.compareTo(account.getPendingAmount()) > 0 || tryUpdate()) {
+        } else if (amount > account.getPendingAmount() || tryUpdate()) {
             respondNoFunds();
         }
     }
@@ -50,7 +46,7 @@ public abstract class AbstractPendingAccountCreditOperation extends AbstractAcco
     }
 
     private void respondNoFunds() {
-        publisher.publish(sessionId, new NoFundsAeronResponse(trackingId));
+        publisher.noFunds(sessionId, trackingId);
     }
 
     protected abstract void performOperation();
@@ -1,111 +1,103 @@
 package org.example.hometask.state;
 
-import org.example.hometask.messages.WithdrawalState;
+import org.agrona.collections.Long2ObjectHashMap;
 import org.jetbrains.annotations.NotNull;
 
-import java.math.BigDecimal;
-import java.util.HashMap;
-import java.util.Map;
-
-import static java.math.BigDecimal.ZERO;
-
 public class Account {
 
+    @NotNull
+    private final Repository repository;
+
     private final long id;
 
     /**
      * All acoount's withdrawals requiring periodically polling of the state.
      */
-    private final Map<Long, Withdrawal> pendingWithdrawals = new HashMap<>();
+    private final Long2ObjectHashMap<Withdrawal> pendingWithdrawals = new Long2ObjectHashMap<>();
 
-    @NotNull
-    private BigDecimal availableAmount;
+    private long availableAmount;
 
     /**
      * Contains sum of amounts of all uncompleted withdrawals.
      */
-    @NotNull
-    private BigDecimal reservedAmount = ZERO;
+    private long reservedAmount;
 
     /**
      * Contains sum of amounts of all pending withdrawals.
      */
-    @NotNull
-    private BigDecimal pendingAmount = ZERO;
+    private long pendingAmount;
 
-    public Account(long id, @NotNull BigDecimal availableAmount) {
+    public Account(@NotNull Repository repository, long id, long availableAmount) {
+        this.repository = repository;
         this.id = id;
         this.availableAmount = availableAmount;
     }
 
+    /**
+     * Restores the account from a snapshot.
+     */
+    Account(@NotNull Repository repository, long id, long availableAmount, long reservedAmount) {
+        this(repository, id, availableAmount);
+        this.reservedAmount = reservedAmount;
+    }
+
     public long getId() {
         return id;
     }
 
-    @NotNull
-    public BigDecimal getAvailableAmount() {
+    public long getAvailableAmount() {
         return availableAmount;
     }
 
-    @NotNull
-    public BigDecimal getReservedAmount() {
+    public long getReservedAmount() {
         return reservedAmount;
     }
 
     /**
      * @return The largest possible amount available if all pending withdrawals will fail.
      */
-    @NotNull
-    public BigDecimal getPendingAmount() {
-        return availableAmount.add(pendingAmount);
+    public long getPendingAmount() {
+        return availableAmount + pendingAmount;
     }
 
-    public Map<Long, Withdrawal> getPendingWithdrawals() {
+    public Long2ObjectHashMap<Withdrawal> getPendingWithdrawals() {
         return pendingWithdrawals;
     }
 
-    public boolean credit(@NotNull BigDecimal amount) {
-        if (amount.compareTo(availableAmount) > 0) {
+    public boolean credit(long amount) {
+        if (amount > availableAmount) {
             return false;
         }
-        availableAmount = availableAmount.subtract(amount);
+        repository.beforeUpdate(this);
+        availableAmount -= amount;
         return true;
     }
 
-    public void adjustAvailable(@NotNull BigDecimal amount) {
-        availableAmount = availableAmount.add(amount);
+    public void adjustAvailable(long amount) {
+        repository.beforeUpdate(this);
+        availableAmount += amount;
     }
 
-    public void adjustReserved(@NotNull BigDecimal amount) {
-        reservedAmount = reservedAmount.add(amount);
+    public void adjustReserved(long amount) {
+        repository.beforeUpdate(this);
+        reservedAmount += amount;
     }
 
     public void withdrawalCreated(@NotNull Withdrawal withdrawal) {
-        pendingAmount = pendingAmount.add(withdrawal.getAmount());
+        pendingAmount += withdrawal.getAmount();
         pendingWithdrawals.put(withdrawal.getId(), withdrawal);
     }
 
     public void withdrawalCompleted(@NotNull Withdrawal withdrawal) {
-        pendingAmount = pendingAmount.subtract(withdrawal.getAmount());
+        pendingAmount -= withdrawal.getAmount();
         pendingWithdrawals.remove(withdrawal.getId(), withdrawal);
-        withdrawal.getState().accept(new WithdrawalState.Visitor<Void, RuntimeException>() {
-            @Override
-            public Void visitProcessing() {
-                throw new IllegalStateException();
-            }
-
-            @Override
-            public Void visitCompleted() {
-                adjustReserved(withdrawal.getAmount().negate());
-                return null;
-            }
-
-            @Override
-            public Void visitFailed() {
-                adjustReserved(withdrawal.getAmount().negate());
+        switch (withdrawal.getState()) {
+            case PROCESSING -> throw new IllegalStateException();
+            case COMPLETED -> adjustReserved(-withdrawal.getAmount());
+            case FAILED -> {
+                adjustReserved(-withdrawal.getAmount());
                 adjustAvailable(withdrawal.getAmount());
-                return null;
             }
-        });
+        }
     }
 }
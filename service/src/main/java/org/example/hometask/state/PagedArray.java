@@ -0,0 +1,58 @@
+package org.example.hometask.state;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Arrays;
+
+/**
+ * Dense storage of entities indexed by sequential ids starting from 1, as handed out by {@link Repository}.
+ * Entities are kept in fixed-size pages, so growing never copies them, and lookups neither box ids nor allocate.
+ */
+public final class PagedArray<T> {
+
+    private static final int PAGE_SHIFT = 16;
+    private static final int PAGE_SIZE = 1 << PAGE_SHIFT;
+    private static final int PAGE_MASK = PAGE_SIZE - 1;
+
+    private Object[][] pages = new Object[1][];
+
+    private long size;
+
+    /**
+     * @return The entity, or <code>null</code> if there is no entity with such id (including non-positive ids).
+     */
+    @Nullable
+    @SuppressWarnings("unchecked")
+    public T get(long id) {
+        final long index = id - 1;
+        if (index < 0 || index >= size) {
+            return null;
+        }
+        return (T) pages[(int) (index >>> PAGE_SHIFT)][(int) (index & PAGE_MASK)];
+    }
+
+    /**
+     * Appends the entity. Ids must be sequential, i.e. the id must be exactly the current size plus one.
+     */
+    public void put(long id, @NotNull T value) {
+
+        if (id != size + 1) {
+            throw new IllegalArgumentException("Id %d is not sequential, expected %d".formatted(id, size + 1));
+        }
+
+        final int pageIndex = (int) (size >>> PAGE_SHIFT);
+        if (pageIndex == pages.length) {
+            pages = Arrays.copyOf(pages, pages.length * 2);
+        }
+        if (pages[pageIndex] == null) {
+            pages[pageIndex] = new Object[PAGE_SIZE];
+        }
+        pages[pageIndex][(int) (size & PAGE_MASK)] = value;
+        size++;
+    }
+
+    public long size() {
+        return size;
+    }
+}
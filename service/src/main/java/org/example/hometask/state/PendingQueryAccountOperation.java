@@ -1,7 +1,6 @@
 package org.example.hometask.state;
 
 import org.example.hometask.disruptor.Publisher;
-import org.example.hometask.messages.response.AccountDataAeronResponse;
 import org.jetbrains.annotations.NotNull;
 
 public class PendingQueryAccountOperation extends AbstractAccountPendingOperation {
@@ -33,7 +32,6 @@ public class PendingQueryAccountOperation extends AbstractAccountPendingOperatio
 
     @Override
     protected void nowUpdated() {
-        publisher.publish(sessionId,
-                new AccountDataAeronResponse(trackingId, account.getAvailableAmount(), account.getReservedAmount()));
+        publisher.accountData(sessionId, trackingId, account.getAvailableAmount(), account.getReservedAmount());
     }
 }
@@ -1,7 +1,6 @@
 package org.example.hometask.state;
 
 import org.example.hometask.disruptor.Publisher;
-import org.example.hometask.messages.response.WithdrawalDataAeronResponse;
 import org.jetbrains.annotations.NotNull;
 
 public class PendingQueryWithdrawalOperation extends AbstractWithdrawalPendingOperation {
@@ -33,7 +32,6 @@ public class PendingQueryWithdrawalOperation extends AbstractWithdrawalPendingOp
 
     @Override
     protected void nowUpdated() {
-        publisher.publish(sessionId,
-                new WithdrawalDataAeronResponse(trackingId, withdrawal.getAmount(), withdrawal.getState()));
+        publisher.withdrawalData(sessionId, trackingId, withdrawal.getAmount(), withdrawal.getState());
     }
 }
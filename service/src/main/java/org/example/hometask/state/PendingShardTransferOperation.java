@@ -0,0 +1,34 @@
+package org.example.hometask.state;
+
+import org.example.hometask.disruptor.Publisher;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Debits the source account of a transfer to an account of another shard, see {@link ShardTransfers}.
+ */
+public class PendingShardTransferOperation extends AbstractPendingAccountCreditOperation {
+
+    @NotNull
+    private final ShardTransfers shardTransfers;
+
+    private final long toAccountId;
+
+    public PendingShardTransferOperation(
+            @NotNull Account account,
+            @NotNull Publisher publisher,
+            int sessionId,
+            long trackingId,
+            long amount,
+            @NotNull ShardTransfers shardTransfers,
+            long toAccountId
+    ) {
+        super(account, publisher, sessionId, trackingId, amount);
+        this.shardTransfers = shardTransfers;
+        this.toAccountId = toAccountId;
+    }
+
+    @Override
+    protected void performOperation() {
+        shardTransfers.send(account, toAccountId, amount, sessionId, trackingId);
+    }
+}
@@ -1,11 +1,8 @@
 package org.example.hometask.state;
 
 import org.example.hometask.disruptor.Publisher;
-import org.example.hometask.messages.response.AccountTransferDoneAeronResponse;
 import org.jetbrains.annotations.NotNull;
 
-import java.math.BigDecimal;
-
 public class PendingTransferOperation extends AbstractPendingAccountCreditOperation {
 
     @NotNull
@@ -16,7 +13,7 @@ public class PendingTransferOperation extends AbstractPendingAccountCreditOperat
             @NotNull Publisher publisher,
             int sessionId,
             long trackingId,
-            @NotNull BigDecimal amount,
+            long amount,
             @NotNull Account toAccount
     ) {
         super(account, publisher, sessionId, trackingId, amount);
@@ -26,6 +23,6 @@ public class PendingTransferOperation extends AbstractPendingAccountCreditOperat
     @Override
     protected void performOperation() {
         toAccount.adjustAvailable(amount);
-        publisher.publish(sessionId, new AccountTransferDoneAeronResponse(trackingId));
+        publisher.accountTransferDone(sessionId, trackingId);
     }
 }
@@ -1,26 +1,190 @@
 package org.example.hometask.state;
 
-import java.util.HashMap;
-import java.util.Map;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
 import java.util.UUID;
 
+/**
+ * Entities of a single shard. Accounts and withdrawals are partitioned between shards by ids: the shard of an entity
+ * is <code>(id - 1) % shards</code>, so every shard hands out its own ids without any coordination, and entities are
+ * stored densely by their index within the shard.
+ */
 public class Repository {
 
-    public final Map<Long, Account> accounts = new HashMap<>();
+    /**
+     * Entities indexed by {@link #index(long)}, see {@link #account(long)} to look them up by id.
+     */
+    public final PagedArray<Account> accounts = new PagedArray<>();
+
+    public final PagedArray<Withdrawal> withdrawals = new PagedArray<>();
+
+    @NotNull
+    public final WithdrawalUuids withdrawalUuids;
+
+    public final int shard;
+
+    public final int shards;
+
+    /**
+     * Transfers between shards, indexed by the peer shard.
+     */
+    @NotNull
+    final ShardLink[] links;
 
-    public final Map<Long, Withdrawal> withdrawals = new HashMap<>();
+    /**
+     * Issued amounts of all shards must fit <code>long</code> together, so each shard gets an equal part of it.
+     */
+    private final long maxIssuedAmount;
 
-    public final Map<UUID, Withdrawal> withdrawalsByUuid = new HashMap<>();
+    long accountSequence;
 
-    private long accountSequence;
+    long withdrawalSequence;
 
-    private long withdrawalSequence;
+    /**
+     * Sum of initial amounts of all accounts. No balance can exceed it, so keeping it within <code>long</code>
+     * guarantees balances never overflow.
+     */
+    long issuedAmount;
+
+    /**
+     * Total length of withdrawal addresses in UTF-8, so the size of a snapshot is known upfront.
+     */
+    long addressesLength;
+
+    /**
+     * Number of operations waiting for withdrawal state updates. Such operations cannot be snapshotted.
+     */
+    long waitingQueries;
+
+    /**
+     * Snapshot in progress, which has to see entities as they were when the snapshot started.
+     */
+    @Nullable
+    SnapshotWriter snapshotWriter;
+
+    public Repository() {
+        this(new WithdrawalUuids(WithdrawalUuids.DEFAULT_NAMESPACE));
+    }
+
+    public Repository(@NotNull WithdrawalUuids withdrawalUuids) {
+        this(withdrawalUuids, 0, 1);
+    }
+
+    public Repository(@NotNull WithdrawalUuids withdrawalUuids, int shard, int shards) {
+        if (shards <= 0 || shard < 0 || shard >= shards) {
+            throw new IllegalArgumentException("Invalid shard %d of %d".formatted(shard, shards));
+        }
+        this.withdrawalUuids = withdrawalUuids;
+        this.shard = shard;
+        this.shards = shards;
+        this.links = new ShardLink[shards];
+        for (int i = 0; i < shards; i++) {
+            links[i] = new ShardLink();
+        }
+        this.maxIssuedAmount = Long.MAX_VALUE / shards;
+    }
+
+    /**
+     * @return The shard owning the entity with such id, any shard for invalid ids.
+     */
+    public static int shardOf(long id, int shards) {
+        return id > 0 ? (int) ((id - 1) % shards) : 0;
+    }
+
+    public boolean owns(long id) {
+        return id > 0 && shardOf(id, shards) == shard;
+    }
+
+    /**
+     * @return Index of the entity within the shard starting from 1, or <code>0</code> if the shard does not own it.
+     */
+    long index(long id) {
+        return owns(id) ? (id - 1) / shards + 1 : 0;
+    }
+
+    long id(long index) {
+        return (index - 1) * shards + shard + 1;
+    }
+
+    @Nullable
+    public Account account(long id) {
+        return accounts.get(index(id));
+    }
+
+    @Nullable
+    public Withdrawal withdrawal(long id) {
+        return withdrawals.get(index(id));
+    }
 
     public long nextAccountId() {
-        return ++accountSequence;
+        return id(++accountSequence);
     }
 
     public long nextWithdrawalId() {
-        return ++withdrawalSequence;
+        return id(++withdrawalSequence);
+    }
+
+    /**
+     * @return <code>false</code> if the amount is negative or would overflow the total issued amount
+     */
+    public boolean tryIssue(long amount) {
+        if (amount < 0 || amount > maxIssuedAmount - issuedAmount) {
+            return false;
+        }
+        issuedAmount += amount;
+        return true;
+    }
+
+    public void addAccount(@NotNull Account account) {
+        accounts.put(index(account.getId()), account);
+    }
+
+    public void addWithdrawal(@NotNull Withdrawal withdrawal) {
+        withdrawals.put(index(withdrawal.getId()), withdrawal);
+        addressesLength += Snapshot.utf8Length(withdrawal.getAddress().value());
+    }
+
+    /**
+     * @return The withdrawal, or <code>null</code> if there is no withdrawal with such UUID.
+     */
+    @Nullable
+    public Withdrawal findWithdrawal(@NotNull UUID uuid) {
+        final var withdrawal = withdrawal(withdrawalUuids.toId(uuid));
+        // the namespace may have been reconfigured since the withdrawal was created
+        return withdrawal != null && withdrawal.getUuid().equals(uuid) ? withdrawal : null;
+    }
+
+    /**
+     * @return <code>true</code> if no operation is waiting for anything, so the state may be snapshotted.
+     */
+    public boolean isQuiescent() {
+        if (waitingQueries != 0) {
+            return false;
+        }
+        for (final var link : links) {
+            if (!link.outgoingTransfers.isEmpty()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Must be called before any change of the snapshotted state of the account.
+     */
+    void beforeUpdate(@NotNull Account account) {
+        if (snapshotWriter != null) {
+            snapshotWriter.beforeUpdate(account);
+        }
+    }
+
+    /**
+     * Must be called before any change of the snapshotted state of the withdrawal.
+     */
+    void beforeUpdate(@NotNull Withdrawal withdrawal) {
+        if (snapshotWriter != null) {
+            snapshotWriter.beforeUpdate(withdrawal);
+        }
     }
 }
@@ -0,0 +1,68 @@
+package org.example.hometask.state;
+
+import org.agrona.collections.LongArrayQueue;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayDeque;
+
+/**
+ * State of transfers between the shard of the repository and a peer shard, see {@link ShardTransfers}.
+ */
+final class ShardLink {
+
+    /**
+     * Sequence number of the last transfer sent to the peer.
+     */
+    long outgoingSequence;
+
+    /**
+     * Transfers sent to the peer and waiting for results, in sequence order. They are never snapshotted, the
+     * repository is not quiescent while there are any.
+     */
+    final ArrayDeque<OutgoingTransfer> outgoingTransfers = new ArrayDeque<>();
+
+    /**
+     * Sequence number of the last transfer received from the peer.
+     */
+    long incomingSequence;
+
+    /**
+     * Sequence numbers of rejected transfers received from the peer in ascending order, kept until the peer
+     * acknowledges their results, so resent transfers are answered the same way.
+     */
+    final LongArrayQueue rejectedSequences = new LongArrayQueue();
+
+    /**
+     * @return Sequence number up to which all transfers sent to the peer have got their results.
+     */
+    long acknowledgedSequence() {
+        final var oldest = outgoingTransfers.peek();
+        return oldest != null ? oldest.sequence() - 1 : outgoingSequence;
+    }
+
+    boolean isRejected(long sequence) {
+        for (final var iterator = rejectedSequences.iterator(); iterator.hasNext(); ) {
+            if (iterator.nextValue() == sequence) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    void acknowledge(long sequence) {
+        while (!rejectedSequences.isEmpty() && rejectedSequences.peekLong() <= sequence) {
+            rejectedSequences.pollLong();
+        }
+    }
+
+    record OutgoingTransfer(
+            long sequence,
+            @NotNull Account fromAccount,
+            long toAccountId,
+            long amount,
+            int sessionId,
+            long trackingId
+    ) {
+        // empty
+    }
+}
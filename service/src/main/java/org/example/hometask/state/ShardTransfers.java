@@ -0,0 +1,110 @@
+package org.example.hometask.state;
+
+import org.example.hometask.disruptor.Publisher;
+import org.example.hometask.messages.disruptor.ShardTransferEvent;
+import org.example.hometask.messages.disruptor.ShardTransferResultEvent;
+import org.jetbrains.annotations.NotNull;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Transfers between accounts of different shards, made in two phases. The shard of the source account debits it, see
+ * {@link PendingShardTransferOperation}, and sends {@link ShardTransferEvent} to the shard of the target account. The
+ * latter credits the target account, or rejects the transfer if there is no such account, and sends
+ * {@link ShardTransferResultEvent} back, so the source shard responds to the client or refunds the source account.
+ * <p>
+ * Both events are journalled by the receiving shard like any other inbound event, so each shard restores its part on
+ * replay. Transfers between a pair of shards are numbered sequentially, so the target shard credits each of them once
+ * even if it is resent after a restart of the source shard, and answers a resent one the same way as before.
+ */
+public class ShardTransfers {
+
+    protected final Logger logger = LoggerFactory.getLogger(getClass());
+
+    @NotNull
+    private final Publisher publisher;
+
+    @NotNull
+    private final Repository repository;
+
+    public ShardTransfers(@NotNull Publisher publisher, @NotNull Repository repository) {
+        this.publisher = publisher;
+        this.repository = repository;
+    }
+
+    /**
+     * Sends the amount already debited from the source account to the shard of the target account.
+     */
+    void send(@NotNull Account fromAccount, long toAccountId, long amount, int sessionId, long trackingId) {
+        final int toShard = Repository.shardOf(toAccountId, repository.shards);
+        final var link = repository.links[toShard];
+        final var transfer = new ShardLink.OutgoingTransfer(++link.outgoingSequence, fromAccount, toAccountId, amount,
+                sessionId, trackingId);
+        link.outgoingTransfers.add(transfer);
+        send(toShard, link, transfer);
+    }
+
+    public void onTransfer(@NotNull ShardTransferEvent event) {
+
+        final var link = repository.links[event.sourceShard()];
+        link.acknowledge(event.acknowledgedSequence());
+
+        final long sequence = event.sequence();
+        final boolean credited;
+        if (sequence <= link.incomingSequence) {
+            // resent after a restart of the source shard
+            credited = !link.isRejected(sequence);
+        } else if (sequence == link.incomingSequence + 1) {
+            link.incomingSequence = sequence;
+            final var toAccount = repository.account(event.toAccountId());
+            credited = toAccount != null;
+            if (credited) {
+                toAccount.adjustAvailable(event.amount());
+            } else {
+                link.rejectedSequences.addLong(sequence);
+            }
+        } else {
+            logger.error("Transfer {} from shard {} is out of order, expected {}", sequence, event.sourceShard(),
+                    link.incomingSequence + 1);
+            return;
+        }
+
+        publisher.publish(event.sourceShard(), new ShardTransferResultEvent(repository.shard, sequence, credited));
+    }
+
+    public void onTransferResult(@NotNull ShardTransferResultEvent event) {
+
+        final var link = repository.links[event.targetShard()];
+        final var transfer = link.outgoingTransfers.peek();
+        if (transfer == null || transfer.sequence() != event.sequence()) {
+            // answer to a transfer resent after a restart, which has got its result already
+            logger.warn("Ignoring result of transfer {} to shard {}", event.sequence(), event.targetShard());
+            return;
+        }
+        link.outgoingTransfers.poll();
+
+        if (event.credited()) {
+            publisher.accountTransferDone(transfer.sessionId(), transfer.trackingId());
+        } else {
+            transfer.fromAccount().adjustAvailable(transfer.amount());
+            publisher.noSuchEntity(transfer.sessionId(), transfer.trackingId());
+        }
+    }
+
+    /**
+     * Resends all transfers still waiting for results, since they may have been lost.
+     */
+    public void recover() {
+        for (int shard = 0; shard < repository.shards; shard++) {
+            final var link = repository.links[shard];
+            for (final var transfer : link.outgoingTransfers) {
+                send(shard, link, transfer);
+            }
+        }
+    }
+
+    private void send(int toShard, @NotNull ShardLink link, @NotNull ShardLink.OutgoingTransfer transfer) {
+        publisher.publish(toShard, new ShardTransferEvent(repository.shard, transfer.sequence(),
+                link.acknowledgedSequence(), transfer.toAccountId(), transfer.amount()));
+    }
+}
@@ -0,0 +1,140 @@
+package org.example.hometask.state;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.File;
+import java.util.Arrays;
+
+/**
+ * Layout of repository snapshots shared by {@link SnapshotWriter} and {@link SnapshotLoader}.
+ * <p>
+ * A snapshot is a single file named after the journal position it was taken at, so the journal is replayed from that
+ * position on startup. The file starts with a fixed-size header followed by fixed-size records of all accounts and
+ * withdrawals in id order, so a record is located by id without reading the preceding ones. Addresses of withdrawals
+ * follow, in UTF-8 and in id order. The magic number is written last, so an incomplete snapshot is never loaded.
+ * <p>
+ * Since version 2, the state of transfers between shards goes last: for every shard, sequence numbers of the last
+ * transfers sent and received, then sequence numbers of rejected transfers received. Version 1 snapshots are still
+ * loaded by a single shard.
+ */
+public final class Snapshot {
+
+    public static final int MAGIC = 0x50414e53;
+    public static final int VERSION = 2;
+    public static final int VERSION_1 = 1;
+
+    static final int MAGIC_OFFSET = 0;
+    static final int VERSION_OFFSET = MAGIC_OFFSET + Integer.BYTES;
+    static final int JOURNAL_POSITION_OFFSET = VERSION_OFFSET + Integer.BYTES;
+    static final int ACCOUNT_COUNT_OFFSET = JOURNAL_POSITION_OFFSET + Long.BYTES;
+    static final int WITHDRAWAL_COUNT_OFFSET = ACCOUNT_COUNT_OFFSET + Long.BYTES;
+    static final int ISSUED_AMOUNT_OFFSET = WITHDRAWAL_COUNT_OFFSET + Long.BYTES;
+    static final int ADDRESSES_LENGTH_OFFSET = ISSUED_AMOUNT_OFFSET + Long.BYTES;
+    static final int LINKS_LENGTH_OFFSET = ADDRESSES_LENGTH_OFFSET + Long.BYTES;
+    static final int SHARD_COUNT_OFFSET = LINKS_LENGTH_OFFSET + Long.BYTES;
+    static final int HEADER_LENGTH = 64;
+
+    static final int ACCOUNT_AVAILABLE_OFFSET = 0;
+    static final int ACCOUNT_RESERVED_OFFSET = ACCOUNT_AVAILABLE_OFFSET + Long.BYTES;
+    static final int ACCOUNT_LENGTH = ACCOUNT_RESERVED_OFFSET + Long.BYTES;
+
+    static final int WITHDRAWAL_ACCOUNT_ID_OFFSET = 0;
+    static final int WITHDRAWAL_AMOUNT_OFFSET = WITHDRAWAL_ACCOUNT_ID_OFFSET + Long.BYTES;
+    static final int WITHDRAWAL_UUID_MSB_OFFSET = WITHDRAWAL_AMOUNT_OFFSET + Long.BYTES;
+    static final int WITHDRAWAL_UUID_LSB_OFFSET = WITHDRAWAL_UUID_MSB_OFFSET + Long.BYTES;
+    static final int WITHDRAWAL_TRACKING_ID_OFFSET = WITHDRAWAL_UUID_LSB_OFFSET + Long.BYTES;
+    static final int WITHDRAWAL_SESSION_ID_OFFSET = WITHDRAWAL_TRACKING_ID_OFFSET + Long.BYTES;
+    static final int WITHDRAWAL_ADDRESS_LENGTH_OFFSET = WITHDRAWAL_SESSION_ID_OFFSET + Integer.BYTES;
+    static final int WITHDRAWAL_STATE_OFFSET = WITHDRAWAL_ADDRESS_LENGTH_OFFSET + Integer.BYTES;
+    static final int WITHDRAWAL_FLAGS_OFFSET = WITHDRAWAL_STATE_OFFSET + Byte.BYTES;
+    static final int WITHDRAWAL_LENGTH = 56;
+
+    static final byte FLAG_CREATED = 1;
+    static final byte FLAG_QUERY_PENDING = 2;
+
+    static final int LINK_OUTGOING_SEQUENCE_OFFSET = 0;
+    static final int LINK_INCOMING_SEQUENCE_OFFSET = LINK_OUTGOING_SEQUENCE_OFFSET + Long.BYTES;
+    static final int LINK_REJECTED_COUNT_OFFSET = LINK_INCOMING_SEQUENCE_OFFSET + Long.BYTES;
+    static final int LINK_REJECTED_SEQUENCES_OFFSET = LINK_REJECTED_COUNT_OFFSET + Long.BYTES;
+
+    private static final String SUFFIX = ".snapshot";
+
+    static long length(long accountCount, long withdrawalCount, long addressesLength, long linksLength) {
+        return linksOffset(accountCount, withdrawalCount, addressesLength) + linksLength;
+    }
+
+    static long accountOffset(long id) {
+        return HEADER_LENGTH + (id - 1) * ACCOUNT_LENGTH;
+    }
+
+    static long withdrawalOffset(long accountCount, long id) {
+        return accountOffset(accountCount + 1) + (id - 1) * WITHDRAWAL_LENGTH;
+    }
+
+    static long addressesOffset(long accountCount, long withdrawalCount) {
+        return withdrawalOffset(accountCount, withdrawalCount + 1);
+    }
+
+    static long linksOffset(long accountCount, long withdrawalCount, long addressesLength) {
+        return addressesOffset(accountCount, withdrawalCount) + addressesLength;
+    }
+
+    static long linksLength(@NotNull ShardLink[] links) {
+        long length = 0;
+        for (final var link : links) {
+            length += LINK_REJECTED_SEQUENCES_OFFSET + (long) link.rejectedSequences.size() * Long.BYTES;
+        }
+        return length;
+    }
+
+    @NotNull
+    static File file(@NotNull File dir, long journalPosition) {
+        return new File(dir, "%020d%s".formatted(journalPosition, SUFFIX));
+    }
+
+    /**
+     * @return Journal positions of all snapshots in ascending order.
+     */
+    @NotNull
+    static long[] snapshots(@NotNull File dir) {
+        final var names = dir.list((ignored, name) -> name.endsWith(SUFFIX));
+        if (names == null) {
+            return new long[0];
+        }
+        final var positions = new long[names.length];
+        for (int i = 0; i < names.length; i++) {
+            positions[i] = Long.parseLong(names[i].substring(0, names[i].length() - SUFFIX.length()));
+        }
+        Arrays.sort(positions);
+        return positions;
+    }
+
+    /**
+     * @return Length of the string in UTF-8, exactly as {@link String#getBytes} encodes it, without encoding it.
+     */
+    public static int utf8Length(@NotNull String value) {
+        int length = 0;
+        for (int i = 0; i < value.length(); i++) {
+            final char c = value.charAt(i);
+            if (c < 0x80) {
+                length += 1;
+            } else if (c < 0x800) {
+                length += 2;
+            } else if (!Character.isSurrogate(c)) {
+                length += 3;
+            } else if (Character.isHighSurrogate(c) && i + 1 < value.length()
+                    && Character.isLowSurrogate(value.charAt(i + 1))) {
+                length += 4;
+                i++;
+            } else {
+                // malformed surrogates are replaced with '?'
+                length += 1;
+            }
+        }
+        return length;
+    }
+
+    private Snapshot() {
+        // empty
+    }
+}
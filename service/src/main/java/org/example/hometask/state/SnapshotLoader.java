@@ -0,0 +1,167 @@
+package org.example.hometask.state;
+
+import org.agrona.concurrent.MappedResizeableBuffer;
+import org.example.hometask.disruptor.Publisher;
+import org.example.hometask.external.WithdrawalService;
+import org.example.hometask.messages.WithdrawalState;
+import org.jetbrains.annotations.NotNull;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.UUID;
+
+import static java.nio.channels.FileChannel.MapMode.READ_ONLY;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.example.hometask.state.Snapshot.ACCOUNT_AVAILABLE_OFFSET;
+import static org.example.hometask.state.Snapshot.ACCOUNT_COUNT_OFFSET;
+import static org.example.hometask.state.Snapshot.ACCOUNT_RESERVED_OFFSET;
+import static org.example.hometask.state.Snapshot.ADDRESSES_LENGTH_OFFSET;
+import static org.example.hometask.state.Snapshot.FLAG_CREATED;
+import static org.example.hometask.state.Snapshot.FLAG_QUERY_PENDING;
+import static org.example.hometask.state.Snapshot.HEADER_LENGTH;
+import static org.example.hometask.state.Snapshot.ISSUED_AMOUNT_OFFSET;
+import static org.example.hometask.state.Snapshot.JOURNAL_POSITION_OFFSET;
+import static org.example.hometask.state.Snapshot.LINK_INCOMING_SEQUENCE_OFFSET;
+import static org.example.hometask.state.Snapshot.LINK_OUTGOING_SEQUENCE_OFFSET;
+import static org.example.hometask.state.Snapshot.LINK_REJECTED_COUNT_OFFSET;
+import static org.example.hometask.state.Snapshot.LINK_REJECTED_SEQUENCES_OFFSET;
+import static org.example.hometask.state.Snapshot.MAGIC;
+import static org.example.hometask.state.Snapshot.MAGIC_OFFSET;
+import static org.example.hometask.state.Snapshot.SHARD_COUNT_OFFSET;
+import static org.example.hometask.state.Snapshot.VERSION;
+import static org.example.hometask.state.Snapshot.VERSION_1;
+import static org.example.hometask.state.Snapshot.VERSION_OFFSET;
+import static org.example.hometask.state.Snapshot.WITHDRAWAL_ACCOUNT_ID_OFFSET;
+import static org.example.hometask.state.Snapshot.WITHDRAWAL_ADDRESS_LENGTH_OFFSET;
+import static org.example.hometask.state.Snapshot.WITHDRAWAL_AMOUNT_OFFSET;
+import static org.example.hometask.state.Snapshot.WITHDRAWAL_COUNT_OFFSET;
+import static org.example.hometask.state.Snapshot.WITHDRAWAL_FLAGS_OFFSET;
+import static org.example.hometask.state.Snapshot.WITHDRAWAL_SESSION_ID_OFFSET;
+import static org.example.hometask.state.Snapshot.WITHDRAWAL_STATE_OFFSET;
+import static org.example.hometask.state.Snapshot.WITHDRAWAL_TRACKING_ID_OFFSET;
+import static org.example.hometask.state.Snapshot.WITHDRAWAL_UUID_LSB_OFFSET;
+import static org.example.hometask.state.Snapshot.WITHDRAWAL_UUID_MSB_OFFSET;
+
+/**
+ * Restores the repository from the latest complete snapshot written by {@link SnapshotWriter}.
+ */
+public final class SnapshotLoader {
+
+    private static final Logger logger = LoggerFactory.getLogger(SnapshotLoader.class);
+
+    private static final WithdrawalState[] WITHDRAWAL_STATES = WithdrawalState.values();
+
+    /**
+     * Loads the latest complete snapshot into the empty repository.
+     *
+     * @return Journal position to replay the journal from, <code>0</code> if there is no snapshot.
+     */
+    public static long load(
+            @NotNull File dir,
+            @NotNull Repository repository,
+            @NotNull Publisher publisher
+    ) throws IOException {
+
+        final long[] snapshots = Snapshot.snapshots(dir);
+        for (int i = snapshots.length - 1; i >= 0; i--) {
+            final var file = Snapshot.file(dir, snapshots[i]);
+            try (var raf = new RandomAccessFile(file, "r");
+                 var buffer = new MappedResizeableBuffer(raf.getChannel(), READ_ONLY, 0, raf.length())) {
+                if (raf.length() < HEADER_LENGTH || buffer.getInt(MAGIC_OFFSET) != MAGIC
+                        || buffer.getInt(VERSION_OFFSET) != VERSION && buffer.getInt(VERSION_OFFSET) != VERSION_1) {
+                    logger.warn("Skipping incomplete or incompatible snapshot {}", file);
+                    continue;
+                }
+                final long startNanos = System.nanoTime();
+                load(buffer, repository, publisher);
+                logger.info("Loaded snapshot {} with {} accounts and {} withdrawals in {} ms", file,
+                        repository.accounts.size(), repository.withdrawals.size(),
+                        (System.nanoTime() - startNanos) / 1_000_000);
+                return buffer.getLong(JOURNAL_POSITION_OFFSET);
+            }
+        }
+        return 0;
+    }
+
+    private static void load(
+            @NotNull MappedResizeableBuffer buffer,
+            @NotNull Repository repository,
+            @NotNull Publisher publisher
+    ) {
+        final long accountCount = buffer.getLong(ACCOUNT_COUNT_OFFSET);
+        final long withdrawalCount = buffer.getLong(WITHDRAWAL_COUNT_OFFSET);
+
+        final int version = buffer.getInt(VERSION_OFFSET);
+        final int shards = version == VERSION_1 ? 1 : buffer.getInt(SHARD_COUNT_OFFSET);
+        if (shards != repository.shards) {
+            throw new IllegalStateException("Snapshot of %d shards cannot be loaded by one of %d shards".formatted(
+                    shards, repository.shards));
+        }
+
+        for (long index = 1; index <= accountCount; index++) {
+            final long offset = Snapshot.accountOffset(index);
+            repository.addAccount(new Account(repository, repository.id(index),
+                    buffer.getLong(offset + ACCOUNT_AVAILABLE_OFFSET), buffer.getLong(offset + ACCOUNT_RESERVED_OFFSET)));
+        }
+
+        long addressOffset = Snapshot.addressesOffset(accountCount, withdrawalCount);
+        for (long index = 1; index <= withdrawalCount; index++) {
+
+            final long id = repository.id(index);
+            final long offset = Snapshot.withdrawalOffset(accountCount, index);
+            final var address = new byte[buffer.getInt(offset + WITHDRAWAL_ADDRESS_LENGTH_OFFSET)];
+            buffer.getBytes(addressOffset, address);
+            addressOffset += address.length;
+
+            final var account = repository.account(buffer.getLong(offset + WITHDRAWAL_ACCOUNT_ID_OFFSET));
+            if (account == null) {
+                throw new IllegalStateException("Withdrawal %d refers to unknown account".formatted(id));
+            }
+
+            final var withdrawal = new Withdrawal(
+                    publisher,
+                    repository,
+                    id,
+                    account,
+                    buffer.getLong(offset + WITHDRAWAL_AMOUNT_OFFSET),
+                    new WithdrawalService.Address(new String(address, UTF_8)),
+                    new UUID(buffer.getLong(offset + WITHDRAWAL_UUID_MSB_OFFSET),
+                            buffer.getLong(offset + WITHDRAWAL_UUID_LSB_OFFSET)),
+                    buffer.getInt(offset + WITHDRAWAL_SESSION_ID_OFFSET),
+                    buffer.getLong(offset + WITHDRAWAL_TRACKING_ID_OFFSET)
+            );
+            final byte flags = buffer.getByte(offset + WITHDRAWAL_FLAGS_OFFSET);
+            withdrawal.restore((flags & FLAG_CREATED) != 0, (flags & FLAG_QUERY_PENDING) != 0,
+                    WITHDRAWAL_STATES[buffer.getByte(offset + WITHDRAWAL_STATE_OFFSET)]);
+            repository.addWithdrawal(withdrawal);
+        }
+
+        repository.accountSequence = accountCount;
+        repository.withdrawalSequence = withdrawalCount;
+        repository.issuedAmount = buffer.getLong(ISSUED_AMOUNT_OFFSET);
+        if (repository.addressesLength != buffer.getLong(ADDRESSES_LENGTH_OFFSET)) {
+            throw new IllegalStateException("Snapshot addresses length mismatch");
+        }
+
+        if (version != VERSION_1) {
+            long offset = addressOffset;
+            for (final var link : repository.links) {
+                link.outgoingSequence = buffer.getLong(offset + LINK_OUTGOING_SEQUENCE_OFFSET);
+                link.incomingSequence = buffer.getLong(offset + LINK_INCOMING_SEQUENCE_OFFSET);
+                final long rejectedCount = buffer.getLong(offset + LINK_REJECTED_COUNT_OFFSET);
+                offset += LINK_REJECTED_SEQUENCES_OFFSET;
+                for (long i = 0; i < rejectedCount; i++) {
+                    link.rejectedSequences.addLong(buffer.getLong(offset));
+                    offset += Long.BYTES;
+                }
+            }
+        }
+    }
+
+    private SnapshotLoader() {
+        // empty
+    }
+}
@@ -0,0 +1,274 @@
+package org.example.hometask.state;
+
+import org.agrona.concurrent.MappedResizeableBuffer;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.BitSet;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static org.example.hometask.state.Snapshot.ACCOUNT_AVAILABLE_OFFSET;
+import static org.example.hometask.state.Snapshot.ACCOUNT_COUNT_OFFSET;
+import static org.example.hometask.state.Snapshot.ACCOUNT_RESERVED_OFFSET;
+import static org.example.hometask.state.Snapshot.ADDRESSES_LENGTH_OFFSET;
+import static org.example.hometask.state.Snapshot.FLAG_CREATED;
+import static org.example.hometask.state.Snapshot.FLAG_QUERY_PENDING;
+import static org.example.hometask.state.Snapshot.ISSUED_AMOUNT_OFFSET;
+import static org.example.hometask.state.Snapshot.JOURNAL_POSITION_OFFSET;
+import static org.example.hometask.state.Snapshot.LINKS_LENGTH_OFFSET;
+import static org.example.hometask.state.Snapshot.LINK_INCOMING_SEQUENCE_OFFSET;
+import static org.example.hometask.state.Snapshot.LINK_OUTGOING_SEQUENCE_OFFSET;
+import static org.example.hometask.state.Snapshot.LINK_REJECTED_COUNT_OFFSET;
+import static org.example.hometask.state.Snapshot.LINK_REJECTED_SEQUENCES_OFFSET;
+import static org.example.hometask.state.Snapshot.MAGIC;
+import static org.example.hometask.state.Snapshot.MAGIC_OFFSET;
+import static org.example.hometask.state.Snapshot.SHARD_COUNT_OFFSET;
+import static org.example.hometask.state.Snapshot.VERSION;
+import static org.example.hometask.state.Snapshot.VERSION_OFFSET;
+import static org.example.hometask.state.Snapshot.WITHDRAWAL_ACCOUNT_ID_OFFSET;
+import static org.example.hometask.state.Snapshot.WITHDRAWAL_ADDRESS_LENGTH_OFFSET;
+import static org.example.hometask.state.Snapshot.WITHDRAWAL_AMOUNT_OFFSET;
+import static org.example.hometask.state.Snapshot.WITHDRAWAL_COUNT_OFFSET;
+import static org.example.hometask.state.Snapshot.WITHDRAWAL_FLAGS_OFFSET;
+import static org.example.hometask.state.Snapshot.WITHDRAWAL_SESSION_ID_OFFSET;
+import static org.example.hometask.state.Snapshot.WITHDRAWAL_STATE_OFFSET;
+import static org.example.hometask.state.Snapshot.WITHDRAWAL_TRACKING_ID_OFFSET;
+import static org.example.hometask.state.Snapshot.WITHDRAWAL_UUID_LSB_OFFSET;
+import static org.example.hometask.state.Snapshot.WITHDRAWAL_UUID_MSB_OFFSET;
+
+/**
+ * Writes a snapshot of the repository in chunks interleaved with processing of events, so the state machine never
+ * pauses for the whole snapshot. The snapshot reflects the state at the moment the writer was created: the repository
+ * calls {@link #beforeUpdate(Account)} and {@link #beforeUpdate(Withdrawal)} right before changing an entity, and its
+ * image is written out of order if the chunks have not reached it yet (copy-on-write). Entities created afterward are
+ * not part of the snapshot, they are restored by replaying the journal. The state of transfers between shards is small,
+ * it is written right away. Not thread-safe, though once {@link #detach() detached} the writer no longer touches the
+ * repository and may be completed by another thread.
+ */
+class SnapshotWriter implements AutoCloseable {
+
+    @NotNull
+    private final File dir;
+
+    @NotNull
+    private final Repository repository;
+
+    private final long journalPosition;
+
+    private final long accountCount;
+
+    private final long withdrawalCount;
+
+    @NotNull
+    private final File tmpFile;
+
+    @NotNull
+    private final RandomAccessFile file;
+
+    @NotNull
+    private final MappedResizeableBuffer buffer;
+
+    private final BitSet writtenAccounts;
+
+    private final BitSet writtenWithdrawals;
+
+    /**
+     * Id of the next entity to be written by {@link #writeChunk(int)}: accounts go first, then withdrawals.
+     */
+    private long cursor = 1;
+
+    private long addressOffset;
+
+    private boolean closed;
+
+    private boolean detached;
+
+    SnapshotWriter(@NotNull File dir, @NotNull Repository repository, long journalPosition) throws IOException {
+
+        this.dir = dir;
+        this.repository = repository;
+        this.journalPosition = journalPosition;
+        this.accountCount = repository.accounts.size();
+        this.withdrawalCount = repository.withdrawals.size();
+        this.writtenAccounts = new BitSet(Math.toIntExact(accountCount));
+        this.writtenWithdrawals = new BitSet(Math.toIntExact(withdrawalCount));
+        this.addressOffset = Snapshot.addressesOffset(accountCount, withdrawalCount);
+
+        final long linksLength = Snapshot.linksLength(repository.links);
+        final long length = Snapshot.length(accountCount, withdrawalCount, repository.addressesLength, linksLength);
+        tmpFile = new File(dir, Snapshot.file(dir, journalPosition).getName() + ".tmp");
+        file = new RandomAccessFile(tmpFile, "rw");
+        try {
+            // sparse file, so starting a snapshot does not stall on zeroing it
+            file.setLength(length);
+            buffer = new MappedResizeableBuffer(file.getChannel(), 0, length);
+        } catch (IOException | RuntimeException e) {
+            file.close();
+            throw e;
+        }
+
+        buffer.putInt(VERSION_OFFSET, VERSION);
+        buffer.putLong(JOURNAL_POSITION_OFFSET, journalPosition);
+        buffer.putLong(ACCOUNT_COUNT_OFFSET, accountCount);
+        buffer.putLong(WITHDRAWAL_COUNT_OFFSET, withdrawalCount);
+        buffer.putLong(ISSUED_AMOUNT_OFFSET, repository.issuedAmount);
+        buffer.putLong(ADDRESSES_LENGTH_OFFSET, repository.addressesLength);
+        buffer.putLong(LINKS_LENGTH_OFFSET, linksLength);
+        buffer.putInt(SHARD_COUNT_OFFSET, repository.shards);
+
+        long offset = Snapshot.linksOffset(accountCount, withdrawalCount, repository.addressesLength);
+        for (final var link : repository.links) {
+            buffer.putLong(offset + LINK_OUTGOING_SEQUENCE_OFFSET, link.outgoingSequence);
+            buffer.putLong(offset + LINK_INCOMING_SEQUENCE_OFFSET, link.incomingSequence);
+            buffer.putLong(offset + LINK_REJECTED_COUNT_OFFSET, link.rejectedSequences.size());
+            offset += LINK_REJECTED_SEQUENCES_OFFSET;
+            for (final var iterator = link.rejectedSequences.iterator(); iterator.hasNext(); ) {
+                buffer.putLong(offset, iterator.nextValue());
+                offset += Long.BYTES;
+            }
+        }
+    }
+
+    long journalPosition() {
+        return journalPosition;
+    }
+
+    void beforeUpdate(@NotNull Account account) {
+        final long index = repository.index(account.getId());
+        if (index <= accountCount && !writtenAccounts.get((int) (index - 1))) {
+            write(account);
+        }
+    }
+
+    void beforeUpdate(@NotNull Withdrawal withdrawal) {
+        final long index = repository.index(withdrawal.getId());
+        if (index <= withdrawalCount && !writtenWithdrawals.get((int) (index - 1))) {
+            write(withdrawal);
+        }
+    }
+
+    /**
+     * Writes up to the given number of entities not written yet.
+     *
+     * @return <code>true</code> if all entities have been written.
+     */
+    boolean writeChunk(int chunkSize) {
+
+        final long total = accountCount + withdrawalCount;
+        final long end = Math.min(total, cursor - 1 + chunkSize);
+
+        for (; cursor <= end; cursor++) {
+            if (cursor <= accountCount) {
+                if (!writtenAccounts.get((int) (cursor - 1))) {
+                    write(requireAccount(cursor));
+                }
+            } else {
+                final var withdrawal = requireWithdrawal(cursor - accountCount);
+                if (!writtenWithdrawals.get((int) (cursor - accountCount - 1))) {
+                    write(withdrawal);
+                }
+                // addresses are immutable, they are always written in id order
+                final var address = withdrawal.getAddress().value().getBytes(UTF_8);
+                buffer.putBytes(addressOffset, address);
+                addressOffset += address.length;
+            }
+        }
+
+        return cursor > total;
+    }
+
+    /**
+     * Stops tracking updates of the repository. Must be called on the thread updating the repository.
+     */
+    void detach() {
+        detached = true;
+        if (repository.snapshotWriter == this) {
+            repository.snapshotWriter = null;
+        }
+    }
+
+    /**
+     * Makes the snapshot durable and visible under its final name, then deletes older snapshots.
+     * Must be called once {@link #writeChunk(int)} returned <code>true</code> and the writer has been detached.
+     */
+    void complete() throws IOException {
+        final var channel = file.getChannel();
+        channel.force(true);
+        buffer.putInt(MAGIC_OFFSET, MAGIC);
+        channel.force(true);
+        close();
+        Files.move(tmpFile.toPath(), Snapshot.file(dir, journalPosition).toPath(), ATOMIC_MOVE);
+        for (final long position : Snapshot.snapshots(dir)) {
+            if (position < journalPosition) {
+                Files.deleteIfExists(Snapshot.file(dir, position).toPath());
+            }
+        }
+    }
+
+    /**
+     * Discards an incomplete snapshot.
+     */
+    void abort() throws IOException {
+        close();
+        Files.deleteIfExists(tmpFile.toPath());
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        if (!detached) {
+            detach();
+        }
+        buffer.close();
+        file.close();
+    }
+
+    private void write(@NotNull Account account) {
+        final long index = repository.index(account.getId());
+        final long offset = Snapshot.accountOffset(index);
+        buffer.putLong(offset + ACCOUNT_AVAILABLE_OFFSET, account.getAvailableAmount());
+        buffer.putLong(offset + ACCOUNT_RESERVED_OFFSET, account.getReservedAmount());
+        writtenAccounts.set((int) (index - 1));
+    }
+
+    private void write(@NotNull Withdrawal withdrawal) {
+        final long index = repository.index(withdrawal.getId());
+        final long offset = Snapshot.withdrawalOffset(accountCount, index);
+        buffer.putLong(offset + WITHDRAWAL_ACCOUNT_ID_OFFSET, withdrawal.getAccount().getId());
+        buffer.putLong(offset + WITHDRAWAL_AMOUNT_OFFSET, withdrawal.getAmount());
+        buffer.putLong(offset + WITHDRAWAL_UUID_MSB_OFFSET, withdrawal.getUuid().getMostSignificantBits());
+        buffer.putLong(offset + WITHDRAWAL_UUID_LSB_OFFSET, withdrawal.getUuid().getLeastSignificantBits());
+        buffer.putLong(offset + WITHDRAWAL_TRACKING_ID_OFFSET, withdrawal.getTrackingId());
+        buffer.putInt(offset + WITHDRAWAL_SESSION_ID_OFFSET, withdrawal.getSessionId());
+        buffer.putInt(offset + WITHDRAWAL_ADDRESS_LENGTH_OFFSET, Snapshot.utf8Length(withdrawal.getAddress().value()));
+        buffer.putByte(offset + WITHDRAWAL_STATE_OFFSET, (byte) withdrawal.getState().ordinal());
+        buffer.putByte(offset + WITHDRAWAL_FLAGS_OFFSET, (byte) ((withdrawal.isCreated() ? FLAG_CREATED : 0)
+                | (withdrawal.isQueryPending() ? FLAG_QUERY_PENDING : 0)));
+        writtenWithdrawals.set((int) (index - 1));
+    }
+
+    @NotNull
+    private Account requireAccount(long index) {
+        final var account = repository.accounts.get(index);
+        if (account == null) {
+            throw new IllegalStateException("No account at index " + index);
+        }
+        return account;
+    }
+
+    @NotNull
+    private Withdrawal requireWithdrawal(long index) {
+        final var withdrawal = repository.withdrawals.get(index);
+        if (withdrawal == null) {
+            throw new IllegalStateException("No withdrawal at index " + index);
+        }
+        return withdrawal;
+    }
+}
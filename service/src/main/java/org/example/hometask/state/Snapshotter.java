@@ -0,0 +1,165 @@
+package org.example.hometask.state;
+
+import org.example.hometask.utils.PrefixThreadFactory;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Takes snapshots of the repository periodically, driven by the state machine thread at the end of every batch.
+ * <p>
+ * A snapshot is started only when no operation waits for withdrawal states, since pending operations are closures
+ * which cannot be persisted, so a steady flow of withdrawals awaiting their states may postpone snapshots. Then it is
+ * written by chunks, one chunk per batch, so the pause never exceeds the time to write a single chunk. The written
+ * snapshot is made durable and renamed on a background thread, and the next one is not started until that is done.
+ * A failed snapshot is logged and discarded, the journal still has everything.
+ */
+public class Snapshotter implements AutoCloseable {
+
+    protected final Logger logger = LoggerFactory.getLogger(getClass());
+
+    @NotNull
+    private final File dir;
+
+    @NotNull
+    private final Repository repository;
+
+    private final long intervalNanos;
+
+    private final int chunkSize;
+
+    /**
+     * Completes written snapshots, since syncing them to disk may take long.
+     */
+    @NotNull
+    private final ExecutorService completer = Executors.newSingleThreadExecutor(new PrefixThreadFactory("snapshot-"));
+
+    @Nullable
+    private SnapshotWriter writer;
+
+    @Nullable
+    private Future<?> completion;
+
+    private long lastSnapshotNanos;
+
+    private long lastSnapshotPosition;
+
+    /**
+     * @param journalPosition Position the state has been restored at, no snapshot is needed until it changes.
+     */
+    public Snapshotter(
+            @NotNull File dir,
+            @NotNull Repository repository,
+            long intervalNanos,
+            int chunkSize,
+            long journalPosition
+    ) {
+        if (chunkSize <= 0) {
+            throw new IllegalArgumentException("Invalid snapshot chunk size: " + chunkSize);
+        }
+        this.dir = dir;
+        this.repository = repository;
+        this.intervalNanos = intervalNanos;
+        this.chunkSize = chunkSize;
+        this.lastSnapshotNanos = System.nanoTime();
+        this.lastSnapshotPosition = journalPosition;
+    }
+
+    /**
+     * @param journalPosition Position right after the last journal record applied to the repository.
+     */
+    public void onEndOfBatch(long journalPosition) {
+
+        final var writer = this.writer;
+
+        if (writer == null) {
+            if (completion != null) {
+                if (!completion.isDone()) {
+                    return;
+                }
+                completion = null;
+            }
+            if (journalPosition != lastSnapshotPosition
+                    && System.nanoTime() - lastSnapshotNanos >= intervalNanos
+                    && repository.isQuiescent()) {
+                start(journalPosition);
+            }
+            return;
+        }
+
+        try {
+            if (writer.writeChunk(chunkSize)) {
+                this.writer = null;
+                writer.detach();
+                lastSnapshotPosition = writer.journalPosition();
+                final long startNanos = lastSnapshotNanos;
+                completion = completer.submit(() -> complete(writer, startNanos));
+            }
+        } catch (RuntimeException e) {
+            logger.error("Snapshot at journal position {} failed", writer.journalPosition(), e);
+            abort(writer);
+        }
+    }
+
+    @Override
+    public void close() {
+        final var writer = this.writer;
+        if (writer != null) {
+            logger.info("Discarding snapshot in progress at journal position {}", writer.journalPosition());
+            abort(writer);
+        }
+        completer.shutdown();
+        try {
+            if (!completer.awaitTermination(1, TimeUnit.MINUTES)) {
+                logger.warn("Snapshot is still being completed");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void start(long journalPosition) {
+        lastSnapshotNanos = System.nanoTime();
+        try {
+            writer = new SnapshotWriter(dir, repository, journalPosition);
+            repository.snapshotWriter = writer;
+        } catch (IOException | RuntimeException e) {
+            logger.error("Failed to start snapshot at journal position {}", journalPosition, e);
+        }
+    }
+
+    /**
+     * Runs on the background thread.
+     */
+    private void complete(@NotNull SnapshotWriter writer, long startNanos) {
+        try {
+            writer.complete();
+            logger.info("Snapshot taken at journal position {} in {} ms", writer.journalPosition(),
+                    (System.nanoTime() - startNanos) / 1_000_000);
+        } catch (IOException | RuntimeException e) {
+            logger.error("Snapshot at journal position {} failed", writer.journalPosition(), e);
+            try {
+                writer.abort();
+            } catch (IOException | RuntimeException ex) {
+                logger.error("Failed to discard snapshot at journal position {}", writer.journalPosition(), ex);
+            }
+        }
+    }
+
+    private void abort(@NotNull SnapshotWriter writer) {
+        this.writer = null;
+        try {
+            writer.abort();
+        } catch (IOException | RuntimeException e) {
+            logger.error("Failed to discard snapshot at journal position {}", writer.journalPosition(), e);
+        }
+    }
+}
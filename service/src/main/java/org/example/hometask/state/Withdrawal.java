@@ -3,11 +3,8 @@ package org.example.hometask.state;
 import org.example.hometask.disruptor.Publisher;
 import org.example.hometask.external.WithdrawalService;
 import org.example.hometask.messages.WithdrawalState;
-import org.example.hometask.messages.external.QueryWithdrawalRequest;
-import org.example.hometask.messages.response.AccountWithdrawalDoneAeronResponse;
 import org.jetbrains.annotations.NotNull;
 
-import java.math.BigDecimal;
 import java.util.ArrayList;
 import java.util.UUID;
 
@@ -18,13 +15,15 @@ public class Withdrawal {
     @NotNull
     private final Publisher publisher;
 
+    @NotNull
+    private final Repository repository;
+
     private final long id;
 
     @NotNull
     private final Account account;
 
-    @NotNull
-    private final BigDecimal amount;
+    private final long amount;
 
     @NotNull
     private final WithdrawalService.Address address;
@@ -37,6 +36,18 @@ public class Withdrawal {
      */
     private boolean queryPending;
 
+    /**
+     * <code>true</code> if there is a pending background poll, see {@link #poll()}. Unlike {@link #queryPending}, it is
+     * neither snapshotted nor replayed, since polls are driven by ticks, which are not journalled.
+     */
+    private boolean pollPending;
+
+    /**
+     * <code>true</code> if a state has been reported before the withdrawal has been created, e.g. a notification has
+     * overtaken the create result. Such a report is dropped, and the state is polled once the withdrawal is created.
+     */
+    private boolean reportedEarly;
+
     @NotNull
     private final UUID uuid;
 
@@ -62,15 +73,17 @@ public class Withdrawal {
 
     public Withdrawal(
             @NotNull Publisher publisher,
+            @NotNull Repository repository,
             long id,
             @NotNull Account account,
-            @NotNull BigDecimal amount,
+            long amount,
             @NotNull WithdrawalService.Address address,
             @NotNull UUID uuid,
             int sessionId,
             long trackingId
     ) {
         this.publisher = publisher;
+        this.repository = repository;
         this.id = id;
         this.account = account;
         this.amount = amount;
@@ -86,36 +99,60 @@ public class Withdrawal {
             throw new IllegalStateException();
         }
 
+        repository.waitingQueries++;
         if (queryPending) {
             queuedQueries.add(query);
         } else {
+            repository.beforeUpdate(this);
             queryPending = true;
             pendingQueries.add(query);
             publishQuery();
         }
     }
 
+    /**
+     * Applies the state reported by the external service, either queried, polled or pushed by it. Since notifications
+     * race with queries, reports coming after the withdrawal has been completed are ignored, as well as reports coming
+     * before it has been created.
+     * <p>
+     * Reports are not matched with requests, any of them completes the pending operations, so the outcome depends on
+     * journalled events only and is the same on replay.
+     */
     public void queryDone(@NotNull WithdrawalState state) {
+        pollPending = false;
+        if (!created) {
+            reportedEarly = true;
+            return;
+        }
+        if (this.state != PROCESSING) {
+            return;
+        }
+        repository.beforeUpdate(this);
         this.state = state;
         if (state != PROCESSING) {
             account.withdrawalCompleted(this);
         }
-        for (final var query : pendingQueries) {
-            query.completed();
-        }
+        complete(pendingQueries);
         roll();
     }
 
+    /**
+     * Completes the pending operations with the state known so far. Failures coming when no query is pending are late
+     * ones, e.g. of polls, so they are ignored.
+     */
     public void queryFailed() {
-        for (final var query : pendingQueries) {
-            query.completed();
+        pollPending = false;
+        if (!queryPending) {
+            return;
         }
+        complete(pendingQueries);
         roll();
     }
 
     private void roll() {
         pendingQueries.clear();
         if (queuedQueries.isEmpty()) {
+            repository.beforeUpdate(this);
             queryPending = false;
         } else {
             if (state == PROCESSING) {
@@ -124,23 +161,74 @@ public class Withdrawal {
                 queuedQueries = swap;
                 publishQuery();
             } else {
-                for (final var query : queuedQueries) {
-                    query.completed();
-                }
+                complete(queuedQueries);
                 queuedQueries.clear();
             }
         }
     }
 
+    private void complete(@NotNull ArrayList<PendingWithdrawalStateQuery> queries) {
+        for (final var query : queries) {
+            repository.waitingQueries--;
+            query.completed();
+        }
+    }
+
     public void createDone() {
         // from now, we can query its state:
+        repository.beforeUpdate(this);
         created = true;
         account.withdrawalCreated(this);
-        publisher.publish(sessionId, new AccountWithdrawalDoneAeronResponse(trackingId, id));
+        publisher.accountWithdrawalDone(sessionId, trackingId, id);
+        if (reportedEarly) {
+            reportedEarly = false;
+            poll();
+        }
+    }
+
+    /**
+     * Requests the state in the background, unless it is being requested already. The poll leaves
+     * {@link #queryPending} alone, so operations arriving meanwhile are handled the same way as on replay, where
+     * there are no polls.
+     */
+    public void poll() {
+        if (created && state == PROCESSING && !queryPending && !pollPending) {
+            pollPending = true;
+            publishQuery();
+        }
+    }
+
+    /**
+     * Re-issues the external request this withdrawal waits for, since it may have been lost on restart.
+     */
+    public void recover() {
+        // polls made on replay have never been sent
+        pollPending = false;
+        if (!created) {
+            publishCreate();
+        } else if (queryPending && state == PROCESSING) {
+            publishQuery();
+        }
+    }
+
+    /**
+     * Restores the state from a snapshot.
+     */
+    void restore(boolean created, boolean queryPending, @NotNull WithdrawalState state) {
+        this.created = created;
+        this.queryPending = queryPending;
+        this.state = state;
+        if (created && state == PROCESSING) {
+            account.withdrawalCreated(this);
+        }
+    }
+
+    void publishCreate() {
+        publisher.createWithdrawal(uuid, address.value(), amount);
     }
 
     private void publishQuery() {
-        publisher.publish(new QueryWithdrawalRequest(uuid));
+        publisher.queryWithdrawal(uuid);
     }
 
     public long getId() {
@@ -157,11 +245,27 @@ public class Withdrawal {
         return account;
     }
 
-    @NotNull
-    public BigDecimal getAmount() {
+    public long getAmount() {
         return amount;
     }
 
+    @NotNull
+    public WithdrawalService.Address getAddress() {
+        return address;
+    }
+
+    public int getSessionId() {
+        return sessionId;
+    }
+
+    public long getTrackingId() {
+        return trackingId;
+    }
+
+    public boolean isQueryPending() {
+        return queryPending;
+    }
+
     public boolean isCreated() {
         return created;
     }
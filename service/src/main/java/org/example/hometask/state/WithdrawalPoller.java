@@ -0,0 +1,160 @@
+package org.example.hometask.state;
+
+import org.agrona.DeadlineTimerWheel;
+import org.agrona.collections.Long2LongHashMap;
+import org.agrona.collections.LongHashSet;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.concurrent.TimeUnit;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+import static org.example.hometask.messages.WithdrawalState.PROCESSING;
+
+/**
+ * Polls states of created withdrawals in the background, so balances are mostly settled by the time operations need
+ * them. Driven by ticks, i.e. it knows no time other than the one of the last tick.
+ * <p>
+ * The external service completes withdrawals between 1 and 10 seconds after creation, so the first poll is made after
+ * the initial delay, then polls are repeated with the fixed interval within the completion window. Withdrawals
+ * lasting longer are polled with growing intervals, half of their age but no more than the max interval.
+ * <p>
+ * When the external service pushes final states, polling is a fallback for lost notifications only, so the first poll
+ * is made after the completion window, see {@link #DEFAULT_FALLBACK_INITIAL_DELAY_MS}.
+ * <p>
+ * It also repeats creation of withdrawals whose create calls have failed, after the poll interval, so an unavailable
+ * external service is not called in a loop.
+ */
+public class WithdrawalPoller implements DeadlineTimerWheel.TimerHandler {
+
+    public static final long DEFAULT_INITIAL_DELAY_MS = 1000;
+    public static final long DEFAULT_INTERVAL_MS = 500;
+    public static final long DEFAULT_WINDOW_MS = 10_000;
+    public static final long DEFAULT_MAX_INTERVAL_MS = 60_000;
+    public static final long DEFAULT_FALLBACK_INITIAL_DELAY_MS = 15_000;
+
+    private static final long TICK_RESOLUTION_NANOS = 1 << 24;
+    private static final int TICKS_PER_WHEEL = 1024;
+    private static final long NULL_VALUE = Long.MIN_VALUE;
+
+    @NotNull
+    private final Repository repository;
+
+    private final long initialDelayNanos;
+
+    private final long intervalNanos;
+
+    private final long windowNanos;
+
+    private final long maxIntervalNanos;
+
+    @NotNull
+    private final DeadlineTimerWheel timerWheel;
+
+    private final Long2LongHashMap withdrawalIdsByTimerId = new Long2LongHashMap(NULL_VALUE);
+
+    private final Long2LongHashMap startNanosByWithdrawalId = new Long2LongHashMap(NULL_VALUE);
+
+    private final Long2LongHashMap retriedIdsByTimerId = new Long2LongHashMap(NULL_VALUE);
+
+    private final LongHashSet retriedIds = new LongHashSet();
+
+    private long nowNanos;
+
+    public WithdrawalPoller(@NotNull Repository repository, long startNanos) {
+        this(repository, startNanos, MILLISECONDS.toNanos(DEFAULT_INITIAL_DELAY_MS),
+                MILLISECONDS.toNanos(DEFAULT_INTERVAL_MS), MILLISECONDS.toNanos(DEFAULT_WINDOW_MS),
+                MILLISECONDS.toNanos(DEFAULT_MAX_INTERVAL_MS));
+    }
+
+    public WithdrawalPoller(
+            @NotNull Repository repository,
+            long startNanos,
+            long initialDelayNanos,
+            long intervalNanos,
+            long windowNanos,
+            long maxIntervalNanos
+    ) {
+        if (intervalNanos <= 0 || maxIntervalNanos < intervalNanos) {
+            throw new IllegalArgumentException("Invalid poll intervals: %d, %d".formatted(intervalNanos,
+                    maxIntervalNanos));
+        }
+        this.repository = repository;
+        this.initialDelayNanos = initialDelayNanos;
+        this.intervalNanos = intervalNanos;
+        this.windowNanos = windowNanos;
+        this.maxIntervalNanos = maxIntervalNanos;
+        this.timerWheel = new DeadlineTimerWheel(NANOSECONDS, startNanos, TICK_RESOLUTION_NANOS, TICKS_PER_WHEEL);
+        this.nowNanos = startNanos;
+    }
+
+    /**
+     * Starts polling of the created withdrawal, unless it is polled already.
+     */
+    public void schedule(@NotNull Withdrawal withdrawal) {
+        final long id = withdrawal.getId();
+        if (withdrawal.isCreated() && withdrawal.getState() == PROCESSING
+                && !startNanosByWithdrawalId.containsKey(id)) {
+            startNanosByWithdrawalId.put(id, nowNanos);
+            withdrawalIdsByTimerId.put(timerWheel.scheduleTimer(nowNanos + initialDelayNanos), id);
+        }
+    }
+
+    /**
+     * Repeats creation of the withdrawal after the poll interval, unless it is repeated already or created meanwhile.
+     */
+    public void retryCreate(@NotNull Withdrawal withdrawal) {
+        final long id = withdrawal.getId();
+        if (!withdrawal.isCreated() && retriedIds.add(id)) {
+            retriedIdsByTimerId.put(timerWheel.scheduleTimer(nowNanos + intervalNanos), id);
+        }
+    }
+
+    /**
+     * Polls all withdrawals whose time has come.
+     */
+    public void onTick(long nanoTime) {
+        // ticks are published by another thread, they may come slightly out of order
+        nowNanos = Math.max(nowNanos, nanoTime);
+        while (nowNanos >= timerWheel.currentTickTime()) {
+            timerWheel.poll(nowNanos, this, Integer.MAX_VALUE);
+        }
+    }
+
+    /**
+     * @return Number of withdrawals being polled.
+     */
+    public int size() {
+        return startNanosByWithdrawalId.size();
+    }
+
+    @Override
+    public boolean onTimerExpiry(@NotNull TimeUnit timeUnit, long now, long timerId) {
+
+        final long retriedId = retriedIdsByTimerId.remove(timerId);
+        if (retriedId != NULL_VALUE) {
+            retriedIds.remove(retriedId);
+            final var withdrawal = repository.withdrawal(retriedId);
+            if (withdrawal != null && !withdrawal.isCreated()) {
+                withdrawal.publishCreate();
+            }
+            return true;
+        }
+
+        final long id = withdrawalIdsByTimerId.remove(timerId);
+        final var withdrawal = repository.withdrawal(id);
+        if (withdrawal == null || withdrawal.getState() != PROCESSING) {
+            startNanosByWithdrawalId.remove(id);
+            return true;
+        }
+
+        withdrawal.poll();
+
+        final long ageNanos = now - startNanosByWithdrawalId.get(id);
+        final long delayNanos = ageNanos < windowNanos
+                ? intervalNanos
+                : Math.min(maxIntervalNanos, Math.max(intervalNanos, ageNanos / 2));
+        withdrawalIdsByTimerId.put(timerWheel.scheduleTimer(now + delayNanos), id);
+        return true;
+    }
+}
@@ -0,0 +1,49 @@
+package org.example.hometask.state;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.UUID;
+
+/**
+ * Derives UUIDs of external withdrawals from withdrawal ids, so the state machine stays deterministic on replay and
+ * UUIDs are mapped back to ids arithmetically, without any lookup table.
+ * <p>
+ * The UUIDs are RFC 9562 version 8 (custom) ones: the most significant bits are taken from the namespace of the
+ * service, the least significant bits hold the variant and the id. Random (version 4) UUIDs generated by anybody else
+ * never collide with them, and services using distinct namespaces never collide with each other.
+ */
+public final class WithdrawalUuids {
+
+    public static final UUID DEFAULT_NAMESPACE = UUID.fromString("5d0c6c2a-61a4-8f3e-0000-000000000000");
+
+    private static final long VERSION_MASK = 0xF000L;
+    private static final long VERSION_8 = 0x8000L;
+    private static final long VARIANT_MASK = 0xC000_0000_0000_0000L;
+    private static final long VARIANT_RFC = 0x8000_0000_0000_0000L;
+    private static final long ID_MASK = ~VARIANT_MASK;
+
+    private final long mostSigBits;
+
+    public WithdrawalUuids(@NotNull UUID namespace) {
+        this.mostSigBits = (namespace.getMostSignificantBits() & ~VERSION_MASK) | VERSION_8;
+    }
+
+    @NotNull
+    public UUID toUuid(long id) {
+        if (id <= 0 || (id & VARIANT_MASK) != 0) {
+            throw new IllegalArgumentException("Withdrawal id out of range: " + id);
+        }
+        return new UUID(mostSigBits, VARIANT_RFC | id);
+    }
+
+    /**
+     * @return The withdrawal id, or <code>0</code> if the UUID does not belong to the namespace.
+     */
+    public long toId(@NotNull UUID uuid) {
+        final long leastSigBits = uuid.getLeastSignificantBits();
+        if (uuid.getMostSignificantBits() != mostSigBits || (leastSigBits & VARIANT_MASK) != VARIANT_RFC) {
+            return 0;
+        }
+        return leastSigBits & ID_MASK;
+    }
+}
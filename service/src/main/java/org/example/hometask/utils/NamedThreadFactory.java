@@ -0,0 +1,45 @@
+package org.example.hometask.utils;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Names threads after the runnables they run, which are named beforehand, e.g. event processors by the roles of their
+ * handlers. So thread names, and pinning by them, do not depend on the order threads are created in.
+ */
+public class NamedThreadFactory implements ThreadFactory {
+
+    @NotNull
+    private final ThreadAffinity affinity;
+
+    private final Map<Runnable, String> namesByRunnable = Collections.synchronizedMap(new IdentityHashMap<>());
+
+    /**
+     * @param affinity Threads are pinned once started, by their names at that moment.
+     */
+    public NamedThreadFactory(@NotNull ThreadAffinity affinity) {
+        this.affinity = affinity;
+    }
+
+    /**
+     * @return The runnable.
+     */
+    @NotNull
+    public <R extends Runnable> R name(@NotNull R runnable, @NotNull String threadName) {
+        namesByRunnable.put(runnable, threadName);
+        return runnable;
+    }
+
+    @Override
+    public Thread newThread(@NotNull Runnable runnable) {
+        final var threadName = namesByRunnable.get(runnable);
+        if (threadName == null) {
+            throw new IllegalArgumentException("No thread name for " + runnable);
+        }
+        return new Thread(affinity.pinning(runnable), threadName);
+    }
+}
@@ -10,14 +10,25 @@ public class PrefixThreadFactory implements ThreadFactory {
     @NotNull
     private final String threadNamePrefix;
 
+    @NotNull
+    private final ThreadAffinity affinity;
+
     private final AtomicLong sequence = new AtomicLong();
 
     public PrefixThreadFactory(@NotNull String threadNamePrefix) {
+        this(threadNamePrefix, ThreadAffinity.NONE);
+    }
+
+    /**
+     * @param affinity Threads are pinned once started, by their names at that moment.
+     */
+    public PrefixThreadFactory(@NotNull String threadNamePrefix, @NotNull ThreadAffinity affinity) {
         this.threadNamePrefix = threadNamePrefix;
+        this.affinity = affinity;
     }
 
     @Override
     public Thread newThread(@NotNull Runnable runnable) {
-        return new Thread(runnable, threadNamePrefix + sequence.incrementAndGet());
+        return new Thread(affinity.pinning(runnable), threadNamePrefix + sequence.incrementAndGet());
     }
 }
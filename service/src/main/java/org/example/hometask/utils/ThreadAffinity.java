@@ -0,0 +1,104 @@
+package org.example.hometask.utils;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Pins threads to CPUs by thread names, configured like <code>server=2;state-0=3</code>. CPUs are listed in the
+ * format of <code>taskset</code>, e.g. <code>3</code>, <code>2,4</code> or <code>2-5</code>.
+ * <p>
+ * Linux only: the thread id is taken from <code>/proc/thread-self</code> and the affinity is set by
+ * <code>taskset</code>, so no native code is involved. Pinning pays off for busy-spinning threads on isolated CPUs.
+ * Failures are logged only, the thread keeps running unpinned then.
+ */
+public class ThreadAffinity {
+
+    public static final ThreadAffinity NONE = new ThreadAffinity(Map.of());
+
+    private static final Path THREAD_SELF = Path.of("/proc/thread-self");
+
+    protected final Logger logger = LoggerFactory.getLogger(getClass());
+
+    @NotNull
+    private final Map<String, String> cpusByThreadName;
+
+    private ThreadAffinity(@NotNull Map<String, String> cpusByThreadName) {
+        this.cpusByThreadName = cpusByThreadName;
+    }
+
+    @NotNull
+    public static ThreadAffinity parse(@NotNull String spec) {
+        final var cpusByThreadName = new HashMap<String, String>();
+        for (final var entry : spec.split(";")) {
+            if (entry.isBlank()) {
+                continue;
+            }
+            final int separator = entry.indexOf('=');
+            if (separator <= 0 || !entry.substring(separator + 1).trim().matches("[0-9]+([,-][0-9]+)*")) {
+                throw new IllegalArgumentException("Invalid thread affinity: " + entry);
+            }
+            cpusByThreadName.put(entry.substring(0, separator).trim(), entry.substring(separator + 1).trim());
+        }
+        return new ThreadAffinity(Map.copyOf(cpusByThreadName));
+    }
+
+    /**
+     * @return CPUs the thread of the given name is pinned to, or <code>null</code> if it is not pinned.
+     */
+    @Nullable
+    public String cpus(@NotNull String threadName) {
+        return cpusByThreadName.get(threadName);
+    }
+
+    /**
+     * @return The runnable pinning its thread first, by the name of the thread at that moment.
+     */
+    @NotNull
+    public Runnable pinning(@NotNull Runnable runnable) {
+        return this == NONE ? runnable : () -> {
+            pinCurrentThread();
+            runnable.run();
+        };
+    }
+
+    /**
+     * Pins the current thread, if it is configured to be pinned.
+     *
+     * @return <code>true</code> if the thread has been pinned.
+     */
+    public boolean pinCurrentThread() {
+        final var threadName = Thread.currentThread().getName();
+        final var cpus = cpus(threadName);
+        if (cpus == null) {
+            return false;
+        }
+        try {
+            // e.g. 1234/task/1236
+            final var tid = Files.readSymbolicLink(THREAD_SELF).getFileName().toString();
+            final var process = new ProcessBuilder("taskset", "-pc", cpus, tid)
+                    .redirectErrorStream(true)
+                    .start();
+            final var output = new String(process.getInputStream().readAllBytes()).trim();
+            if (process.waitFor() != 0) {
+                logger.warn("Thread {} is not pinned to CPUs {}: {}", threadName, cpus, output);
+                return false;
+            }
+            logger.info("Thread {} is pinned to CPUs {}", threadName, cpus);
+            return true;
+        } catch (IOException | UnsupportedOperationException e) {
+            logger.warn("Thread {} is not pinned to CPUs {}", threadName, cpus, e);
+            return false;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+}
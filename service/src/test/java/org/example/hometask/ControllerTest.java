@@ -1,31 +1,50 @@
 package org.example.hometask;
 
+import org.agrona.ExpandableArrayBuffer;
+import org.example.hometask.api.AccountTransferBatchEncoder;
+import org.example.hometask.api.AccountTransferEncoder;
+import org.example.hometask.api.CreateAccountBatchEncoder;
+import org.example.hometask.api.CreateAccountEncoder;
+import org.example.hometask.api.MessageHeaderEncoder;
+import org.example.hometask.api.QueryAccountEncoder;
 import org.example.hometask.disruptor.EventContext;
 import org.example.hometask.disruptor.EventHolder;
+import org.example.hometask.disruptor.OutboundMessage;
 import org.example.hometask.disruptor.Publisher;
 import org.example.hometask.messages.disruptor.CreateWithdrawalDuplicationFailureEvent;
 import org.example.hometask.messages.disruptor.CreateWithdrawalSuccessEvent;
 import org.example.hometask.messages.disruptor.Event;
+import org.example.hometask.messages.disruptor.InboundAeronFragmentEvent;
 import org.example.hometask.messages.disruptor.InboundAeronMessageEvent;
+import org.example.hometask.messages.disruptor.QueryWithdrawalCallFailureEvent;
 import org.example.hometask.messages.disruptor.QueryWithdrawalSuccessEvent;
 import org.example.hometask.messages.disruptor.QueryWithdrawalUnknownIdFailureEvent;
+import org.example.hometask.messages.disruptor.TickEvent;
 import org.example.hometask.messages.external.CreateWithdrawalRequest;
 import org.example.hometask.messages.external.QueryWithdrawalRequest;
 import org.example.hometask.messages.request.AccountTransferAeronRequest;
+import org.example.hometask.messages.request.AccountTransferBatchAeronRequest;
 import org.example.hometask.messages.request.AccountWithdrawAeronRequest;
 import org.example.hometask.messages.request.CreateAccountAeronRequest;
+import org.example.hometask.messages.request.CreateAccountBatchAeronRequest;
 import org.example.hometask.messages.request.QueryAccountAeronRequest;
 import org.example.hometask.messages.request.QueryWithdrawalAeronRequest;
 import org.example.hometask.messages.response.AccountCreatedAeronResponse;
 import org.example.hometask.messages.response.AccountDataAeronResponse;
 import org.example.hometask.messages.response.AccountTransferDoneAeronResponse;
 import org.example.hometask.messages.response.AccountWithdrawalDoneAeronResponse;
+import org.example.hometask.messages.response.AeronResponse;
+import org.example.hometask.messages.response.BatchResultAeronResponse;
 import org.example.hometask.messages.response.InvalidAmountAeronResponse;
 import org.example.hometask.messages.response.NoFundsAeronResponse;
 import org.example.hometask.messages.response.NoSuchEntityAeronResponse;
 import org.example.hometask.messages.response.OutboundAeronMessageEnvelope;
 import org.example.hometask.messages.response.SameAccountAeronResponse;
 import org.example.hometask.messages.response.WithdrawalDataAeronResponse;
+import org.example.hometask.state.Repository;
+import org.example.hometask.state.Withdrawal;
+import org.example.hometask.utils.Allocations;
+import org.example.hometask.utils.Amounts;
 import org.jetbrains.annotations.NotNull;
 import org.junit.Before;
 import org.junit.Test;
@@ -37,12 +56,11 @@ import java.util.List;
 import java.util.Set;
 import java.util.UUID;
 
-import static java.math.BigDecimal.ONE;
-import static java.math.BigDecimal.ZERO;
 import static java.util.Objects.requireNonNull;
 import static org.example.hometask.messages.WithdrawalState.COMPLETED;
 import static org.example.hometask.messages.WithdrawalState.FAILED;
 import static org.example.hometask.messages.WithdrawalState.PROCESSING;
+import static org.example.hometask.utils.Amounts.toDecimal;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 
@@ -51,15 +69,17 @@ public class ControllerTest {
 
     private static final int SESSION_ID = 123;
     private static final int TRACKING_ID = 234;
-    private static final BigDecimal INITIAL_AMOUNT = new BigDecimal("345.678");
-    private static final BigDecimal TRANSFER_AMOUNT1 = new BigDecimal("100");
-    private static final BigDecimal TRANSFER_AMOUNT2 = new BigDecimal("101");
-    private static final BigDecimal TRANSFER_AMOUNT3 = new BigDecimal("102");
-    private static final BigDecimal TRANSFER_AMOUNT4 = new BigDecimal("103");
-    private static final BigDecimal TRANSFER_AMOUNT5 = new BigDecimal("500");
+    private static final long INITIAL_AMOUNT = amount("345.678");
+    private static final long TRANSFER_AMOUNT1 = amount("100");
+    private static final long TRANSFER_AMOUNT2 = amount("101");
+    private static final long TRANSFER_AMOUNT3 = amount("102");
+    private static final long TRANSFER_AMOUNT4 = amount("103");
+    private static final long TRANSFER_AMOUNT5 = amount("500");
+    private static final long ONE = amount("1");
     private static final String WITHDRAW_ADDRESS = "foobar";
 
     private final ArrayList<UUID> withdrawalUuids = new ArrayList<>();
+    private Repository repository;
     private Controller controller;
     private EventHolder holder;
     private long trackingSequence;
@@ -67,7 +87,8 @@ public class ControllerTest {
     @Before
     public void setUp() {
         final var context = new EventContext();
-        controller = new Controller(new Publisher(context));
+        repository = new Repository();
+        controller = new Controller(new Publisher(context), repository);
         holder = new EventHolder();
         context.holder = holder;
         trackingSequence = TRACKING_ID;
@@ -77,31 +98,202 @@ public class ControllerTest {
     @Test
     public void createAndCheckAccount() {
         createAccount(1, INITIAL_AMOUNT);
-        checkBalance(1, INITIAL_AMOUNT, ZERO);
+        checkBalance(1, INITIAL_AMOUNT, 0);
+    }
+
+    @Test
+    public void createAccountFromFragment() {
+        final var buffer = new ExpandableArrayBuffer();
+        final var headerEncoder = new MessageHeaderEncoder();
+        final var encoder = new CreateAccountEncoder().wrapAndApplyHeader(buffer, 0, headerEncoder);
+        encoder.trackingId(trackingSequence);
+        toDecimal(encoder.initialAmount(), INITIAL_AMOUNT);
+        holder.inboundFragment.wrap(SESSION_ID, buffer, 0, headerEncoder.encodedLength() + encoder.encodedLength());
+
+        process(holder.inboundFragment);
+        assertEquals(
+                List.of(new OutboundAeronMessageEnvelope(SESSION_ID,
+                        new AccountCreatedAeronResponse(trackingSequence, 1))),
+                holder.responses());
+        assertTrue(holder.withdrawalRequests.isEmpty());
+        trackingSequence++;
+
+        checkBalance(1, INITIAL_AMOUNT, 0);
+    }
+
+    @Test
+    public void batchesGetResultsOfAllItems() {
+        process(new InboundAeronMessageEvent(SESSION_ID, new CreateAccountBatchAeronRequest(List.of(
+                new CreateAccountAeronRequest(1001, INITIAL_AMOUNT),
+                new CreateAccountAeronRequest(1002, 0),
+                new CreateAccountAeronRequest(1003, -ONE)))));
+        assertEquals(
+                List.of(new OutboundAeronMessageEnvelope(SESSION_ID, new BatchResultAeronResponse(List.of(
+                        new AccountCreatedAeronResponse(1001, 1),
+                        new AccountCreatedAeronResponse(1002, 2),
+                        new InvalidAmountAeronResponse(1003))))),
+                holder.responses());
+
+        process(new InboundAeronMessageEvent(SESSION_ID, new AccountTransferBatchAeronRequest(List.of(
+                new AccountTransferAeronRequest(1004, 1, 2, TRANSFER_AMOUNT1),
+                new AccountTransferAeronRequest(1005, 1, 2, INITIAL_AMOUNT),
+                new AccountTransferAeronRequest(1006, 1, 1, ONE),
+                new AccountTransferAeronRequest(1007, 1, 3, ONE)))));
+        assertEquals(
+                List.of(new OutboundAeronMessageEnvelope(SESSION_ID, new BatchResultAeronResponse(List.of(
+                        new AccountTransferDoneAeronResponse(1004),
+                        new NoFundsAeronResponse(1005),
+                        new SameAccountAeronResponse(1006),
+                        new NoSuchEntityAeronResponse(1007))))),
+                holder.responses());
+        checkBalance(1, INITIAL_AMOUNT - TRANSFER_AMOUNT1, 0);
+        checkBalance(2, TRANSFER_AMOUNT1, 0);
+    }
+
+    @Test
+    public void transferBatchFromFragment() {
+        createAccount(1, INITIAL_AMOUNT);
+        createAccount(2, 0);
+
+        final var buffer = new ExpandableArrayBuffer();
+        final var headerEncoder = new MessageHeaderEncoder();
+        final var encoder = new AccountTransferBatchEncoder().wrapAndApplyHeader(buffer, 0, headerEncoder);
+        final var transfers = encoder.transfersCount(2);
+        toDecimal(transfers.next().trackingId(1001).fromAccountId(1).toAccountId(2).amount(), TRANSFER_AMOUNT1);
+        toDecimal(transfers.next().trackingId(1002).fromAccountId(2).toAccountId(1).amount(), TRANSFER_AMOUNT2);
+        holder.inboundFragment.wrap(SESSION_ID, buffer, 0, headerEncoder.encodedLength() + encoder.encodedLength());
+
+        process(holder.inboundFragment);
+        assertEquals(
+                List.of(new OutboundAeronMessageEnvelope(SESSION_ID, new BatchResultAeronResponse(List.of(
+                        new AccountTransferDoneAeronResponse(1001),
+                        new NoFundsAeronResponse(1002))))),
+                holder.responses());
+        checkBalance(1, INITIAL_AMOUNT - TRANSFER_AMOUNT1, 0);
+        checkBalance(2, TRANSFER_AMOUNT1, 0);
+    }
+
+    @Test
+    public void largeBatchGetsSeveralResults() {
+        final var accounts = new ArrayList<CreateAccountAeronRequest>();
+        final var results = new ArrayList<AeronResponse>();
+        for (int i = 1; i <= OutboundMessage.MAX_RESULTS + 1; i++) {
+            accounts.add(new CreateAccountAeronRequest(1000 + i, ONE));
+            results.add(new AccountCreatedAeronResponse(1000 + i, i));
+        }
+
+        process(new InboundAeronMessageEvent(SESSION_ID, new CreateAccountBatchAeronRequest(accounts)));
+        assertEquals(
+                List.of(new OutboundAeronMessageEnvelope(SESSION_ID, new BatchResultAeronResponse(
+                                results.subList(0, OutboundMessage.MAX_RESULTS))),
+                        new OutboundAeronMessageEnvelope(SESSION_ID, new BatchResultAeronResponse(
+                                results.subList(OutboundMessage.MAX_RESULTS, results.size())))),
+                holder.responses());
+    }
+
+    @Test
+    public void dispatchDoesNotAllocate() {
+        // neither ticks nor empty batches make responses, so whatever is allocated comes from dispatching itself
+        final var buffer = new ExpandableArrayBuffer();
+        final var headerEncoder = new MessageHeaderEncoder();
+        final var createAccounts = new InboundAeronFragmentEvent();
+        final var accounts = new CreateAccountBatchEncoder().wrapAndApplyHeader(buffer, 0, headerEncoder);
+        accounts.accountsCount(0);
+        createAccounts.wrap(SESSION_ID, buffer, 0, headerEncoder.encodedLength() + accounts.encodedLength());
+        final var transfer = new InboundAeronFragmentEvent();
+        final var transfers = new AccountTransferBatchEncoder().wrapAndApplyHeader(buffer, 0, headerEncoder);
+        transfers.transfersCount(0);
+        transfer.wrap(SESSION_ID, buffer, 0, headerEncoder.encodedLength() + transfers.encodedLength());
+        final Event[] events = {createAccounts, transfer, new TickEvent(0)};
+
+        assertEquals("Bytes allocated by dispatch", 0,
+                Allocations.steadyStateAllocatedBytes(i -> controller.accept(events[i % events.length])));
+        assertTrue(holder.messages.isEmpty());
+    }
+
+    @Test
+    public void withdrawalCompletionDoesNotAllocate() {
+        createAccount(1, INITIAL_AMOUNT);
+        // ids beyond the cache of boxed longs
+        final int count = 130;
+        for (long withdrawalId = 1; withdrawalId <= count; withdrawalId++) {
+            withdrawalCreated(withdrawalId, initiateWithdrawal(1, ONE));
+        }
+        process(new QueryWithdrawalSuccessEvent(getUuid(count - 1), COMPLETED));
+        process(new QueryWithdrawalSuccessEvent(getUuid(count), FAILED));
+        final var account = requireNonNull(repository.account(1));
+        assertEquals(INITIAL_AMOUNT - (count - 1) * ONE, account.getAvailableAmount());
+        assertEquals((count - 2) * ONE, account.getReservedAmount());
+
+        // the same completions over and over, balances are not checked anymore
+        final Withdrawal[] withdrawals = {
+                requireNonNull(repository.withdrawal(count - 1)),
+                requireNonNull(repository.withdrawal(count))
+        };
+        assertEquals("Bytes allocated by withdrawal completion", 0, Allocations.steadyStateAllocatedBytes(i -> {
+            final var withdrawal = withdrawals[i % withdrawals.length];
+            account.withdrawalCreated(withdrawal);
+            account.withdrawalCompleted(withdrawal);
+        }));
+    }
+
+    @Test
+    public void respondingDoesNotAllocate() {
+        createAccount(1, INITIAL_AMOUNT);
+
+        // rejections make no pending operations, so whatever is allocated comes from publishing responses
+        final var buffer = new ExpandableArrayBuffer();
+        final var headerEncoder = new MessageHeaderEncoder();
+        final var sameAccount = new InboundAeronFragmentEvent();
+        final var transfer = new AccountTransferEncoder().wrapAndApplyHeader(buffer, 0, headerEncoder);
+        toDecimal(transfer.trackingId(1).fromAccountId(1).toAccountId(1).amount(), ONE);
+        sameAccount.wrap(SESSION_ID, buffer, 0, headerEncoder.encodedLength() + transfer.encodedLength());
+        final var query = new InboundAeronFragmentEvent();
+        final var queryAccount = new QueryAccountEncoder().wrapAndApplyHeader(buffer, 0, headerEncoder);
+        queryAccount.trackingId(2).accountId(99);
+        query.wrap(SESSION_ID, buffer, 0, headerEncoder.encodedLength() + queryAccount.encodedLength());
+        final var batch = new InboundAeronFragmentEvent();
+        final var transferBatch = new AccountTransferBatchEncoder().wrapAndApplyHeader(buffer, 0, headerEncoder);
+        final var transfers = transferBatch.transfersCount(2);
+        toDecimal(transfers.next().trackingId(3).fromAccountId(1).toAccountId(99).amount(), ONE);
+        toDecimal(transfers.next().trackingId(4).fromAccountId(1).toAccountId(1).amount(), ONE);
+        batch.wrap(SESSION_ID, buffer, 0, headerEncoder.encodedLength() + transferBatch.encodedLength());
+        final Event[] events = {sameAccount, query, batch};
+
+        assertEquals("Bytes allocated by responding", 0, Allocations.steadyStateAllocatedBytes(i -> {
+            holder.clean();
+            controller.accept(events[i % events.length]);
+        }));
+        process(batch);
+        assertEquals(
+                List.of(new OutboundAeronMessageEnvelope(SESSION_ID, new BatchResultAeronResponse(List.of(
+                        new NoSuchEntityAeronResponse(3),
+                        new SameAccountAeronResponse(4))))),
+                holder.responses());
     }
 
     @Test
     public void successfulAccountTransfer() {
         createAccount(1, INITIAL_AMOUNT);
-        createAccount(2, ZERO);
+        createAccount(2, 0);
         expectTransferSuccess();
-        checkBalance(1, INITIAL_AMOUNT.subtract(TRANSFER_AMOUNT1), ZERO);
-        checkBalance(2, TRANSFER_AMOUNT1, ZERO);
+        checkBalance(1, INITIAL_AMOUNT - TRANSFER_AMOUNT1, 0);
+        checkBalance(2, TRANSFER_AMOUNT1, 0);
     }
 
     @Test
     public void failedAccountTransfer() {
         createAccount(1, INITIAL_AMOUNT);
-        createAccount(2, ZERO);
-        expectTransferNoFunds(INITIAL_AMOUNT.add(TRANSFER_AMOUNT1));
-        checkBalance(1, INITIAL_AMOUNT, ZERO);
-        checkBalance(2, ZERO, ZERO);
+        createAccount(2, 0);
+        expectTransferNoFunds(INITIAL_AMOUNT + TRANSFER_AMOUNT1);
+        checkBalance(1, INITIAL_AMOUNT, 0);
+        checkBalance(2, 0, 0);
     }
 
     @Test
     public void successfulAccountTransferWithPendingWithdrawal() {
         createAccount(1, INITIAL_AMOUNT);
-        createAccount(2, ZERO);
+        createAccount(2, 0);
         initiateWithdrawal(1, TRANSFER_AMOUNT1);
         final var trackingId2 = initiateWithdrawal(1, TRANSFER_AMOUNT2);
         final var trackingId3 = initiateWithdrawal(1, TRANSFER_AMOUNT3);
@@ -115,12 +307,12 @@ public class ControllerTest {
 
         process(new QueryWithdrawalSuccessEvent(getUuid(3), FAILED));
         assertEquals(List.of(new OutboundAeronMessageEnvelope(SESSION_ID,
-                new AccountTransferDoneAeronResponse(trackingId4))), holder.messages);
+                new AccountTransferDoneAeronResponse(trackingId4))), holder.responses());
         assertTrue(holder.withdrawalRequests.isEmpty());
 
         process(new InboundAeronMessageEvent(SESSION_ID, new QueryAccountAeronRequest(trackingSequence, 1)));
         assertTrue(holder.messages.isEmpty());
-        assertEquals(List.of(new QueryWithdrawalRequest(getUuid(2))), holder.withdrawalRequests);
+        assertEquals(List.of(new QueryWithdrawalRequest(getUuid(2))), holder.externalRequests());
 
         process(new QueryWithdrawalSuccessEvent(getUuid(2), PROCESSING));
         assertEquals(
@@ -128,23 +320,23 @@ public class ControllerTest {
                         SESSION_ID,
                         new AccountDataAeronResponse(
                                 trackingSequence,
-                                INITIAL_AMOUNT.subtract(TRANSFER_AMOUNT1).subtract(TRANSFER_AMOUNT2)
-                                        .subtract(TRANSFER_AMOUNT4),
-                                TRANSFER_AMOUNT1.add(TRANSFER_AMOUNT2)
+                                INITIAL_AMOUNT - TRANSFER_AMOUNT1 - TRANSFER_AMOUNT2
+                                         - TRANSFER_AMOUNT4,
+                                TRANSFER_AMOUNT1 + TRANSFER_AMOUNT2
                         )
                 )),
-                holder.messages
+                holder.responses()
         );
         assertTrue(holder.withdrawalRequests.isEmpty());
         trackingSequence++;
 
-        checkBalance(2, TRANSFER_AMOUNT4, ZERO);
+        checkBalance(2, TRANSFER_AMOUNT4, 0);
     }
 
     @Test
     public void failedAccountTransferWithPendingWithdrawal() {
         createAccount(1, INITIAL_AMOUNT);
-        createAccount(2, ZERO);
+        createAccount(2, 0);
         initiateWithdrawal(1, TRANSFER_AMOUNT1);
         final var trackingId2 = initiateWithdrawal(1, TRANSFER_AMOUNT2);
         final var trackingId3 = initiateWithdrawal(1, TRANSFER_AMOUNT3);
@@ -158,12 +350,12 @@ public class ControllerTest {
 
         process(new QueryWithdrawalSuccessEvent(getUuid(3), COMPLETED));
         assertEquals(List.of(new OutboundAeronMessageEnvelope(SESSION_ID, new NoFundsAeronResponse(trackingId4))),
-                holder.messages);
+                holder.responses());
         assertTrue(holder.withdrawalRequests.isEmpty());
 
         process(new InboundAeronMessageEvent(SESSION_ID, new QueryAccountAeronRequest(trackingSequence, 1)));
         assertTrue(holder.messages.isEmpty());
-        assertEquals(List.of(new QueryWithdrawalRequest(getUuid(2))), holder.withdrawalRequests);
+        assertEquals(List.of(new QueryWithdrawalRequest(getUuid(2))), holder.externalRequests());
 
         process(new QueryWithdrawalSuccessEvent(getUuid(2), PROCESSING));
         assertEquals(
@@ -171,23 +363,23 @@ public class ControllerTest {
                         SESSION_ID,
                         new AccountDataAeronResponse(
                                 trackingSequence,
-                                INITIAL_AMOUNT.subtract(TRANSFER_AMOUNT1).subtract(TRANSFER_AMOUNT2)
-                                        .subtract(TRANSFER_AMOUNT3),
-                                TRANSFER_AMOUNT1.add(TRANSFER_AMOUNT2)
+                                INITIAL_AMOUNT - TRANSFER_AMOUNT1 - TRANSFER_AMOUNT2
+                                         - TRANSFER_AMOUNT3,
+                                TRANSFER_AMOUNT1 + TRANSFER_AMOUNT2
                         )
                 )),
-                holder.messages
+                holder.responses()
         );
         assertTrue(holder.withdrawalRequests.isEmpty());
         trackingSequence++;
 
-        checkBalance(2, ZERO, ZERO);
+        checkBalance(2, 0, 0);
     }
 
     @Test
     public void failfastAccountTransferWithPendingWithdrawal() {
         createAccount(1, INITIAL_AMOUNT);
-        createAccount(2, ZERO);
+        createAccount(2, 0);
         initiateWithdrawal(1, TRANSFER_AMOUNT1);
         final var trackingId2 = initiateWithdrawal(1, TRANSFER_AMOUNT2);
         final var trackingId3 = initiateWithdrawal(1, TRANSFER_AMOUNT3);
@@ -198,14 +390,14 @@ public class ControllerTest {
                 new AccountTransferAeronRequest(trackingSequence, 1, 2, TRANSFER_AMOUNT5)));
         assertEquals(
                 List.of(new OutboundAeronMessageEnvelope(SESSION_ID, new NoFundsAeronResponse(trackingSequence))),
-                holder.messages);
+                holder.responses());
         assertTrue(holder.withdrawalRequests.isEmpty());
         trackingSequence++;
 
         process(new InboundAeronMessageEvent(SESSION_ID, new QueryAccountAeronRequest(trackingSequence, 1)));
         assertTrue(holder.messages.isEmpty());
         assertEquals(Set.of(new QueryWithdrawalRequest(getUuid(2)), new QueryWithdrawalRequest(getUuid(3))),
-                new HashSet<>(holder.withdrawalRequests));
+                new HashSet<>(holder.externalRequests()));
 
         process(new QueryWithdrawalSuccessEvent(getUuid(2), PROCESSING));
         assertTrue(holder.messages.isEmpty());
@@ -217,17 +409,17 @@ public class ControllerTest {
                         SESSION_ID,
                         new AccountDataAeronResponse(
                                 trackingSequence,
-                                INITIAL_AMOUNT.subtract(TRANSFER_AMOUNT1).subtract(TRANSFER_AMOUNT2)
-                                        .subtract(TRANSFER_AMOUNT3),
-                                TRANSFER_AMOUNT1.add(TRANSFER_AMOUNT2).add(TRANSFER_AMOUNT3)
+                                INITIAL_AMOUNT - TRANSFER_AMOUNT1 - TRANSFER_AMOUNT2
+                                         - TRANSFER_AMOUNT3,
+                                TRANSFER_AMOUNT1 + TRANSFER_AMOUNT2 + TRANSFER_AMOUNT3
                         )
                 )),
-                holder.messages
+                holder.responses()
         );
         assertTrue(holder.withdrawalRequests.isEmpty());
         trackingSequence++;
 
-        checkBalance(2, ZERO, ZERO);
+        checkBalance(2, 0, 0);
     }
 
     @Test
@@ -238,7 +430,7 @@ public class ControllerTest {
 
         process(new InboundAeronMessageEvent(SESSION_ID, new QueryAccountAeronRequest(trackingSequence, 1)));
         assertTrue(holder.messages.isEmpty());
-        assertEquals(List.of(new QueryWithdrawalRequest(getUuid(1))), holder.withdrawalRequests);
+        assertEquals(List.of(new QueryWithdrawalRequest(getUuid(1))), holder.externalRequests());
 
         process(new QueryWithdrawalSuccessEvent(getUuid(1), PROCESSING));
         assertEquals(
@@ -246,11 +438,11 @@ public class ControllerTest {
                         SESSION_ID,
                         new AccountDataAeronResponse(
                                 trackingSequence,
-                                INITIAL_AMOUNT.subtract(TRANSFER_AMOUNT1),
+                                INITIAL_AMOUNT - TRANSFER_AMOUNT1,
                                 TRANSFER_AMOUNT1
                         )
                 )),
-                holder.messages
+                holder.responses()
         );
         assertTrue(holder.withdrawalRequests.isEmpty());
     }
@@ -263,7 +455,7 @@ public class ControllerTest {
 
         process(new InboundAeronMessageEvent(SESSION_ID, new QueryAccountAeronRequest(trackingSequence, 1)));
         assertTrue(holder.messages.isEmpty());
-        assertEquals(List.of(new QueryWithdrawalRequest(getUuid(1))), holder.withdrawalRequests);
+        assertEquals(List.of(new QueryWithdrawalRequest(getUuid(1))), holder.externalRequests());
 
         process(new QueryWithdrawalSuccessEvent(getUuid(1), COMPLETED));
         assertEquals(
@@ -271,16 +463,119 @@ public class ControllerTest {
                         SESSION_ID,
                         new AccountDataAeronResponse(
                                 trackingSequence,
-                                INITIAL_AMOUNT.subtract(TRANSFER_AMOUNT1),
-                                ZERO
+                                INITIAL_AMOUNT - TRANSFER_AMOUNT1,
+                                0
                         )
                 )),
-                holder.messages
+                holder.responses()
         );
         assertTrue(holder.withdrawalRequests.isEmpty());
         trackingSequence++;
 
-        checkBalance(1, INITIAL_AMOUNT.subtract(TRANSFER_AMOUNT1), ZERO);
+        checkBalance(1, INITIAL_AMOUNT - TRANSFER_AMOUNT1, 0);
+    }
+
+    @Test
+    public void notifiedAccountWithdrawal() {
+        createAccount(1, INITIAL_AMOUNT);
+        final var trackingId1 = initiateWithdrawal(1, TRANSFER_AMOUNT1);
+        withdrawalCreated(1, trackingId1);
+
+        process(new InboundAeronMessageEvent(SESSION_ID, new QueryAccountAeronRequest(trackingSequence, 1)));
+        assertEquals(List.of(new QueryWithdrawalRequest(getUuid(1))), holder.externalRequests());
+
+        // the notification comes before the query result, which is stale then
+        process(new QueryWithdrawalSuccessEvent(getUuid(1), COMPLETED));
+        assertEquals(
+                List.of(new OutboundAeronMessageEnvelope(SESSION_ID,
+                        new AccountDataAeronResponse(trackingSequence, INITIAL_AMOUNT - TRANSFER_AMOUNT1, 0))),
+                holder.responses());
+        trackingSequence++;
+
+        process(new QueryWithdrawalSuccessEvent(getUuid(1), PROCESSING));
+        assertTrue(holder.messages.isEmpty());
+        assertTrue(holder.withdrawalRequests.isEmpty());
+        process(new QueryWithdrawalSuccessEvent(getUuid(1), COMPLETED));
+        assertTrue(holder.messages.isEmpty());
+
+        checkBalance(1, INITIAL_AMOUNT - TRANSFER_AMOUNT1, 0);
+    }
+
+    @Test
+    public void failedQueryCallCompletesOperations() {
+        createAccount(1, INITIAL_AMOUNT);
+        final var trackingId1 = initiateWithdrawal(1, TRANSFER_AMOUNT1);
+        withdrawalCreated(1, trackingId1);
+
+        process(new InboundAeronMessageEvent(SESSION_ID, new QueryAccountAeronRequest(trackingSequence, 1)));
+        assertEquals(List.of(new QueryWithdrawalRequest(getUuid(1))), holder.externalRequests());
+
+        // the state known so far is reported
+        process(new QueryWithdrawalCallFailureEvent(getUuid(1)));
+        assertEquals(
+                List.of(new OutboundAeronMessageEnvelope(SESSION_ID,
+                        new AccountDataAeronResponse(trackingSequence, INITIAL_AMOUNT - TRANSFER_AMOUNT1,
+                                TRANSFER_AMOUNT1))),
+                holder.responses());
+        assertTrue(holder.withdrawalRequests.isEmpty());
+        trackingSequence++;
+
+        // the next operation queries the state again
+        process(new InboundAeronMessageEvent(SESSION_ID, new QueryAccountAeronRequest(trackingSequence, 1)));
+        assertEquals(List.of(new QueryWithdrawalRequest(getUuid(1))), holder.externalRequests());
+        process(new QueryWithdrawalSuccessEvent(getUuid(1), COMPLETED));
+        assertEquals(
+                List.of(new OutboundAeronMessageEnvelope(SESSION_ID,
+                        new AccountDataAeronResponse(trackingSequence, INITIAL_AMOUNT - TRANSFER_AMOUNT1, 0))),
+                holder.responses());
+        trackingSequence++;
+    }
+
+    @Test
+    public void notificationBeforeCreationIsPolledAfterIt() {
+        createAccount(1, INITIAL_AMOUNT);
+        final var trackingId1 = initiateWithdrawal(1, TRANSFER_AMOUNT1);
+
+        process(new QueryWithdrawalSuccessEvent(getUuid(1), COMPLETED));
+        assertTrue(holder.messages.isEmpty());
+        assertTrue(holder.withdrawalRequests.isEmpty());
+
+        process(new CreateWithdrawalSuccessEvent(getUuid(1)));
+        assertEquals(
+                List.of(new OutboundAeronMessageEnvelope(SESSION_ID,
+                        new AccountWithdrawalDoneAeronResponse(trackingId1, 1))),
+                holder.responses());
+        assertEquals(List.of(new QueryWithdrawalRequest(getUuid(1))), holder.externalRequests());
+
+        process(new QueryWithdrawalSuccessEvent(getUuid(1), COMPLETED));
+        checkBalance(1, INITIAL_AMOUNT - TRANSFER_AMOUNT1, 0);
+    }
+
+    @Test
+    public void lateQueryFailureIsIgnored() {
+        createAccount(1, INITIAL_AMOUNT);
+        final var trackingId1 = initiateWithdrawal(1, TRANSFER_AMOUNT1);
+        withdrawalCreated(1, trackingId1);
+
+        process(new InboundAeronMessageEvent(SESSION_ID, new QueryAccountAeronRequest(trackingSequence, 1)));
+        assertEquals(List.of(new QueryWithdrawalRequest(getUuid(1))), holder.externalRequests());
+        process(new QueryWithdrawalSuccessEvent(getUuid(1), PROCESSING));
+        assertEquals(1, holder.messages.size());
+        trackingSequence++;
+
+        process(new QueryWithdrawalUnknownIdFailureEvent(getUuid(1)));
+        assertTrue(holder.messages.isEmpty());
+        assertTrue(holder.withdrawalRequests.isEmpty());
+
+        process(new InboundAeronMessageEvent(SESSION_ID, new QueryAccountAeronRequest(trackingSequence, 1)));
+        assertTrue(holder.messages.isEmpty());
+        assertEquals(List.of(new QueryWithdrawalRequest(getUuid(1))), holder.externalRequests());
+        process(new QueryWithdrawalSuccessEvent(getUuid(1), COMPLETED));
+        assertEquals(
+                List.of(new OutboundAeronMessageEnvelope(SESSION_ID,
+                        new AccountDataAeronResponse(trackingSequence, INITIAL_AMOUNT - TRANSFER_AMOUNT1, 0))),
+                holder.responses());
+        trackingSequence++;
     }
 
     @Test
@@ -291,7 +586,7 @@ public class ControllerTest {
 
         process(new InboundAeronMessageEvent(SESSION_ID, new QueryAccountAeronRequest(trackingSequence, 1)));
         assertTrue(holder.messages.isEmpty());
-        assertEquals(List.of(new QueryWithdrawalRequest(getUuid(1))), holder.withdrawalRequests);
+        assertEquals(List.of(new QueryWithdrawalRequest(getUuid(1))), holder.externalRequests());
 
         process(new QueryWithdrawalSuccessEvent(getUuid(1), FAILED));
         assertEquals(
@@ -300,10 +595,10 @@ public class ControllerTest {
                         new AccountDataAeronResponse(
                                 trackingSequence,
                                 INITIAL_AMOUNT,
-                                ZERO
+                                0
                         )
                 )),
-                holder.messages
+                holder.responses()
         );
         assertTrue(holder.withdrawalRequests.isEmpty());
     }
@@ -315,7 +610,7 @@ public class ControllerTest {
                 new AccountWithdrawAeronRequest(trackingSequence, 1, WITHDRAW_ADDRESS, TRANSFER_AMOUNT5)));
         assertEquals(
                 List.of(new OutboundAeronMessageEnvelope(SESSION_ID, new NoFundsAeronResponse(trackingSequence))),
-                holder.messages);
+                holder.responses());
         assertTrue(holder.withdrawalRequests.isEmpty());
         trackingSequence++;
 
@@ -326,10 +621,10 @@ public class ControllerTest {
                         new AccountDataAeronResponse(
                                 trackingSequence,
                                 INITIAL_AMOUNT,
-                                ZERO
+                                0
                         )
                 )),
-                holder.messages
+                holder.responses()
         );
         assertTrue(holder.withdrawalRequests.isEmpty());
     }
@@ -351,7 +646,7 @@ public class ControllerTest {
         process(new QueryWithdrawalSuccessEvent(getUuid(3), FAILED));
         assertTrue(holder.messages.isEmpty());
         assertEquals(1, holder.withdrawalRequests.size());
-        final var request = (CreateWithdrawalRequest) holder.withdrawalRequests.getFirst();
+        final var request = (CreateWithdrawalRequest) holder.externalRequests().getFirst();
         assertEquals(WITHDRAW_ADDRESS, request.address());
         assertEquals(TRANSFER_AMOUNT4, request.amount());
         withdrawalUuids.add(request.withdrawalUuid());
@@ -360,13 +655,13 @@ public class ControllerTest {
         assertEquals(
                 List.of(new OutboundAeronMessageEnvelope(SESSION_ID,
                         new AccountWithdrawalDoneAeronResponse(trackingId4, 4))),
-                holder.messages);
+                holder.responses());
         assertTrue(holder.withdrawalRequests.isEmpty());
 
         process(new InboundAeronMessageEvent(SESSION_ID, new QueryAccountAeronRequest(trackingSequence, 1)));
         assertTrue(holder.messages.isEmpty());
         assertEquals(Set.of(new QueryWithdrawalRequest(getUuid(2)), new QueryWithdrawalRequest(getUuid(4))),
-                new HashSet<>(holder.withdrawalRequests));
+                new HashSet<>(holder.externalRequests()));
 
         process(new QueryWithdrawalSuccessEvent(getUuid(2), PROCESSING));
         assertTrue(holder.messages.isEmpty());
@@ -378,12 +673,12 @@ public class ControllerTest {
                         SESSION_ID,
                         new AccountDataAeronResponse(
                                 trackingSequence,
-                                INITIAL_AMOUNT.subtract(TRANSFER_AMOUNT1).subtract(TRANSFER_AMOUNT2)
-                                        .subtract(TRANSFER_AMOUNT4),
-                                TRANSFER_AMOUNT1.add(TRANSFER_AMOUNT2)
+                                INITIAL_AMOUNT - TRANSFER_AMOUNT1 - TRANSFER_AMOUNT2
+                                         - TRANSFER_AMOUNT4,
+                                TRANSFER_AMOUNT1 + TRANSFER_AMOUNT2
                         )
                 )),
-                holder.messages
+                holder.responses()
         );
         assertTrue(holder.withdrawalRequests.isEmpty());
         trackingSequence++;
@@ -406,12 +701,12 @@ public class ControllerTest {
         process(new QueryWithdrawalSuccessEvent(getUuid(3), COMPLETED));
         assertEquals(
                 List.of(new OutboundAeronMessageEnvelope(SESSION_ID, new NoFundsAeronResponse(trackingId4))),
-                holder.messages);
+                holder.responses());
         assertTrue(holder.withdrawalRequests.isEmpty());
 
         process(new InboundAeronMessageEvent(SESSION_ID, new QueryAccountAeronRequest(trackingSequence, 1)));
         assertTrue(holder.messages.isEmpty());
-        assertEquals(List.of(new QueryWithdrawalRequest(getUuid(2))), holder.withdrawalRequests);
+        assertEquals(List.of(new QueryWithdrawalRequest(getUuid(2))), holder.externalRequests());
 
         process(new QueryWithdrawalSuccessEvent(getUuid(2), PROCESSING));
         assertEquals(
@@ -419,12 +714,12 @@ public class ControllerTest {
                         SESSION_ID,
                         new AccountDataAeronResponse(
                                 trackingSequence,
-                                INITIAL_AMOUNT.subtract(TRANSFER_AMOUNT1).subtract(TRANSFER_AMOUNT2)
-                                        .subtract(TRANSFER_AMOUNT3),
-                                TRANSFER_AMOUNT1.add(TRANSFER_AMOUNT2)
+                                INITIAL_AMOUNT - TRANSFER_AMOUNT1 - TRANSFER_AMOUNT2
+                                         - TRANSFER_AMOUNT3,
+                                TRANSFER_AMOUNT1 + TRANSFER_AMOUNT2
                         )
                 )),
-                holder.messages
+                holder.responses()
         );
         assertTrue(holder.withdrawalRequests.isEmpty());
         trackingSequence++;
@@ -443,14 +738,14 @@ public class ControllerTest {
                 new AccountWithdrawAeronRequest(trackingSequence, 1, WITHDRAW_ADDRESS, TRANSFER_AMOUNT5)));
         assertEquals(
                 List.of(new OutboundAeronMessageEnvelope(SESSION_ID, new NoFundsAeronResponse(trackingSequence))),
-                holder.messages);
+                holder.responses());
         assertTrue(holder.withdrawalRequests.isEmpty());
         trackingSequence++;
 
         process(new InboundAeronMessageEvent(SESSION_ID, new QueryAccountAeronRequest(trackingSequence, 1)));
         assertTrue(holder.messages.isEmpty());
         assertEquals(Set.of(new QueryWithdrawalRequest(getUuid(2)), new QueryWithdrawalRequest(getUuid(3))),
-                new HashSet<>(holder.withdrawalRequests));
+                new HashSet<>(holder.externalRequests()));
 
         process(new QueryWithdrawalSuccessEvent(getUuid(2), PROCESSING));
         assertTrue(holder.messages.isEmpty());
@@ -462,12 +757,12 @@ public class ControllerTest {
                         SESSION_ID,
                         new AccountDataAeronResponse(
                                 trackingSequence,
-                                INITIAL_AMOUNT.subtract(TRANSFER_AMOUNT1).subtract(TRANSFER_AMOUNT2)
-                                        .subtract(TRANSFER_AMOUNT3),
-                                TRANSFER_AMOUNT1.add(TRANSFER_AMOUNT2).add(TRANSFER_AMOUNT3)
+                                INITIAL_AMOUNT - TRANSFER_AMOUNT1 - TRANSFER_AMOUNT2
+                                         - TRANSFER_AMOUNT3,
+                                TRANSFER_AMOUNT1 + TRANSFER_AMOUNT2 + TRANSFER_AMOUNT3
                         )
                 )),
-                holder.messages
+                holder.responses()
         );
         assertTrue(holder.withdrawalRequests.isEmpty());
         trackingSequence++;
@@ -481,7 +776,7 @@ public class ControllerTest {
 
         process(new InboundAeronMessageEvent(SESSION_ID, new QueryWithdrawalAeronRequest(trackingSequence, 1)));
         assertTrue(holder.messages.isEmpty());
-        assertEquals(List.of(new QueryWithdrawalRequest(getUuid(1))), holder.withdrawalRequests);
+        assertEquals(List.of(new QueryWithdrawalRequest(getUuid(1))), holder.externalRequests());
 
         process(new QueryWithdrawalSuccessEvent(getUuid(1), COMPLETED));
         assertEquals(
@@ -493,7 +788,7 @@ public class ControllerTest {
                                 COMPLETED
                         )
                 )),
-                holder.messages
+                holder.responses()
         );
         assertTrue(holder.withdrawalRequests.isEmpty());
         trackingSequence++;
@@ -508,7 +803,7 @@ public class ControllerTest {
                                 COMPLETED
                         )
                 )),
-                holder.messages
+                holder.responses()
         );
         assertTrue(holder.withdrawalRequests.isEmpty());
     }
@@ -521,7 +816,7 @@ public class ControllerTest {
 
         process(new InboundAeronMessageEvent(SESSION_ID, new QueryWithdrawalAeronRequest(trackingSequence, 1)));
         assertTrue(holder.messages.isEmpty());
-        assertEquals(List.of(new QueryWithdrawalRequest(getUuid(1))), holder.withdrawalRequests);
+        assertEquals(List.of(new QueryWithdrawalRequest(getUuid(1))), holder.externalRequests());
         final var trackingId2 = trackingSequence++;
 
         process(new InboundAeronMessageEvent(SESSION_ID, new QueryWithdrawalAeronRequest(trackingSequence, 1)));
@@ -549,7 +844,7 @@ public class ControllerTest {
                                 )
                         )
                 ),
-                new HashSet<>(holder.messages)
+                new HashSet<>(holder.responses())
         );
         assertTrue(holder.withdrawalRequests.isEmpty());
     }
@@ -562,7 +857,7 @@ public class ControllerTest {
 
         process(new InboundAeronMessageEvent(SESSION_ID, new QueryWithdrawalAeronRequest(trackingSequence, 1)));
         assertTrue(holder.messages.isEmpty());
-        assertEquals(List.of(new QueryWithdrawalRequest(getUuid(1))), holder.withdrawalRequests);
+        assertEquals(List.of(new QueryWithdrawalRequest(getUuid(1))), holder.externalRequests());
         final var trackingId2 = trackingSequence++;
 
         process(new InboundAeronMessageEvent(SESSION_ID, new QueryWithdrawalAeronRequest(trackingSequence, 1)));
@@ -574,15 +869,15 @@ public class ControllerTest {
         assertEquals(
                 List.of(new OutboundAeronMessageEnvelope(SESSION_ID,
                         new WithdrawalDataAeronResponse(trackingId2, TRANSFER_AMOUNT1, PROCESSING))),
-                holder.messages
+                holder.responses()
         );
-        assertEquals(List.of(new QueryWithdrawalRequest(getUuid(1))), holder.withdrawalRequests);
+        assertEquals(List.of(new QueryWithdrawalRequest(getUuid(1))), holder.externalRequests());
 
         process(new QueryWithdrawalSuccessEvent(getUuid(1), COMPLETED));
         assertEquals(
                 List.of(new OutboundAeronMessageEnvelope(SESSION_ID,
                         new WithdrawalDataAeronResponse(trackingId3, TRANSFER_AMOUNT1, COMPLETED))),
-                holder.messages
+                holder.responses()
         );
         assertTrue(holder.withdrawalRequests.isEmpty());
     }
@@ -594,7 +889,7 @@ public class ControllerTest {
         process(new InboundAeronMessageEvent(SESSION_ID, new QueryWithdrawalAeronRequest(trackingSequence, 1)));
         assertEquals(
                 List.of(new OutboundAeronMessageEnvelope(SESSION_ID, new NoSuchEntityAeronResponse(trackingSequence))),
-                holder.messages
+                holder.responses()
         );
         assertTrue(holder.withdrawalRequests.isEmpty());
     }
@@ -607,7 +902,7 @@ public class ControllerTest {
         process(new InboundAeronMessageEvent(SESSION_ID, new QueryWithdrawalAeronRequest(trackingSequence, 1)));
         assertEquals(
                 List.of(new OutboundAeronMessageEnvelope(SESSION_ID, new NoSuchEntityAeronResponse(trackingSequence))),
-                holder.messages
+                holder.responses()
         );
         assertTrue(holder.withdrawalRequests.isEmpty());
     }
@@ -617,7 +912,7 @@ public class ControllerTest {
         process(new InboundAeronMessageEvent(SESSION_ID, new QueryAccountAeronRequest(trackingSequence, 1)));
         assertEquals(
                 List.of(new OutboundAeronMessageEnvelope(SESSION_ID, new NoSuchEntityAeronResponse(trackingSequence))),
-                holder.messages
+                holder.responses()
         );
         assertTrue(holder.withdrawalRequests.isEmpty());
     }
@@ -629,7 +924,7 @@ public class ControllerTest {
                 new AccountTransferAeronRequest(trackingSequence, 1, 2, TRANSFER_AMOUNT1)));
         assertEquals(
                 List.of(new OutboundAeronMessageEnvelope(SESSION_ID, new NoSuchEntityAeronResponse(trackingSequence))),
-                holder.messages
+                holder.responses()
         );
         assertTrue(holder.withdrawalRequests.isEmpty());
     }
@@ -641,7 +936,7 @@ public class ControllerTest {
                 new AccountTransferAeronRequest(trackingSequence, 2, 1, TRANSFER_AMOUNT1)));
         assertEquals(
                 List.of(new OutboundAeronMessageEnvelope(SESSION_ID, new NoSuchEntityAeronResponse(trackingSequence))),
-                holder.messages
+                holder.responses()
         );
         assertTrue(holder.withdrawalRequests.isEmpty());
     }
@@ -652,7 +947,7 @@ public class ControllerTest {
                 new AccountTransferAeronRequest(trackingSequence, 1, 2, TRANSFER_AMOUNT1)));
         assertEquals(
                 List.of(new OutboundAeronMessageEnvelope(SESSION_ID, new NoSuchEntityAeronResponse(trackingSequence))),
-                holder.messages
+                holder.responses()
         );
         assertTrue(holder.withdrawalRequests.isEmpty());
     }
@@ -660,13 +955,13 @@ public class ControllerTest {
     @Test
     public void wrongTransfer4() {
         createAccount(1, INITIAL_AMOUNT);
-        createAccount(2, ZERO);
+        createAccount(2, 0);
 
         process(new InboundAeronMessageEvent(SESSION_ID,
-                new AccountTransferAeronRequest(trackingSequence, 1, 2, ONE.negate())));
+                new AccountTransferAeronRequest(trackingSequence, 1, 2, -ONE)));
         assertEquals(
                 List.of(new OutboundAeronMessageEnvelope(SESSION_ID, new InvalidAmountAeronResponse(trackingSequence))),
-                holder.messages
+                holder.responses()
         );
         assertTrue(holder.withdrawalRequests.isEmpty());
     }
@@ -674,13 +969,13 @@ public class ControllerTest {
     @Test
     public void wrongTransfer5() {
         createAccount(1, INITIAL_AMOUNT);
-        createAccount(2, ZERO);
+        createAccount(2, 0);
 
         process(new InboundAeronMessageEvent(SESSION_ID,
-                new AccountTransferAeronRequest(trackingSequence, 1, 2, ZERO)));
+                new AccountTransferAeronRequest(trackingSequence, 1, 2, 0)));
         assertEquals(
                 List.of(new OutboundAeronMessageEnvelope(SESSION_ID, new InvalidAmountAeronResponse(trackingSequence))),
-                holder.messages
+                holder.responses()
         );
         assertTrue(holder.withdrawalRequests.isEmpty());
     }
@@ -693,7 +988,7 @@ public class ControllerTest {
                 new AccountTransferAeronRequest(trackingSequence, 1, 1, TRANSFER_AMOUNT1)));
         assertEquals(
                 List.of(new OutboundAeronMessageEnvelope(SESSION_ID, new SameAccountAeronResponse(trackingSequence))),
-                holder.messages
+                holder.responses()
         );
         assertTrue(holder.withdrawalRequests.isEmpty());
     }
@@ -704,7 +999,7 @@ public class ControllerTest {
                 new AccountWithdrawAeronRequest(trackingSequence, 1, WITHDRAW_ADDRESS, TRANSFER_AMOUNT1)));
         assertEquals(
                 List.of(new OutboundAeronMessageEnvelope(SESSION_ID, new NoSuchEntityAeronResponse(trackingSequence))),
-                holder.messages
+                holder.responses()
         );
         assertTrue(holder.withdrawalRequests.isEmpty());
     }
@@ -713,10 +1008,10 @@ public class ControllerTest {
     public void wrongWithdrawal2() {
         createAccount(1, INITIAL_AMOUNT);
         process(new InboundAeronMessageEvent(SESSION_ID,
-                new AccountWithdrawAeronRequest(trackingSequence, 1, WITHDRAW_ADDRESS, ONE.negate())));
+                new AccountWithdrawAeronRequest(trackingSequence, 1, WITHDRAW_ADDRESS, -ONE)));
         assertEquals(
                 List.of(new OutboundAeronMessageEnvelope(SESSION_ID, new InvalidAmountAeronResponse(trackingSequence))),
-                holder.messages
+                holder.responses()
         );
         assertTrue(holder.withdrawalRequests.isEmpty());
     }
@@ -725,21 +1020,37 @@ public class ControllerTest {
     public void wrongWithdrawal3() {
         createAccount(1, INITIAL_AMOUNT);
         process(new InboundAeronMessageEvent(SESSION_ID,
-                new AccountWithdrawAeronRequest(trackingSequence, 1, WITHDRAW_ADDRESS, ZERO)));
+                new AccountWithdrawAeronRequest(trackingSequence, 1, WITHDRAW_ADDRESS, 0)));
         assertEquals(
                 List.of(new OutboundAeronMessageEnvelope(SESSION_ID, new InvalidAmountAeronResponse(trackingSequence))),
-                holder.messages
+                holder.responses()
         );
         assertTrue(holder.withdrawalRequests.isEmpty());
     }
 
-    private void createAccount(long accountId, @NotNull BigDecimal initialAmount) {
+    @Test
+    public void wrongAccount() {
+        createAccount(1, Long.MAX_VALUE - ONE);
+
+        // balances could overflow if the total of initial amounts exceeded long
+        process(new InboundAeronMessageEvent(SESSION_ID, new CreateAccountAeronRequest(trackingSequence, ONE + 1)));
+        assertEquals(
+                List.of(new OutboundAeronMessageEnvelope(SESSION_ID, new InvalidAmountAeronResponse(trackingSequence))),
+                holder.responses()
+        );
+        assertTrue(holder.withdrawalRequests.isEmpty());
+        trackingSequence++;
+
+        createAccount(2, ONE);
+    }
+
+    private void createAccount(long accountId, long initialAmount) {
         process(new InboundAeronMessageEvent(SESSION_ID,
                 new CreateAccountAeronRequest(trackingSequence, initialAmount)));
         assertEquals(
                 List.of(new OutboundAeronMessageEnvelope(SESSION_ID,
                         new AccountCreatedAeronResponse(trackingSequence, accountId))),
-                holder.messages);
+                holder.responses());
         assertTrue(holder.withdrawalRequests.isEmpty());
         trackingSequence++;
     }
@@ -750,37 +1061,37 @@ public class ControllerTest {
         assertEquals(
                 List.of(new OutboundAeronMessageEnvelope(SESSION_ID,
                         new AccountTransferDoneAeronResponse(trackingSequence))),
-                holder.messages);
+                holder.responses());
         assertTrue(holder.withdrawalRequests.isEmpty());
         trackingSequence++;
     }
 
-    private void expectTransferNoFunds(@NotNull BigDecimal amount) {
+    private void expectTransferNoFunds(long amount) {
         process(new InboundAeronMessageEvent(SESSION_ID,
                 new AccountTransferAeronRequest(trackingSequence, 1, 2, amount)));
         assertEquals(
                 List.of(new OutboundAeronMessageEnvelope(SESSION_ID, new NoFundsAeronResponse(trackingSequence))),
-                holder.messages);
+                holder.responses());
         assertTrue(holder.withdrawalRequests.isEmpty());
         trackingSequence++;
     }
 
-    private void checkBalance(long accountId, @NotNull BigDecimal available, @NotNull BigDecimal reserved) {
+    private void checkBalance(long accountId, long available, long reserved) {
         process(new InboundAeronMessageEvent(SESSION_ID, new QueryAccountAeronRequest(trackingSequence, accountId)));
         assertEquals(
                 List.of(new OutboundAeronMessageEnvelope(SESSION_ID,
                         new AccountDataAeronResponse(trackingSequence, available, reserved))),
-                holder.messages);
+                holder.responses());
         assertTrue(holder.withdrawalRequests.isEmpty());
         trackingSequence++;
     }
 
-    private long initiateWithdrawal(long accountId, @NotNull BigDecimal amount) {
+    private long initiateWithdrawal(long accountId, long amount) {
         process(new InboundAeronMessageEvent(SESSION_ID,
                 new AccountWithdrawAeronRequest(trackingSequence, accountId, WITHDRAW_ADDRESS, amount)));
         assertTrue(holder.messages.isEmpty());
         assertEquals(1, holder.withdrawalRequests.size());
-        final var request = (CreateWithdrawalRequest) holder.withdrawalRequests.getFirst();
+        final var request = (CreateWithdrawalRequest) holder.externalRequests().getFirst();
         assertEquals(WITHDRAW_ADDRESS, request.address());
         assertEquals(amount, request.amount());
         withdrawalUuids.add(request.withdrawalUuid());
@@ -792,7 +1103,7 @@ public class ControllerTest {
                 new AccountTransferAeronRequest(trackingSequence, fromAccountId, toAccountId, TRANSFER_AMOUNT4)));
         assertTrue(holder.messages.isEmpty());
         assertEquals(Set.of(new QueryWithdrawalRequest(withdrawalUuids.get(1)),
-                new QueryWithdrawalRequest(withdrawalUuids.get(2))), new HashSet<>(holder.withdrawalRequests));
+                new QueryWithdrawalRequest(withdrawalUuids.get(2))), new HashSet<>(holder.externalRequests()));
         return trackingSequence++;
     }
 
@@ -801,7 +1112,7 @@ public class ControllerTest {
                 new AccountWithdrawAeronRequest(trackingSequence, fromAccountId, WITHDRAW_ADDRESS, TRANSFER_AMOUNT4)));
         assertTrue(holder.messages.isEmpty());
         assertEquals(Set.of(new QueryWithdrawalRequest(withdrawalUuids.get(1)),
-                new QueryWithdrawalRequest(withdrawalUuids.get(2))), new HashSet<>(holder.withdrawalRequests));
+                new QueryWithdrawalRequest(withdrawalUuids.get(2))), new HashSet<>(holder.externalRequests()));
         return trackingSequence++;
     }
 
@@ -810,7 +1121,7 @@ public class ControllerTest {
         assertEquals(
                 List.of(new OutboundAeronMessageEnvelope(SESSION_ID,
                         new AccountWithdrawalDoneAeronResponse(trackingId, withdrawalId))),
-                holder.messages);
+                holder.responses());
         assertTrue(holder.withdrawalRequests.isEmpty());
     }
 
@@ -819,7 +1130,7 @@ public class ControllerTest {
         assertEquals(
                 List.of(new OutboundAeronMessageEnvelope(SESSION_ID,
                         new AccountWithdrawalDoneAeronResponse(trackingId, withdrawalId))),
-                holder.messages);
+                holder.responses());
         assertTrue(holder.withdrawalRequests.isEmpty());
     }
 
@@ -833,4 +1144,8 @@ public class ControllerTest {
         holder.event = event;
         controller.accept(event);
     }
+
+    private static long amount(@NotNull String value) {
+        return Amounts.fromBigDecimal(new BigDecimal(value));
+    }
 }
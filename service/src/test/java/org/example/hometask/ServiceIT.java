@@ -1,26 +1,33 @@
 package org.example.hometask;
 
 import org.example.hometask.aeron.Client;
+import org.example.hometask.disruptor.OutboundMessage;
 import org.example.hometask.messages.request.AccountTransferAeronRequest;
+import org.example.hometask.messages.request.AccountTransferBatchAeronRequest;
 import org.example.hometask.messages.request.AccountWithdrawAeronRequest;
 import org.example.hometask.messages.request.CreateAccountAeronRequest;
+import org.example.hometask.messages.request.CreateAccountBatchAeronRequest;
 import org.example.hometask.messages.request.QueryAccountAeronRequest;
 import org.example.hometask.messages.request.QueryWithdrawalAeronRequest;
 import org.example.hometask.messages.response.AccountCreatedAeronResponse;
 import org.example.hometask.messages.response.AccountDataAeronResponse;
 import org.example.hometask.messages.response.AccountTransferDoneAeronResponse;
 import org.example.hometask.messages.response.AccountWithdrawalDoneAeronResponse;
+import org.example.hometask.messages.response.AeronResponse;
+import org.example.hometask.messages.response.BatchResultAeronResponse;
 import org.example.hometask.messages.response.InvalidAmountAeronResponse;
 import org.example.hometask.messages.response.NoFundsAeronResponse;
 import org.example.hometask.messages.response.NoSuchEntityAeronResponse;
 import org.example.hometask.messages.response.SameAccountAeronResponse;
 import org.example.hometask.messages.response.WithdrawalDataAeronResponse;
+import org.example.hometask.utils.Amounts;
+import org.jetbrains.annotations.NotNull;
 import org.junit.Test;
 
 import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
 
-import static java.math.BigDecimal.ONE;
-import static java.math.BigDecimal.ZERO;
 import static java.util.concurrent.TimeUnit.SECONDS;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
@@ -28,12 +35,14 @@ import static org.junit.Assert.assertNull;
 
 public class ServiceIT {
 
+    private static final long ONE = amount("1");
+
     @Test
     public void transfer() throws InterruptedException {
 
         final var client = new Client();
 
-        client.send(new CreateAccountAeronRequest(1, ONE.negate()));
+        client.send(new CreateAccountAeronRequest(1, -ONE));
         client.send(new QueryAccountAeronRequest(2, 1));
         client.send(new QueryWithdrawalAeronRequest(3, 1));
         client.send(new AccountTransferAeronRequest(4, 1, 2, ONE));
@@ -45,18 +54,18 @@ public class ServiceIT {
         assertEquals(new NoSuchEntityAeronResponse(4), client.responses().take());
         assertEquals(new NoSuchEntityAeronResponse(5), client.responses().take());
 
-        client.send(new CreateAccountAeronRequest(6, new BigDecimal("123")));
-        client.send(new CreateAccountAeronRequest(7, ZERO));
+        client.send(new CreateAccountAeronRequest(6, amount("123")));
+        client.send(new CreateAccountAeronRequest(7, 0));
         assertEquals(new AccountCreatedAeronResponse(6, 1), client.responses().take());
         assertEquals(new AccountCreatedAeronResponse(7, 2), client.responses().take());
 
-        client.send(new AccountTransferAeronRequest(8, 1, 2, ONE.negate()));
-        client.send(new AccountTransferAeronRequest(9, 1, 2, ZERO));
+        client.send(new AccountTransferAeronRequest(8, 1, 2, -ONE));
+        client.send(new AccountTransferAeronRequest(9, 1, 2, 0));
         assertEquals(new InvalidAmountAeronResponse(8), client.responses().take());
         assertEquals(new InvalidAmountAeronResponse(9), client.responses().take());
 
-        client.send(new AccountWithdrawAeronRequest(10, 1, "foobar", ONE.negate()));
-        client.send(new AccountWithdrawAeronRequest(11, 1, "foobar", ZERO));
+        client.send(new AccountWithdrawAeronRequest(10, 1, "foobar", -ONE));
+        client.send(new AccountWithdrawAeronRequest(11, 1, "foobar", 0));
         assertEquals(new InvalidAmountAeronResponse(10), client.responses().take());
         assertEquals(new InvalidAmountAeronResponse(11), client.responses().take());
 
@@ -64,7 +73,7 @@ public class ServiceIT {
         assertEquals(new AccountTransferDoneAeronResponse(12), client.responses().take());
 
         client.send(new QueryAccountAeronRequest(13, 1));
-        assertEquals(new AccountDataAeronResponse(13, new BigDecimal("122"), ZERO), client.responses().take());
+        assertEquals(new AccountDataAeronResponse(13, amount("122"), 0), client.responses().take());
 
         client.send(new AccountWithdrawAeronRequest(14, 1, "foobar", ONE));
         assertEquals(new AccountWithdrawalDoneAeronResponse(14, 1), client.responses().take());
@@ -75,15 +84,47 @@ public class ServiceIT {
         assertEquals(ONE, withdrawalDataAeronResponse.amount());
         assertNotNull(withdrawalDataAeronResponse.state());
 
-        client.send(new AccountWithdrawAeronRequest(16, 1, "foobar", new BigDecimal("999")));
-        client.send(new AccountTransferAeronRequest(17, 1, 2, new BigDecimal("999")));
+        client.send(new AccountWithdrawAeronRequest(16, 1, "foobar", amount("999")));
+        client.send(new AccountTransferAeronRequest(17, 1, 2, amount("999")));
         assertEquals(new NoFundsAeronResponse(16), client.responses().take());
         assertEquals(new NoFundsAeronResponse(17), client.responses().take());
 
         client.send(new AccountTransferAeronRequest(18, 1, 1, ONE));
         assertEquals(new SameAccountAeronResponse(18), client.responses().take());
 
+        client.send(new CreateAccountBatchAeronRequest(List.of(
+                new CreateAccountAeronRequest(19, ONE),
+                new CreateAccountAeronRequest(20, -ONE))));
+        assertEquals(new BatchResultAeronResponse(List.of(
+                new AccountCreatedAeronResponse(19, 3),
+                new InvalidAmountAeronResponse(20))), client.responses().take());
+
+        client.send(new AccountTransferBatchAeronRequest(List.of(
+                new AccountTransferAeronRequest(21, 3, 1, ONE),
+                new AccountTransferAeronRequest(22, 3, 2, ONE))));
+        assertEquals(new BatchResultAeronResponse(List.of(
+                new AccountTransferDoneAeronResponse(21),
+                new NoFundsAeronResponse(22))), client.responses().take());
+
+        // the batch does not fit a frame, and neither do its results
+        final var accounts = new ArrayList<CreateAccountAeronRequest>();
+        final var results = new ArrayList<AeronResponse>();
+        for (int i = 0; i < OutboundMessage.MAX_RESULTS + 1; i++) {
+            accounts.add(new CreateAccountAeronRequest(100 + i, ONE));
+            results.add(new AccountCreatedAeronResponse(100 + i, 4 + i));
+        }
+        client.send(new CreateAccountBatchAeronRequest(accounts));
+        final var received = new ArrayList<AeronResponse>();
+        while (received.size() < results.size()) {
+            received.addAll(((BatchResultAeronResponse) client.responses().take()).results());
+        }
+        assertEquals(results, received);
+
         assertNull(client.responses().poll(1, SECONDS));
         client.shutdown();
     }
+
+    private static long amount(@NotNull String value) {
+        return Amounts.fromBigDecimal(new BigDecimal(value));
+    }
 }
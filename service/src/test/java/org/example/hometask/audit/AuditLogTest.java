@@ -0,0 +1,77 @@
+package org.example.hometask.audit;
+
+import org.jetbrains.annotations.NotNull;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.Assert.assertEquals;
+
+public class AuditLogTest {
+
+    private static final int CAPACITY = 4;
+    private static final UUID UUID1 = new UUID(1, 2);
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void recordsWrapAroundAndSurviveReopening() {
+
+        final var file = AuditLog.file(folder.getRoot());
+        try (var writer = new AuditLogWriter(file, CAPACITY)) {
+            for (int i = 0; i < 6; i++) {
+                request(writer, i);
+            }
+            assertEquals(6, writer.recordsWritten());
+        }
+        assertEquals(List.of(line(2), line(3), line(4), line(5)), decode(file));
+
+        try (var writer = new AuditLogWriter(file, CAPACITY)) {
+            assertEquals(6, writer.recordsWritten());
+            request(writer, 6);
+        }
+        assertEquals(List.of(line(3), line(4), line(5), line(6)), decode(file));
+
+        // the log of another capacity starts over
+        try (var writer = new AuditLogWriter(file, CAPACITY * 2)) {
+            assertEquals(0, writer.recordsWritten());
+            request(writer, 7);
+        }
+        assertEquals(List.of(line(7)), decode(file));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void invalidCapacity() {
+        new AuditLogWriter(AuditLog.file(folder.getRoot()), 0);
+    }
+
+    private static void request(@NotNull AuditLogWriter writer, long sequence) {
+        final int offset = writer.claim(sequence, sequence * 1_000_000_000L, AuditLog.WITHDRAWAL_REQUEST,
+                AuditLog.CREATE_WITHDRAWAL);
+        writer.buffer().putLong(offset + AuditLog.FIELD1_OFFSET, UUID1.getMostSignificantBits());
+        writer.buffer().putLong(offset + AuditLog.FIELD2_OFFSET, UUID1.getLeastSignificantBits());
+        writer.buffer().putLong(offset + AuditLog.FIELD3_OFFSET, 150_000_000L + sequence);
+        writer.commit();
+    }
+
+    @NotNull
+    private static String line(long sequence) {
+        return "1970-01-01T00:00:%02dZ #%d WITHDRAWAL_REQUEST CREATE withdrawal=%s amount=1.5000000%d"
+                .formatted(sequence, sequence, UUID1, sequence);
+    }
+
+    @NotNull
+    private static List<String> decode(@NotNull File file) {
+        final var out = new ByteArrayOutputStream();
+        AuditLogDecoder.decode(file, new PrintStream(out, true, StandardCharsets.UTF_8));
+        return out.toString(StandardCharsets.UTF_8).lines().toList();
+    }
+}
@@ -0,0 +1,162 @@
+package org.example.hometask.disruptor;
+
+import org.agrona.ExpandableArrayBuffer;
+import org.example.hometask.api.CreateAccountBatchEncoder;
+import org.example.hometask.api.MessageHeaderEncoder;
+import org.example.hometask.api.QueryAccountEncoder;
+import org.example.hometask.audit.AuditLog;
+import org.example.hometask.audit.AuditLogDecoder;
+import org.example.hometask.audit.AuditLogWriter;
+import org.example.hometask.messages.disruptor.CreateWithdrawalSuccessEvent;
+import org.example.hometask.messages.disruptor.Event;
+import org.example.hometask.messages.disruptor.InboundAeronFragmentEvent;
+import org.example.hometask.messages.disruptor.QueryWithdrawalSuccessEvent;
+import org.example.hometask.messages.disruptor.ShardTransferEvent;
+import org.example.hometask.messages.disruptor.TickEvent;
+import org.example.hometask.utils.Allocations;
+import org.jetbrains.annotations.NotNull;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.UUID;
+import java.util.function.Consumer;
+
+import static org.example.hometask.messages.WithdrawalState.COMPLETED;
+import static org.junit.Assert.assertEquals;
+
+public class AuditEventHandlerTest {
+
+    private static final int SESSION_ID = 123;
+    private static final UUID UUID1 = new UUID(1, 2);
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    private final EventContext eventContext = new EventContext();
+    private final Publisher publisher = new Publisher(eventContext);
+    private final EventHolder holder = new EventHolder();
+    private final ExpandableArrayBuffer buffer = new ExpandableArrayBuffer();
+    private final MessageHeaderEncoder headerEncoder = new MessageHeaderEncoder();
+
+    private AuditEventHandler handler;
+
+    @After
+    public void tearDown() {
+        if (handler != null) {
+            handler.onShutdown();
+        }
+    }
+
+    @Test
+    public void eventsAreAuditedWithTheirResults() {
+
+        handler = new AuditEventHandler(new AuditLogWriter(AuditLog.file(folder.getRoot()), 64));
+        eventContext.holder = holder;
+
+        process(0, 100, queryAccount(), p -> p.accountData(SESSION_ID, 1, 150_000_000L, 50_000_000L));
+        process(1, 200, createAccountBatch(), p -> {
+            p.beginBatch(SESSION_ID);
+            p.accountCreated(SESSION_ID, 2, 10);
+            p.noFunds(SESSION_ID, 3);
+            p.endBatch();
+        });
+        process(2, 300, new CreateWithdrawalSuccessEvent(UUID1), p -> p.createWithdrawal(UUID1, "foo", 100_000_000L));
+        process(3, 300, new TickEvent(0), p -> {
+        });
+        process(4, 300, new TickEvent(0), p -> p.queryWithdrawal(UUID1));
+        process(5, 400, new QueryWithdrawalSuccessEvent(UUID1, COMPLETED), p -> p.withdrawalData(SESSION_ID, 4,
+                100_000_000L, COMPLETED));
+        process(6, 500, new ShardTransferEvent(1, 7, 6, 10, 100), p -> {
+        });
+
+        assertEquals(List.of(
+                "#0 EVENT INBOUND_AERON_FRAGMENT session=123 request=QueryAccount journalPosition=100",
+                "#0 RESPONSE AccountData session=123 trackingId=1 availableAmount=1.5 reservedAmount=0.5",
+                "#1 EVENT INBOUND_AERON_FRAGMENT session=123 request=CreateAccountBatch journalPosition=200",
+                "#1 RESPONSE BatchResult session=123 results=2",
+                "#1 BATCH_RESULT ACCOUNT_CREATED session=123 trackingId=2 accountId=10",
+                "#1 BATCH_RESULT NO_FUNDS session=123 trackingId=3",
+                "#2 EVENT CREATE_WITHDRAWAL_SUCCESS withdrawal=" + UUID1 + " journalPosition=300",
+                "#2 WITHDRAWAL_REQUEST CREATE withdrawal=" + UUID1 + " amount=1",
+                "#4 EVENT TICK journalPosition=300",
+                "#4 WITHDRAWAL_REQUEST QUERY withdrawal=" + UUID1,
+                "#5 EVENT QUERY_WITHDRAWAL_SUCCESS withdrawal=" + UUID1 + " journalPosition=400",
+                "#5 RESPONSE WithdrawalData session=123 trackingId=4 amount=1 state=COMPLETED",
+                "#6 EVENT SHARD_TRANSFER shard=1 transferSequence=7 journalPosition=500"
+        ), decode());
+    }
+
+    @Test
+    public void auditingDoesNotAllocate() {
+
+        handler = new AuditEventHandler(new AuditLogWriter(AuditLog.file(folder.getRoot()), 1024));
+        eventContext.holder = holder;
+        final var query = queryAccount();
+        final var batch = createAccountBatch();
+
+        assertEquals("Bytes allocated by auditing", 0, Allocations.steadyStateAllocatedBytes(i -> {
+            holder.clean();
+            if (i % 2 == 0) {
+                holder.event = query;
+                publisher.accountData(SESSION_ID, i, i, i);
+            } else {
+                holder.event = batch;
+                publisher.beginBatch(SESSION_ID);
+                publisher.accountCreated(SESSION_ID, i, i);
+                publisher.noSuchEntity(SESSION_ID, i);
+                publisher.endBatch();
+                publisher.createWithdrawal(UUID1, "foo", i);
+            }
+            handler.onEvent(holder, i, true);
+        }));
+    }
+
+    private void process(
+            long sequence,
+            long journalPosition,
+            @NotNull Event event,
+            @NotNull Consumer<Publisher> results
+    ) {
+        holder.clean();
+        holder.event = event;
+        holder.journalPosition = journalPosition;
+        results.accept(publisher);
+        handler.onEvent(holder, sequence, true);
+    }
+
+    @NotNull
+    private InboundAeronFragmentEvent queryAccount() {
+        final var encoder = new QueryAccountEncoder().wrapAndApplyHeader(buffer, 0, headerEncoder);
+        encoder.trackingId(1).accountId(10);
+        final var event = new InboundAeronFragmentEvent();
+        event.wrap(SESSION_ID, buffer, 0, headerEncoder.encodedLength() + encoder.encodedLength());
+        return event;
+    }
+
+    @NotNull
+    private InboundAeronFragmentEvent createAccountBatch() {
+        final var encoder = new CreateAccountBatchEncoder().wrapAndApplyHeader(buffer, 0, headerEncoder);
+        encoder.accountsCount(0);
+        final var event = new InboundAeronFragmentEvent();
+        event.wrap(SESSION_ID, buffer, 0, headerEncoder.encodedLength() + encoder.encodedLength());
+        return event;
+    }
+
+    /**
+     * @return Decoded records without timestamps.
+     */
+    @NotNull
+    private List<String> decode() {
+        final var out = new ByteArrayOutputStream();
+        AuditLogDecoder.decode(AuditLog.file(folder.getRoot()), new PrintStream(out, true, StandardCharsets.UTF_8));
+        return out.toString(StandardCharsets.UTF_8).lines()
+                .map(line -> line.substring(line.indexOf(' ') + 1))
+                .toList();
+    }
+}
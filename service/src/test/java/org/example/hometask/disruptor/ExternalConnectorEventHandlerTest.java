@@ -0,0 +1,280 @@
+package org.example.hometask.disruptor;
+
+import org.example.hometask.external.WithdrawalService;
+import org.example.hometask.external.WithdrawalServiceStub;
+import org.example.hometask.messages.disruptor.CreateWithdrawalCallFailureEvent;
+import org.example.hometask.messages.disruptor.CreateWithdrawalDuplicationFailureEvent;
+import org.example.hometask.messages.disruptor.CreateWithdrawalSuccessEvent;
+import org.example.hometask.messages.disruptor.Event;
+import org.example.hometask.messages.disruptor.QueryWithdrawalCallFailureEvent;
+import org.example.hometask.messages.disruptor.QueryWithdrawalSuccessEvent;
+import org.example.hometask.messages.disruptor.QueryWithdrawalUnknownIdFailureEvent;
+import org.example.hometask.state.WithdrawalUuids;
+import org.jetbrains.annotations.NotNull;
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.example.hometask.messages.WithdrawalState.COMPLETED;
+import static org.example.hometask.messages.WithdrawalState.PROCESSING;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+public class ExternalConnectorEventHandlerTest {
+
+    private static final UUID UUID1 = new UUID(1, 2);
+    private static final UUID UUID2 = new UUID(3, 4);
+
+    private final InternalMessagesQueue internalMessagesQueue = new InternalMessagesQueue(16);
+    private final ShardRouter router =
+            new ShardRouter(List.of(internalMessagesQueue), new WithdrawalUuids(WithdrawalUuids.DEFAULT_NAMESPACE));
+    private final BlockingWithdrawalService withdrawalService = new BlockingWithdrawalService();
+    private final ExternalConnectorEventHandler handler = new ExternalConnectorEventHandler(
+            withdrawalService, Executors.newFixedThreadPool(4), 1, 1, 0, false, router);
+    private final EventHolder holder = new EventHolder();
+
+    @After
+    public void tearDown() {
+        withdrawalService.permits.release(100);
+        handler.onShutdown();
+    }
+
+    @Test
+    public void slowCallsNeitherBlockNorExceedLimit() throws Exception {
+
+        holder.withdrawalRequests.add().create(UUID1, "foo", 100);
+        holder.withdrawalRequests.add().create(UUID2, "bar", 200);
+        handler.onEvent(holder, 0, true);
+        holder.clean();
+
+        // the first call is stuck in the external service, the second one waits for a free slot
+        waitForCalls(1);
+        Thread.sleep(100);
+        handler.onEvent(holder, 1, true);
+        assertEquals(1, withdrawalService.calls.get());
+        assertTrue(internalMessagesQueue.isEmpty());
+
+        withdrawalService.permits.release();
+        assertEquals(new CreateWithdrawalSuccessEvent(UUID1), poll());
+
+        // the backlog is drained by any next event, e.g. by ticks
+        waitForCalls(2);
+        withdrawalService.permits.release();
+        assertEquals(new CreateWithdrawalSuccessEvent(UUID2), poll());
+    }
+
+    @Test
+    public void queryResults() throws Exception {
+        withdrawalService.permits.release(100);
+        holder.withdrawalRequests.add().query(UUID1);
+        handler.onEvent(holder, 0, true);
+        assertEquals(new QueryWithdrawalSuccessEvent(UUID1, COMPLETED), poll());
+
+        holder.clean();
+        holder.withdrawalRequests.add().query(UUID2);
+        handler.onEvent(holder, 1, true);
+        assertEquals(new QueryWithdrawalUnknownIdFailureEvent(UUID2), poll());
+    }
+
+    @Test
+    public void requestsAreCoalescedIntoBulkCalls() throws Exception {
+
+        final var stub = new WithdrawalServiceStub();
+        final var batchingHandler = new ExternalConnectorEventHandler(
+                stub, Executors.newFixedThreadPool(4), 4, 8, 0, false, router);
+        try {
+            final var expected = new HashSet<Event>();
+            for (int i = 0; i < 10; i++) {
+                final var uuid = new UUID(5, i);
+                holder.clean();
+                holder.withdrawalRequests.add().create(uuid, "foo", 100);
+                holder.withdrawalRequests.add().query(uuid);
+                batchingHandler.onEvent(holder, i, false);
+                expected.add(new CreateWithdrawalSuccessEvent(uuid));
+            }
+            // conflicting request
+            holder.clean();
+            holder.withdrawalRequests.add().create(new UUID(5, 0), "bar", 200);
+            batchingHandler.onEvent(holder, 10, true);
+            expected.add(new CreateWithdrawalDuplicationFailureEvent(new UUID(5, 0)));
+
+            // full batches of 8 are sent right away, the rest at the end of batch
+            final var events = poll(expected.size() + 10);
+            assertEquals(4, stub.calls());
+            // queries race with creates, so their results are not known
+            events.removeIf(event -> event instanceof QueryWithdrawalSuccessEvent
+                    || event instanceof QueryWithdrawalUnknownIdFailureEvent);
+            assertEquals(expected, new HashSet<>(events));
+        } finally {
+            batchingHandler.onShutdown();
+        }
+    }
+
+    @Test
+    public void partialBatchLingers() throws Exception {
+
+        final var stub = new WithdrawalServiceStub();
+        final var batchingHandler = new ExternalConnectorEventHandler(
+                stub, Executors.newFixedThreadPool(4), 4, 8, SECONDS.toNanos(1), false, router);
+        try {
+            holder.withdrawalRequests.add().query(UUID1);
+            batchingHandler.onEvent(holder, 0, true);
+            holder.clean();
+            Thread.sleep(100);
+            batchingHandler.onEvent(holder, 1, true);
+            assertEquals(0, stub.calls());
+            assertTrue(internalMessagesQueue.isEmpty());
+
+            holder.withdrawalRequests.add().query(UUID2);
+            final long deadline = System.nanoTime() + SECONDS.toNanos(5);
+            while (stub.calls() == 0 && System.nanoTime() < deadline) {
+                batchingHandler.onEvent(holder, 2, true);
+                holder.clean();
+                Thread.sleep(10);
+            }
+            assertEquals(Set.of(new QueryWithdrawalUnknownIdFailureEvent(UUID1),
+                    new QueryWithdrawalUnknownIdFailureEvent(UUID2)), new HashSet<>(poll(2)));
+            assertEquals(1, stub.calls());
+        } finally {
+            batchingHandler.onShutdown();
+        }
+    }
+
+    @Test
+    public void failedCallsAreReported() throws Exception {
+
+        final var failingHandler = new ExternalConnectorEventHandler(
+                new FailingWithdrawalService(), Executors.newFixedThreadPool(4), 4, 8, 0, false, router);
+        try {
+            holder.withdrawalRequests.add().create(UUID1, "foo", 100);
+            holder.withdrawalRequests.add().create(UUID2, "bar", 200);
+            holder.withdrawalRequests.add().query(UUID1);
+            failingHandler.onEvent(holder, 0, true);
+            assertEquals(Set.of(new CreateWithdrawalCallFailureEvent(UUID1),
+                    new CreateWithdrawalCallFailureEvent(UUID2),
+                    new QueryWithdrawalCallFailureEvent(UUID1)), new HashSet<>(poll(3)));
+        } finally {
+            failingHandler.onShutdown();
+        }
+
+        // calls rejected by the executor, e.g. on shutdown, are reported as well
+        holder.clean();
+        holder.withdrawalRequests.add().query(UUID2);
+        failingHandler.onEvent(holder, 1, true);
+        assertEquals(new QueryWithdrawalCallFailureEvent(UUID2), poll());
+    }
+
+    @Test
+    public void completionsArePushed() throws Exception {
+
+        final var stub = new WithdrawalServiceStub();
+        final var notifiedHandler = new ExternalConnectorEventHandler(
+                stub, Executors.newFixedThreadPool(4), 4, 8, 0, true, router);
+        notifiedHandler.onStart();
+        try {
+            holder.withdrawalRequests.add().create(UUID1, "foo", 100);
+            notifiedHandler.onEvent(holder, 0, true);
+            assertEquals(new CreateWithdrawalSuccessEvent(UUID1), poll());
+
+            // the stub completes withdrawals within 10 seconds
+            final long deadline = System.nanoTime() + SECONDS.toNanos(15);
+            Event event;
+            while ((event = internalMessagesQueue.poll()) == null && System.nanoTime() < deadline) {
+                Thread.sleep(10);
+            }
+            assertTrue(event instanceof QueryWithdrawalSuccessEvent);
+            assertEquals(UUID1, ((QueryWithdrawalSuccessEvent) event).withdrawalUuid());
+            assertNotEquals(PROCESSING, ((QueryWithdrawalSuccessEvent) event).state());
+            assertEquals(1, stub.calls());
+        } finally {
+            notifiedHandler.onShutdown();
+        }
+    }
+
+    private void waitForCalls(int calls) throws InterruptedException {
+        final long deadline = System.nanoTime() + SECONDS.toNanos(5);
+        while (withdrawalService.calls.get() < calls && System.nanoTime() < deadline) {
+            handler.onEvent(holder, 0, true);
+            Thread.sleep(1);
+        }
+        assertEquals(calls, withdrawalService.calls.get());
+    }
+
+    @NotNull
+    private List<Event> poll(int count) throws InterruptedException {
+        final var events = new ArrayList<Event>();
+        final long deadline = System.nanoTime() + SECONDS.toNanos(5);
+        while (events.size() < count && System.nanoTime() < deadline) {
+            final var event = internalMessagesQueue.poll();
+            if (event == null) {
+                Thread.sleep(1);
+            } else {
+                events.add(event);
+            }
+        }
+        assertEquals(count, events.size());
+        Thread.sleep(50);
+        assertTrue(internalMessagesQueue.isEmpty());
+        return events;
+    }
+
+    @NotNull
+    private Event poll() throws InterruptedException {
+        final long deadline = System.nanoTime() + SECONDS.toNanos(5);
+        Event event;
+        while ((event = internalMessagesQueue.poll()) == null && System.nanoTime() < deadline) {
+            Thread.sleep(1);
+        }
+        assertNotNull(event);
+        assertTrue(internalMessagesQueue.isEmpty());
+        return event;
+    }
+
+    private static class FailingWithdrawalService implements WithdrawalService {
+
+        @Override
+        public void requestWithdrawal(WithdrawalId id, Address address, BigDecimal amount) {
+            throw new UncheckedIOException(new IOException("Connection refused"));
+        }
+
+        @Override
+        public WithdrawalState getRequestState(WithdrawalId id) {
+            throw new UncheckedIOException(new IOException("Connection refused"));
+        }
+    }
+
+    private static class BlockingWithdrawalService implements WithdrawalService {
+
+        final Semaphore permits = new Semaphore(0);
+
+        final AtomicInteger calls = new AtomicInteger();
+
+        @Override
+        public void requestWithdrawal(WithdrawalId id, Address address, BigDecimal amount) {
+            calls.incrementAndGet();
+            permits.acquireUninterruptibly();
+        }
+
+        @Override
+        public WithdrawalState getRequestState(WithdrawalId id) {
+            if (!id.value().equals(UUID1)) {
+                throw new IllegalArgumentException("Unknown " + id);
+            }
+            return WithdrawalState.COMPLETED;
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package org.example.hometask.disruptor;
+
+import org.agrona.concurrent.SleepingIdleStrategy;
+import org.example.hometask.messages.disruptor.Event;
+import org.example.hometask.messages.disruptor.ShardTransferResultEvent;
+import org.jetbrains.annotations.NotNull;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class InternalMessagesQueueTest {
+
+    private final InternalMessagesQueue queue = new InternalMessagesQueue(4);
+
+    @Test
+    public void overflowKeepsOrder() {
+        for (int i = 0; i < 10; i++) {
+            queue.add(event(i));
+        }
+        assertEquals(6, queue.overflowed());
+
+        // the bounded lane has room again, still the overflow lane is used until drained
+        assertEquals(event(0), queue.poll());
+        queue.add(event(10));
+        assertEquals(7, queue.overflowed());
+
+        for (int i = 1; i <= 10; i++) {
+            assertEquals(event(i), queue.poll());
+        }
+        assertNull(queue.poll());
+        assertTrue(queue.isEmpty());
+
+        queue.add(event(11));
+        assertEquals(7, queue.overflowed());
+        assertEquals(event(11), queue.poll());
+    }
+
+    @Test
+    public void idleConsumerIsWokenUp() throws Exception {
+
+        final var idleStrategy =
+                InternalMessagesQueue.idleStrategy(new SleepingIdleStrategy(SECONDS.toNanos(10)), queue);
+        final var started = new CountDownLatch(1);
+        final long[] idleNanos = {0};
+        final var consumer = new Thread(() -> {
+            idleStrategy.idle(0);
+            started.countDown();
+            final long startNanos = System.nanoTime();
+            idleStrategy.idle(0);
+            idleNanos[0] = System.nanoTime() - startNanos;
+        });
+
+        // the first idle registers the consumer, it returns right away since the event is there already
+        queue.add(event(0));
+        consumer.start();
+        assertTrue(started.await(5, SECONDS));
+        assertEquals(event(0), queue.poll());
+
+        Thread.sleep(100);
+        queue.add(event(1));
+        consumer.join(SECONDS.toMillis(5));
+        assertTrue(idleNanos[0] > 0 && idleNanos[0] < SECONDS.toNanos(5));
+    }
+
+    @NotNull
+    private static Event event(long sequence) {
+        return new ShardTransferResultEvent(0, sequence, true);
+    }
+}
@@ -0,0 +1,463 @@
+package org.example.hometask.disruptor;
+
+import io.aeron.Aeron;
+import io.aeron.CommonContext;
+import io.aeron.Publication;
+import io.aeron.Subscription;
+import io.aeron.driver.MediaDriver;
+import io.aeron.logbuffer.FragmentHandler;
+import org.agrona.CloseHelper;
+import org.agrona.concurrent.ManyToOneConcurrentLinkedQueue;
+import org.example.hometask.aeron.ClientAdapter;
+import org.example.hometask.api.AccountCreatedEncoder;
+import org.example.hometask.api.AccountDataEncoder;
+import org.example.hometask.api.AccountTransferDoneEncoder;
+import org.example.hometask.api.BatchResultCode;
+import org.example.hometask.api.InvalidAmountEncoder;
+import org.example.hometask.api.MessageHeaderEncoder;
+import org.example.hometask.api.NoFundsEncoder;
+import org.example.hometask.api.NoSuchEntityEncoder;
+import org.example.hometask.api.SameAccountEncoder;
+import org.example.hometask.messages.response.AccountCreatedAeronResponse;
+import org.example.hometask.messages.response.AccountDataAeronResponse;
+import org.example.hometask.messages.response.AccountTransferDoneAeronResponse;
+import org.example.hometask.messages.response.AeronResponse;
+import org.example.hometask.messages.response.BatchResultAeronResponse;
+import org.example.hometask.messages.response.InvalidAmountAeronResponse;
+import org.example.hometask.messages.response.NoFundsAeronResponse;
+import org.example.hometask.messages.response.NoSuchEntityAeronResponse;
+import org.example.hometask.messages.response.SameAccountAeronResponse;
+import org.example.hometask.utils.Allocations;
+import org.jetbrains.annotations.NotNull;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static io.aeron.driver.ThreadingMode.SHARED;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class PublisherEventHandlerTest {
+
+    private static final int SESSION_ID1 = 123;
+    private static final int SESSION_ID2 = 456;
+    /**
+     * Short terms let a subscriber which does not poll back-pressure the publication quickly.
+     */
+    private static final String RESPONSE_URI = "aeron:ipc?term-length=64k";
+    private static final int RESPONSE_STREAM1 = 1;
+    private static final int RESPONSE_STREAM2 = 2;
+    private static final long TIMEOUT_NANOS = TimeUnit.SECONDS.toNanos(10);
+    /**
+     * Way more than a term, so the publication gets back-pressured.
+     */
+    private static final int FLOOD_BATCHES = 100;
+    private static final int FLOOD_BATCH_SIZE = 100;
+    private static final int FRAME_LENGTH = 1024;
+
+    private final ConcurrentHashMap<Integer, Publication> publicationsBySessionId = new ConcurrentHashMap<>();
+    private final ManyToOneConcurrentLinkedQueue<SessionRegistry.Disconnect> disconnects =
+            new ManyToOneConcurrentLinkedQueue<>();
+
+    private MediaDriver mediaDriver;
+    private Aeron aeron;
+    private OutboundCounters counters;
+    private PublisherEventHandler handler;
+    private long sequence;
+    private Subscription subscription1;
+    private Subscription subscription2;
+
+    @Before
+    public void setUp() {
+        mediaDriver = MediaDriver.launchEmbedded(
+                new MediaDriver.Context()
+                        .aeronDirectoryName(CommonContext.getAeronDirectoryName() + "-publisher-test")
+                        .dirDeleteOnStart(true)
+                        .dirDeleteOnShutdown(true)
+                        .threadingMode(SHARED));
+        aeron = Aeron.connect(new Aeron.Context().aeronDirectoryName(mediaDriver.aeronDirectoryName()));
+        counters = new OutboundCounters(aeron, -1, -1);
+        handler = new PublisherEventHandler(publicationsBySessionId, disconnects, counters,
+                SlowConsumerPolicy.MARK_LAGGING, 1024 * 1024, TimeUnit.SECONDS.toNanos(60), 0, 1);
+        subscription1 = aeron.addSubscription(RESPONSE_URI, RESPONSE_STREAM1);
+        subscription2 = aeron.addSubscription(RESPONSE_URI, RESPONSE_STREAM2);
+        publicationsBySessionId.put(SESSION_ID1, connect(RESPONSE_STREAM1));
+        publicationsBySessionId.put(SESSION_ID2, connect(RESPONSE_STREAM2));
+    }
+
+    @After
+    public void tearDown() {
+        handler.onShutdown();
+        publicationsBySessionId.values().forEach(CloseHelper::quietClose);
+        CloseHelper.quietClose(subscription1);
+        CloseHelper.quietClose(subscription2);
+        CloseHelper.quietClose(aeron);
+        CloseHelper.quietClose(mediaDriver);
+    }
+
+    @Test
+    public void responsesAreCoalescedPerSessionUntilEndOfBatch() {
+
+        final var responses1 = List.<AeronResponse>of(
+                new AccountCreatedAeronResponse(1, 1),
+                new NoFundsAeronResponse(2),
+                new AccountDataAeronResponse(3, 1, 100),
+                new AccountCreatedAeronResponse(4, 2));
+        final var responses2 = List.<AeronResponse>of(new NoFundsAeronResponse(5));
+
+        final var holders = new ArrayList<EventHolder>();
+        for (int i = 0; i < 3; i++) {
+            holders.add(new EventHolder());
+        }
+        add(holders.get(0), SESSION_ID1, responses1.get(0));
+        add(holders.get(0), SESSION_ID2, responses2.get(0));
+        add(holders.get(1), SESSION_ID1, responses1.get(1));
+        add(holders.get(2), SESSION_ID1, responses1.get(2));
+        add(holders.get(2), SESSION_ID1, responses1.get(3));
+
+        handler.onEvent(holders.get(0), 0, false);
+        handler.onEvent(holders.get(1), 1, false);
+        assertTrue(poll(subscription1, new ArrayList<>()).isEmpty());
+
+        handler.onEvent(holders.get(2), 2, true);
+        final var received1 = new ArrayList<AeronResponse>();
+        assertEquals(List.of(responses1.size()), receive(subscription1, received1, responses1.size()));
+        assertEquals(responses1, received1);
+        final var received2 = new ArrayList<AeronResponse>();
+        assertEquals(List.of(1), receive(subscription2, received2, 1));
+        assertEquals(responses2, received2);
+    }
+
+    @Test
+    public void framesAreLimitedByMaxPayloadLength() {
+
+        final int messageLength = MessageHeaderEncoder.ENCODED_LENGTH + AccountDataEncoder.BLOCK_LENGTH;
+        final int perFrame = publicationsBySessionId.get(SESSION_ID1).maxPayloadLength() / messageLength;
+        final int count = perFrame * 2 + 1;
+
+        final var holder = new EventHolder();
+        final var responses = new ArrayList<AeronResponse>();
+        for (int i = 0; i < count; i++) {
+            final var response = new AccountDataAeronResponse(i, 1, i);
+            responses.add(response);
+            add(holder, SESSION_ID1, response);
+        }
+        handler.onEvent(holder, 0, true);
+
+        final var received = new ArrayList<AeronResponse>();
+        assertEquals(List.of(perFrame, perFrame, 1), receive(subscription1, received, count));
+        assertEquals(responses, received);
+    }
+
+    @Test
+    public void batchResultsAreSplitByMaxPayloadLength() {
+
+        CloseHelper.quietClose(publicationsBySessionId.remove(SESSION_ID1));
+        final var publication = aeron.addExclusivePublication(RESPONSE_URI + "|mtu=256", RESPONSE_STREAM1);
+        publicationsBySessionId.put(SESSION_ID1, publication);
+        final int perFrame = PublisherEventHandler.maxResults(publication.maxPayloadLength());
+        final int count = perFrame * 2 + 1;
+
+        final var results = new ArrayList<AeronResponse>();
+        for (int i = 0; i < count; i++) {
+            results.add(new AccountCreatedAeronResponse(i, i));
+        }
+        final var holder = new EventHolder();
+        add(holder, SESSION_ID1, new BatchResultAeronResponse(results));
+        handler.onEvent(holder, sequence++, true);
+
+        final var received = new ArrayList<AeronResponse>();
+        assertEquals(List.of(1, 1, 1), receive(subscription1, received, 3));
+        assertEquals(List.of(
+                new BatchResultAeronResponse(results.subList(0, perFrame)),
+                new BatchResultAeronResponse(results.subList(perFrame, perFrame * 2)),
+                new BatchResultAeronResponse(results.subList(perFrame * 2, count))), received);
+    }
+
+    @Test
+    public void batchResultsAreCoalescedWithOtherResponses() {
+
+        final var responses = List.of(
+                new AccountDataAeronResponse(1, 1, 100),
+                new BatchResultAeronResponse(List.of(
+                        new AccountCreatedAeronResponse(2, 3),
+                        new AccountTransferDoneAeronResponse(4),
+                        new NoFundsAeronResponse(5),
+                        new InvalidAmountAeronResponse(6),
+                        new NoSuchEntityAeronResponse(7),
+                        new SameAccountAeronResponse(8))),
+                new BatchResultAeronResponse(List.of()),
+                new NoFundsAeronResponse(9));
+
+        final var holder = new EventHolder();
+        responses.forEach(response -> add(holder, SESSION_ID1, response));
+        handler.onEvent(holder, sequence++, true);
+
+        final var received = new ArrayList<AeronResponse>();
+        assertEquals(List.of(responses.size()), receive(subscription1, received, responses.size()));
+        assertEquals(responses, received);
+    }
+
+    @Test
+    public void steadyStatePublishingDoesNotAllocate() {
+
+        final var results = new ArrayList<AeronResponse>();
+        for (int i = 0; i < 10; i++) {
+            results.add(new AccountCreatedAeronResponse(i, i));
+        }
+        final var holder = new EventHolder();
+        add(holder, SESSION_ID1, new AccountCreatedAeronResponse(1, 1));
+        add(holder, SESSION_ID2, new NoFundsAeronResponse(2));
+        add(holder, SESSION_ID1, new AccountDataAeronResponse(3, 1, 100));
+        // longer than lengths which boxed integers are cached for
+        add(holder, SESSION_ID2, new BatchResultAeronResponse(results));
+
+        final FragmentHandler drain = (buffer, offset, length, header) -> {
+        };
+        final var publication1 = publicationsBySessionId.get(SESSION_ID1);
+        final var publication2 = publicationsBySessionId.get(SESSION_ID2);
+        assertEquals("Bytes allocated by publisher", 0, Allocations.steadyStateAllocatedBytes(i -> {
+            // stay clear of back-pressure, spilling is not the steady state
+            while (publication1.availableWindow() < FRAME_LENGTH || publication2.availableWindow() < FRAME_LENGTH) {
+                subscription1.poll(drain, 10);
+                subscription2.poll(drain, 10);
+                Thread.yield();
+            }
+            handler.onEvent(holder, sequence++, true);
+        }));
+        assertEquals(0, counters.laggingSessions.get());
+    }
+
+    @Test
+    public void responsesToUnknownSessionsAreDropped() {
+
+        final var holder = new EventHolder();
+        add(holder, 789, new NoFundsAeronResponse(1));
+        add(holder, SESSION_ID1, new NoFundsAeronResponse(2));
+        handler.onEvent(holder, 0, true);
+
+        final var received = new ArrayList<AeronResponse>();
+        assertEquals(List.of(1), receive(subscription1, received, 1));
+        assertEquals(List.of(new NoFundsAeronResponse(2)), received);
+    }
+
+    @Test
+    public void slowSessionDoesNotStallOthers() {
+
+        flood(SESSION_ID1);
+        assertEquals(1, counters.laggingSessions.get());
+
+        send(SESSION_ID2, new NoFundsAeronResponse(1));
+        final var received2 = new ArrayList<AeronResponse>();
+        receive(subscription2, received2, 1);
+        assertEquals(List.of(new NoFundsAeronResponse(1)), received2);
+
+        // spilled responses are sent at the end of every batch, e.g. ticks, once the client catches up
+        final var received1 = new ArrayList<AeronResponse>();
+        final long deadline = System.nanoTime() + TIMEOUT_NANOS;
+        while (received1.size() < FLOOD_BATCHES * FLOOD_BATCH_SIZE) {
+            assertTrue(System.nanoTime() < deadline);
+            poll(subscription1, received1);
+            handler.onEvent(new EventHolder(), sequence++, true);
+        }
+        for (int i = 0; i < received1.size(); i++) {
+            assertEquals(new NoFundsAeronResponse(i), received1.get(i));
+        }
+        handler.onEvent(new EventHolder(), sequence++, true);
+        assertEquals(0, counters.laggingSessions.get());
+        assertEquals(0, counters.droppedResponses.get());
+    }
+
+    @Test
+    public void slowSessionIsDisconnectedWhenSpillAreaOverflows() {
+
+        handler = new PublisherEventHandler(publicationsBySessionId, disconnects, counters,
+                SlowConsumerPolicy.DISCONNECT, 1024, TimeUnit.SECONDS.toNanos(60), 0, 1);
+        final var publication = publicationsBySessionId.get(SESSION_ID1);
+
+        flood(SESSION_ID1);
+        // the publication is closed by the session registry owning it
+        assertEquals(new SessionRegistry.Disconnect(SESSION_ID1, publication), disconnects.poll());
+        assertNull(disconnects.poll());
+        assertFalse(publication.isClosed());
+        assertEquals(1, counters.disconnectedSessions.get());
+        final long dropped = counters.droppedResponses.get();
+        assertTrue(dropped > 0);
+        assertEquals(0, counters.laggingSessions.get());
+
+        // responses are dropped until the registry handles the request
+        send(SESSION_ID1, new NoFundsAeronResponse(1));
+        assertEquals(dropped + 1, counters.droppedResponses.get());
+        assertEquals(0, counters.laggingSessions.get());
+
+        send(SESSION_ID2, new NoFundsAeronResponse(1));
+        assertEquals(List.of(1), receive(subscription2, new ArrayList<>(), 1));
+    }
+
+    @Test
+    public void spilledResponsesAreDroppedWhenLaggingTooLong() throws InterruptedException {
+
+        handler = new PublisherEventHandler(publicationsBySessionId, disconnects, counters, SlowConsumerPolicy.DROP,
+                1024 * 1024, TimeUnit.MILLISECONDS.toNanos(100), 0, 1);
+
+        flood(SESSION_ID1);
+        Thread.sleep(200);
+        handler.onEvent(new EventHolder(), sequence++, true);
+        final long dropped = counters.droppedResponses.get();
+        assertTrue(dropped > 0);
+        assertEquals(0, counters.disconnectedSessions.get());
+
+        // the session is still connected, it gets whatever has not been dropped
+        final var received = new ArrayList<AeronResponse>();
+        receive(subscription1, received, FLOOD_BATCHES * FLOOD_BATCH_SIZE - (int) dropped);
+        send(SESSION_ID1, new NoFundsAeronResponse(-1));
+        final long deadline = System.nanoTime() + TIMEOUT_NANOS;
+        while (received.size() < FLOOD_BATCHES * FLOOD_BATCH_SIZE - dropped + 1) {
+            assertTrue(System.nanoTime() < deadline);
+            poll(subscription1, received);
+            handler.onEvent(new EventHolder(), sequence++, true);
+        }
+        assertEquals(new NoFundsAeronResponse(-1), received.getLast());
+        assertEquals(dropped, counters.droppedResponses.get());
+    }
+
+    @Test
+    public void sessionsArePartitionedBetweenPublishers() {
+
+        final int partition1 = PublisherEventHandler.partition(SESSION_ID1, 2);
+        final int partition2 = PublisherEventHandler.partition(SESSION_ID2, 2);
+        assertNotEquals(partition1, partition2);
+        handler = new PublisherEventHandler(publicationsBySessionId, disconnects, counters,
+                SlowConsumerPolicy.MARK_LAGGING, 1024 * 1024, TimeUnit.SECONDS.toNanos(60), partition2, 2);
+        final var other = new PublisherEventHandler(publicationsBySessionId, disconnects,
+                new OutboundCounters(aeron, -1, 1), SlowConsumerPolicy.MARK_LAGGING, 1024 * 1024,
+                TimeUnit.SECONDS.toNanos(60), partition1, 2);
+
+        final var holder = new EventHolder();
+        add(holder, SESSION_ID1, new NoFundsAeronResponse(1));
+        add(holder, SESSION_ID2, new NoFundsAeronResponse(2));
+        handler.onEvent(holder, 0, true);
+        final var received2 = new ArrayList<AeronResponse>();
+        assertEquals(List.of(1), receive(subscription2, received2, 1));
+        assertTrue(poll(subscription1, new ArrayList<>()).isEmpty());
+
+        other.onEvent(holder, 0, true);
+        final var received1 = new ArrayList<AeronResponse>();
+        assertEquals(List.of(1), receive(subscription1, received1, 1));
+        assertEquals(List.of(new NoFundsAeronResponse(1)), received1);
+        assertEquals(List.of(new NoFundsAeronResponse(2)), received2);
+        other.onShutdown();
+    }
+
+    /**
+     * Sends lots of responses to the session, which does not poll them meanwhile.
+     */
+    private void flood(int sessionId) {
+        for (int i = 0; i < FLOOD_BATCHES; i++) {
+            final var holder = new EventHolder();
+            for (int j = 0; j < FLOOD_BATCH_SIZE; j++) {
+                add(holder, sessionId, new NoFundsAeronResponse(i * FLOOD_BATCH_SIZE + j));
+            }
+            handler.onEvent(holder, sequence++, true);
+        }
+    }
+
+    private void send(int sessionId, @NotNull AeronResponse response) {
+        final var holder = new EventHolder();
+        add(holder, sessionId, response);
+        handler.onEvent(holder, sequence++, true);
+    }
+
+    /**
+     * Fills the next response slot of the holder, the way {@link Publisher} does.
+     */
+    private static void add(@NotNull EventHolder holder, int sessionId, @NotNull AeronResponse response) {
+        final var message = holder.messages.add();
+        switch (response) {
+            case AccountCreatedAeronResponse r ->
+                    message.set(sessionId, AccountCreatedEncoder.TEMPLATE_ID, r.trackingId()).entityId = r.accountId();
+            case AccountTransferDoneAeronResponse r ->
+                    message.set(sessionId, AccountTransferDoneEncoder.TEMPLATE_ID, r.trackingId());
+            case NoFundsAeronResponse r -> message.set(sessionId, NoFundsEncoder.TEMPLATE_ID, r.trackingId());
+            case InvalidAmountAeronResponse r ->
+                    message.set(sessionId, InvalidAmountEncoder.TEMPLATE_ID, r.trackingId());
+            case NoSuchEntityAeronResponse r -> message.set(sessionId, NoSuchEntityEncoder.TEMPLATE_ID, r.trackingId());
+            case SameAccountAeronResponse r -> message.set(sessionId, SameAccountEncoder.TEMPLATE_ID, r.trackingId());
+            case AccountDataAeronResponse r -> {
+                message.set(sessionId, AccountDataEncoder.TEMPLATE_ID, r.trackingId());
+                message.amount = r.availableAmount();
+                message.reservedAmount = r.reservedAmount();
+            }
+            case BatchResultAeronResponse r -> {
+                message.batchResult(sessionId);
+                for (final var result : r.results()) {
+                    switch (result) {
+                        case AccountCreatedAeronResponse i ->
+                                message.addResult(i.trackingId(), BatchResultCode.ACCOUNT_CREATED, i.accountId());
+                        case AccountTransferDoneAeronResponse i ->
+                                message.addResult(i.trackingId(), BatchResultCode.ACCOUNT_TRANSFER_DONE, 0);
+                        case NoFundsAeronResponse i -> message.addResult(i.trackingId(), BatchResultCode.NO_FUNDS, 0);
+                        case InvalidAmountAeronResponse i ->
+                                message.addResult(i.trackingId(), BatchResultCode.INVALID_AMOUNT, 0);
+                        case NoSuchEntityAeronResponse i ->
+                                message.addResult(i.trackingId(), BatchResultCode.NO_SUCH_ENTITY, 0);
+                        case SameAccountAeronResponse i ->
+                                message.addResult(i.trackingId(), BatchResultCode.SAME_ACCOUNT, 0);
+                        default -> throw new IllegalArgumentException("Not a batch result: " + result);
+                    }
+                }
+            }
+            default -> throw new IllegalArgumentException("Unexpected response: " + response);
+        }
+    }
+
+    @NotNull
+    private Publication connect(int streamId) {
+        final var publication = aeron.addExclusivePublication(RESPONSE_URI, streamId);
+        final long deadline = System.nanoTime() + TIMEOUT_NANOS;
+        while (!publication.isConnected()) {
+            assertTrue(System.nanoTime() < deadline);
+            Thread.onSpinWait();
+        }
+        return publication;
+    }
+
+    /**
+     * @return Numbers of messages per fragment.
+     */
+    @NotNull
+    private List<Integer> receive(@NotNull Subscription subscription, @NotNull List<AeronResponse> received,
+                                  int count) {
+        final var fragments = new ArrayList<Integer>();
+        final long deadline = System.nanoTime() + TIMEOUT_NANOS;
+        while (received.size() < count) {
+            assertTrue(System.nanoTime() < deadline);
+            fragments.addAll(poll(subscription, received));
+            // as ticks do, in case the publication has not seen the progress of the subscriber yet
+            handler.onEvent(new EventHolder(), sequence++, true);
+        }
+        return fragments;
+    }
+
+    @NotNull
+    private List<Integer> poll(@NotNull Subscription subscription, @NotNull List<AeronResponse> received) {
+        final var queue = new LinkedBlockingQueue<AeronResponse>();
+        final var adapter = new ClientAdapter(queue);
+        final var fragments = new ArrayList<Integer>();
+        subscription.poll((buffer, offset, length, header) -> {
+            adapter.onFragment(buffer, offset, length, header);
+            fragments.add(queue.size());
+            queue.drainTo(received);
+        }, 10);
+        return fragments;
+    }
+}
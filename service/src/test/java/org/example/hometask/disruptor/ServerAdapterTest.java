@@ -0,0 +1,394 @@
+package org.example.hometask.disruptor;
+
+import com.lmax.disruptor.RingBuffer;
+import com.lmax.disruptor.Sequence;
+import io.aeron.Aeron;
+import io.aeron.CommonContext;
+import io.aeron.Publication;
+import io.aeron.driver.MediaDriver;
+import io.aeron.logbuffer.Header;
+import io.aeron.protocol.DataHeaderFlyweight;
+import org.agrona.CloseHelper;
+import org.agrona.ExpandableArrayBuffer;
+import org.agrona.MutableDirectBuffer;
+import org.agrona.concurrent.ManyToOneConcurrentLinkedQueue;
+import org.agrona.concurrent.UnsafeBuffer;
+import org.example.hometask.api.AccountTransferBatchDecoder;
+import org.example.hometask.api.AccountTransferBatchEncoder;
+import org.example.hometask.api.AccountTransferDecoder;
+import org.example.hometask.api.AccountTransferEncoder;
+import org.example.hometask.api.AccountWithdrawEncoder;
+import org.example.hometask.api.CreateAccountDecoder;
+import org.example.hometask.api.CreateAccountEncoder;
+import org.example.hometask.api.MessageHeaderDecoder;
+import org.example.hometask.api.MessageHeaderEncoder;
+import org.example.hometask.api.QueryAccountEncoder;
+import org.example.hometask.api.QueryWithdrawalEncoder;
+import org.example.hometask.api.RpcConnectRequestEncoder;
+import org.example.hometask.api.ServerBusyDecoder;
+import org.example.hometask.messages.disruptor.InboundAeronFragmentEvent;
+import org.example.hometask.utils.Allocations;
+import org.example.hometask.utils.Amounts;
+import org.jetbrains.annotations.NotNull;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import static io.aeron.driver.ThreadingMode.SHARED;
+import static org.example.hometask.disruptor.BackPressurePolicy.PAUSE;
+import static org.example.hometask.disruptor.BackPressurePolicy.REJECT;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class ServerAdapterTest {
+
+    private static final int SESSION_ID = 123;
+    private static final String RESPONSE_URI = "aeron:ipc";
+    private static final int RESPONSE_STREAM = 1;
+    private static final long TIMEOUT_NANOS = TimeUnit.SECONDS.toNanos(10);
+    private static final int RING_BUFFER_SIZE = 16;
+
+    private final MessageHeaderEncoder headerEncoder = new MessageHeaderEncoder();
+    private final Header header = new Header(0, 0);
+    private final ExpandableArrayBuffer[] fragments = new ExpandableArrayBuffer[5];
+    private final int[] lengths = new int[fragments.length];
+
+    private MediaDriver mediaDriver;
+    private Aeron aeron;
+    private IngressCounters counters;
+    private RingBuffer<EventHolder> ringBuffer;
+    private ServerAdapter serverAdapter;
+
+    @Before
+    public void setUp() {
+        mediaDriver = MediaDriver.launchEmbedded(
+                new MediaDriver.Context()
+                        .aeronDirectoryName(CommonContext.getAeronDirectoryName() + "-adapter-test")
+                        .dirDeleteOnStart(true)
+                        .dirDeleteOnShutdown(true)
+                        .threadingMode(SHARED));
+        aeron = Aeron.connect(new Aeron.Context().aeronDirectoryName(mediaDriver.aeronDirectoryName()));
+        counters = new IngressCounters(aeron);
+
+        // no gating sequences, so the producer simply wraps around the ring
+        ringBuffer = RingBuffer.createSingleProducer(EventHolder::new, RING_BUFFER_SIZE);
+        serverAdapter = new ServerAdapter(List.of(ringBuffer), sessions(new ConcurrentHashMap<>()), PAUSE, counters);
+
+        final var headerBuffer = new UnsafeBuffer(new byte[DataHeaderFlyweight.HEADER_LENGTH]);
+        headerBuffer.putInt(DataHeaderFlyweight.SESSION_ID_FIELD_OFFSET, SESSION_ID, ByteOrder.LITTLE_ENDIAN);
+        header.buffer(headerBuffer);
+        header.offset(0);
+
+        for (int i = 0; i < fragments.length; i++) {
+            fragments[i] = new ExpandableArrayBuffer(128);
+        }
+        lengths[0] = encodeCreateAccount(fragments[0], 1);
+        lengths[1] = encodeQueryAccount(fragments[1]);
+        lengths[2] = encodeAccountTransfer(fragments[2]);
+        lengths[3] = encodeAccountWithdraw(fragments[3]);
+        lengths[4] = encodeQueryWithdrawal(fragments[4]);
+    }
+
+    @After
+    public void tearDown() {
+        CloseHelper.quietClose(counters);
+        CloseHelper.quietClose(aeron);
+        CloseHelper.quietClose(mediaDriver);
+    }
+
+    @Test
+    public void fragmentIsCopiedIntoSlot() {
+
+        serverAdapter.onFragment(fragments[0], 0, lengths[0], header);
+        serverAdapter.flush();
+
+        final var holder = ringBuffer.get(ringBuffer.getCursor());
+        assertSame(holder.inboundFragment, holder.event);
+        assertEquals(SESSION_ID, holder.inboundFragment.sessionId());
+        assertEquals(lengths[0], holder.inboundFragment.length());
+
+        // the slot must not refer to the term buffer which is reused by Aeron once the fragment is handled
+        encodeCreateAccount(fragments[0], 2);
+
+        final var headerDecoder = new MessageHeaderDecoder();
+        final var decoder = new CreateAccountDecoder();
+        headerDecoder.wrap(holder.inboundFragment.buffer(), 0);
+        decoder.wrap(holder.inboundFragment.buffer(), headerDecoder.encodedLength(), headerDecoder.blockLength(),
+                headerDecoder.version());
+        assertEquals(1, decoder.trackingId());
+        assertEquals(12_345_000_000L, decoder.initialAmount().mantissa());
+        assertEquals(Amounts.SCALE, decoder.initialAmount().exponent());
+    }
+
+    @Test
+    public void unrepresentableAmountIsInvalidated() {
+
+        assertEquals(Amounts.INVALID, transferAmount(1, (byte) (Amounts.SCALE + 1)));
+        assertEquals(Amounts.INVALID, transferAmount(Long.MAX_VALUE / 10, (byte) (Amounts.SCALE - 2)));
+        assertEquals(Amounts.INVALID, transferAmount(-1, (byte) -20));
+        assertEquals(10, transferAmount(100, (byte) (Amounts.SCALE + 1)));
+        assertEquals(0, transferAmount(0, Byte.MIN_VALUE));
+    }
+
+    private long transferAmount(long mantissa, byte exponent) {
+
+        final var fragment = new ExpandableArrayBuffer(128);
+        final var encoder = new AccountTransferEncoder().wrapAndApplyHeader(fragment, 0, headerEncoder);
+        encoder.trackingId(3).fromAccountId(1).toAccountId(2);
+        encoder.amount().mantissa(mantissa).exponent(exponent);
+        serverAdapter.onFragment(fragment, 0, headerEncoder.encodedLength() + encoder.encodedLength(), header);
+        serverAdapter.flush();
+
+        final var buffer = ringBuffer.get(ringBuffer.getCursor()).inboundFragment.buffer();
+        final var headerDecoder = new MessageHeaderDecoder();
+        final var decoder = new AccountTransferDecoder();
+        headerDecoder.wrap(buffer, 0);
+        decoder.wrap(buffer, headerDecoder.encodedLength(), headerDecoder.blockLength(), headerDecoder.version());
+        assertEquals(Amounts.SCALE, decoder.amount().exponent());
+        return decoder.amount().mantissa();
+    }
+
+    @Test
+    public void claimedSlotsArePublishedAsSingleRange() {
+
+        final long cursor = ringBuffer.getCursor();
+        for (int i = 0; i < fragments.length; i++) {
+            serverAdapter.onFragment(fragments[i], 0, lengths[i], header);
+        }
+        assertEquals(cursor, ringBuffer.getCursor());
+
+        serverAdapter.flush();
+        assertEquals(cursor + fragments.length, ringBuffer.getCursor());
+
+        serverAdapter.flush();
+        assertEquals(cursor + fragments.length, ringBuffer.getCursor());
+    }
+
+    @Test
+    public void requestsAreRoutedToOwningShards() {
+
+        final var ringBuffer0 = RingBuffer.createSingleProducer(EventHolder::new, RING_BUFFER_SIZE);
+        final var ringBuffer1 = RingBuffer.createSingleProducer(EventHolder::new, RING_BUFFER_SIZE);
+        final var adapter = new ServerAdapter(List.of(ringBuffer0, ringBuffer1), sessions(new ConcurrentHashMap<>()),
+                PAUSE, counters);
+
+        // new accounts are spread round-robin, everything else concerns account 1 or withdrawal 1 of shard 0
+        adapter.onFragment(fragments[0], 0, lengths[0], header);
+        adapter.onFragment(fragments[0], 0, lengths[0], header);
+        for (int i = 1; i < fragments.length; i++) {
+            adapter.onFragment(fragments[i], 0, lengths[i], header);
+        }
+        final var fragment = new ExpandableArrayBuffer(128);
+        final var encoder = new QueryAccountEncoder().wrapAndApplyHeader(fragment, 0, headerEncoder);
+        encoder.trackingId(6).accountId(4);
+        adapter.onFragment(fragment, 0, headerEncoder.encodedLength() + encoder.encodedLength(), header);
+        adapter.flush();
+
+        assertEquals(fragments.length - 1, ringBuffer0.getCursor());
+        assertEquals(1, ringBuffer1.getCursor());
+    }
+
+    @Test
+    public void transferBatchIsSplitBetweenShards() {
+
+        final var ringBuffer0 = RingBuffer.createSingleProducer(EventHolder::new, RING_BUFFER_SIZE);
+        final var ringBuffer1 = RingBuffer.createSingleProducer(EventHolder::new, RING_BUFFER_SIZE);
+        final var adapter = new ServerAdapter(List.of(ringBuffer0, ringBuffer1), sessions(new ConcurrentHashMap<>()),
+                PAUSE, counters);
+
+        // accounts 1 and 3 belong to shard 0, account 2 to shard 1
+        final var fragment = new ExpandableArrayBuffer(128);
+        adapter.onFragment(fragment, 0, encodeAccountTransferBatch(fragment, 1, 2, 3), header);
+        adapter.flush();
+        assertEquals(List.of(11L, 13L), transferBatchTrackingIds(ringBuffer0.get(0).inboundFragment));
+        assertEquals(List.of(12L), transferBatchTrackingIds(ringBuffer1.get(0).inboundFragment));
+
+        // a batch of a single shard is copied as is
+        final int length = encodeAccountTransferBatch(fragment, 1, 3);
+        adapter.onFragment(fragment, 0, length, header);
+        adapter.flush();
+        assertEquals(1, ringBuffer0.getCursor());
+        assertEquals(0, ringBuffer1.getCursor());
+        assertEquals(length, ringBuffer0.get(1).inboundFragment.length());
+        assertEquals(List.of(11L, 13L), transferBatchTrackingIds(ringBuffer0.get(1).inboundFragment));
+    }
+
+    @Test
+    public void transferBatchIsRejectedAsWhole() {
+
+        final var ringBuffer0 = RingBuffer.createSingleProducer(EventHolder::new, RING_BUFFER_SIZE);
+        final var ringBuffer1 = RingBuffer.createSingleProducer(EventHolder::new, RING_BUFFER_SIZE);
+        ringBuffer1.addGatingSequences(new Sequence());
+        final var adapter = new ServerAdapter(List.of(ringBuffer0, ringBuffer1), sessions(new ConcurrentHashMap<>()),
+                REJECT, counters);
+        for (int i = 0; i < RING_BUFFER_SIZE; i++) {
+            adapter.onFragment(fragments[1], 0, lengths[1], header);
+        }
+        final var queryFragment = new ExpandableArrayBuffer(128);
+        final var encoder = new QueryAccountEncoder().wrapAndApplyHeader(queryFragment, 0, headerEncoder);
+        encoder.trackingId(6).accountId(2);
+        final int queryLength = headerEncoder.encodedLength() + encoder.encodedLength();
+        for (int i = 0; i < RING_BUFFER_SIZE; i++) {
+            adapter.onFragment(queryFragment, 0, queryLength, header);
+        }
+        adapter.flush();
+
+        // shard 1 is full, so shard 0 does not get its part either
+        final var fragment = new ExpandableArrayBuffer(128);
+        adapter.onFragment(fragment, 0, encodeAccountTransferBatch(fragment, 1, 2), header);
+        adapter.flush();
+        assertEquals(RING_BUFFER_SIZE - 1, ringBuffer0.getCursor());
+        assertEquals(RING_BUFFER_SIZE - 1, ringBuffer1.getCursor());
+        assertEquals(1, counters.rejectedRequests.get());
+        // every item gets a busy response, which is dropped since the session is unknown
+        assertEquals(2, counters.droppedBusyResponses.get());
+    }
+
+    @NotNull
+    private List<Long> transferBatchTrackingIds(@NotNull InboundAeronFragmentEvent event) {
+        final var headerDecoder = new MessageHeaderDecoder().wrap(event.buffer(), 0);
+        final var decoder = new AccountTransferBatchDecoder().wrap(event.buffer(), headerDecoder.encodedLength(),
+                headerDecoder.blockLength(), headerDecoder.version());
+        final var trackingIds = new ArrayList<Long>();
+        for (final var transfer : decoder.transfers()) {
+            trackingIds.add(transfer.trackingId());
+            assertEquals(Amounts.SCALE, transfer.amount().exponent());
+            assertEquals(transfer.fromAccountId() * 100_000_000L, transfer.amount().mantissa());
+        }
+        assertEquals(headerDecoder.encodedLength() + decoder.encodedLength(), event.length());
+        return trackingIds;
+    }
+
+    @Test
+    public void requestIsRejectedWhenRingBufferIsFull() {
+
+        final var ringBuffer = RingBuffer.createSingleProducer(EventHolder::new, RING_BUFFER_SIZE);
+        // a consumer which never makes any progress
+        ringBuffer.addGatingSequences(new Sequence());
+        final var publicationsBySessionId = new ConcurrentHashMap<Integer, Publication>();
+        final var sessions = sessions(publicationsBySessionId);
+        final var adapter = new ServerAdapter(List.of(ringBuffer), sessions, REJECT, counters);
+
+        try (var subscription = aeron.addSubscription(RESPONSE_URI, RESPONSE_STREAM)) {
+
+            final var connectFragment = new ExpandableArrayBuffer(128);
+            adapter.onFragment(connectFragment, 0, encodeConnectRequest(connectFragment), header);
+            final long deadline = System.nanoTime() + TIMEOUT_NANOS;
+            // the publication is added asynchronously
+            while (!publicationsBySessionId.containsKey(SESSION_ID)) {
+                assertTrue(System.nanoTime() < deadline);
+                sessions.doWork(System.nanoTime());
+                Thread.onSpinWait();
+            }
+            final var publication = publicationsBySessionId.get(SESSION_ID);
+            // the busy response is offered once, so the publication must be able to take it
+            while (!publication.isConnected() || publication.availableWindow() <= 0) {
+                assertTrue(System.nanoTime() < deadline);
+                Thread.onSpinWait();
+            }
+
+            for (int i = 0; i < RING_BUFFER_SIZE; i++) {
+                adapter.onFragment(fragments[1], 0, lengths[1], header);
+            }
+            adapter.onFragment(fragments[0], 0, lengths[0], header);
+            adapter.flush();
+
+            assertEquals(RING_BUFFER_SIZE - 1, ringBuffer.getCursor());
+            assertEquals(1, counters.rejectedRequests.get());
+            assertEquals(0, counters.droppedBusyResponses.get());
+
+            final var trackingIds = new long[1];
+            final var headerDecoder = new MessageHeaderDecoder();
+            final var serverBusyDecoder = new ServerBusyDecoder();
+            while (subscription.poll((buffer, offset, length, header) -> {
+                headerDecoder.wrap(buffer, offset);
+                assertEquals(ServerBusyDecoder.TEMPLATE_ID, headerDecoder.templateId());
+                serverBusyDecoder.wrap(buffer, offset + headerDecoder.encodedLength(), headerDecoder.blockLength(),
+                        headerDecoder.version());
+                trackingIds[0] = serverBusyDecoder.trackingId();
+            }, 1) == 0) {
+                assertTrue(System.nanoTime() < deadline);
+                Thread.onSpinWait();
+            }
+            assertEquals(1, trackingIds[0]);
+        }
+    }
+
+    @Test
+    public void steadyStateIngressDoesNotAllocate() {
+        assertEquals("Bytes allocated by ingress", 0, Allocations.steadyStateAllocatedBytes(i -> {
+            final int index = i % fragments.length;
+            serverAdapter.onFragment(fragments[index], 0, lengths[index], header);
+            if (index == fragments.length - 1) {
+                serverAdapter.flush();
+            }
+        }));
+    }
+
+    private int encodeConnectRequest(@NotNull MutableDirectBuffer buffer) {
+        final var encoder = new RpcConnectRequestEncoder().wrapAndApplyHeader(buffer, 0, headerEncoder);
+        encoder.returnConnectStream(RESPONSE_STREAM);
+        encoder.returnConnectUri(RESPONSE_URI);
+        return headerEncoder.encodedLength() + encoder.encodedLength();
+    }
+
+    @NotNull
+    private SessionRegistry sessions(@NotNull ConcurrentHashMap<Integer, Publication> publicationsBySessionId) {
+        return new SessionRegistry(aeron, publicationsBySessionId, counters, new ManyToOneConcurrentLinkedQueue<>(),
+                true, 16, 0, TIMEOUT_NANOS);
+    }
+
+    private int encodeCreateAccount(@NotNull MutableDirectBuffer buffer, long trackingId) {
+        final var encoder = new CreateAccountEncoder().wrapAndApplyHeader(buffer, 0, headerEncoder);
+        encoder.trackingId(trackingId);
+        encoder.initialAmount().mantissa(12345).exponent((byte) 2);
+        return headerEncoder.encodedLength() + encoder.encodedLength();
+    }
+
+    /**
+     * Encodes transfers from the given accounts, of their IDs, with tracking IDs 10 greater.
+     */
+    private int encodeAccountTransferBatch(@NotNull MutableDirectBuffer buffer, long... fromAccountIds) {
+        final var encoder = new AccountTransferBatchEncoder().wrapAndApplyHeader(buffer, 0, headerEncoder);
+        final var transfers = encoder.transfersCount(fromAccountIds.length);
+        for (final long fromAccountId : fromAccountIds) {
+            transfers.next().trackingId(fromAccountId + 10).fromAccountId(fromAccountId).toAccountId(4);
+            transfers.amount().mantissa(fromAccountId).exponent((byte) 0);
+        }
+        return headerEncoder.encodedLength() + encoder.encodedLength();
+    }
+
+    private int encodeQueryAccount(@NotNull MutableDirectBuffer buffer) {
+        final var encoder = new QueryAccountEncoder().wrapAndApplyHeader(buffer, 0, headerEncoder);
+        encoder.trackingId(2).accountId(1);
+        return headerEncoder.encodedLength() + encoder.encodedLength();
+    }
+
+    private int encodeAccountTransfer(@NotNull MutableDirectBuffer buffer) {
+        final var encoder = new AccountTransferEncoder().wrapAndApplyHeader(buffer, 0, headerEncoder);
+        encoder.trackingId(3).fromAccountId(1).toAccountId(2);
+        encoder.amount().mantissa(1).exponent((byte) 0);
+        return headerEncoder.encodedLength() + encoder.encodedLength();
+    }
+
+    private int encodeAccountWithdraw(@NotNull MutableDirectBuffer buffer) {
+        final var encoder = new AccountWithdrawEncoder().wrapAndApplyHeader(buffer, 0, headerEncoder);
+        encoder.trackingId(4).fromAccountId(1);
+        encoder.amount().mantissa(1).exponent((byte) 0);
+        encoder.toAddress("foobar");
+        return headerEncoder.encodedLength() + encoder.encodedLength();
+    }
+
+    private int encodeQueryWithdrawal(@NotNull MutableDirectBuffer buffer) {
+        final var encoder = new QueryWithdrawalEncoder().wrapAndApplyHeader(buffer, 0, headerEncoder);
+        encoder.trackingId(5).withdrawalId(1);
+        return headerEncoder.encodedLength() + encoder.encodedLength();
+    }
+}
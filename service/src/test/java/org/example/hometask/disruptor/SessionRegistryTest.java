@@ -0,0 +1,262 @@
+package org.example.hometask.disruptor;
+
+import io.aeron.Aeron;
+import io.aeron.CommonContext;
+import io.aeron.ExclusivePublication;
+import io.aeron.Publication;
+import io.aeron.Subscription;
+import io.aeron.driver.MediaDriver;
+import org.agrona.CloseHelper;
+import org.agrona.concurrent.ManyToOneConcurrentLinkedQueue;
+import org.agrona.concurrent.UnsafeBuffer;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static io.aeron.driver.ThreadingMode.SHARED;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class SessionRegistryTest {
+
+    private static final String URI = "aeron:ipc";
+    private static final String RESPONSE_URI = "aeron:ipc?term-length=64k";
+    private static final int REQUEST_STREAM = 1;
+    private static final int RESPONSE_STREAM = 2;
+    private static final long TIMEOUT_NANOS = SECONDS.toNanos(10);
+    private static final long IDLE_TIMEOUT_NANOS = SECONDS.toNanos(30);
+
+    private final ConcurrentHashMap<Integer, Publication> publicationsBySessionId = new ConcurrentHashMap<>();
+    private final AtomicInteger availableImages = new AtomicInteger();
+    private final ManyToOneConcurrentLinkedQueue<SessionRegistry.Disconnect> disconnects =
+            new ManyToOneConcurrentLinkedQueue<>();
+
+    private MediaDriver mediaDriver;
+    private Aeron aeron;
+    private IngressCounters counters;
+    private SessionRegistry sessions;
+    private Subscription subscription;
+    private long nowNanos = SECONDS.toNanos(1000);
+
+    @Before
+    public void setUp() {
+        mediaDriver = MediaDriver.launchEmbedded(
+                new MediaDriver.Context()
+                        .aeronDirectoryName(CommonContext.getAeronDirectoryName() + "-sessions-test")
+                        .dirDeleteOnStart(true)
+                        .dirDeleteOnShutdown(true)
+                        .publicationLingerTimeoutNs(MILLISECONDS.toNanos(10))
+                        .threadingMode(SHARED));
+        aeron = Aeron.connect(new Aeron.Context().aeronDirectoryName(mediaDriver.aeronDirectoryName()));
+        counters = new IngressCounters(aeron);
+        sessions = new SessionRegistry(aeron, publicationsBySessionId, counters, disconnects, false, 2,
+                IDLE_TIMEOUT_NANOS, TIMEOUT_NANOS);
+        subscription = aeron.addSubscription(URI, REQUEST_STREAM, image -> {
+            sessions.onAvailableImage(image);
+            availableImages.incrementAndGet();
+        }, sessions::onUnavailableImage);
+    }
+
+    @After
+    public void tearDown() {
+        sessions.close();
+        CloseHelper.quietClose(subscription);
+        CloseHelper.quietClose(counters);
+        CloseHelper.quietClose(aeron);
+        CloseHelper.quietClose(mediaDriver);
+    }
+
+    @Test
+    public void publicationIsClosedWhenClientGoesAway() {
+
+        final var client = connectClient();
+        final var publication = publicationsBySessionId.get(client.sessionId());
+        assertNotNull(publication);
+        assertEquals(1, counters.connectedSessions.get());
+
+        client.close();
+        final long deadline = System.nanoTime() + TIMEOUT_NANOS;
+        while (publicationsBySessionId.containsKey(client.sessionId())) {
+            assertTrue(System.nanoTime() < deadline);
+            sessions.doWork(nowNanos);
+            Thread.onSpinWait();
+        }
+        assertTrue(publication.isClosed());
+        assertEquals(0, counters.connectedSessions.get());
+    }
+
+    @Test
+    public void idleSessionIsEvicted() {
+
+        final var client = connectClient();
+        final var buffer = new UnsafeBuffer(new byte[8]);
+
+        // the session keeps sending something, so it is not idle
+        for (int i = 0; i < 3; i++) {
+            while (client.offer(buffer) < 0) {
+                Thread.onSpinWait();
+            }
+            while (subscription.poll((b, offset, length, header) -> {
+            }, 1) == 0) {
+                Thread.onSpinWait();
+            }
+            nowNanos += IDLE_TIMEOUT_NANOS / 2 + 1;
+            sessions.doWork(nowNanos);
+            assertNotNull(publicationsBySessionId.get(client.sessionId()));
+        }
+
+        nowNanos += IDLE_TIMEOUT_NANOS / 2 + 1;
+        sessions.doWork(nowNanos);
+        assertNotNull(publicationsBySessionId.get(client.sessionId()));
+        nowNanos += IDLE_TIMEOUT_NANOS / 2 + 1;
+        sessions.doWork(nowNanos);
+        assertNull(publicationsBySessionId.get(client.sessionId()));
+        assertEquals(1, counters.evictedSessions.get());
+        assertEquals(0, counters.connectedSessions.get());
+
+        // it may connect again
+        sessions.connect(client.sessionId(), RESPONSE_URI, RESPONSE_STREAM, nowNanos);
+        awaitConnected(client.sessionId(), null);
+        client.close();
+    }
+
+    @Test
+    public void slowSessionIsDisconnectedOnRequest() {
+
+        final var client = connectClient();
+        final var publication = publicationsBySessionId.get(client.sessionId());
+        disconnects.offer(new SessionRegistry.Disconnect(client.sessionId(), publication));
+        sessions.doWork(nowNanos);
+        assertNull(publicationsBySessionId.get(client.sessionId()));
+        assertTrue(publication.isClosed());
+        assertEquals(0, counters.connectedSessions.get());
+
+        // a request coming after the session has connected again is stale
+        sessions.connect(client.sessionId(), RESPONSE_URI, RESPONSE_STREAM, nowNanos);
+        final var current = awaitConnected(client.sessionId(), null);
+        disconnects.offer(new SessionRegistry.Disconnect(client.sessionId(), publication));
+        sessions.doWork(nowNanos);
+        assertSame(current, publicationsBySessionId.get(client.sessionId()));
+        assertFalse(current.isClosed());
+        assertEquals(1, counters.connectedSessions.get());
+
+        client.close();
+    }
+
+    @Test
+    public void connectRequestsBeyondMaxSessionsAreRefused() {
+
+        final var client1 = connectClient();
+        final var client2 = connectClient();
+        final var client3 = connectClient();
+
+        assertEquals(2, publicationsBySessionId.size());
+        assertNull(publicationsBySessionId.get(client3.sessionId()));
+        assertEquals(1, counters.refusedSessions.get());
+
+        // connected sessions may reconnect, the previous publication serves until the new one is added
+        final var previous = publicationsBySessionId.get(client1.sessionId());
+        sessions.connect(client1.sessionId(), RESPONSE_URI, RESPONSE_STREAM, nowNanos);
+        assertSame(previous, publicationsBySessionId.get(client1.sessionId()));
+        final var current = awaitConnected(client1.sessionId(), previous);
+        assertTrue(previous.isClosed());
+        assertFalse(current.isClosed());
+        assertSame(current, sessions.publication(client1.sessionId()));
+        assertEquals(2, counters.connectedSessions.get());
+
+        CloseHelper.closeAll(client1, client2, client3);
+    }
+
+    @Test
+    public void pendingConnectRequestsCountAsSessions() {
+
+        final var client1 = connectClient();
+        final var client2 = addClient();
+        final var client3 = addClient();
+        sessions.connect(client2.sessionId(), RESPONSE_URI, RESPONSE_STREAM, nowNanos);
+        // the publication of the second session is being added, no room for the third one
+        sessions.connect(client3.sessionId(), RESPONSE_URI, RESPONSE_STREAM, nowNanos);
+        assertEquals(1, counters.refusedSessions.get());
+
+        awaitConnected(client2.sessionId(), null);
+        assertEquals(2, counters.connectedSessions.get());
+        assertNull(publicationsBySessionId.get(client3.sessionId()));
+
+        CloseHelper.closeAll(client1, client2, client3);
+    }
+
+    @Test
+    public void failedConnectRequestIsDropped() {
+
+        final var client1 = addClient();
+        // term length must be a power of two, so the media driver refuses to add the publication
+        sessions.connect(client1.sessionId(), "aeron:ipc?term-length=100000", RESPONSE_STREAM, nowNanos);
+        final long deadline = System.nanoTime() + TIMEOUT_NANOS;
+        while (sessions.doWork(nowNanos) == 0) {
+            assertTrue(System.nanoTime() < deadline);
+            Thread.onSpinWait();
+        }
+        assertNull(publicationsBySessionId.get(client1.sessionId()));
+
+        // the failed request does not take the place of a session
+        final var client2 = connectClient();
+        final var client3 = connectClient();
+        assertEquals(2, publicationsBySessionId.size());
+        assertEquals(0, counters.refusedSessions.get());
+
+        CloseHelper.closeAll(client1, client2, client3);
+    }
+
+    /**
+     * Makes a client connect as it does, by sending a connect request once its image is available.
+     */
+    @NotNull
+    private ExclusivePublication connectClient() {
+        final var client = addClient();
+        final long refused = counters.refusedSessions.get();
+        sessions.connect(client.sessionId(), RESPONSE_URI, RESPONSE_STREAM, nowNanos);
+        if (counters.refusedSessions.get() == refused) {
+            awaitConnected(client.sessionId(), null);
+        }
+        return client;
+    }
+
+    @NotNull
+    private ExclusivePublication addClient() {
+        final int images = availableImages.get();
+        final var client = aeron.addExclusivePublication(URI, REQUEST_STREAM);
+        final long deadline = System.nanoTime() + TIMEOUT_NANOS;
+        while (availableImages.get() == images) {
+            assertTrue(System.nanoTime() < deadline);
+            Thread.onSpinWait();
+        }
+        sessions.doWork(nowNanos);
+        return client;
+    }
+
+    /**
+     * Waits for the publication of the latest connect request of the session to replace the previous one.
+     */
+    @NotNull
+    private Publication awaitConnected(int sessionId, @Nullable Publication previous) {
+        final long deadline = System.nanoTime() + TIMEOUT_NANOS;
+        Publication publication;
+        while ((publication = publicationsBySessionId.get(sessionId)) == null || publication == previous) {
+            assertTrue(System.nanoTime() < deadline);
+            sessions.doWork(nowNanos);
+            Thread.onSpinWait();
+        }
+        return publication;
+    }
+}
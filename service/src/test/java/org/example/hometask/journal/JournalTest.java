@@ -0,0 +1,113 @@
+package org.example.hometask.journal;
+
+import org.agrona.ExpandableArrayBuffer;
+import org.example.hometask.api.CreateAccountEncoder;
+import org.example.hometask.api.MessageHeaderEncoder;
+import org.example.hometask.messages.disruptor.CreateWithdrawalCallFailureEvent;
+import org.example.hometask.messages.disruptor.CreateWithdrawalDuplicationFailureEvent;
+import org.example.hometask.messages.disruptor.CreateWithdrawalSuccessEvent;
+import org.example.hometask.messages.disruptor.Event;
+import org.example.hometask.messages.disruptor.InboundAeronFragmentEvent;
+import org.example.hometask.messages.disruptor.QueryWithdrawalCallFailureEvent;
+import org.example.hometask.messages.disruptor.QueryWithdrawalSuccessEvent;
+import org.example.hometask.messages.disruptor.QueryWithdrawalUnknownIdFailureEvent;
+import org.jetbrains.annotations.NotNull;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+
+import static org.example.hometask.messages.WithdrawalState.COMPLETED;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class JournalTest {
+
+    private static final int SEGMENT_SIZE = 256;
+    private static final int SESSION_ID = 123;
+    private static final UUID UUID1 = new UUID(1, 2);
+    private static final UUID UUID2 = new UUID(3, 4);
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void eventsSurviveRollingAndReopening() throws Exception {
+
+        final var dir = folder.getRoot();
+        final var expected = new ArrayList<String>();
+
+        try (var writer = new JournalWriter(dir, SEGMENT_SIZE, FsyncPolicy.BATCH, 0)) {
+            final var codec = new EventCodec(writer);
+            for (int i = 0; i < 10; i++) {
+                append(codec, fragment(i), expected);
+                append(codec, new CreateWithdrawalSuccessEvent(UUID1), expected);
+                writer.endOfBatch();
+            }
+        }
+        assertTrue(Journal.segments(dir).length > 1);
+
+        final long position;
+        try (var writer = new JournalWriter(dir, SEGMENT_SIZE, FsyncPolicy.NONE, 0)) {
+            final var codec = new EventCodec(writer);
+            position = writer.position();
+            append(codec, new CreateWithdrawalDuplicationFailureEvent(UUID2), expected);
+            append(codec, new QueryWithdrawalSuccessEvent(UUID1, COMPLETED), expected);
+            append(codec, new QueryWithdrawalUnknownIdFailureEvent(UUID2), expected);
+            append(codec, new CreateWithdrawalCallFailureEvent(UUID1), expected);
+            append(codec, new QueryWithdrawalCallFailureEvent(UUID2), expected);
+        }
+
+        final var actual = new ArrayList<String>();
+        final long end = read(dir, 0, actual);
+        assertEquals(expected, actual);
+
+        final var tail = new ArrayList<String>();
+        assertEquals(end, read(dir, position, tail));
+        assertEquals(expected.subList(expected.size() - 5, expected.size()), tail);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void recordLargerThanSegment() {
+        try (var writer = new JournalWriter(folder.getRoot(), SEGMENT_SIZE, FsyncPolicy.NONE, 0)) {
+            writer.claim(EventCodec.CREATE_WITHDRAWAL_SUCCESS, SEGMENT_SIZE);
+        }
+    }
+
+    private static void append(@NotNull EventCodec codec, @NotNull Event event, @NotNull List<String> expected) {
+        codec.encode(event);
+        expected.add(describe(event));
+    }
+
+    private static long read(@NotNull File dir, long position, @NotNull List<String> events) {
+        return JournalReader.read(dir, position,
+                (type, buffer, offset, length) -> events.add(describe(EventCodec.decode(type, buffer, offset, length))));
+    }
+
+    @NotNull
+    private static String describe(@NotNull Event event) {
+        if (event instanceof InboundAeronFragmentEvent fragment) {
+            final var bytes = new byte[fragment.length()];
+            fragment.buffer().getBytes(0, bytes);
+            return fragment + Arrays.toString(bytes);
+        }
+        return event.toString();
+    }
+
+    @NotNull
+    private static InboundAeronFragmentEvent fragment(long trackingId) {
+        final var buffer = new ExpandableArrayBuffer();
+        final var headerEncoder = new MessageHeaderEncoder();
+        final var encoder = new CreateAccountEncoder().wrapAndApplyHeader(buffer, 0, headerEncoder);
+        encoder.trackingId(trackingId);
+        encoder.initialAmount().mantissa(trackingId).exponent((byte) 8);
+        final var event = new InboundAeronFragmentEvent();
+        event.wrap(SESSION_ID, buffer, 0, headerEncoder.encodedLength() + encoder.encodedLength());
+        return event;
+    }
+}
@@ -0,0 +1,43 @@
+package org.example.hometask.state;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class PagedArrayTest {
+
+    private static final int COUNT = 200_000;
+
+    @Test
+    public void sequentialIdsSpanningSeveralPages() {
+        final var array = new PagedArray<Long>();
+        for (long id = 1; id <= COUNT; id++) {
+            array.put(id, id);
+        }
+        assertEquals(COUNT, array.size());
+        for (long id = 1; id <= COUNT; id++) {
+            assertEquals(Long.valueOf(id), array.get(id));
+        }
+    }
+
+    @Test
+    public void unknownIds() {
+        final var array = new PagedArray<String>();
+        assertNull(array.get(1));
+        array.put(1, "foo");
+        assertEquals("foo", array.get(1));
+        assertNull(array.get(0));
+        assertNull(array.get(-1));
+        assertNull(array.get(2));
+        assertNull(array.get(Long.MIN_VALUE));
+        assertNull(array.get(Long.MAX_VALUE));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void nonSequentialId() {
+        final var array = new PagedArray<String>();
+        array.put(1, "foo");
+        array.put(3, "bar");
+    }
+}
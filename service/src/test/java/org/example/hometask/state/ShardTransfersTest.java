@@ -0,0 +1,199 @@
+package org.example.hometask.state;
+
+import org.example.hometask.Controller;
+import org.example.hometask.disruptor.EventContext;
+import org.example.hometask.disruptor.EventHolder;
+import org.example.hometask.disruptor.Publisher;
+import org.example.hometask.messages.disruptor.Event;
+import org.example.hometask.messages.disruptor.InboundAeronMessageEvent;
+import org.example.hometask.messages.disruptor.OutboundShardEventEnvelope;
+import org.example.hometask.messages.disruptor.RecoveryEvent;
+import org.example.hometask.messages.disruptor.ShardTransferEvent;
+import org.example.hometask.messages.disruptor.ShardTransferResultEvent;
+import org.example.hometask.messages.request.AccountTransferAeronRequest;
+import org.example.hometask.messages.request.AeronRequest;
+import org.example.hometask.messages.request.CreateAccountAeronRequest;
+import org.example.hometask.messages.response.AccountCreatedAeronResponse;
+import org.example.hometask.messages.response.AccountTransferDoneAeronResponse;
+import org.example.hometask.messages.response.AeronResponse;
+import org.example.hometask.messages.response.NoFundsAeronResponse;
+import org.example.hometask.messages.response.NoSuchEntityAeronResponse;
+import org.example.hometask.messages.response.OutboundAeronMessageEnvelope;
+import org.jetbrains.annotations.NotNull;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.util.List;
+
+import static java.util.Objects.requireNonNull;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class ShardTransfersTest {
+
+    private static final int SESSION_ID = 123;
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    private final WithdrawalUuids withdrawalUuids = new WithdrawalUuids(WithdrawalUuids.DEFAULT_NAMESPACE);
+    private final Shard shard0 = new Shard(0);
+    private final Shard shard1 = new Shard(1);
+
+    @Before
+    public void setUp() {
+        // accounts 1 and 3 belong to shard 0, accounts 2 and 4 would belong to shard 1
+        shard0.request(new CreateAccountAeronRequest(1, 100));
+        assertEquals(List.of(response(new AccountCreatedAeronResponse(1, 1))), shard0.holder.responses());
+        shard1.request(new CreateAccountAeronRequest(2, 0));
+        assertEquals(List.of(response(new AccountCreatedAeronResponse(2, 2))), shard1.holder.responses());
+    }
+
+    @Test
+    public void transferIsCreditedByAnotherShard() {
+
+        shard0.request(new AccountTransferAeronRequest(3, 1, 2, 30));
+        assertTrue(shard0.holder.messages.isEmpty());
+        assertEquals(List.of(new OutboundShardEventEnvelope(1, new ShardTransferEvent(0, 1, 0, 2, 30))),
+                shard0.holder.shardEvents);
+        assertEquals(70, balance(shard0, 1));
+        assertFalse(shard0.repository.isQuiescent());
+
+        deliver(shard0, shard1);
+        assertEquals(30, balance(shard1, 2));
+        assertEquals(List.of(new OutboundShardEventEnvelope(0, new ShardTransferResultEvent(1, 1, true))),
+                shard1.holder.shardEvents);
+
+        deliver(shard1, shard0);
+        assertEquals(List.of(response(new AccountTransferDoneAeronResponse(3))), shard0.holder.responses());
+        assertTrue(shard0.repository.isQuiescent());
+    }
+
+    @Test
+    public void transferToUnknownAccountIsRefunded() {
+
+        shard0.request(new AccountTransferAeronRequest(3, 1, 4, 30));
+        assertEquals(70, balance(shard0, 1));
+        deliver(shard0, shard1);
+        assertEquals(List.of(new OutboundShardEventEnvelope(0, new ShardTransferResultEvent(1, 1, false))),
+                shard1.holder.shardEvents);
+
+        deliver(shard1, shard0);
+        assertEquals(List.of(response(new NoSuchEntityAeronResponse(3))), shard0.holder.responses());
+        assertEquals(100, balance(shard0, 1));
+    }
+
+    @Test
+    public void sourceAccountIsCheckedFirst() {
+
+        shard0.request(new AccountTransferAeronRequest(3, 1, 4, 300));
+        assertEquals(List.of(response(new NoFundsAeronResponse(3))), shard0.holder.responses());
+        shard0.request(new AccountTransferAeronRequest(4, 3, 2, 1));
+        assertEquals(List.of(response(new NoSuchEntityAeronResponse(4))), shard0.holder.responses());
+        assertTrue(shard0.holder.shardEvents.isEmpty());
+    }
+
+    @Test
+    public void resentTransfersAreAnsweredTheSameWay() throws Exception {
+
+        // results of both transfers are lost, e.g. the process has been restarted
+        shard0.request(new AccountTransferAeronRequest(3, 1, 2, 30));
+        final var credited = shard0.holder.shardEvents.getFirst().event();
+        shard0.request(new AccountTransferAeronRequest(4, 1, 4, 20));
+        final var rejected = shard0.holder.shardEvents.getFirst().event();
+        shard1.process(credited);
+        shard1.process(rejected);
+        assertEquals(30, balance(shard1, 2));
+
+        shard0.process(new RecoveryEvent());
+        assertEquals(2, shard0.holder.shardEvents.size());
+        final var resent = List.copyOf(shard0.holder.shardEvents);
+        deliver(resent.get(0), shard1);
+        assertEquals(List.of(new OutboundShardEventEnvelope(0, new ShardTransferResultEvent(1, 1, true))),
+                shard1.holder.shardEvents);
+        deliver(shard1, shard0);
+        deliver(resent.get(1), shard1);
+        assertEquals(List.of(new OutboundShardEventEnvelope(0, new ShardTransferResultEvent(1, 2, false))),
+                shard1.holder.shardEvents);
+        deliver(shard1, shard0);
+        assertEquals(30, balance(shard1, 2));
+        assertEquals(70, balance(shard0, 1));
+
+        // the rejection is remembered until the next transfer acknowledges it, and it survives snapshots
+        assertEquals(1, shard1.repository.links[0].rejectedSequences.size());
+        final var restored = snapshot(shard1);
+        assertEquals(2, restored.links[0].incomingSequence);
+        assertEquals(1, restored.links[0].rejectedSequences.size());
+        assertEquals(30, requireNonNull(restored.account(2)).getAvailableAmount());
+        assertEquals(4, restored.nextAccountId());
+
+        shard0.request(new AccountTransferAeronRequest(5, 1, 2, 10));
+        assertEquals(new ShardTransferEvent(0, 3, 2, 2, 10), shard0.holder.shardEvents.getFirst().event());
+        deliver(shard0, shard1);
+        assertTrue(shard1.repository.links[0].rejectedSequences.isEmpty());
+    }
+
+    @NotNull
+    private Repository snapshot(@NotNull Shard shard) throws Exception {
+        final var dir = folder.newFolder();
+        final var snapshotter = new Snapshotter(dir, shard.repository, 0, 1, 0);
+        for (int i = 0; i < 10; i++) {
+            snapshotter.onEndOfBatch(4096);
+        }
+        assertNull(shard.repository.snapshotWriter);
+        // waits for the snapshot to be completed
+        snapshotter.close();
+        final var restored = new Repository(withdrawalUuids, shard.repository.shard, shard.repository.shards);
+        assertEquals(4096, SnapshotLoader.load(dir, restored, new Publisher(new EventContext())));
+        return restored;
+    }
+
+    private void deliver(@NotNull Shard from, @NotNull Shard to) {
+        assertEquals(1, from.holder.shardEvents.size());
+        deliver(from.holder.shardEvents.getFirst(), to);
+    }
+
+    private void deliver(@NotNull OutboundShardEventEnvelope envelope, @NotNull Shard to) {
+        assertEquals(to.repository.shard, envelope.shard());
+        to.process(envelope.event());
+    }
+
+    private static long balance(@NotNull Shard shard, long accountId) {
+        return requireNonNull(shard.repository.account(accountId)).getAvailableAmount();
+    }
+
+    @NotNull
+    private static OutboundAeronMessageEnvelope response(@NotNull AeronResponse response) {
+        return new OutboundAeronMessageEnvelope(SESSION_ID, response);
+    }
+
+    private class Shard {
+
+        final EventHolder holder = new EventHolder();
+
+        final Repository repository;
+
+        final Controller controller;
+
+        Shard(int shard) {
+            final var context = new EventContext();
+            context.holder = holder;
+            repository = new Repository(withdrawalUuids, shard, 2);
+            controller = new Controller(new Publisher(context), repository);
+        }
+
+        void request(@NotNull AeronRequest request) {
+            process(new InboundAeronMessageEvent(SESSION_ID, request));
+        }
+
+        void process(@NotNull Event event) {
+            holder.clean();
+            holder.event = event;
+            controller.accept(event);
+        }
+    }
+}
@@ -0,0 +1,170 @@
+package org.example.hometask.state;
+
+import org.example.hometask.Controller;
+import org.example.hometask.disruptor.EventContext;
+import org.example.hometask.disruptor.EventHolder;
+import org.example.hometask.disruptor.Publisher;
+import org.example.hometask.messages.disruptor.CreateWithdrawalSuccessEvent;
+import org.example.hometask.messages.disruptor.Event;
+import org.example.hometask.messages.disruptor.InboundAeronMessageEvent;
+import org.example.hometask.messages.disruptor.QueryWithdrawalSuccessEvent;
+import org.example.hometask.messages.disruptor.RecoveryEvent;
+import org.example.hometask.messages.external.CreateWithdrawalRequest;
+import org.example.hometask.messages.request.AccountTransferAeronRequest;
+import org.example.hometask.messages.request.AccountWithdrawAeronRequest;
+import org.example.hometask.messages.request.AeronRequest;
+import org.example.hometask.messages.request.CreateAccountAeronRequest;
+import org.example.hometask.messages.request.QueryWithdrawalAeronRequest;
+import org.jetbrains.annotations.NotNull;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.util.List;
+import java.util.UUID;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.Objects.requireNonNull;
+import static org.example.hometask.messages.WithdrawalState.COMPLETED;
+import static org.example.hometask.messages.WithdrawalState.PROCESSING;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class SnapshotTest {
+
+    private static final int SESSION_ID = 123;
+    private static final long JOURNAL_POSITION = 4096;
+    private static final String ADDRESS = "адрес-😀";
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    private final EventHolder holder = new EventHolder();
+    private Repository repository;
+    private Controller controller;
+    private Snapshotter snapshotter;
+
+    @Before
+    public void setUp() {
+        final var context = new EventContext();
+        context.holder = holder;
+        repository = new Repository();
+        controller = new Controller(new Publisher(context), repository);
+        snapshotter = new Snapshotter(folder.getRoot(), repository, 0, 1, 0);
+    }
+
+    @Test
+    public void snapshotKeepsStateAtItsStart() throws Exception {
+
+        request(new CreateAccountAeronRequest(1, 100));
+        request(new CreateAccountAeronRequest(2, 0));
+        request(new CreateAccountAeronRequest(3, 50));
+        final var uuid1 = withdraw(1, 10);
+        process(new CreateWithdrawalSuccessEvent(uuid1));
+        final var uuid2 = withdraw(3, 5);
+
+        snapshotter.onEndOfBatch(JOURNAL_POSITION);
+        assertNotNull(repository.snapshotWriter);
+
+        // account 1 is written by the first chunk, accounts 2 and 3 are written on update
+        snapshotter.onEndOfBatch(JOURNAL_POSITION + 8);
+        request(new AccountTransferAeronRequest(4, 3, 2, 20));
+        request(new CreateAccountAeronRequest(5, 1));
+        withdraw(2, 1);
+
+        for (int i = 0; i < 10 && repository.snapshotWriter != null; i++) {
+            snapshotter.onEndOfBatch(JOURNAL_POSITION + 16);
+        }
+        assertNull(repository.snapshotWriter);
+        // waits for the snapshot to be completed
+        snapshotter.close();
+        assertEquals(1, Snapshot.snapshots(folder.getRoot()).length);
+
+        final var context = new EventContext();
+        final var restoredHolder = new EventHolder();
+        context.holder = restoredHolder;
+        final var publisher = new Publisher(context);
+        final var restored = new Repository();
+        assertEquals(JOURNAL_POSITION, SnapshotLoader.load(folder.getRoot(), restored, publisher));
+
+        assertEquals(3, restored.accounts.size());
+        assertBalance(restored, 1, 90, 10);
+        assertBalance(restored, 2, 0, 0);
+        assertBalance(restored, 3, 45, 5);
+        assertEquals(1, requireNonNull(restored.accounts.get(1)).getPendingWithdrawals().size());
+        assertEquals(150, restored.issuedAmount);
+
+        assertEquals(2, restored.withdrawals.size());
+        final var withdrawal1 = requireNonNull(restored.withdrawals.get(1));
+        assertEquals(uuid1, withdrawal1.getUuid());
+        assertEquals(ADDRESS, withdrawal1.getAddress().value());
+        assertTrue(withdrawal1.isCreated());
+        assertEquals(PROCESSING, withdrawal1.getState());
+        final var withdrawal2 = requireNonNull(restored.withdrawals.get(2));
+        assertEquals(uuid2, withdrawal2.getUuid());
+        assertFalse(withdrawal2.isCreated());
+        assertEquals(withdrawal2, restored.findWithdrawal(uuid2));
+
+        // sequences continue after the snapshot
+        assertEquals(4, restored.nextAccountId());
+        assertEquals(3, restored.nextWithdrawalId());
+
+        new Controller(publisher, restored).accept(new RecoveryEvent());
+        assertEquals(List.of(new CreateWithdrawalRequest(uuid2, ADDRESS, 5)), restoredHolder.externalRequests());
+    }
+
+    @Test
+    public void snapshotWaitsForPendingQueries() {
+
+        request(new CreateAccountAeronRequest(1, 100));
+        final var uuid = withdraw(1, 10);
+        process(new CreateWithdrawalSuccessEvent(uuid));
+        request(new QueryWithdrawalAeronRequest(3, 1));
+        assertFalse(repository.isQuiescent());
+
+        snapshotter.onEndOfBatch(JOURNAL_POSITION);
+        assertNull(repository.snapshotWriter);
+
+        process(new QueryWithdrawalSuccessEvent(uuid, COMPLETED));
+        assertTrue(repository.isQuiescent());
+
+        snapshotter.onEndOfBatch(JOURNAL_POSITION);
+        assertNotNull(repository.snapshotWriter);
+        snapshotter.close();
+        assertNull(repository.snapshotWriter);
+        assertEquals(0, requireNonNull(folder.getRoot().list()).length);
+    }
+
+    @Test
+    public void utf8Length() {
+        for (final var value : List.of("", "abc", ADDRESS, "\uD83D", "\uDE00x", "€")) {
+            assertEquals(value, value.getBytes(UTF_8).length, Snapshot.utf8Length(value));
+        }
+    }
+
+    @NotNull
+    private UUID withdraw(long accountId, long amount) {
+        request(new AccountWithdrawAeronRequest(accountId, accountId, ADDRESS, amount));
+        return ((CreateWithdrawalRequest) holder.externalRequests().getFirst()).withdrawalUuid();
+    }
+
+    private void request(@NotNull AeronRequest request) {
+        process(new InboundAeronMessageEvent(SESSION_ID, request));
+    }
+
+    private void process(@NotNull Event event) {
+        holder.clean();
+        holder.event = event;
+        controller.accept(event);
+    }
+
+    private static void assertBalance(@NotNull Repository repository, long accountId, long available, long reserved) {
+        final var account = requireNonNull(repository.accounts.get(accountId));
+        assertEquals(available, account.getAvailableAmount());
+        assertEquals(reserved, account.getReservedAmount());
+    }
+}
@@ -0,0 +1,195 @@
+package org.example.hometask.state;
+
+import org.example.hometask.Controller;
+import org.example.hometask.disruptor.EventContext;
+import org.example.hometask.disruptor.EventHolder;
+import org.example.hometask.disruptor.Publisher;
+import org.example.hometask.messages.disruptor.CreateWithdrawalCallFailureEvent;
+import org.example.hometask.messages.disruptor.CreateWithdrawalSuccessEvent;
+import org.example.hometask.messages.disruptor.Event;
+import org.example.hometask.messages.disruptor.InboundAeronMessageEvent;
+import org.example.hometask.messages.disruptor.QueryWithdrawalSuccessEvent;
+import org.example.hometask.messages.disruptor.TickEvent;
+import org.example.hometask.messages.external.CreateWithdrawalRequest;
+import org.example.hometask.messages.external.QueryWithdrawalRequest;
+import org.example.hometask.messages.request.AccountWithdrawAeronRequest;
+import org.example.hometask.messages.request.CreateAccountAeronRequest;
+import org.example.hometask.messages.request.QueryAccountAeronRequest;
+import org.example.hometask.messages.response.AccountDataAeronResponse;
+import org.example.hometask.messages.response.OutboundAeronMessageEnvelope;
+import org.jetbrains.annotations.NotNull;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static org.example.hometask.messages.WithdrawalState.COMPLETED;
+import static org.example.hometask.messages.WithdrawalState.FAILED;
+import static org.example.hometask.messages.WithdrawalState.PROCESSING;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class WithdrawalPollerTest {
+
+    private static final int SESSION_ID = 123;
+    private static final long START_NANOS = -MILLISECONDS.toNanos(100_000);
+    private static final long TICK_MS = 10;
+    /**
+     * Timers fire up to a tick of the timer wheel late, besides the tick of the ticker.
+     */
+    private static final long TOLERANCE_MS = 40;
+
+    private final EventHolder holder = new EventHolder();
+    private Controller controller;
+    private WithdrawalPoller poller;
+    private long nowMs;
+
+    @Before
+    public void setUp() {
+        final var context = new EventContext();
+        context.holder = holder;
+        final var repository = new Repository();
+        poller = new WithdrawalPoller(repository, START_NANOS);
+        controller = new Controller(new Publisher(context), repository, poller);
+        nowMs = 0;
+    }
+
+    @Test
+    public void pollsWithBackoffUntilCompleted() {
+
+        final var uuid = createWithdrawal();
+        assertEquals(1, poller.size());
+
+        // first poll after the initial delay, then every interval within the window, then growing intervals
+        final var polls = tickUntil(30_000, uuid, true);
+        assertEquals(WithdrawalPoller.DEFAULT_INITIAL_DELAY_MS, polls.getFirst(), TOLERANCE_MS);
+        assertEquals(WithdrawalPoller.DEFAULT_INTERVAL_MS, polls.get(1) - polls.get(0), TOLERANCE_MS);
+        final long lastInterval = polls.getLast() - polls.get(polls.size() - 2);
+        assertTrue(lastInterval > WithdrawalPoller.DEFAULT_INTERVAL_MS * 4);
+        assertTrue(lastInterval <= WithdrawalPoller.DEFAULT_MAX_INTERVAL_MS);
+
+        process(new QueryWithdrawalSuccessEvent(uuid, FAILED));
+        assertTrue(tickUntil(100_000, uuid, true).isEmpty());
+        assertEquals(0, poller.size());
+    }
+
+    @Test
+    public void balanceIsSettledInBackground() {
+
+        final var uuid = createWithdrawal();
+        assertEquals(1, tickUntil(WithdrawalPoller.DEFAULT_INITIAL_DELAY_MS + TICK_MS, uuid, false).size());
+        process(new QueryWithdrawalSuccessEvent(uuid, FAILED));
+
+        // no round-trip to the external service is needed anymore
+        process(new InboundAeronMessageEvent(SESSION_ID, new QueryAccountAeronRequest(3, 1)));
+        assertEquals(List.of(new OutboundAeronMessageEnvelope(SESSION_ID, new AccountDataAeronResponse(3, 100, 0))),
+                holder.responses());
+        assertTrue(holder.withdrawalRequests.isEmpty());
+    }
+
+    @Test
+    public void pollIsSkippedWhileQueryIsPending() {
+
+        final var uuid = createWithdrawal();
+        final long untilMs = WithdrawalPoller.DEFAULT_INITIAL_DELAY_MS + 3 * WithdrawalPoller.DEFAULT_INTERVAL_MS;
+        assertEquals(1, tickUntil(untilMs, uuid, false).size());
+
+        process(new QueryWithdrawalSuccessEvent(uuid, PROCESSING));
+        assertEquals(1, tickUntil(nowMs + WithdrawalPoller.DEFAULT_INTERVAL_MS, uuid, false).size());
+    }
+
+    @Test
+    public void replayWithoutTicksGivesSameResponses() {
+
+        final var uuid = createWithdrawal();
+        assertEquals(1, tickUntil(WithdrawalPoller.DEFAULT_INITIAL_DELAY_MS + TICK_MS, uuid, false).size());
+
+        // the operation does not wait for the poll, which is unknown on replay
+        process(new InboundAeronMessageEvent(SESSION_ID, new QueryAccountAeronRequest(3, 1)));
+        assertEquals(List.of(new QueryWithdrawalRequest(uuid)), holder.externalRequests());
+
+        final List<Event> journal = List.of(
+                new InboundAeronMessageEvent(SESSION_ID, new QueryAccountAeronRequest(3, 1)),
+                new QueryWithdrawalSuccessEvent(uuid, PROCESSING),
+                new QueryWithdrawalSuccessEvent(uuid, COMPLETED),
+                new InboundAeronMessageEvent(SESSION_ID, new QueryAccountAeronRequest(4, 1)));
+        final var live = new ArrayList<OutboundAeronMessageEnvelope>();
+        for (final var event : journal.subList(1, journal.size())) {
+            process(event);
+            live.addAll(holder.responses());
+        }
+
+        setUp();
+        assertEquals(uuid, createWithdrawal());
+        final var replayed = new ArrayList<OutboundAeronMessageEnvelope>();
+        for (final var event : journal) {
+            process(event);
+            replayed.addAll(holder.responses());
+        }
+        assertEquals(List.of(
+                new OutboundAeronMessageEnvelope(SESSION_ID, new AccountDataAeronResponse(3, 90, 10)),
+                new OutboundAeronMessageEnvelope(SESSION_ID, new AccountDataAeronResponse(4, 90, 0))), replayed);
+        assertEquals(replayed, live);
+    }
+
+    @Test
+    public void failedCreateIsRetriedAfterInterval() {
+
+        process(new InboundAeronMessageEvent(SESSION_ID, new CreateAccountAeronRequest(1, 100)));
+        process(new InboundAeronMessageEvent(SESSION_ID, new AccountWithdrawAeronRequest(2, 1, "foo", 10)));
+        final var request = (CreateWithdrawalRequest) holder.externalRequests().getFirst();
+        process(new CreateWithdrawalCallFailureEvent(request.withdrawalUuid()));
+        process(new CreateWithdrawalCallFailureEvent(request.withdrawalUuid()));
+        assertTrue(holder.withdrawalRequests.isEmpty());
+
+        final var retries = new ArrayList<Long>();
+        for (; nowMs <= 2 * WithdrawalPoller.DEFAULT_INTERVAL_MS; nowMs += TICK_MS) {
+            process(new TickEvent(START_NANOS + MILLISECONDS.toNanos(nowMs)));
+            if (holder.externalRequests().contains(request)) {
+                retries.add(nowMs);
+            }
+        }
+        assertEquals(1, retries.size());
+        assertEquals(WithdrawalPoller.DEFAULT_INTERVAL_MS, retries.getFirst(), TOLERANCE_MS);
+
+        process(new CreateWithdrawalSuccessEvent(request.withdrawalUuid()));
+        assertEquals(1, poller.size());
+    }
+
+    @NotNull
+    private UUID createWithdrawal() {
+        process(new InboundAeronMessageEvent(SESSION_ID, new CreateAccountAeronRequest(1, 100)));
+        process(new InboundAeronMessageEvent(SESSION_ID, new AccountWithdrawAeronRequest(2, 1, "foo", 10)));
+        final var uuid = ((CreateWithdrawalRequest) holder.externalRequests().getFirst()).withdrawalUuid();
+        process(new CreateWithdrawalSuccessEvent(uuid));
+        return uuid;
+    }
+
+    /**
+     * @param respond Whether the external service answers polls immediately.
+     * @return Times of polls in milliseconds.
+     */
+    @NotNull
+    private List<Long> tickUntil(long untilMs, @NotNull UUID uuid, boolean respond) {
+        final var polls = new ArrayList<Long>();
+        for (; nowMs <= untilMs; nowMs += TICK_MS) {
+            process(new TickEvent(START_NANOS + MILLISECONDS.toNanos(nowMs)));
+            if (holder.externalRequests().contains(new QueryWithdrawalRequest(uuid))) {
+                polls.add(nowMs);
+                if (respond) {
+                    process(new QueryWithdrawalSuccessEvent(uuid, PROCESSING));
+                }
+            }
+        }
+        return polls;
+    }
+
+    private void process(@NotNull Event event) {
+        holder.clean();
+        holder.event = event;
+        controller.accept(event);
+    }
+}
@@ -0,0 +1,36 @@
+package org.example.hometask.state;
+
+import org.junit.Test;
+
+import java.util.UUID;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+public class WithdrawalUuidsTest {
+
+    private final WithdrawalUuids uuids = new WithdrawalUuids(WithdrawalUuids.DEFAULT_NAMESPACE);
+
+    @Test
+    public void idsRoundTrip() {
+        for (final long id : new long[]{1, 2, 65_537, Long.MAX_VALUE >>> 1}) {
+            final var uuid = uuids.toUuid(id);
+            assertEquals(8, uuid.version());
+            assertEquals(2, uuid.variant());
+            assertEquals(uuid, UUID.fromString(uuid.toString()));
+            assertEquals(id, uuids.toId(uuid));
+        }
+        assertNotEquals(uuids.toUuid(1), uuids.toUuid(2));
+    }
+
+    @Test
+    public void foreignUuids() {
+        assertEquals(0, uuids.toId(UUID.randomUUID()));
+        assertEquals(0, uuids.toId(new WithdrawalUuids(UUID.randomUUID()).toUuid(1)));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void idOutOfRange() {
+        uuids.toUuid(Long.MAX_VALUE);
+    }
+}
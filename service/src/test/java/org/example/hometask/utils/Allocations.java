@@ -0,0 +1,56 @@
+package org.example.hometask.utils;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.lang.management.ManagementFactory;
+import java.util.function.IntConsumer;
+
+/**
+ * Measures bytes allocated by the current thread, so tests can verify that steady-state paths allocate nothing.
+ */
+public final class Allocations {
+
+    private static final int WARMUP_ITERATIONS = 50_000;
+    private static final int ITERATIONS = 100_000;
+    private static final int MEASUREMENT_ROUNDS = 5;
+
+    private static final com.sun.management.ThreadMXBean THREAD_MX_BEAN =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    /**
+     * Runs the iteration until JIT is done with it, then measures it for a few rounds.
+     *
+     * @param iteration Iteration to measure, takes the number of the iteration.
+     * @return Bytes allocated by the best round, without the overhead of the measurement itself.
+     */
+    public static long steadyStateAllocatedBytes(@NotNull IntConsumer iteration) {
+
+        // let buffers grow to their steady-state size and let JIT do its job
+        run(iteration, WARMUP_ITERATIONS);
+
+        // tiered compilation may still allocate a few bytes once, while any per-iteration allocation
+        // would show up in every single round
+        final long overhead = measure(iteration, 0);
+        long allocated = Long.MAX_VALUE;
+        for (int round = 0; round < MEASUREMENT_ROUNDS; round++) {
+            allocated = Math.min(allocated, measure(iteration, ITERATIONS));
+        }
+        return Math.max(0, allocated - overhead);
+    }
+
+    private static long measure(@NotNull IntConsumer iteration, int iterations) {
+        final long before = THREAD_MX_BEAN.getCurrentThreadAllocatedBytes();
+        run(iteration, iterations);
+        return THREAD_MX_BEAN.getCurrentThreadAllocatedBytes() - before;
+    }
+
+    private static void run(@NotNull IntConsumer iteration, int iterations) {
+        for (int i = 0; i < iterations; i++) {
+            iteration.accept(i);
+        }
+    }
+
+    private Allocations() {
+        // empty
+    }
+}
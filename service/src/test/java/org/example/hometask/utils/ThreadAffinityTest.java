@@ -0,0 +1,81 @@
+package org.example.hometask.utils;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assume.assumeTrue;
+
+public class ThreadAffinityTest {
+
+    @Test
+    public void parse() {
+        final var affinity = ThreadAffinity.parse("server=2; journaller-0=3,5;state-0=0-3;");
+        assertEquals("2", affinity.cpus("server"));
+        assertEquals("3,5", affinity.cpus("journaller-0"));
+        assertEquals("0-3", affinity.cpus("state-0"));
+        assertNull(affinity.cpus("publisher-0-0"));
+        assertNull(ThreadAffinity.parse("").cpus("server"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void invalidCpus() {
+        ThreadAffinity.parse("server=two");
+    }
+
+    @Test
+    public void unconfiguredThreadIsNotPinned() {
+        assertFalse(ThreadAffinity.parse("server=0").pinCurrentThread());
+    }
+
+    @Test
+    public void threadIsPinnedOnStart() throws Exception {
+        assumeTrue(Files.isSymbolicLink(Path.of("/proc/thread-self")));
+
+        // a single CPU of those allowed to us
+        final var cpu = allowedCpus().split("[,-]")[0];
+        final var allowed = new AtomicReference<String>();
+        final var thread = new PrefixThreadFactory("pinned-", ThreadAffinity.parse("pinned-1=" + cpu))
+                .newThread(() -> allowed.set(allowedCpus()));
+        thread.start();
+        thread.join();
+        assertEquals(cpu, allowed.get());
+    }
+
+    @Test
+    public void threadsAreNamedByTheirRunnables() {
+        final var threadFactory = new NamedThreadFactory(ThreadAffinity.NONE);
+        final Runnable journaller = () -> {
+        };
+        final Runnable stateMachine = () -> {
+        };
+        threadFactory.name(journaller, "journaller-0");
+        threadFactory.name(stateMachine, "state-0");
+        assertEquals("state-0", threadFactory.newThread(stateMachine).getName());
+        assertEquals("journaller-0", threadFactory.newThread(journaller).getName());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void unnamedRunnable() {
+        new NamedThreadFactory(ThreadAffinity.NONE).newThread(() -> {
+        });
+    }
+
+    private static String allowedCpus() {
+        try (var lines = Files.lines(Path.of("/proc/thread-self/status"))) {
+            return lines.filter(line -> line.startsWith("Cpus_allowed_list:"))
+                    .map(line -> line.substring(line.indexOf(':') + 1).trim())
+                    .findFirst()
+                    .orElseThrow();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}